@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.benchmark;
+
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.hive.action.HiveExportConfig;
+import io.cdap.plugin.hive.action.HiveImportConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures config validation, which runs when a pipeline is deployed and again at the start of every run. Export
+ * validation parses the select statement with calcite, import validation tokenizes every load statement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigValidationBenchmark {
+  private static final String CONNECTION_STRING = "jdbc:hive2://localhost:10000/mydb;auth=delegationToken";
+
+  /**
+   * Number of columns and predicates of the select statement, and number of statements of the import script.
+   */
+  @Param({"10", "100", "1000"})
+  private int size;
+
+  private HiveExportConfig exportConfig;
+  private HiveImportConfig importConfig;
+  private HiveImportConfig scriptConfig;
+
+  @Setup
+  public void setup() {
+    exportConfig = HiveExportConfig.builder()
+      .setConnectionString(CONNECTION_STRING)
+      .setUser("user")
+      .setPassword("password")
+      .setStatement(selectStatement(size))
+      .setPath("/tmp/hive-export")
+      .setOverwrite("yes")
+      .build();
+    importConfig = HiveImportConfig.builder()
+      .setConnectionString(CONNECTION_STRING)
+      .setUser("user")
+      .setPassword("password")
+      .setStatement(loadStatement(0))
+      .build();
+    StringBuilder script = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      script.append(loadStatement(i)).append(";\n");
+    }
+    scriptConfig = HiveImportConfig.builder()
+      .setConnectionString(CONNECTION_STRING)
+      .setUser("user")
+      .setPassword("password")
+      .setStatement(script.toString())
+      .setMode(HiveImportConfig.MODE_SCRIPT)
+      .build();
+  }
+
+  @Benchmark
+  public MockFailureCollector validateExport() {
+    MockFailureCollector collector = new MockFailureCollector();
+    exportConfig.validate(collector);
+    return collector;
+  }
+
+  @Benchmark
+  public MockFailureCollector validateImportStatement() {
+    MockFailureCollector collector = new MockFailureCollector();
+    importConfig.validate(collector);
+    importConfig.validateImportStatement(collector);
+    return collector;
+  }
+
+  @Benchmark
+  public MockFailureCollector validateImportScript() {
+    MockFailureCollector collector = new MockFailureCollector();
+    scriptConfig.validate(collector);
+    scriptConfig.validateImportStatement(collector);
+    return collector;
+  }
+
+  /**
+   * Returns a select statement of the given number of columns, filtered by as many predicates.
+   */
+  private static String selectStatement(int size) {
+    StringBuilder columns = new StringBuilder();
+    StringBuilder predicates = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      columns.append(i == 0 ? "" : ", ").append("c").append(i);
+      predicates.append(i == 0 ? "" : " AND ").append("c").append(i).append(" <> 'value").append(i).append("'");
+    }
+    return "SELECT " + columns + " FROM mydb.events WHERE " + predicates;
+  }
+
+  private static String loadStatement(int index) {
+    return "LOAD DATA INPATH '/data/events/part-" + index + "' INTO TABLE mydb.events PARTITION (dt='2020-01-01')";
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.benchmark;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hive.service.server.HiveServer2;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HiveServer2 running in the current process in local mode. The metastore is an embedded derby database and
+ * tables, scratch directories and operation logs are stored on the local file system under the given directory.
+ * Queries run as local MapReduce jobs, so no cluster is needed.
+ */
+public final class EmbeddedHiveServer implements AutoCloseable {
+  private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  private final HiveServer2 server;
+  private final String connectionString;
+
+  private EmbeddedHiveServer(HiveServer2 server, int port) {
+    this.server = server;
+    this.connectionString = "jdbc:hive2://localhost:" + port + "/default";
+  }
+
+  /**
+   * Starts a server storing all of its state under the given directory and waits until it accepts connections.
+   */
+  public static EmbeddedHiveServer start(File directory) throws Exception {
+    int port = getFreePort();
+    HiveConf conf = new HiveConf();
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("mapreduce.framework.name", "local");
+    conf.setVar(HiveConf.ConfVars.HIVE_EXECUTION_ENGINE, "mr");
+    conf.setVar(HiveConf.ConfVars.METASTORECONNECTURLKEY,
+                "jdbc:derby:;databaseName=" + new File(directory, "metastore_db") + ";create=true");
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_SCHEMA_VERIFICATION, false);
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_AUTO_CREATE_ALL, true);
+    conf.setVar(HiveConf.ConfVars.METASTOREWAREHOUSE, new File(directory, "warehouse").toURI().toString());
+    conf.setVar(HiveConf.ConfVars.SCRATCHDIR, new File(directory, "scratch").getAbsolutePath());
+    conf.setVar(HiveConf.ConfVars.LOCALSCRATCHDIR, new File(directory, "local-scratch").getAbsolutePath());
+    conf.setVar(HiveConf.ConfVars.DOWNLOADED_RESOURCES_DIR, new File(directory, "resources").getAbsolutePath());
+    conf.setVar(HiveConf.ConfVars.HIVEHISTORYFILELOC, new File(directory, "history").getAbsolutePath());
+    conf.setVar(HiveConf.ConfVars.HIVE_SERVER2_LOGGING_OPERATION_LOG_LOCATION,
+                new File(directory, "operation-logs").getAbsolutePath());
+    // run jobs inside this process instead of forking child jvms
+    conf.setBoolVar(HiveConf.ConfVars.SUBMITVIACHILD, false);
+    conf.setBoolVar(HiveConf.ConfVars.SUBMITLOCALTASKVIACHILD, false);
+    conf.setBoolVar(HiveConf.ConfVars.HIVE_SUPPORT_CONCURRENCY, false);
+    conf.setBoolVar(HiveConf.ConfVars.HIVE_SERVER2_ENABLE_DOAS, false);
+    conf.setVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_BIND_HOST, "localhost");
+    conf.setIntVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_PORT, port);
+    conf.setIntVar(HiveConf.ConfVars.HIVE_SERVER2_WEBUI_PORT, 0);
+
+    HiveServer2 server = new HiveServer2();
+    server.init(conf);
+    server.start();
+    EmbeddedHiveServer embedded = new EmbeddedHiveServer(server, port);
+    embedded.awaitStartup();
+    return embedded;
+  }
+
+  public String getConnectionString() {
+    return connectionString;
+  }
+
+  @Override
+  public void close() {
+    server.stop();
+  }
+
+  private void awaitStartup() throws InterruptedException, SQLException {
+    long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+    while (true) {
+      try (Connection connection = DriverManager.getConnection(connectionString, "", "")) {
+        return;
+      } catch (SQLException e) {
+        if (System.currentTimeMillis() > deadline) {
+          server.stop();
+          throw e;
+        }
+        TimeUnit.MILLISECONDS.sleep(500);
+      }
+    }
+  }
+
+  private static int getFreePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.benchmark;
+
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the overhead of setting up and cleaning up a {@link HiveCommandExecutor}, which every action run and
+ * every split of a split export goes through. Connections are fakes which only support the calls made by the pool,
+ * so the results exclude the cost of opening HiveServer2 sessions, which the pool exists to avoid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+  private static final String CONNECTION_STRING = "jdbc:hive2://localhost:10000/mydb;auth=delegationToken";
+
+  /**
+   * Idle connections kept per user and connection string, 0 opens a new connection for every executor.
+   */
+  @Param({"0", "8"})
+  private int maxIdle;
+
+  private HiveConnectionPool pool;
+
+  @Setup
+  public void setup() {
+    pool = new HiveConnectionPool((url, user, password) -> fakeConnection(), maxIdle,
+                                  HiveConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+                                  HiveConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Benchmark
+  public HiveCommandExecutor setupAndCleanup() throws Exception {
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password");
+    executor.cleanup();
+    return executor;
+  }
+
+  /**
+   * Executors of concurrently running splits, which contend for the pool.
+   */
+  @Benchmark
+  @Threads(8)
+  public HiveCommandExecutor concurrentSetupAndCleanup() throws Exception {
+    return setupAndCleanup();
+  }
+
+  private static Connection fakeConnection() {
+    AtomicBoolean closed = new AtomicBoolean();
+    return (Connection) Proxy.newProxyInstance(
+      ExecutorBenchmark.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "isValid":
+            return !closed.get();
+          case "isClosed":
+            return closed.get();
+          case "close":
+            closed.set(true);
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+}
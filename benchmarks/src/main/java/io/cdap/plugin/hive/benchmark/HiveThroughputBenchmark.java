@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.benchmark;
+
+import io.cdap.cdap.etl.mock.action.MockActionContext;
+import io.cdap.plugin.hive.action.HiveExport;
+import io.cdap.plugin.hive.action.HiveExportConfig;
+import io.cdap.plugin.hive.action.HiveImport;
+import io.cdap.plugin.hive.action.HiveImportConfig;
+import io.cdap.plugin.hive.action.common.HiveConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs Hive Import and Hive Export end to end against an {@link EmbeddedHiveServer}, to track the time it takes to
+ * move a given number of rows through the plugins without a cluster. Every operation is a complete action run,
+ * so the score includes connecting, validation, compiling and the local MapReduce job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class HiveThroughputBenchmark {
+  private static final String IMPORT_TABLE = "bench_import";
+  private static final String EXPORT_TABLE = "bench_export";
+  private static final String COLUMNS = "(id BIGINT, name STRING, amount DOUBLE) " +
+    "ROW FORMAT DELIMITED FIELDS TERMINATED BY ','";
+
+  @Param({"10000", "1000000"})
+  private int rows;
+
+  private Path directory;
+  private Path dataFile;
+  private Path importInput;
+  private EmbeddedHiveServer server;
+  private HiveImport hiveImport;
+  private HiveExport hiveExport;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("hive-benchmark");
+    dataFile = directory.resolve("data.csv");
+    importInput = directory.resolve("import").resolve("data.csv");
+    Files.createDirectories(importInput.getParent());
+    writeRows(dataFile, rows);
+
+    server = EmbeddedHiveServer.start(directory.resolve("hive").toFile());
+    Path exportInput = directory.resolve("export-source.csv");
+    Files.copy(dataFile, exportInput);
+    try (Connection connection = DriverManager.getConnection(server.getConnectionString(), "", "");
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE " + IMPORT_TABLE + " " + COLUMNS);
+      statement.execute("CREATE TABLE " + EXPORT_TABLE + " " + COLUMNS);
+      statement.execute("LOAD DATA INPATH '" + exportInput.toUri() + "' INTO TABLE " + EXPORT_TABLE);
+    }
+
+    hiveImport = new HiveImport(HiveImportConfig.builder()
+                                  .setConnectionString(server.getConnectionString())
+                                  .setStatement("LOAD DATA INPATH '" + importInput.toUri() + "' OVERWRITE INTO TABLE " +
+                                                  IMPORT_TABLE)
+                                  .build());
+    hiveExport = new HiveExport(HiveExportConfig.builder()
+                                  .setConnectionString(server.getConnectionString())
+                                  .setStatement("SELECT * FROM " + EXPORT_TABLE)
+                                  .setPath(new File(directory.toFile(), "export").toURI().toString())
+                                  .setOverwrite("yes")
+                                  .setPartitionFilterCheck("none")
+                                  .build());
+  }
+
+  /**
+   * LOAD DATA moves its input, so a fresh copy is needed for every import.
+   */
+  @Setup(Level.Invocation)
+  public void prepareImport() throws IOException {
+    Files.copy(dataFile, importInput, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    HiveConnectionPool.getInstance().close();
+    if (server != null) {
+      server.close();
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  @Benchmark
+  public void importRows() throws Exception {
+    hiveImport.run(new MockActionContext());
+  }
+
+  @Benchmark
+  public void exportRows() throws Exception {
+    hiveExport.run(new MockActionContext());
+  }
+
+  private static void writeRows(Path file, int rows) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < rows; i++) {
+        writer.write(i + ",name-" + i + "," + (i % 1000) / 10.0);
+        writer.newLine();
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.orc.OrcFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Merges the small files of an export into files close to a target size, for files which hive did not merge. Each
+ * directory is compacted separately, so the subdirectories of split exports keep their own files. Merged files stay
+ * splittable: text files are concatenated, which is only done for uncompressed, gzip and bzip2 files whose streams
+ * can be concatenated, ORC files are merged by stripes and Avro files by blocks. Parquet files are left as they are.
+ *
+ * A merged file is written under a hidden name and made visible before the files it replaces are deleted, so an
+ * interrupted compaction can leave duplicate rows behind unless the export is staged.
+ */
+public class ExportCompactor {
+  private static final Logger LOG = LoggerFactory.getLogger(ExportCompactor.class);
+  private static final List<String> CONCATENABLE_EXTENSIONS = Arrays.asList("", ".gz", ".bz2");
+
+  private final FileSystem fs;
+  private final Configuration conf;
+  private final HiveExportFormat format;
+  private final long targetSize;
+
+  public ExportCompactor(FileSystem fs, HiveExportFormat format, long targetSize) {
+    this.fs = fs;
+    this.conf = fs.getConf();
+    this.format = format;
+    this.targetSize = targetSize;
+  }
+
+  /**
+   * Compacts the files of the directory and of its subdirectories, and returns the number of files replaced by
+   * merged files.
+   */
+  public int compact(Path directory) throws IOException {
+    if (format == HiveExportFormat.PARQUET) {
+      LOG.info("Parquet files of {} are not compacted, only hive merges them.", directory);
+      return 0;
+    }
+    int replaced = 0;
+    List<FileStatus> files = new ArrayList<>();
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      if (name.startsWith("_") || name.startsWith(".")) {
+        continue;
+      }
+      if (status.isDirectory()) {
+        replaced += compact(status.getPath());
+      } else {
+        files.add(status);
+      }
+    }
+
+    // files of different extensions, which are compressed differently, are never merged
+    Map<String, List<FileStatus>> byExtension = new LinkedHashMap<>();
+    for (FileStatus file : files) {
+      byExtension.computeIfAbsent(getExtension(file.getPath().getName()), e -> new ArrayList<>()).add(file);
+    }
+    for (Map.Entry<String, List<FileStatus>> entry : byExtension.entrySet()) {
+      if (format == HiveExportFormat.TEXT && !CONCATENABLE_EXTENSIONS.contains(entry.getKey())) {
+        LOG.info("Files with extension {} in {} can not be concatenated and are not compacted.", entry.getKey(),
+                 directory);
+        continue;
+      }
+      for (List<FileStatus> group : plan(entry.getValue(), targetSize)) {
+        replaced += merge(directory, group, entry.getKey());
+      }
+    }
+    return replaced;
+  }
+
+  /**
+   * Groups the files smaller than half of the target size, in name order, into groups of at most the target size.
+   * Groups with a single file are dropped, since there is nothing to merge.
+   */
+  public static List<List<FileStatus>> plan(List<FileStatus> files, long targetSize) {
+    List<FileStatus> small = new ArrayList<>();
+    for (FileStatus file : files) {
+      if (file.getLen() < targetSize / 2) {
+        small.add(file);
+      }
+    }
+    small.sort(Comparator.comparing(file -> file.getPath().getName()));
+
+    List<List<FileStatus>> groups = new ArrayList<>();
+    List<FileStatus> group = new ArrayList<>();
+    long groupSize = 0;
+    for (FileStatus file : small) {
+      if (!group.isEmpty() && groupSize + file.getLen() > targetSize) {
+        groups.add(group);
+        group = new ArrayList<>();
+        groupSize = 0;
+      }
+      group.add(file);
+      groupSize += file.getLen();
+    }
+    groups.add(group);
+    groups.removeIf(g -> g.size() < 2);
+    return groups;
+  }
+
+  private int merge(Path directory, List<FileStatus> group, String extension) throws IOException {
+    String id = UUID.randomUUID().toString();
+    Path hidden = new Path(directory, ".compacted-" + id + extension);
+    List<Path> sources = new ArrayList<>();
+    group.forEach(file -> sources.add(file.getPath()));
+
+    List<Path> merged;
+    switch (format) {
+      case ORC:
+        // files with a different schema or compression are skipped by the merge
+        merged = OrcFile.mergeFiles(hidden, OrcFile.writerOptions(conf), sources);
+        break;
+      case AVRO:
+        merged = mergeAvro(hidden, sources);
+        break;
+      default:
+        concatenate(hidden, sources);
+        merged = sources;
+    }
+    if (merged.size() < 2) {
+      fs.delete(hidden, false);
+      return 0;
+    }
+
+    Path target = new Path(directory, "compacted-" + id + extension);
+    if (!fs.rename(hidden, target)) {
+      fs.delete(hidden, false);
+      throw new IOException(String.format("Unable to rename %s to %s", hidden, target));
+    }
+    for (Path source : merged) {
+      fs.delete(source, false);
+    }
+    LOG.debug("Merged {} files of {} into {}", merged.size(), directory, target);
+    return merged.size();
+  }
+
+  private void concatenate(Path target, List<Path> sources) throws IOException {
+    try (FSDataOutputStream out = fs.create(target, false)) {
+      for (Path source : sources) {
+        try (InputStream in = fs.open(source)) {
+          IOUtils.copyBytes(in, out, conf, false);
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends the blocks of all files with the schema of the first file to the target, recompressing only the blocks
+   * of files compressed with a different codec.
+   */
+  private List<Path> mergeAvro(Path target, List<Path> sources) throws IOException {
+    List<Path> merged = new ArrayList<>();
+    try (DataFileWriter<Object> writer = new DataFileWriter<>(new GenericDatumWriter<>())) {
+      String codec = null;
+      Schema schema = null;
+      for (Path source : sources) {
+        try (DataFileStream<Object> reader = new DataFileStream<>(fs.open(source), new GenericDatumReader<>())) {
+          String sourceCodec = reader.getMetaString(DataFileConstants.CODEC);
+          sourceCodec = sourceCodec == null ? DataFileConstants.NULL_CODEC : sourceCodec;
+          if (schema == null) {
+            schema = reader.getSchema();
+            codec = sourceCodec;
+            writer.setCodec(CodecFactory.fromString(codec));
+            writer.create(schema, fs.create(target, false));
+          } else if (!schema.equals(reader.getSchema())) {
+            LOG.debug("Not merging {}, its schema differs from the schema of {}", source, sources.get(0));
+            continue;
+          }
+          writer.appendAllFrom(reader, !codec.equals(sourceCodec));
+          merged.add(source);
+        }
+      }
+    }
+    return merged;
+  }
+
+  private static String getExtension(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot <= 0 ? "" : name.substring(dot);
+  }
+}
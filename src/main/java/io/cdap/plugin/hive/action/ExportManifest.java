@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Describes the files of a completed export, so that consumers can check an export and plan their reads without
+ * listing directories or counting rows. The manifest is stored as JSON in a _MANIFEST file of the output directory.
+ *
+ * Checksums are the file checksums of the file system, such as MD5-of-MD5-of-CRC32C on HDFS, which are computed
+ * from the block checksums without reading the data. They can be compared with {@code hadoop fs -checksum}.
+ */
+public final class ExportManifest {
+  public static final String FILE_NAME = "_MANIFEST";
+
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+  private final String format;
+  @Nullable
+  private final String compression;
+  @Nullable
+  private final String delimiter;
+  private final String statement;
+  // -1 if hive did not report the number of rows written
+  private final long rows;
+  private final long bytes;
+  private final long created;
+  private final List<ExportedFile> files;
+
+  public ExportManifest(String format, @Nullable String compression, @Nullable String delimiter, String statement,
+                        long rows, List<ExportedFile> files) {
+    this.format = format;
+    this.compression = compression;
+    this.delimiter = delimiter;
+    this.statement = statement;
+    this.rows = rows;
+    this.bytes = files.stream().mapToLong(ExportedFile::getSize).sum();
+    this.created = System.currentTimeMillis();
+    this.files = files;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  @Nullable
+  public String getCompression() {
+    return compression;
+  }
+
+  @Nullable
+  public String getDelimiter() {
+    return delimiter;
+  }
+
+  public String getStatement() {
+    return statement;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public List<ExportedFile> getFiles() {
+    return files;
+  }
+
+  /**
+   * Lists the visible files of the directory and its subdirectories, ordered by path. Files whose name starts with
+   * '_' or '.', such as markers, state and staging files, are not listed.
+   */
+  public static List<ExportedFile> listFiles(FileSystem fs, Path directory) throws IOException {
+    List<ExportedFile> files = new ArrayList<>();
+    String root = fs.makeQualified(directory).toUri().getPath();
+    addFiles(fs, directory, root, files);
+    files.sort(Comparator.comparing(ExportedFile::getPath));
+    return Collections.unmodifiableList(files);
+  }
+
+  private static void addFiles(FileSystem fs, Path directory, String root, List<ExportedFile> files)
+    throws IOException {
+    for (FileStatus status : fs.listStatus(directory, path -> !path.getName().startsWith("_")
+      && !path.getName().startsWith("."))) {
+      if (status.isDirectory()) {
+        addFiles(fs, status.getPath(), root, files);
+        continue;
+      }
+      String path = status.getPath().toUri().getPath().substring(root.length() + 1);
+      FileChecksum checksum = fs.getFileChecksum(status.getPath());
+      files.add(new ExportedFile(path, status.getLen(), checksum == null ? null : format(checksum)));
+    }
+  }
+
+  private static String format(FileChecksum checksum) {
+    StringBuilder hex = new StringBuilder(checksum.getAlgorithmName()).append(':');
+    for (byte b : checksum.getBytes()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Returns the manifest of the directory, or null if the directory has no manifest.
+   */
+  @Nullable
+  public static ExportManifest read(FileSystem fs, Path directory) throws IOException {
+    Path file = new Path(directory, FILE_NAME);
+    if (!fs.exists(file)) {
+      return null;
+    }
+    try (FSDataInputStream in = fs.open(file)) {
+      byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+      in.readFully(bytes);
+      return GSON.fromJson(new String(bytes, StandardCharsets.UTF_8), ExportManifest.class);
+    }
+  }
+
+  /**
+   * Stores the manifest in the directory. The manifest is written under a hidden name first, so consumers never see
+   * a partially written manifest.
+   */
+  public void write(FileSystem fs, Path directory) throws IOException {
+    Path file = new Path(directory, FILE_NAME);
+    Path temp = new Path(directory, "." + FILE_NAME + ".tmp");
+    try (FSDataOutputStream out = fs.create(temp, true)) {
+      out.write(GSON.toJson(this).getBytes(StandardCharsets.UTF_8));
+    }
+    delete(fs, directory);
+    if (!fs.rename(temp, file)) {
+      throw new IOException(String.format("Unable to store manifest in %s.", file));
+    }
+  }
+
+  /**
+   * Removes the manifest from the directory, so that the manifest of a previous export does not describe an export
+   * which is being replaced.
+   */
+  public static void delete(FileSystem fs, Path directory) throws IOException {
+    fs.delete(new Path(directory, FILE_NAME), false);
+  }
+
+  /**
+   * A file of the export, with its path relative to the output directory.
+   */
+  public static final class ExportedFile {
+    private final String path;
+    private final long size;
+    @Nullable
+    private final String checksum;
+
+    public ExportedFile(String path, long size, @Nullable String checksum) {
+      this.path = path;
+      this.size = size;
+      this.checksum = checksum;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the file checksum, prefixed with its algorithm, or null if the file system does not provide checksums.
+     */
+    @Nullable
+    public String getChecksum() {
+      return checksum;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Distributes the exported rows among a fixed number of files by the hash of a column. The select statement is
+ * wrapped in a query distributing its rows by pmod(hash(column), numShards), which is run with exactly numShards
+ * reducers. Since hive sends a row to the reducer whose number is the hash of the distribution key, and the hash of
+ * an int is its value, reducer i writes the rows of shard i, sorted by the column. The files written by the reducers
+ * are then renamed to shard-0000i-of-0000n, keeping the extension of the compression codec.
+ */
+public class ExportSharding {
+  // files written by reducer tasks, such as 000003_0 or 000003_0.gz
+  private static final Pattern TASK_FILE = Pattern.compile("(\\d+)_\\d+(_copy_\\d+)?(\\..*)?");
+
+  private final String column;
+  private final int numShards;
+
+  public ExportSharding(String column, int numShards) {
+    this.column = column;
+    this.numShards = numShards;
+  }
+
+  public String getColumn() {
+    return column;
+  }
+
+  public int getNumShards() {
+    return numShards;
+  }
+
+  /**
+   * Returns the SET commands which run the export with one reducer per shard and keep hive from merging the files
+   * of the reducers.
+   */
+  public List<String> getSettings() {
+    return Arrays.asList(
+      "SET mapreduce.job.reduces=" + numShards,
+      "SET hive.tez.auto.reducer.parallelism=false",
+      "SET hive.merge.mapfiles=false",
+      "SET hive.merge.mapredfiles=false",
+      "SET hive.merge.tezfiles=false");
+  }
+
+  /**
+   * Returns the select statement distributing the rows of the given select statement among the shards.
+   */
+  public String getStatement(String select) {
+    String quoted = "`" + column.replace("`", "``") + "`";
+    return String.format("SELECT * FROM (%s) shard_source DISTRIBUTE BY pmod(hash(%s), %d) SORT BY %s", select,
+                         quoted, numShards, quoted);
+  }
+
+  /**
+   * Returns the name of the file of a shard, such as shard-00003-of-00016.gz.
+   */
+  public static String getFileName(int shard, int numShards, String extension) {
+    return String.format("shard-%05d-of-%05d%s", shard, numShards, extension);
+  }
+
+  /**
+   * Renames the files the reducers wrote to the directory after their shard, and returns the shards without rows,
+   * for which hive did not write a file.
+   *
+   * @throws IOException if the directory contains a file which was not written by a reducer of the export
+   */
+  public List<Integer> rename(FileSystem fs, Path directory) throws IOException {
+    Map<Integer, FileStatus> shards = new TreeMap<>();
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      if (name.startsWith("_") || name.startsWith(".")) {
+        continue;
+      }
+      Matcher matcher = TASK_FILE.matcher(name);
+      int shard = matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+      if (status.isDirectory() || shard < 0 || shard >= numShards || shards.put(shard, status) != null) {
+        throw new IOException(String.format("File %s was not written by one of the %d reducers of the sharded " +
+                                              "export.", status.getPath(), numShards));
+      }
+    }
+
+    List<Integer> empty = new ArrayList<>();
+    for (int shard = 0; shard < numShards; shard++) {
+      FileStatus status = shards.get(shard);
+      if (status == null) {
+        empty.add(shard);
+        continue;
+      }
+      Matcher matcher = TASK_FILE.matcher(status.getPath().getName());
+      matcher.matches();
+      String extension = matcher.group(3) == null ? "" : matcher.group(3);
+      Path target = new Path(directory, getFileName(shard, numShards, extension));
+      if (!fs.rename(status.getPath(), target)) {
+        throw new IOException(String.format("Unable to rename %s to %s.", status.getPath(), target));
+      }
+    }
+    return empty;
+  }
+}
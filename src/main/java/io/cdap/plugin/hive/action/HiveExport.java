@@ -16,6 +16,7 @@
 
 package io.cdap.plugin.hive.action;
 
+import com.google.common.base.Strings;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.annotation.Plugin;
@@ -23,10 +24,31 @@ import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
 import io.cdap.cdap.etl.api.action.Action;
 import io.cdap.cdap.etl.api.action.ActionContext;
+import io.cdap.plugin.hive.action.common.AdaptiveTuning;
+import io.cdap.plugin.hive.action.common.HiveActionMetrics;
 import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import io.cdap.plugin.hive.action.common.ParallelTaskRunner;
+import io.cdap.plugin.hive.action.common.PartitionPruningAnalyzer;
+import io.cdap.plugin.hive.action.common.SelectStatementRewriter;
+import io.cdap.plugin.hive.action.common.SourceFingerprint;
+import io.cdap.plugin.hive.action.common.StagedDirectory;
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import io.cdap.plugin.hive.action.common.Watermark;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
 /**
  * Hive Export runs a select query against a hive table and stores results under an hdfs directory.
  */
@@ -35,7 +57,12 @@ import org.slf4j.LoggerFactory;
 @Description("Hive export plugin")
 public class HiveExport extends Action {
   private static final Logger LOG = LoggerFactory.getLogger(HiveExport.class);
+  private static final String DEFAULT_DELIMITER = ",";
+  // split exports with more statements than this are logged as a warning
+  private static final int LOGGED_SPLIT_COUNT = 1000;
   private final HiveExportConfig config;
+  // SET commands chosen by adaptive tuning for the current run
+  private List<String> tuningSettings = Collections.emptyList();
 
   public HiveExport(HiveExportConfig config) {
     this.config = config;
@@ -49,19 +76,378 @@ public class HiveExport extends Action {
 
   @Override
   public void run(ActionContext context) throws Exception {
-    FailureCollector failureCollector = context.getFailureCollector();
+    HiveActionMetrics metrics = new HiveActionMetrics();
+    try {
+      runExport(context.getFailureCollector(), metrics);
+    } finally {
+      metrics.record(context.getMetrics());
+      LOG.info("Hive export summary: {}", metrics.summary());
+    }
+  }
+
+  private void runExport(FailureCollector failureCollector, HiveActionMetrics metrics) throws Exception {
+    long validationStart = System.nanoTime();
     config.validate(failureCollector);
+    metrics.addValidationTime(HiveActionMetrics.millisSince(validationStart));
     failureCollector.getOrThrowException();
+    tuningSettings = getTuningSettings(metrics);
+
+    if (config.isIncremental()) {
+      runIncrementalExport(failureCollector, metrics);
+      return;
+    }
+
+    Path path = new Path(config.getPath());
+    String fingerprint = null;
+    if (config.isSkipUnchanged()) {
+      FileSystem fs = path.getFileSystem(new Configuration());
+      fingerprint = computeFingerprint(path, metrics);
+      if (fingerprint != null && fingerprint.equals(SourceFingerprint.read(fs, path))) {
+        LOG.info("Input of the export to {} did not change since the last export, skipping the export.", path);
+        return;
+      }
+      if (fs.exists(path)) {
+        SourceFingerprint.delete(fs, path);
+      }
+    }
+    deleteManifest(path);
+
+    if (config.isSplitExport()) {
+      runSplitExport(path, config.getStatement(), SelectStatementRewriter.parse(config.getStatement()), null,
+                     failureCollector, metrics);
+    } else {
+      HiveCommandExecutor executor = newExecutor(metrics);
+      try {
+        validatePartitionPruning(config.getStatement(), executor, failureCollector, metrics);
+        exportTo(path, config.getStatement(), metrics, directory -> {
+          // Create Insert command for hive
+          List<String> commands = buildExportCommands(directory.toString(), config.getStatement());
+          LOG.debug("Hive commands being executed: {}", commands);
+          executor.executeScript(commands, true);
+        });
+      } finally {
+        executor.cleanup();
+      }
+    }
+
+    if (fingerprint != null) {
+      SourceFingerprint.write(path.getFileSystem(new Configuration()), path, fingerprint);
+    }
+  }
+
+  /**
+   * Returns the SET commands chosen by the adaptive tuning rules for the size of the tables read by the statement,
+   * an empty list if no rules are configured.
+   */
+  private List<String> getTuningSettings(HiveActionMetrics metrics) throws Exception {
+    AdaptiveTuning tuning = config.getAdaptiveTuning();
+    if (tuning == null) {
+      return Collections.emptyList();
+    }
+    long start = System.nanoTime();
+    Set<String> tables = SourceFingerprint.getTables(config.getStatement());
+    HiveCommandExecutor executor = newExecutor(metrics);
+    try {
+      return tuning.getSettings(tables.isEmpty() ? -1 : AdaptiveTuning.estimateTables(executor, tables,
+                                                                                       new Configuration()),
+                                "tables " + tables);
+    } finally {
+      executor.cleanup();
+      metrics.addValidationTime(HiveActionMetrics.millisSince(start));
+    }
+  }
 
-    // Create Insert command for hive
-    String command = "INSERT OVERWRITE DIRECTORY '" + config.getPath() +
-      "' row format delimited  FIELDS TERMINATED BY '" + config.getDelimiter() + "' " + config.getStatement();
+  /**
+   * Returns the fingerprint of the input of the export, which also covers the settings that determine the exported
+   * files, or null if the input can not be fingerprinted. The input is fingerprinted before the export runs, so
+   * changes made while it runs are detected by the next run.
+   */
+  @Nullable
+  private String computeFingerprint(Path path, HiveActionMetrics metrics) throws Exception {
+    long start = System.nanoTime();
+    List<String> settings = new ArrayList<>(buildExportCommands(path.toString(), ""));
+    if (config.isSplitExport()) {
+      settings.add(String.format("splitBy=%s splitLowerBound=%s splitUpperBound=%s numSplits=%d",
+                                 config.getSplitBy(), config.getSplitLowerBound(), config.getSplitUpperBound(),
+                                 config.getNumSplits()));
+    }
+    HiveCommandExecutor executor = newExecutor(metrics);
+    try {
+      return SourceFingerprint.compute(executor, config.getStatement(), String.join("\n", settings),
+                                       new Configuration());
+    } finally {
+      executor.cleanup();
+      metrics.addValidationTime(HiveActionMetrics.millisSince(start));
+    }
+  }
+
+  /**
+   * Exports the rows with a watermark greater than the high-water mark of the previous run into a subdirectory
+   * named after the new high-water mark, which is stored once the export succeeded.
+   */
+  private void runIncrementalExport(FailureCollector failureCollector, HiveActionMetrics metrics) throws Exception {
+    SelectStatementRewriter rewriter = SelectStatementRewriter.parse(config.getStatement());
+    Path path = new Path(config.getPath());
+    FileSystem fs = path.getFileSystem(new Configuration());
+    String lowerBound = Watermark.read(fs, path);
+    if (lowerBound == null) {
+      lowerBound = config.getInitialWatermark();
+    }
+
+    String column = config.getWatermarkColumn();
+    String query = "SELECT MAX(" + column + ") FROM " + rewriter.getSourceTable() +
+      (lowerBound == null ? "" : " WHERE " + column + " > " + StatementSplit.quote(lowerBound));
+    HiveCommandExecutor executor = newExecutor(metrics);
+    List<List<String>> rows;
+    try {
+      rows = executor.executeQuery(query);
+    } finally {
+      executor.cleanup();
+    }
+    String upperBound = rows.isEmpty() ? null : rows.get(0).get(0);
+    if (upperBound == null) {
+      LOG.info("No rows of {} with {} greater than {}, nothing to export.", rewriter.getSourceTable(), column,
+               lowerBound);
+      return;
+    }
+
+    Watermark watermark = new Watermark(column, lowerBound, upperBound);
+    Path runPath = new Path(path, watermark.getDirectoryName());
+    LOG.info("Exporting rows of {} with {} to {}", rewriter.getSourceTable(), watermark, runPath);
+    String select = rewriter.withSourceFilter(watermark.getPredicate());
+    deleteManifest(runPath);
+    if (config.isSplitExport()) {
+      runSplitExport(runPath, select, rewriter, watermark, failureCollector, metrics);
+    } else {
+      HiveCommandExecutor exportExecutor = newExecutor(metrics);
+      try {
+        validatePartitionPruning(select, exportExecutor, failureCollector, metrics);
+        exportTo(runPath, select, metrics, directory -> {
+          List<String> commands = buildExportCommands(directory.toString(), select);
+          LOG.debug("Hive commands being executed: {}", commands);
+          exportExecutor.executeScript(commands, true);
+        });
+      } finally {
+        exportExecutor.cleanup();
+      }
+    }
+    Watermark.write(fs, path, upperBound);
+  }
 
-    LOG.debug("Hive command being executed: {}", command);
+  /**
+   * Exports each partition of the source table, or each range of the split column, with a separate statement into
+   * its own subdirectory of the output directory. Statements are run concurrently on up to parallelism connections.
+   * If a watermark is given, only its range is exported and partitions outside of it are skipped. The statement
+   * exporting all splits is recorded in the manifest.
+   */
+  private void runSplitExport(Path path, String statement, SelectStatementRewriter rewriter,
+                              @Nullable Watermark watermark, FailureCollector failureCollector,
+                              HiveActionMetrics metrics) throws Exception {
+    List<StatementSplit> splits;
+    HiveCommandExecutor executor = newExecutor(metrics);
+    try {
+      if (config.getSplitBy() != null) {
+        splits = StatementSplit.ofRange(config.getSplitBy(), config.getSplitLowerBound(),
+                                        config.getSplitUpperBound(), config.getNumSplits());
+      } else {
+        // partitions the predicates of the statement exclude would only produce empty statements and directories
+        String table = rewriter.getSourceTable();
+        List<String> partitions = PartitionPruningAnalyzer.selectPartitions(
+          config.getStatement(), table, HiveMetadata.getPartitions(executor, table));
+        if (watermark != null) {
+          partitions = partitions.stream().filter(watermark::containsPartition).collect(Collectors.toList());
+        }
+        splits = StatementSplit.ofPartitions(partitions);
+      }
+      if (!splits.isEmpty()) {
+        // all split statements only differ by the values they compare with
+        validatePartitionPruning(getSplitStatement(rewriter, splits.get(0), watermark), executor,
+                                 failureCollector, metrics);
+      }
+    } finally {
+      executor.cleanup();
+    }
+
+    LOG.info("Exporting {} splits of {} with parallelism {}", splits.size(), rewriter.getSourceTable(),
+             config.getParallelism());
+    if (splits.size() > LOGGED_SPLIT_COUNT) {
+      LOG.warn("The export runs {} statements, one per split. Restrict the partitions with a predicate on the " +
+                 "partition columns, or use splitBy, to run fewer.", splits.size());
+    }
+    exportTo(path, statement, metrics, directory -> {
+      // statements only overwrite their own subdirectory, so remove the output of previous runs first
+      FileSystem fs = directory.getFileSystem(new Configuration());
+      if (fs.exists(directory)) {
+        fs.delete(directory, true);
+      }
+      fs.mkdirs(directory);
+
+      ParallelTaskRunner.run("splits", splits, config.getParallelism(), split -> {
+        List<String> commands = buildExportCommands(new Path(directory, split.getName()).toString(),
+                                                    getSplitStatement(rewriter, split, watermark));
+        LOG.debug("Hive commands being executed: {}", commands);
+        HiveCommandExecutor splitExecutor = newExecutor(metrics);
+        try {
+          splitExecutor.executeScript(commands, true);
+        } finally {
+          splitExecutor.cleanup();
+        }
+      });
+    });
+  }
+
+  /**
+   * Runs the export into the given output directory. In staging mode the export is written to a staging directory
+   * instead, which replaces the output directory if the export succeeds and is removed if it fails. Small files
+   * are compacted and the manifest is written before the output is committed, so that the manifest is replaced
+   * along with the files it lists. The size of the exported files is added to the metrics.
+   */
+  private void exportTo(Path path, String statement, HiveActionMetrics metrics,
+                        DirectoryExport export) throws Exception {
+    if (!config.isStaging()) {
+      export.run(path);
+      renameShards(path);
+      compact(path);
+      writeManifest(path, statement, metrics);
+    } else {
+      StagedDirectory staged = new StagedDirectory(path, new Configuration());
+      try {
+        staged.create();
+        export.run(staged.getStagingPath());
+        renameShards(staged.getStagingPath());
+        compact(staged.getStagingPath());
+        writeManifest(staged.getStagingPath(), statement, metrics);
+        staged.commit();
+      } catch (Exception e) {
+        staged.abort();
+        throw e;
+      }
+      LOG.info("Committed export to {}", path);
+    }
+    FileSystem fs = path.getFileSystem(new Configuration());
+    if (fs.exists(path)) {
+      metrics.addBytes(fs.getContentSummary(path).getLength());
+    }
+  }
+
+  /**
+   * Removes the manifest of a previous export from the output directory before it is replaced.
+   */
+  private static void deleteManifest(Path directory) throws IOException {
+    FileSystem fs = directory.getFileSystem(new Configuration());
+    if (fs.exists(directory)) {
+      ExportManifest.delete(fs, directory);
+    }
+  }
+
+  /**
+   * Writes the manifest of the files exported to the directory, if manifests are enabled. The row count is the
+   * number of rows hive reported for the export statements, -1 if it did not report it.
+   */
+  private void writeManifest(Path directory, String statement, HiveActionMetrics metrics) throws IOException {
+    if (!config.isManifest()) {
+      return;
+    }
+    FileSystem fs = directory.getFileSystem(new Configuration());
+    fs.mkdirs(directory);
+    HiveExportFormat format = config.getFormat();
+    ExportManifest manifest = new ExportManifest(format.name(), config.getCompression(),
+                                                 format.isColumnar() ? null : getDelimiter(), statement,
+                                                 metrics.getRows(), ExportManifest.listFiles(fs, directory));
+    manifest.write(fs, directory);
+    LOG.info("Wrote manifest of {} files with {} bytes and {} rows to {}", manifest.getFiles().size(),
+             manifest.getBytes(), manifest.getRows(), directory);
+  }
+
+  /**
+   * Names the files of a sharded export after their shard.
+   */
+  private void renameShards(Path directory) throws IOException {
+    ExportSharding sharding = config.getSharding();
+    if (sharding == null) {
+      return;
+    }
+    List<Integer> empty = sharding.rename(directory.getFileSystem(new Configuration()), directory);
+    if (!empty.isEmpty()) {
+      LOG.info("Shards {} of {} have no rows, no files were written for them.", empty, directory);
+    }
+  }
+
+  /**
+   * Merges the small files hive left behind if a target file size is configured.
+   */
+  private void compact(Path directory) throws IOException {
+    Long targetSize = config.getTargetFileSize();
+    if (targetSize == null) {
+      return;
+    }
+    ExportCompactor compactor = new ExportCompactor(directory.getFileSystem(new Configuration()), config.getFormat(),
+                                                    targetSize);
+    int replaced = compactor.compact(directory);
+    if (replaced > 0) {
+      LOG.info("Merged {} small files in {}", replaced, directory);
+    }
+  }
+
+  private void validatePartitionPruning(String statement, HiveCommandExecutor executor,
+                                        FailureCollector failureCollector, HiveActionMetrics metrics)
+    throws Exception {
+    long start = System.nanoTime();
+    config.validatePartitionPruning(statement, executor, failureCollector);
+    metrics.addValidationTime(HiveActionMetrics.millisSince(start));
+    failureCollector.getOrThrowException();
+  }
+
+  private HiveCommandExecutor newExecutor(HiveActionMetrics metrics) throws Exception {
+    HiveCommandExecutor executor = new HiveCommandExecutor(config, metrics);
+    executor.setCostGuard(config.getCostGuard());
+    return executor;
+  }
+
+  private static String getSplitStatement(SelectStatementRewriter rewriter, StatementSplit split,
+                                          @Nullable Watermark watermark) {
+    String predicate = watermark == null ? split.getPredicate() :
+      "(" + split.getPredicate() + ") AND (" + watermark.getPredicate() + ")";
+    return rewriter.withSourceFilter(predicate);
+  }
+
+  /**
+   * Returns the session settings chosen by adaptive tuning and for the configured compression, file size and
+   * sharding, followed by the export command.
+   */
+  private List<String> buildExportCommands(String directory, String select) {
+    HiveExportFormat format = config.getFormat();
+    List<String> commands = new ArrayList<>(tuningSettings);
+    commands.addAll(format.getCompressionSettings(config.getCompression()));
+    commands.addAll(config.getFileSizeSettings());
+    ExportSharding sharding = config.getSharding();
+    if (sharding != null) {
+      commands.addAll(sharding.getSettings());
+    }
+    String statement = sharding == null ? select : sharding.getStatement(select);
+    if (config.isManifest()) {
+      // logs the query counters, which include the number of records written to the directory
+      commands.add("SET hive.tez.exec.print.summary=true");
+    }
+    if (format.isColumnar()) {
+      commands.add("INSERT OVERWRITE DIRECTORY '" + directory + "' STORED AS " + format.getStoredAs() + " " +
+                     statement);
+    } else {
+      String delimiter = getDelimiter();
+      commands.add("INSERT OVERWRITE DIRECTORY '" + directory +
+                     "' row format delimited  FIELDS TERMINATED BY '" + delimiter + "' " + statement);
+    }
+    return commands;
+  }
+
+  private String getDelimiter() {
+    return Strings.isNullOrEmpty(config.getDelimiter()) ? DEFAULT_DELIMITER : config.getDelimiter();
+  }
 
-    HiveCommandExecutor executor = new HiveCommandExecutor(config.getConnectionString(), config.getUser(),
-                                                           config.getPassword());
-    executor.execute(command);
-    executor.cleanup();
+  /**
+   * Export writing to an output directory.
+   */
+  private interface DirectoryExport {
+    void run(Path directory) throws Exception;
   }
 }
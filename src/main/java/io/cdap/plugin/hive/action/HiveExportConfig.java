@@ -16,29 +16,42 @@
 
 package io.cdap.plugin.hive.action;
 
+import com.google.common.base.Strings;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Macro;
 import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.plugin.hive.action.common.HiveConfig;
-import org.apache.calcite.sql.SqlNode;
-import org.apache.calcite.sql.SqlSelect;
-import org.apache.calcite.sql.parser.SqlParseException;
-import org.apache.calcite.sql.parser.SqlParser;
+import io.cdap.plugin.hive.action.common.HiveSelectConfig;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
  * Hive Export config
  */
-public class HiveExportConfig extends HiveConfig {
+public class HiveExportConfig extends HiveSelectConfig {
   public static final String DELIMITER = "delimiter";
   public static final String PATH = "path";
   public static final String OVERWRITE = "overwrite";
+  public static final String FORMAT = "format";
+  public static final String COMPRESSION = "compression";
+  public static final String PARALLELISM = "parallelism";
+  public static final String WATERMARK_COLUMN = "watermarkColumn";
+  public static final String INITIAL_WATERMARK = "initialWatermark";
+  public static final String STAGING = "staging";
+  public static final String TARGET_FILE_SIZE = "targetFileSize";
+  public static final String SKIP_UNCHANGED = "skipUnchanged";
+  public static final String MANIFEST = "manifest";
+  public static final String SHARD_BY = "shardBy";
+  public static final String NUM_SHARDS = "numShards";
+
+  private static final long MEGABYTE = 1024L * 1024L;
 
   @Name(DELIMITER)
   @Description("Delimiter in the exported file. Values in each column is separated by this delimiter while writing to" +
@@ -58,6 +71,89 @@ public class HiveExportConfig extends HiveConfig {
   @Nullable
   private String overwrite;
 
+  @Name(FORMAT)
+  @Description("Format of the exported files, one of TEXT, ORC, PARQUET or AVRO. Defaults to TEXT.")
+  @Nullable
+  @Macro
+  private String format;
+
+  @Name(COMPRESSION)
+  @Description("Compression codec of the exported files. TEXT supports NONE, GZIP, BZIP2, SNAPPY, DEFLATE and LZ4, " +
+    "ORC supports NONE, ZLIB, SNAPPY and LZO, PARQUET supports NONE, SNAPPY and GZIP, AVRO supports NONE, SNAPPY and " +
+    "DEFLATE. If not set, the compression settings of the hive server apply.")
+  @Nullable
+  @Macro
+  private String compression;
+
+  @Name(PARALLELISM)
+  @Description("Maximum number of export statements to run concurrently. If greater than 1, or if a split column is " +
+    "provided, the export is split into one statement per partition of the source table or per range of the split " +
+    "column, each writing to its own subdirectory of the output directory. Defaults to 1.")
+  @Nullable
+  @Macro
+  private Integer parallelism;
+
+  @Name(WATERMARK_COLUMN)
+  @Description("Column or partition key of the source table used for incremental exports. If provided, each run " +
+    "only exports rows with a value greater than the highest value exported by the previous run, into its own " +
+    "subdirectory of the output directory.")
+  @Nullable
+  @Macro
+  private String watermarkColumn;
+
+  @Name(INITIAL_WATERMARK)
+  @Description("Watermark used by the first incremental run. Only rows with a greater value are exported. If not " +
+    "provided, the first run exports all rows.")
+  @Nullable
+  @Macro
+  private String initialWatermark;
+
+  @Name(STAGING)
+  @Description("If yes, the export is written to a hidden sibling directory of the output directory, which replaces " +
+    "the output directory with a rename once the export succeeded and is removed if it failed. Committed output " +
+    "directories contain a _SUCCESS file. Defaults to 'no'.")
+  @Nullable
+  @Macro
+  private String staging;
+
+  @Name(TARGET_FILE_SIZE)
+  @Description("Target size of the exported files in megabytes. If provided, hive merges small output files and " +
+    "sizes reducers for files of about this size, and small files which hive did not merge are merged after the " +
+    "export. If not provided, the number and size of the files depend on the hive job.")
+  @Nullable
+  @Macro
+  private Integer targetFileSize;
+
+  @Name(SKIP_UNCHANGED)
+  @Description("If yes, a fingerprint of the tables read by the statement, with their last DDL time, partitions and " +
+    "the number, size and modification time of their files, is stored in the output directory, and the export is " +
+    "skipped if neither the fingerprint nor the statement changed since the last export. Defaults to 'no'.")
+  @Nullable
+  @Macro
+  private String skipUnchanged;
+
+  @Name(MANIFEST)
+  @Description("If yes, a _MANIFEST file listing every exported file with its size and checksum, the number of rows " +
+    "written, the format and the statement is written into the output directory after a successful export. " +
+    "Defaults to 'yes'.")
+  @Nullable
+  @Macro
+  private String manifest;
+
+  @Name(SHARD_BY)
+  @Description("Column of the select statement whose hash distributes the rows among a fixed number of files. If " +
+    "provided, the rows are sorted by this column within each file. If not provided, the number of files depends " +
+    "on the hive job.")
+  @Nullable
+  @Macro
+  private String shardBy;
+
+  @Name(NUM_SHARDS)
+  @Description("Number of files the rows are distributed among when a shard column is provided.")
+  @Nullable
+  @Macro
+  private Integer numShards;
+
   public HiveExportConfig(String connectionString, String user, String password, String statement,
                           String delimiter, String path, String overwrite) {
     super(connectionString, user, password, statement);
@@ -67,10 +163,22 @@ public class HiveExportConfig extends HiveConfig {
   }
 
   private HiveExportConfig(Builder builder) {
-    super(builder.connectionString, builder.user, builder.password, builder.statement);
+    super(builder.connectionString, builder.user, builder.password, builder.statement, builder.splitBy,
+          builder.splitLowerBound, builder.splitUpperBound, builder.numSplits, builder.partitionFilterCheck);
     delimiter = builder.delimiter;
     path = builder.path;
     overwrite = builder.overwrite;
+    format = builder.format;
+    compression = builder.compression;
+    parallelism = builder.parallelism;
+    watermarkColumn = builder.watermarkColumn;
+    initialWatermark = builder.initialWatermark;
+    staging = builder.staging;
+    targetFileSize = builder.targetFileSize;
+    skipUnchanged = builder.skipUnchanged;
+    manifest = builder.manifest;
+    shardBy = builder.shardBy;
+    numShards = builder.numShards;
   }
 
   public static Builder builder() {
@@ -85,7 +193,23 @@ public class HiveExportConfig extends HiveConfig {
       .setStatement(copy.getStatement())
       .setDelimiter(copy.delimiter)
       .setPath(copy.path)
-      .setOverwrite(copy.overwrite);
+      .setOverwrite(copy.overwrite)
+      .setFormat(copy.format)
+      .setCompression(copy.compression)
+      .setParallelism(copy.parallelism)
+      .setWatermarkColumn(copy.watermarkColumn)
+      .setInitialWatermark(copy.initialWatermark)
+      .setStaging(copy.staging)
+      .setTargetFileSize(copy.targetFileSize)
+      .setSkipUnchanged(copy.skipUnchanged)
+      .setManifest(copy.manifest)
+      .setShardBy(copy.shardBy)
+      .setNumShards(copy.numShards)
+      .setSplitBy(copy.getSplitBy())
+      .setSplitLowerBound(copy.getSplitLowerBound())
+      .setSplitUpperBound(copy.getSplitUpperBound())
+      .setNumSplits(copy.getConfiguredNumSplits())
+      .setPartitionFilterCheck(copy.getConfiguredPartitionFilterCheck());
   }
 
   @Nullable
@@ -102,28 +226,155 @@ public class HiveExportConfig extends HiveConfig {
     return overwrite;
   }
 
+  /**
+   * Returns the export format, TEXT if no format is configured.
+   */
+  public HiveExportFormat getFormat() {
+    HiveExportFormat exportFormat = Strings.isNullOrEmpty(format) ? null : HiveExportFormat.from(format);
+    return exportFormat == null ? HiveExportFormat.TEXT : exportFormat;
+  }
+
+  @Nullable
+  public String getCompression() {
+    return compression;
+  }
+
+  public int getParallelism() {
+    return parallelism == null ? 1 : parallelism;
+  }
+
+  @Nullable
+  public String getWatermarkColumn() {
+    return Strings.isNullOrEmpty(watermarkColumn) ? null : watermarkColumn;
+  }
+
+  @Nullable
+  public String getInitialWatermark() {
+    return Strings.isNullOrEmpty(initialWatermark) ? null : initialWatermark;
+  }
+
+  /**
+   * Returns whether each run only exports the rows added since the previous run.
+   */
+  public boolean isIncremental() {
+    return getWatermarkColumn() != null;
+  }
+
+  /**
+   * Returns whether the export is written to a staging directory and committed by renaming it.
+   */
+  public boolean isStaging() {
+    return "yes".equalsIgnoreCase(staging);
+  }
+
+  /**
+   * Returns whether the export is skipped if its input did not change since the last export.
+   */
+  public boolean isSkipUnchanged() {
+    return "yes".equalsIgnoreCase(skipUnchanged);
+  }
+
+  /**
+   * Returns whether a manifest of the exported files is written after a successful export.
+   */
+  public boolean isManifest() {
+    return !"no".equalsIgnoreCase(manifest);
+  }
+
+  /**
+   * Returns the sharding of the exported rows, or null if the export is not sharded.
+   */
+  @Nullable
+  public ExportSharding getSharding() {
+    return Strings.isNullOrEmpty(shardBy) || numShards == null ? null : new ExportSharding(shardBy, numShards);
+  }
+
+  /**
+   * Returns the target size of the exported files in bytes, or null if file sizes are not controlled.
+   */
+  @Nullable
+  public Long getTargetFileSize() {
+    return targetFileSize == null ? null : targetFileSize * MEGABYTE;
+  }
+
+  /**
+   * Returns the SET commands which make hive merge small output files into files of the target size, and split
+   * the work of large exports among enough mappers and reducers to not write single giant files. No commands are
+   * returned if no target size is configured.
+   */
+  public List<String> getFileSizeSettings() {
+    List<String> settings = new ArrayList<>();
+    Long targetSize = getTargetFileSize();
+    if (targetSize == null) {
+      return settings;
+    }
+    settings.add("SET hive.merge.mapfiles=true");
+    settings.add("SET hive.merge.mapredfiles=true");
+    settings.add("SET hive.merge.tezfiles=true");
+    settings.add("SET hive.merge.size.per.task=" + targetSize);
+    // merge if the average output file is smaller than half of the target size
+    settings.add("SET hive.merge.smallfiles.avgsize=" + targetSize / 2);
+    settings.add("SET hive.exec.reducers.bytes.per.reducer=" + targetSize);
+    settings.add("SET mapreduce.input.fileinputformat.split.maxsize=" + targetSize);
+    return settings;
+  }
+
+  @Override
+  protected int getDefaultNumSplits() {
+    return getParallelism();
+  }
+
+  /**
+   * Returns whether the export is split into multiple statements.
+   */
+  public boolean isSplitExport() {
+    return getParallelism() > 1 || getSplitBy() != null;
+  }
+
+  @Override
+  protected boolean requiresSourceTable() {
+    return (!containsMacro(PARALLELISM) && isSplitExport()) || (!containsMacro(WATERMARK_COLUMN) && isIncremental());
+  }
+
+  @Override
+  protected String getPluginDisplayName() {
+    return "Hive Export";
+  }
+
   @Override
   public void validate(FailureCollector failureCollector) {
     super.validate(failureCollector);
 
-    if (!containsMacro(STATEMENT)) {
-      // validate hive command. For export we only accept Select statements
-      SqlParser parser = SqlParser.create(getStatement());
-      try {
-        SqlNode sqlNode = parser.parseQuery();
-        if (!(sqlNode instanceof SqlSelect)) {
-          failureCollector.addFailure("Hive Export only uses Select statements.",
-                                      "Provide valid hive select statement.")
-            .withConfigProperty(STATEMENT);
-        }
-      } catch (SqlParseException e) {
-        failureCollector.addFailure("Error while parsing select statement.", null)
-          .withStacktrace(e.getStackTrace())
-          .withConfigProperty(STATEMENT);
+    validateFormat(failureCollector);
+
+    if (!containsMacro(PARALLELISM) && parallelism != null && parallelism < 1) {
+      failureCollector.addFailure("Parallelism must be at least 1.", null)
+        .withConfigProperty(PARALLELISM);
+    }
+
+    if (!containsMacro(TARGET_FILE_SIZE) && targetFileSize != null && targetFileSize < 1) {
+      failureCollector.addFailure("Target file size must be at least 1 megabyte.", null)
+        .withConfigProperty(TARGET_FILE_SIZE);
+    }
+
+    validateSharding(failureCollector);
+
+    if (!containsMacro(SKIP_UNCHANGED) && isSkipUnchanged()) {
+      if (!containsMacro(WATERMARK_COLUMN) && isIncremental()) {
+        failureCollector.addFailure("Skipping unchanged exports can not be combined with incremental exports.",
+                                    "Remove the watermark column, incremental exports only export new rows.")
+          .withConfigProperty(SKIP_UNCHANGED)
+          .withConfigProperty(WATERMARK_COLUMN);
+      } else if (!containsMacro(OVERWRITE) && "no".equalsIgnoreCase(overwrite)) {
+        failureCollector.addFailure("Skipping unchanged exports requires overwriting the output directory.",
+                                    "Set overwrite to 'yes'.")
+          .withConfigProperty(SKIP_UNCHANGED)
+          .withConfigProperty(OVERWRITE);
       }
     }
 
-    if (!containsMacro(OVERWRITE) && !containsMacro(PATH)) {
+    // incremental runs add subdirectories to the existing output directory
+    if (!containsMacro(OVERWRITE) && !containsMacro(PATH) && !containsMacro(WATERMARK_COLUMN) && !isIncremental()) {
       // validate if the directory already exists
       if (overwrite.equalsIgnoreCase("no")) {
         Configuration configuration = new Configuration();
@@ -144,10 +395,82 @@ public class HiveExportConfig extends HiveConfig {
     }
   }
 
+  private void validateSharding(FailureCollector failureCollector) {
+    if (containsMacro(SHARD_BY) || containsMacro(NUM_SHARDS)) {
+      return;
+    }
+    if (Strings.isNullOrEmpty(shardBy)) {
+      if (numShards != null) {
+        failureCollector.addFailure("Number of shards is provided without a shard column.",
+                                    "Provide the column whose hash distributes the rows.")
+          .withConfigProperty(SHARD_BY);
+      }
+      return;
+    }
+    if (numShards == null || numShards < 1) {
+      failureCollector.addFailure("Number of shards must be at least 1.", null)
+        .withConfigProperty(NUM_SHARDS);
+    }
+    if (!containsMacro(TARGET_FILE_SIZE) && targetFileSize != null) {
+      failureCollector.addFailure("Sharded exports can not be combined with a target file size.",
+                                  "Remove the target file size, the number of files is the number of shards.")
+        .withConfigProperty(SHARD_BY)
+        .withConfigProperty(TARGET_FILE_SIZE);
+    }
+    if (!containsMacro(PARALLELISM) && !containsMacro(SPLIT_BY) && isSplitExport()) {
+      failureCollector.addFailure("Sharded exports can not be split into parallel statements.",
+                                  "Set parallelism to 1 and remove the split column.")
+        .withConfigProperty(SHARD_BY)
+        .withConfigProperty(PARALLELISM);
+    }
+  }
+
+  private void validateFormat(FailureCollector failureCollector) {
+    if (containsMacro(FORMAT)) {
+      return;
+    }
+    if (!Strings.isNullOrEmpty(format) && HiveExportFormat.from(format) == null) {
+      failureCollector.addFailure(String.format("Invalid format '%s'.", format),
+                                  "Use one of TEXT, ORC, PARQUET or AVRO.")
+        .withConfigProperty(FORMAT);
+      return;
+    }
+    HiveExportFormat exportFormat = getFormat();
+    if (!containsMacro(DELIMITER) && !Strings.isNullOrEmpty(delimiter) && exportFormat.isColumnar()) {
+      failureCollector.addFailure(String.format("Delimiter can not be used with format %s.", exportFormat),
+                                  "Remove the delimiter or use format TEXT.")
+        .withConfigProperty(DELIMITER)
+        .withConfigProperty(FORMAT);
+    }
+    if (!containsMacro(COMPRESSION) && !Strings.isNullOrEmpty(compression)
+      && !exportFormat.supportsCompression(compression)) {
+      failureCollector.addFailure(
+        String.format("Compression '%s' is not supported for format %s.", compression, exportFormat),
+        String.format("Use one of %s.", String.join(", ", exportFormat.getCompressionCodecs())))
+        .withConfigProperty(COMPRESSION);
+    }
+  }
+
   public static class Builder extends HiveConfig.Builder<Builder> {
     private String delimiter;
     private String path;
     private String overwrite;
+    private String format;
+    private String compression;
+    private Integer parallelism;
+    private String watermarkColumn;
+    private String initialWatermark;
+    private String staging;
+    private Integer targetFileSize;
+    private String skipUnchanged;
+    private String manifest;
+    private String shardBy;
+    private Integer numShards;
+    private String splitBy;
+    private Long splitLowerBound;
+    private Long splitUpperBound;
+    private Integer numSplits;
+    private String partitionFilterCheck;
     private String connectionString;
     private String user;
     private String password;
@@ -171,6 +494,86 @@ public class HiveExportConfig extends HiveConfig {
       return this;
     }
 
+    public Builder setFormat(String format) {
+      this.format = format;
+      return this;
+    }
+
+    public Builder setCompression(String compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    public Builder setParallelism(Integer parallelism) {
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    public Builder setWatermarkColumn(String watermarkColumn) {
+      this.watermarkColumn = watermarkColumn;
+      return this;
+    }
+
+    public Builder setInitialWatermark(String initialWatermark) {
+      this.initialWatermark = initialWatermark;
+      return this;
+    }
+
+    public Builder setStaging(String staging) {
+      this.staging = staging;
+      return this;
+    }
+
+    public Builder setTargetFileSize(Integer targetFileSize) {
+      this.targetFileSize = targetFileSize;
+      return this;
+    }
+
+    public Builder setSkipUnchanged(String skipUnchanged) {
+      this.skipUnchanged = skipUnchanged;
+      return this;
+    }
+
+    public Builder setManifest(String manifest) {
+      this.manifest = manifest;
+      return this;
+    }
+
+    public Builder setShardBy(String shardBy) {
+      this.shardBy = shardBy;
+      return this;
+    }
+
+    public Builder setNumShards(Integer numShards) {
+      this.numShards = numShards;
+      return this;
+    }
+
+    public Builder setSplitBy(String splitBy) {
+      this.splitBy = splitBy;
+      return this;
+    }
+
+    public Builder setSplitLowerBound(Long splitLowerBound) {
+      this.splitLowerBound = splitLowerBound;
+      return this;
+    }
+
+    public Builder setSplitUpperBound(Long splitUpperBound) {
+      this.splitUpperBound = splitUpperBound;
+      return this;
+    }
+
+    public Builder setNumSplits(Integer numSplits) {
+      this.numSplits = numSplits;
+      return this;
+    }
+
+    public Builder setPartitionFilterCheck(String partitionFilterCheck) {
+      this.partitionFilterCheck = partitionFilterCheck;
+      return this;
+    }
+
     public Builder setConnectionString(String connectionString) {
       this.connectionString = connectionString;
       return this;
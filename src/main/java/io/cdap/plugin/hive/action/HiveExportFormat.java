@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * File formats supported by Hive Export, with the compression codecs supported by each format.
+ */
+public enum HiveExportFormat {
+  TEXT("TEXTFILE", ImmutableMap.<String, String>builder()
+    .put("NONE", "")
+    .put("GZIP", "org.apache.hadoop.io.compress.GzipCodec")
+    .put("BZIP2", "org.apache.hadoop.io.compress.BZip2Codec")
+    .put("SNAPPY", "org.apache.hadoop.io.compress.SnappyCodec")
+    .put("DEFLATE", "org.apache.hadoop.io.compress.DefaultCodec")
+    .put("LZ4", "org.apache.hadoop.io.compress.Lz4Codec")
+    .build()),
+  ORC("ORC", ImmutableMap.of("NONE", "NONE", "ZLIB", "ZLIB", "SNAPPY", "SNAPPY", "LZO", "LZO")),
+  PARQUET("PARQUET", ImmutableMap.of("NONE", "UNCOMPRESSED", "SNAPPY", "SNAPPY", "GZIP", "GZIP")),
+  AVRO("AVRO", ImmutableMap.of("NONE", "null", "SNAPPY", "snappy", "DEFLATE", "deflate"));
+
+  public static final String NO_COMPRESSION = "NONE";
+
+  private final String storedAs;
+  // maps compression names to the codec value of the format specific setting
+  private final Map<String, String> codecs;
+
+  HiveExportFormat(String storedAs, Map<String, String> codecs) {
+    this.storedAs = storedAs;
+    this.codecs = codecs;
+  }
+
+  public String getStoredAs() {
+    return storedAs;
+  }
+
+  public boolean isColumnar() {
+    return this != TEXT;
+  }
+
+  public Set<String> getCompressionCodecs() {
+    return codecs.keySet();
+  }
+
+  public boolean supportsCompression(String compression) {
+    return codecs.containsKey(compression.toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Returns the SET commands which configure the compression of the exported files for the session. If no
+   * compression is given, no commands are returned and the defaults of the hive server apply.
+   */
+  public List<String> getCompressionSettings(@Nullable String compression) {
+    List<String> settings = new ArrayList<>();
+    if (compression == null || compression.isEmpty()) {
+      return settings;
+    }
+    String name = compression.toUpperCase(Locale.ROOT);
+    String codec = codecs.get(name);
+    if (codec == null) {
+      throw new IllegalArgumentException(
+        String.format("Compression '%s' is not supported for format %s.", compression, name()));
+    }
+    boolean compressed = !NO_COMPRESSION.equals(name);
+    switch (this) {
+      case TEXT:
+        settings.add("SET hive.exec.compress.output=" + compressed);
+        if (compressed) {
+          settings.add("SET mapreduce.output.fileoutputformat.compress.codec=" + codec);
+        }
+        break;
+      case ORC:
+        settings.add("SET orc.compress=" + codec);
+        break;
+      case PARQUET:
+        settings.add("SET parquet.compression=" + codec);
+        break;
+      case AVRO:
+        settings.add("SET hive.exec.compress.output=" + compressed);
+        settings.add("SET avro.output.codec=" + codec);
+        break;
+    }
+    return settings;
+  }
+
+  /**
+   * Returns the format with the given name, ignoring case, or null if there is no such format.
+   */
+  @Nullable
+  public static HiveExportFormat from(String name) {
+    for (HiveExportFormat format : values()) {
+      if (format.name().equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    return null;
+  }
+}
@@ -16,6 +16,7 @@
 
 package io.cdap.plugin.hive.action;
 
+import com.google.common.collect.Lists;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.annotation.Plugin;
@@ -23,8 +24,33 @@ import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
 import io.cdap.cdap.etl.api.action.Action;
 import io.cdap.cdap.etl.api.action.ActionContext;
+import io.cdap.plugin.hive.action.common.AdaptiveTuning;
+import io.cdap.plugin.hive.action.common.HiveActionMetrics;
 import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
-import io.cdap.plugin.hive.action.common.HiveConfig;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import io.cdap.plugin.hive.action.common.ParallelTaskRunner;
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Imports data from hdfs directory/file into a hive table.
@@ -33,9 +59,12 @@ import io.cdap.plugin.hive.action.common.HiveConfig;
 @Name("HiveImport")
 @Description("Hive import plugin")
 public class HiveImport extends Action {
-  private final HiveConfig config;
+  private static final Logger LOG = LoggerFactory.getLogger(HiveImport.class);
+  private static final Pattern LOAD_DATA = Pattern.compile("^\\s*LOAD\\s+DATA\\s+INPATH\\s+'([^']+)'",
+                                                           Pattern.CASE_INSENSITIVE);
+  private final HiveImportConfig config;
 
-  public HiveImport(HiveConfig config) {
+  public HiveImport(HiveImportConfig config) {
     this.config = config;
   }
 
@@ -48,14 +77,313 @@ public class HiveImport extends Action {
 
   @Override
   public void run(ActionContext context) throws Exception {
-    FailureCollector failureCollector = context.getFailureCollector();
+    HiveActionMetrics metrics = new HiveActionMetrics();
+    try {
+      runImport(context.getFailureCollector(), metrics);
+    } finally {
+      metrics.record(context.getMetrics());
+      LOG.info("Hive import summary: {}", metrics.summary());
+    }
+  }
+
+  private void runImport(FailureCollector failureCollector, HiveActionMetrics metrics) throws Exception {
+    long validationStart = System.nanoTime();
     config.validate(failureCollector);
     config.validateImportStatement(failureCollector);
+    metrics.addValidationTime(HiveActionMetrics.millisSince(validationStart));
     failureCollector.getOrThrowException();
 
-    HiveCommandExecutor executor = new HiveCommandExecutor(config.getConnectionString(), config.getUser(),
-                                                           config.getPassword());
-    executor.execute(config.getStatement());
-    executor.cleanup();
+    if (config.isDirectoryMode()) {
+      runDirectoryImport(failureCollector, metrics);
+      return;
+    }
+    if (config.isConvertMode()) {
+      runConvertImport(metrics);
+      return;
+    }
+
+    List<String> statements = config.getStatements();
+    // files are moved by LOAD DATA, so their size has to be measured before the statements run
+    long bytes = getLoadedBytes(statements);
+    AdaptiveTuning tuning = config.getAdaptiveTuning();
+    List<String> settings = tuning == null ? Collections.emptyList() : tuning.getSettings(bytes, "loaded files");
+    HiveCommandExecutor executor = new HiveCommandExecutor(config, metrics);
+    executor.setCostGuard(config.getCostGuard());
+    try {
+      if (config.isScriptMode() || !settings.isEmpty()) {
+        List<String> commands = new ArrayList<>(settings);
+        commands.addAll(statements);
+        executor.executeScript(commands, config.isStopOnError());
+      } else {
+        executor.execute(config.getStatement());
+      }
+    } finally {
+      executor.cleanup();
+    }
+    if (bytes >= 0) {
+      metrics.addBytes(bytes);
+    }
+  }
+
+  /**
+   * Converts the text files of the source directory into the table through an external staging table, which is
+   * dropped even if the conversion fails.
+   */
+  private void runConvertImport(HiveActionMetrics metrics) throws Exception {
+    Path source = new Path(config.getSourceDirectory());
+    FileSystem sourceFs = source.getFileSystem(new Configuration());
+    long bytes = sourceFs.getContentSummary(source).getLength();
+    AdaptiveTuning tuning = config.getAdaptiveTuning();
+    List<String> settings = tuning == null ? Collections.emptyList() : tuning.getSettings(bytes, "text files");
+
+    HiveCommandExecutor executor = new HiveCommandExecutor(config, metrics);
+    executor.setCostGuard(config.getCostGuard());
+    TextConversion conversion = null;
+    try {
+      List<List<String>> describeRows = HiveMetadata.describe(executor, config.getTable());
+      conversion = new TextConversion(config.getTable(), TextConversion.getStagingTableName(config.getTable()),
+                                      HiveMetadata.parseColumnTypes(describeRows),
+                                      HiveMetadata.parsePartitionColumns(describeRows));
+      List<String> commands = new ArrayList<>();
+      commands.add(conversion.getCreateStagingTableStatement(sourceFs.makeQualified(source).toString(),
+                                                             config.getDelimiter()));
+      commands.addAll(conversion.getSettings());
+      // tuning rules override the default settings of the conversion
+      commands.addAll(settings);
+      commands.add(conversion.getInsertStatement(config.isOverwrite()));
+      LOG.info("Converting text files of {} into table {} through staging table {}.", source, config.getTable(),
+               conversion.getStagingTable());
+      executor.executeScript(commands, true);
+    } finally {
+      executor.cleanup();
+      if (conversion != null) {
+        dropStagingTable(conversion, metrics);
+      }
+    }
+    metrics.addBytes(bytes);
+  }
+
+  /**
+   * Drops the staging table over a new connection, since the connection of the conversion is discarded if its
+   * statement was cancelled. The interrupt status of the thread is cleared while the table is dropped, so that a
+   * cancelled run does not leave the staging table behind.
+   */
+  private void dropStagingTable(TextConversion conversion, HiveActionMetrics metrics) {
+    boolean interrupted = Thread.interrupted();
+    try {
+      HiveCommandExecutor executor = new HiveCommandExecutor(config, metrics);
+      try {
+        executor.execute(conversion.getDropStagingTableStatement());
+      } finally {
+        executor.cleanup();
+      }
+    } catch (Exception e) {
+      LOG.warn("Unable to drop staging table {}, it has to be dropped manually.", conversion.getStagingTable(), e);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Imports every partition directory found under the source directory into the matching partition of the table,
+   * either with LOAD DATA statements or, in register mode, by moving the files and adding the partitions to the
+   * metastore. The outcome of each partition is logged once all partitions have been processed.
+   */
+  private void runDirectoryImport(FailureCollector failureCollector, HiveActionMetrics metrics) throws Exception {
+    PartitionPathPattern pattern = config.getPathPattern();
+    Path root = new Path(config.getSourceDirectory());
+    FileSystem sourceFs = root.getFileSystem(new Configuration());
+    List<PartitionPathPattern.PartitionDirectory> directories = pattern.scan(sourceFs, root);
+    LOG.info("Found {} partition directories under {}.", directories.size(), root);
+
+    Map<String, String> outcomes = new ConcurrentHashMap<>();
+    HiveCommandExecutor executor = new HiveCommandExecutor(config, metrics);
+    try {
+      List<List<String>> describeRows = HiveMetadata.describe(executor, config.getTable());
+      List<String> partitionColumns = HiveMetadata.parsePartitionColumns(describeRows);
+      if (!toLowerCase(partitionColumns).equals(toLowerCase(pattern.getColumns()))) {
+        failureCollector.addFailure(
+          String.format("Path pattern columns %s do not match the partition columns %s of table '%s'.",
+                        pattern.getColumns(), partitionColumns, config.getTable()),
+          "Name every partition column of the table in a placeholder of the path pattern.")
+          .withConfigProperty(HiveImportConfig.PATH_PATTERN);
+        failureCollector.getOrThrowException();
+      }
+
+      if (config.isRegisterMode()) {
+        registerPartitions(executor, sourceFs, directories, describeRows, metrics, outcomes);
+      } else {
+        executor.cleanup();
+        loadPartitions(directories, metrics, outcomes);
+      }
+    } finally {
+      executor.cleanup();
+      StringBuilder report = new StringBuilder();
+      for (PartitionPathPattern.PartitionDirectory directory : directories) {
+        report.append(String.format("%n  %s%s: %s", config.getTable(), directory.getPartitionClause(),
+                                    outcomes.getOrDefault(directory.getName(), "not started")));
+      }
+      LOG.info("Partition import report for {} directories under {}:{}", directories.size(), root, report);
+    }
+  }
+
+  /**
+   * Loads the partition directories with LOAD DATA statements, running at most parallelism statements at the same
+   * time.
+   */
+  private void loadPartitions(List<PartitionPathPattern.PartitionDirectory> directories, HiveActionMetrics metrics,
+                              Map<String, String> outcomes) throws Exception {
+    List<String> statements = new ArrayList<>();
+    for (PartitionPathPattern.PartitionDirectory directory : directories) {
+      statements.add(getLoadStatement(directory));
+    }
+    long bytes = getLoadedBytes(statements);
+
+    ParallelTaskRunner.run("partitions", directories, config.getParallelism(), directory -> {
+      long start = System.nanoTime();
+      HiveCommandExecutor partitionExecutor = new HiveCommandExecutor(config, metrics);
+      try {
+        partitionExecutor.execute(getLoadStatement(directory));
+        outcomes.put(directory.getName(), String.format("loaded in %d ms", HiveActionMetrics.millisSince(start)));
+      } catch (Exception e) {
+        outcomes.put(directory.getName(), String.format("failed after %d ms: %s",
+                                                        HiveActionMetrics.millisSince(start), e.getMessage()));
+        throw e;
+      } finally {
+        partitionExecutor.cleanup();
+      }
+    });
+    if (bytes >= 0) {
+      metrics.addBytes(bytes);
+    }
+  }
+
+  /**
+   * Moves the files of the partition directories into the partition locations with file system renames, at most
+   * parallelism directories at the same time, and adds the partitions with batched ALTER TABLE statements. Files
+   * are checked against the storage format and the columns of the table before they are moved. Partitions which
+   * were moved are registered even if other partitions failed.
+   */
+  private void registerPartitions(HiveCommandExecutor executor, FileSystem sourceFs,
+                                  List<PartitionPathPattern.PartitionDirectory> directories,
+                                  List<List<String>> describeRows, HiveActionMetrics metrics,
+                                  Map<String, String> outcomes) throws Exception {
+    String table = config.getTable();
+    List<List<String>> details = HiveMetadata.describeFormatted(executor, table);
+    String inputFormat = HiveMetadata.parseDetail(details, "InputFormat:");
+    String location = HiveMetadata.parseDetail(details, "Location:");
+    HiveExportFormat format = PartitionRegistrar.getFormat(inputFormat);
+    if (format == null || location == null) {
+      throw new IllegalArgumentException(
+        String.format("Files can not be registered in table '%s' with input format '%s', use directory mode.",
+                      table, inputFormat));
+    }
+    Path tableLocation = new Path(location);
+    PartitionRegistrar registrar = new PartitionRegistrar(tableLocation.getFileSystem(new Configuration()), format,
+                                                          HiveMetadata.parseColumns(describeRows));
+
+    // existing partitions keep their location, which is not necessarily below the table location
+    List<String> partitionColumns = HiveMetadata.parsePartitionColumns(describeRows);
+    Set<String> existing = new HashSet<>(HiveMetadata.getPartitions(executor, table));
+    Map<String, Path> locations = new HashMap<>();
+    for (PartitionPathPattern.PartitionDirectory directory : directories) {
+      String name = PartitionRegistrar.getPartitionName(partitionColumns, directory.getValues());
+      String partitionLocation = existing.contains(name) ? HiveMetadata.parseDetail(
+        HiveMetadata.describeFormatted(executor, table + directory.getPartitionClause()), "Location:") : null;
+      locations.put(directory.getName(), partitionLocation == null ? new Path(tableLocation, name) :
+        new Path(partitionLocation));
+    }
+
+    AtomicLong bytes = new AtomicLong();
+    Exception failure = null;
+    try {
+      ParallelTaskRunner.run("partition directories", directories, config.getParallelism(), directory -> {
+        long start = System.nanoTime();
+        List<String> problems = registrar.check(sourceFs, directory.getPath());
+        if (!problems.isEmpty()) {
+          outcomes.put(directory.getName(), "incompatible files: " + String.join(" ", problems));
+          throw new IllegalArgumentException(String.join(" ", problems));
+        }
+        try {
+          bytes.addAndGet(registrar.move(directory.getPath(), locations.get(directory.getName()),
+                                         config.isOverwrite()));
+        } catch (IOException e) {
+          outcomes.put(directory.getName(), String.format("failed after %d ms: %s",
+                                                          HiveActionMetrics.millisSince(start), e.getMessage()));
+          throw e;
+        }
+        outcomes.put(directory.getName(), String.format("moved to %s in %d ms", locations.get(directory.getName()),
+                                                        HiveActionMetrics.millisSince(start)));
+      });
+    } catch (Exception e) {
+      failure = e;
+    }
+    metrics.addBytes(bytes.get());
+
+    List<PartitionPathPattern.PartitionDirectory> moved = new ArrayList<>();
+    for (PartitionPathPattern.PartitionDirectory directory : directories) {
+      if (outcomes.getOrDefault(directory.getName(), "").startsWith("moved")) {
+        moved.add(directory);
+      }
+    }
+    for (List<PartitionPathPattern.PartitionDirectory> batch : Lists.partition(moved,
+                                                                               config.getPartitionsPerStatement())) {
+      Map<String, Path> partitions = new LinkedHashMap<>();
+      batch.forEach(directory -> partitions.put(directory.getPartitionClause(), locations.get(directory.getName())));
+      String outcome;
+      try {
+        long start = System.nanoTime();
+        executor.execute(PartitionRegistrar.getAddPartitionStatement(table, partitions));
+        outcome = String.format(", registered in %d ms", HiveActionMetrics.millisSince(start));
+      } catch (Exception e) {
+        // the files stay in the partition location, MSCK REPAIR TABLE registers the partition
+        outcome = ", registration failed: " + e.getMessage();
+        failure = failure == null ? e : failure;
+      }
+      for (PartitionPathPattern.PartitionDirectory directory : batch) {
+        outcomes.put(directory.getName(), outcomes.get(directory.getName()) + outcome);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private String getLoadStatement(PartitionPathPattern.PartitionDirectory directory) {
+    return String.format("LOAD DATA INPATH %s%s INTO TABLE %s%s",
+                         StatementSplit.quote(directory.getPath().toString()),
+                         config.isOverwrite() ? " OVERWRITE" : "", config.getTable(),
+                         directory.getPartitionClause());
+  }
+
+  private static Set<String> toLowerCase(List<String> columns) {
+    return columns.stream().map(column -> column.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+  }
+
+  /**
+   * Returns the size of the files loaded by LOAD DATA INPATH statements, -1 if there are no such statements or
+   * their size can not be determined. Files loaded from the local file system of HiveServer2 are not included.
+   */
+  private static long getLoadedBytes(List<String> statements) {
+    long bytes = -1;
+    Configuration conf = new Configuration();
+    for (String statement : statements) {
+      Matcher matcher = LOAD_DATA.matcher(statement);
+      if (!matcher.find()) {
+        continue;
+      }
+      try {
+        Path path = new Path(matcher.group(1));
+        FileSystem fs = path.getFileSystem(conf);
+        if (fs.exists(path)) {
+          bytes = Math.max(bytes, 0) + fs.getContentSummary(path).getLength();
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        LOG.debug("Unable to determine the size of {}", matcher.group(1), e);
+      }
+    }
+    return bytes;
   }
 }
@@ -0,0 +1,430 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.plugin.hive.action.common.HiveConfig;
+import io.cdap.plugin.hive.action.common.HiveScriptParser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Hive Import config
+ */
+public class HiveImportConfig extends HiveConfig {
+  public static final String MODE = "mode";
+  public static final String STOP_ON_ERROR = "stopOnError";
+  public static final String SOURCE_DIRECTORY = "sourceDirectory";
+  public static final String TABLE = "table";
+  public static final String PATH_PATTERN = "pathPattern";
+  public static final String OVERWRITE = "overwrite";
+  public static final String PARALLELISM = "parallelism";
+  public static final String PARTITIONS_PER_STATEMENT = "partitionsPerStatement";
+  public static final String DELIMITER = "delimiter";
+
+  public static final String MODE_STATEMENT = "statement";
+  public static final String MODE_SCRIPT = "script";
+  public static final String MODE_DIRECTORY = "directory";
+  public static final String MODE_REGISTER = "register";
+  public static final String MODE_CONVERT = "convert";
+
+  private static final int DEFAULT_PARALLELISM = 1;
+  private static final int DEFAULT_PARTITIONS_PER_STATEMENT = 100;
+  private static final String DEFAULT_DELIMITER = ",";
+
+  @Name(MODE)
+  @Description("Import mode. 'statement' executes a single load statement, 'script' executes a semicolon separated " +
+    "list of statements in a single hive session, 'directory' loads every partition directory found under the " +
+    "source directory into the matching partition of the table, 'register' moves the files of every partition " +
+    "directory into the table with file system renames and adds the partitions to the metastore, without " +
+    "rewriting the files, 'convert' reads the delimited text files of the source directory through an external " +
+    "staging table and inserts them into the table, converting them to its storage format. Defaults to 'statement'.")
+  @Nullable
+  @Macro
+  private String mode;
+
+  @Name(STOP_ON_ERROR)
+  @Description("In script mode, should execution stop at the first failed statement? Defaults to 'yes'.")
+  @Nullable
+  @Macro
+  private String stopOnError;
+
+  @Name(SOURCE_DIRECTORY)
+  @Description("In directory and register modes, HDFS directory containing one subdirectory per partition to load. " +
+    "In convert mode, HDFS directory containing the delimited text files to convert.")
+  @Nullable
+  @Macro
+  private String sourceDirectory;
+
+  @Name(TABLE)
+  @Description("In directory and register modes, partitioned hive table the directories are loaded into. In " +
+    "convert mode, table the text files are inserted into.")
+  @Nullable
+  @Macro
+  private String table;
+
+  // not macro enabled, the ${column} placeholders would be evaluated as macros
+  @Name(PATH_PATTERN)
+  @Description("In directory and register modes, pattern of the partition directories relative to the source " +
+    "directory, with one segment per directory level, such as 'dt=${dt}/region=${region}'. Each ${column} " +
+    "placeholder matches the value of a partition column of the table. Directories which do not match the pattern " +
+    "are skipped.")
+  @Nullable
+  private String pathPattern;
+
+  @Name(OVERWRITE)
+  @Description("In directory, register and convert modes, should the loaded files replace the existing data of " +
+    "each partition, or of the table if it is not partitioned? Defaults to 'no'.")
+  @Nullable
+  @Macro
+  private String overwrite;
+
+  @Name(PARALLELISM)
+  @Description("In directory and register modes, maximum number of partitions loaded at the same time. " +
+    "Defaults to 1.")
+  @Nullable
+  @Macro
+  private Integer parallelism;
+
+  @Name(PARTITIONS_PER_STATEMENT)
+  @Description("In register mode, maximum number of partitions added by a single ALTER TABLE statement. " +
+    "Defaults to 100.")
+  @Nullable
+  @Macro
+  private Integer partitionsPerStatement;
+
+  @Name(DELIMITER)
+  @Description("In convert mode, delimiter separating the fields of the text files. Defaults to ','.")
+  @Nullable
+  @Macro
+  private String delimiter;
+
+  public HiveImportConfig(String connectionString, String user, String password, String statement,
+                          String mode, String stopOnError) {
+    super(connectionString, user, password, statement);
+    this.mode = mode;
+    this.stopOnError = stopOnError;
+  }
+
+  private HiveImportConfig(Builder builder) {
+    super(builder.connectionString, builder.user, builder.password, builder.statement);
+    mode = builder.mode;
+    stopOnError = builder.stopOnError;
+    sourceDirectory = builder.sourceDirectory;
+    table = builder.table;
+    pathPattern = builder.pathPattern;
+    overwrite = builder.overwrite;
+    parallelism = builder.parallelism;
+    partitionsPerStatement = builder.partitionsPerStatement;
+    delimiter = builder.delimiter;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static Builder builder(HiveImportConfig copy) {
+    return builder()
+      .setConnectionString(copy.getConnectionString())
+      .setUser(copy.getUser())
+      .setPassword(copy.getPassword())
+      .setStatement(copy.getStatement())
+      .setMode(copy.mode)
+      .setStopOnError(copy.stopOnError)
+      .setSourceDirectory(copy.sourceDirectory)
+      .setTable(copy.table)
+      .setPathPattern(copy.pathPattern)
+      .setOverwrite(copy.overwrite)
+      .setParallelism(copy.parallelism)
+      .setPartitionsPerStatement(copy.partitionsPerStatement)
+      .setDelimiter(copy.delimiter);
+  }
+
+  public String getMode() {
+    return mode == null || mode.isEmpty() ? MODE_STATEMENT : mode;
+  }
+
+  public boolean isScriptMode() {
+    return MODE_SCRIPT.equalsIgnoreCase(getMode());
+  }
+
+  public boolean isDirectoryMode() {
+    return MODE_DIRECTORY.equalsIgnoreCase(getMode());
+  }
+
+  public boolean isRegisterMode() {
+    return MODE_REGISTER.equalsIgnoreCase(getMode());
+  }
+
+  public boolean isConvertMode() {
+    return MODE_CONVERT.equalsIgnoreCase(getMode());
+  }
+
+  /**
+   * Returns whether the partitions to import are found in the source directory, instead of given by statements.
+   */
+  public boolean isPartitionDirectoryImport() {
+    return isDirectoryMode() || isRegisterMode();
+  }
+
+  public boolean isStopOnError() {
+    return stopOnError == null || !stopOnError.equalsIgnoreCase("no");
+  }
+
+  /**
+   * Returns the statements to execute, a single statement unless script mode is used.
+   */
+  public List<String> getStatements() {
+    return isScriptMode() ? HiveScriptParser.parse(getStatement()) : Collections.singletonList(getStatement());
+  }
+
+  @Nullable
+  public String getSourceDirectory() {
+    return sourceDirectory;
+  }
+
+  @Nullable
+  public String getTable() {
+    return table;
+  }
+
+  /**
+   * Returns the parsed path pattern of the partition directories.
+   *
+   * @throws IllegalArgumentException if the pattern is invalid
+   */
+  public PartitionPathPattern getPathPattern() {
+    return PartitionPathPattern.parse(pathPattern);
+  }
+
+  public boolean isOverwrite() {
+    return overwrite != null && overwrite.equalsIgnoreCase("yes");
+  }
+
+  public int getParallelism() {
+    return parallelism == null ? DEFAULT_PARALLELISM : parallelism;
+  }
+
+  public int getPartitionsPerStatement() {
+    return partitionsPerStatement == null ? DEFAULT_PARTITIONS_PER_STATEMENT : partitionsPerStatement;
+  }
+
+  public String getDelimiter() {
+    return delimiter == null || delimiter.isEmpty() ? DEFAULT_DELIMITER : delimiter;
+  }
+
+  @Override
+  public void validate(FailureCollector failureCollector) {
+    super.validate(failureCollector);
+
+    if (!containsMacro(MODE) && !Arrays.asList(MODE_STATEMENT, MODE_SCRIPT, MODE_DIRECTORY, MODE_REGISTER,
+                                               MODE_CONVERT).contains(getMode().toLowerCase())) {
+      failureCollector.addFailure(String.format("Invalid import mode '%s'.", mode),
+                                  String.format("Use one of '%s', '%s', '%s', '%s' or '%s'.", MODE_STATEMENT,
+                                                MODE_SCRIPT, MODE_DIRECTORY, MODE_REGISTER, MODE_CONVERT))
+        .withConfigProperty(MODE);
+    }
+    if (!containsMacro(MODE) && isPartitionDirectoryImport()) {
+      validateSourceAndTable(failureCollector);
+      validateDirectoryImport(failureCollector);
+    }
+    if (!containsMacro(MODE) && isConvertMode()) {
+      validateSourceAndTable(failureCollector);
+      if (!containsMacro(DELIMITER) && getDelimiter().contains("'")) {
+        failureCollector.addFailure("Delimiter must not contain a single quote.", null)
+          .withConfigProperty(DELIMITER);
+      }
+    }
+  }
+
+  private void validateSourceAndTable(FailureCollector failureCollector) {
+    if (!containsMacro(SOURCE_DIRECTORY) && (sourceDirectory == null || sourceDirectory.isEmpty())) {
+      failureCollector.addFailure(String.format("Source directory must be specified in %s mode.", getMode()), null)
+        .withConfigProperty(SOURCE_DIRECTORY);
+    }
+    if (!containsMacro(TABLE) && (table == null || table.isEmpty())) {
+      failureCollector.addFailure(String.format("Table must be specified in %s mode.", getMode()), null)
+        .withConfigProperty(TABLE);
+    }
+  }
+
+  private void validateDirectoryImport(FailureCollector failureCollector) {
+    if (pathPattern == null || pathPattern.isEmpty()) {
+      failureCollector.addFailure(String.format("Path pattern must be specified in %s mode.", getMode()),
+                                  "Provide a pattern such as 'dt=${dt}'.")
+        .withConfigProperty(PATH_PATTERN);
+    } else {
+      try {
+        getPathPattern();
+      } catch (IllegalArgumentException e) {
+        failureCollector.addFailure(e.getMessage(), "Name each partition column in a ${column} placeholder.")
+          .withConfigProperty(PATH_PATTERN);
+      }
+    }
+    if (!containsMacro(PARALLELISM) && parallelism != null && parallelism < 1) {
+      failureCollector.addFailure("Parallelism must be at least 1.", null)
+        .withConfigProperty(PARALLELISM);
+    }
+    if (!containsMacro(PARTITIONS_PER_STATEMENT) && partitionsPerStatement != null && partitionsPerStatement < 1) {
+      failureCollector.addFailure("Partitions per statement must be at least 1.", null)
+        .withConfigProperty(PARTITIONS_PER_STATEMENT);
+    }
+  }
+
+  @Override
+  public void validateImportStatement(FailureCollector failureCollector) {
+    if (containsMacro(MODE)) {
+      // the statement is not needed if the mode resolves to directory, register or convert mode
+      if (getStatement() != null) {
+        super.validateImportStatement(failureCollector);
+      }
+      return;
+    }
+    if (isPartitionDirectoryImport() || isConvertMode()) {
+      // statements are generated from the source directory
+      return;
+    }
+    if (!isScriptMode()) {
+      super.validateImportStatement(failureCollector);
+      return;
+    }
+    if (containsMacro(STATEMENT)) {
+      return;
+    }
+    if (getStatement() == null || getStatement().trim().isEmpty()) {
+      failureCollector.addFailure("Hive script does not contain any statements.", null)
+        .withConfigProperty(STATEMENT);
+      return;
+    }
+
+    List<String> statements;
+    try {
+      statements = getStatements();
+    } catch (IllegalArgumentException e) {
+      failureCollector.addFailure("Error while parsing hive script: " + e.getMessage(),
+                                  "Ensure all quotes in the script are closed.")
+        .withConfigProperty(STATEMENT);
+      return;
+    }
+    if (statements.isEmpty()) {
+      failureCollector.addFailure("Hive script does not contain any statements.", null)
+        .withConfigProperty(STATEMENT);
+    }
+    for (int i = 0; i < statements.size(); i++) {
+      if (isLocalLoad(statements.get(i))) {
+        failureCollector.addFailure(
+          String.format("Statement %d: Hive Import does not allow local file storage.", i + 1),
+          "Import data to HDFS location.")
+          .withConfigProperty(STATEMENT);
+      }
+    }
+  }
+
+  public static class Builder extends HiveConfig.Builder<Builder> {
+    private String mode;
+    private String stopOnError;
+    private String sourceDirectory;
+    private String table;
+    private String pathPattern;
+    private String overwrite;
+    private Integer parallelism;
+    private Integer partitionsPerStatement;
+    private String delimiter;
+    private String connectionString;
+    private String user;
+    private String password;
+    private String statement;
+
+    private Builder() {
+    }
+
+    public Builder setMode(String mode) {
+      this.mode = mode;
+      return this;
+    }
+
+    public Builder setStopOnError(String stopOnError) {
+      this.stopOnError = stopOnError;
+      return this;
+    }
+
+    public Builder setSourceDirectory(String sourceDirectory) {
+      this.sourceDirectory = sourceDirectory;
+      return this;
+    }
+
+    public Builder setTable(String table) {
+      this.table = table;
+      return this;
+    }
+
+    public Builder setPathPattern(String pathPattern) {
+      this.pathPattern = pathPattern;
+      return this;
+    }
+
+    public Builder setOverwrite(String overwrite) {
+      this.overwrite = overwrite;
+      return this;
+    }
+
+    public Builder setParallelism(Integer parallelism) {
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    public Builder setPartitionsPerStatement(Integer partitionsPerStatement) {
+      this.partitionsPerStatement = partitionsPerStatement;
+      return this;
+    }
+
+    public Builder setDelimiter(String delimiter) {
+      this.delimiter = delimiter;
+      return this;
+    }
+
+    public Builder setConnectionString(String connectionString) {
+      this.connectionString = connectionString;
+      return this;
+    }
+
+    public Builder setUser(String user) {
+      this.user = user;
+      return this;
+    }
+
+    public Builder setPassword(String password) {
+      this.password = password;
+      return this;
+    }
+
+    public Builder setStatement(String statement) {
+      this.statement = statement;
+      return this;
+    }
+
+    public HiveImportConfig build() {
+      return new HiveImportConfig(this);
+    }
+  }
+}
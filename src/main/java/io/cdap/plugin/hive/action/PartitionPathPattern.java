@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action;
+
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Maps the subdirectories of a landing directory to partitions of a table. A pattern such as
+ * 'dt=${dt}/region=${region}' or '${dt}' has one segment per directory level, in which each ${column} placeholder
+ * matches the value of a partition column. Directories which do not match the pattern are skipped.
+ */
+public final class PartitionPathPattern {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionPathPattern.class);
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]*)}");
+
+  private final String pattern;
+  private final List<Pattern> segments;
+  private final List<String> columns;
+
+  private PartitionPathPattern(String pattern, List<Pattern> segments, List<String> columns) {
+    this.pattern = pattern;
+    this.segments = segments;
+    this.columns = columns;
+  }
+
+  /**
+   * Parses the pattern.
+   *
+   * @throws IllegalArgumentException if the pattern has no placeholders, empty segments or names a column twice
+   */
+  public static PartitionPathPattern parse(String pattern) {
+    List<Pattern> segments = new ArrayList<>();
+    List<String> columns = new ArrayList<>();
+    for (String segment : pattern.split("/", -1)) {
+      if (segment.isEmpty()) {
+        throw new IllegalArgumentException(String.format("Path pattern '%s' contains an empty segment.", pattern));
+      }
+      StringBuilder regex = new StringBuilder();
+      Matcher matcher = PLACEHOLDER.matcher(segment);
+      int end = 0;
+      while (matcher.find()) {
+        String column = matcher.group(1).trim();
+        if (column.isEmpty()) {
+          throw new IllegalArgumentException(String.format("Path pattern '%s' contains an empty placeholder.",
+                                                           pattern));
+        }
+        if (columns.contains(column)) {
+          throw new IllegalArgumentException(String.format("Path pattern '%s' contains column '%s' more than once.",
+                                                           pattern, column));
+        }
+        columns.add(column);
+        regex.append(Pattern.quote(segment.substring(end, matcher.start()))).append("(.+?)");
+        end = matcher.end();
+      }
+      regex.append(Pattern.quote(segment.substring(end)));
+      segments.add(Pattern.compile(regex.toString()));
+    }
+    if (columns.isEmpty()) {
+      throw new IllegalArgumentException(String.format("Path pattern '%s' does not contain any ${column} placeholder.",
+                                                       pattern));
+    }
+    return new PartitionPathPattern(pattern, segments, columns);
+  }
+
+  /**
+   * Returns the partition columns named by the placeholders, in the order they appear in the pattern.
+   */
+  public List<String> getColumns() {
+    return Collections.unmodifiableList(columns);
+  }
+
+  /**
+   * Returns the values of the partition columns for a directory path relative to the landing directory, or null if
+   * the path does not match the pattern.
+   */
+  @Nullable
+  public Map<String, String> match(String relativePath) {
+    String[] names = relativePath.split("/");
+    if (names.length != segments.size()) {
+      return null;
+    }
+    Map<String, String> values = new LinkedHashMap<>();
+    int column = 0;
+    for (int i = 0; i < names.length; i++) {
+      Matcher matcher = segments.get(i).matcher(names[i]);
+      if (!matcher.matches()) {
+        return null;
+      }
+      for (int group = 1; group <= matcher.groupCount(); group++) {
+        values.put(columns.get(column++), matcher.group(group));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Returns the directories under the landing directory which match the pattern and contain files, ordered by path.
+   * Hidden directories and files, whose names start with '.' or '_', are ignored.
+   */
+  public List<PartitionDirectory> scan(FileSystem fs, Path root) throws IOException {
+    List<PartitionDirectory> directories = new ArrayList<>();
+    scan(fs, root, "", 0, directories);
+    directories.sort((d1, d2) -> d1.getName().compareTo(d2.getName()));
+    return directories;
+  }
+
+  private void scan(FileSystem fs, Path directory, String relativePath, int depth,
+                    List<PartitionDirectory> directories) throws IOException {
+    if (depth == segments.size()) {
+      Map<String, String> values = match(relativePath);
+      if (values == null) {
+        LOG.warn("Skipping {}, it does not match the path pattern '{}'.", directory, pattern);
+      } else if (listFiles(fs, directory).isEmpty()) {
+        LOG.info("Skipping {}, it does not contain any files.", directory);
+      } else {
+        directories.add(new PartitionDirectory(directory, relativePath, values));
+      }
+      return;
+    }
+    for (FileStatus status : fs.listStatus(directory)) {
+      if (status.isDirectory() && !isHidden(status.getPath())) {
+        String name = status.getPath().getName();
+        scan(fs, status.getPath(), relativePath.isEmpty() ? name : relativePath + "/" + name, depth + 1,
+             directories);
+      }
+    }
+  }
+
+  private static List<FileStatus> listFiles(FileSystem fs, Path directory) throws IOException {
+    List<FileStatus> files = new ArrayList<>();
+    for (FileStatus status : fs.listStatus(directory)) {
+      if (status.isFile() && !isHidden(status.getPath())) {
+        files.add(status);
+      }
+    }
+    return files;
+  }
+
+  private static boolean isHidden(Path path) {
+    return path.getName().startsWith(".") || path.getName().startsWith("_");
+  }
+
+  /**
+   * Directory holding the files of a single partition.
+   */
+  public static final class PartitionDirectory {
+    private final Path path;
+    private final String name;
+    private final Map<String, String> values;
+
+    PartitionDirectory(Path path, String name, Map<String, String> values) {
+      this.path = path;
+      this.name = name;
+      this.values = values;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    /**
+     * Returns the path relative to the landing directory.
+     */
+    public String getName() {
+      return name;
+    }
+
+    public Map<String, String> getValues() {
+      return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Returns the partition clause of a LOAD DATA statement, such as " PARTITION (dt='2020-01-01', region='us')".
+     */
+    public String getPartitionClause() {
+      return values.entrySet().stream()
+        .map(entry -> entry.getKey() + "=" + StatementSplit.quote(entry.getValue()))
+        .collect(Collectors.joining(", ", " PARTITION (", ")"));
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+}
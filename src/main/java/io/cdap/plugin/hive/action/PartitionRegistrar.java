@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action;
+
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.OrcFile;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.schema.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Registers partition directories whose files are already in the storage format of a table without rewriting them:
+ * the files are checked against the format and columns of the table, renamed into the partition location and the
+ * partitions are added to the metastore with ALTER TABLE ADD PARTITION statements.
+ */
+public class PartitionRegistrar {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionRegistrar.class);
+  private static final byte[] ORC_MAGIC = "ORC".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] PARQUET_MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] AVRO_MAGIC = {'O', 'b', 'j', 1};
+
+  private final FileSystem fs;
+  private final Configuration conf;
+  private final HiveExportFormat format;
+  private final List<String> columns;
+
+  /**
+   * @param fs file system of the table location
+   * @param format storage format of the table
+   * @param columns data columns of the table, without partition columns
+   */
+  public PartitionRegistrar(FileSystem fs, HiveExportFormat format, List<String> columns) {
+    this.fs = fs;
+    this.conf = fs.getConf();
+    this.format = format;
+    this.columns = columns.stream().map(column -> column.toLowerCase(Locale.ROOT)).collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the storage format of a table with the given input format class, as listed by DESCRIBE FORMATTED, or
+   * null if files of the input format can not be registered.
+   */
+  @Nullable
+  public static HiveExportFormat getFormat(@Nullable String inputFormat) {
+    if (inputFormat == null) {
+      return null;
+    }
+    switch (inputFormat.trim()) {
+      case "org.apache.hadoop.mapred.TextInputFormat":
+        return HiveExportFormat.TEXT;
+      case "org.apache.hadoop.hive.ql.io.orc.OrcInputFormat":
+        return HiveExportFormat.ORC;
+      case "org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat":
+        return HiveExportFormat.PARQUET;
+      case "org.apache.hadoop.hive.ql.io.avro.AvroContainerInputFormat":
+        return HiveExportFormat.AVRO;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the name of the partition, such as dt=2020-01-01/region=us, with the values in the order of the
+   * partition columns of the table and escaped like hive does.
+   */
+  public static String getPartitionName(List<String> partitionColumns, Map<String, String> values) {
+    List<String> parts = new ArrayList<>();
+    for (String column : partitionColumns) {
+      String value = values.entrySet().stream()
+        .filter(entry -> entry.getKey().equalsIgnoreCase(column))
+        .map(Map.Entry::getValue)
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException(String.format("No value for partition column '%s'.",
+                                                                       column)));
+      parts.add(column.toLowerCase(Locale.ROOT) + "=" + StatementSplit.escapePathName(value));
+    }
+    return String.join("/", parts);
+  }
+
+  /**
+   * Returns an ALTER TABLE statement adding the partitions. The partitions map partition clauses, such as
+   * " PARTITION (dt='2020-01-01')", to their location. Partitions which already exist are left unchanged.
+   */
+  public static String getAddPartitionStatement(String table, Map<String, Path> partitions) {
+    StringBuilder statement = new StringBuilder("ALTER TABLE ").append(table).append(" ADD IF NOT EXISTS");
+    for (Map.Entry<String, Path> partition : partitions.entrySet()) {
+      statement.append(partition.getKey()).append(" LOCATION ")
+        .append(StatementSplit.quote(partition.getValue().toString()));
+    }
+    return statement.toString();
+  }
+
+  /**
+   * Returns the reasons why the files of the directory can not be registered as they are, an empty list if they
+   * match the storage format and the columns of the table. The columns of text files are not checked.
+   */
+  public List<String> check(FileSystem sourceFs, Path directory) throws IOException {
+    List<String> problems = new ArrayList<>();
+    if (!sourceFs.getUri().equals(fs.getUri())) {
+      problems.add(String.format("%s is not on the file system of the table, %s, files can only be renamed within " +
+                                   "a file system.", directory, fs.getUri()));
+      return problems;
+    }
+    for (FileStatus file : listFiles(fs, directory)) {
+      if (file.getLen() == 0) {
+        continue;
+      }
+      HiveExportFormat fileFormat = detectFormat(file.getPath());
+      if (fileFormat != format) {
+        problems.add(String.format("%s is a %s file, the table is stored as %s.", file.getPath(), fileFormat,
+                                   format));
+        continue;
+      }
+      List<String> missing = new ArrayList<>();
+      switch (format) {
+        case ORC:
+          missing = checkOrcColumns(file.getPath());
+          break;
+        case PARQUET:
+          missing = getMissingColumns(ParquetFileReader.readFooter(conf, file.getPath(),
+                                                                   ParquetMetadataConverter.NO_FILTER)
+                                        .getFileMetaData().getSchema().getFields().stream()
+                                        .map(Type::getName).collect(Collectors.toList()));
+          break;
+        case AVRO:
+          try (DataFileStream<Object> reader = new DataFileStream<>(fs.open(file.getPath()),
+                                                                    new GenericDatumReader<>())) {
+            missing = getMissingColumns(reader.getSchema().getFields().stream()
+                                          .map(Schema.Field::name).collect(Collectors.toList()));
+          }
+          break;
+        default:
+          break;
+      }
+      if (!missing.isEmpty()) {
+        problems.add(String.format("%s does not contain the table columns %s.", file.getPath(), missing));
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * Renames the files of the directory into the partition location and returns their total size. Files whose name
+   * is already taken get a _copy_N suffix, like hive uses for loaded files. If overwrite is set, the existing files
+   * of the partition location are deleted first.
+   */
+  public long move(Path directory, Path location, boolean overwrite) throws IOException {
+    if (fs.exists(location)) {
+      if (overwrite) {
+        for (FileStatus existing : listFiles(fs, location)) {
+          fs.delete(existing.getPath(), false);
+        }
+      }
+    } else if (!fs.mkdirs(location)) {
+      throw new IOException(String.format("Unable to create partition location %s", location));
+    }
+    long bytes = 0;
+    for (FileStatus file : listFiles(fs, directory)) {
+      Path target = getTarget(location, file.getPath().getName());
+      if (!fs.rename(file.getPath(), target)) {
+        throw new IOException(String.format("Unable to rename %s to %s", file.getPath(), target));
+      }
+      bytes += file.getLen();
+    }
+    LOG.debug("Moved {} bytes from {} to {}", bytes, directory, location);
+    return bytes;
+  }
+
+  private Path getTarget(Path location, String name) throws IOException {
+    Path target = new Path(location, name);
+    int dot = name.indexOf('.');
+    String base = dot <= 0 ? name : name.substring(0, dot);
+    String extension = dot <= 0 ? "" : name.substring(dot);
+    for (int copy = 1; fs.exists(target); copy++) {
+      target = new Path(location, base + "_copy_" + copy + extension);
+    }
+    return target;
+  }
+
+  /**
+   * Hive reads ORC columns by position, so files must have as many columns as the table. Names are compared too,
+   * unless the file was written with hive's positional _colN names.
+   */
+  private List<String> checkOrcColumns(Path file) throws IOException {
+    List<String> fields = OrcFile.createReader(file, OrcFile.readerOptions(conf)).getSchema().getFieldNames();
+    if (fields.size() != columns.size()) {
+      return columns;
+    }
+    if (fields.stream().allMatch(field -> field.matches("_col\\d+"))) {
+      return new ArrayList<>();
+    }
+    return getMissingColumns(fields);
+  }
+
+  private List<String> getMissingColumns(List<String> fields) {
+    List<String> names = fields.stream().map(field -> field.toLowerCase(Locale.ROOT)).collect(Collectors.toList());
+    return columns.stream().filter(column -> !names.contains(column)).collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the format of the file according to its magic bytes, text if it does not start with the magic bytes of
+   * a binary format.
+   */
+  private HiveExportFormat detectFormat(Path file) throws IOException {
+    byte[] header = new byte[4];
+    try (FSDataInputStream in = fs.open(file)) {
+      in.readFully(0, header);
+    } catch (EOFException e) {
+      return HiveExportFormat.TEXT;
+    }
+    if (Arrays.equals(Arrays.copyOf(header, ORC_MAGIC.length), ORC_MAGIC)) {
+      return HiveExportFormat.ORC;
+    }
+    if (Arrays.equals(header, PARQUET_MAGIC)) {
+      return HiveExportFormat.PARQUET;
+    }
+    if (Arrays.equals(header, AVRO_MAGIC)) {
+      return HiveExportFormat.AVRO;
+    }
+    return HiveExportFormat.TEXT;
+  }
+
+  private static List<FileStatus> listFiles(FileSystem fs, Path directory) throws IOException {
+    List<FileStatus> files = new ArrayList<>();
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      if (status.isFile() && !name.startsWith("_") && !name.startsWith(".")) {
+        files.add(status);
+      }
+    }
+    files.sort(Comparator.comparing(status -> status.getPath().toString()));
+    return files;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action;
+
+import io.cdap.plugin.hive.action.common.StatementSplit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Statements converting delimited text files into a table stored in another format, such as ORC or Parquet. An
+ * external staging table is created over the directory of the text files, with the columns of the target table
+ * followed by its partition columns, and its rows are inserted into the target table, partitions being created
+ * dynamically from the values of the partition columns. Dropping the external staging table keeps the text files.
+ */
+public class TextConversion {
+  private static final String STAGING_PREFIX = "cdap_import_staging_";
+  private static final List<String> SETTINGS = Arrays.asList(
+    "SET hive.exec.dynamic.partition=true",
+    "SET hive.exec.dynamic.partition.mode=nonstrict",
+    "SET hive.vectorized.execution.enabled=true",
+    "SET hive.vectorized.execution.reduce.enabled=true",
+    // vectorizes reading the text files of the staging table
+    "SET hive.vectorized.use.vector.serde.deserialize=true");
+
+  private final String table;
+  private final String stagingTable;
+  private final Map<String, String> columns;
+  private final List<String> partitionColumns;
+
+  /**
+   * @param table target table, optionally qualified by its database
+   * @param stagingTable name of the staging table, created in the database of the target table
+   * @param columns names and types of the data columns followed by the partition columns of the target table
+   * @param partitionColumns partition columns of the target table
+   */
+  public TextConversion(String table, String stagingTable, Map<String, String> columns,
+                        List<String> partitionColumns) {
+    this.table = table;
+    this.stagingTable = stagingTable;
+    this.columns = columns;
+    this.partitionColumns = partitionColumns;
+  }
+
+  /**
+   * Returns a name for a staging table of the target table, unique across runs, in the database of the target table.
+   */
+  public static String getStagingTableName(String table) {
+    int dot = table.lastIndexOf('.');
+    return (dot < 0 ? "" : table.substring(0, dot + 1)) + STAGING_PREFIX +
+      UUID.randomUUID().toString().replace("-", "");
+  }
+
+  public String getStagingTable() {
+    return stagingTable;
+  }
+
+  /**
+   * Returns the session settings enabling dynamic partitioning and vectorized execution for the insert.
+   */
+  public List<String> getSettings() {
+    return SETTINGS;
+  }
+
+  public String getCreateStagingTableStatement(String location, String delimiter) {
+    String definitions = columns.entrySet().stream()
+      .map(column -> quoteIdentifier(column.getKey()) + " " + column.getValue())
+      .collect(Collectors.joining(", "));
+    return String.format("CREATE EXTERNAL TABLE %s (%s) ROW FORMAT DELIMITED FIELDS TERMINATED BY '%s' " +
+                           "STORED AS TEXTFILE LOCATION %s", stagingTable, definitions, delimiter,
+                         StatementSplit.quote(location));
+  }
+
+  public String getInsertStatement(boolean overwrite) {
+    List<String> quoted = new ArrayList<>();
+    columns.keySet().forEach(column -> quoted.add(quoteIdentifier(column)));
+    String partition = partitionColumns.isEmpty() ? "" : partitionColumns.stream()
+      .map(TextConversion::quoteIdentifier)
+      .collect(Collectors.joining(", ", " PARTITION (", ")"));
+    return String.format("INSERT %s TABLE %s%s SELECT %s FROM %s", overwrite ? "OVERWRITE" : "INTO", table,
+                         partition, String.join(", ", quoted), stagingTable);
+  }
+
+  public String getDropStagingTableStatement() {
+    return "DROP TABLE IF EXISTS " + stagingTable;
+  }
+
+  private static String quoteIdentifier(String column) {
+    return "`" + column.replace("`", "``") + "`";
+  }
+}
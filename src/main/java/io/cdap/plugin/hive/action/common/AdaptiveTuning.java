@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Session settings chosen by the estimated size of the input of a statement. Rules have the form
+ * 'threshold: key=value, key=value' and are separated by ';' or new lines, such as
+ * '0: hive.execution.engine=mr; 10GB: hive.execution.engine=tez, mapreduce.job.reduces=200'. The settings of every
+ * rule whose threshold is not larger than the input size are applied in the order of the thresholds, so rules for
+ * larger inputs override the settings of rules for smaller ones.
+ */
+public final class AdaptiveTuning {
+  private static final Logger LOG = LoggerFactory.getLogger(AdaptiveTuning.class);
+  private static final Pattern SIZE = Pattern.compile("(\\d+)\\s*([KMGT]?B?)", Pattern.CASE_INSENSITIVE);
+  private static final String VIRTUAL_VIEW = "VIRTUAL_VIEW";
+  private static final String TOTAL_SIZE = "totalSize";
+
+  private final NavigableMap<Long, Map<String, String>> rules;
+
+  private AdaptiveTuning(NavigableMap<Long, Map<String, String>> rules) {
+    this.rules = rules;
+  }
+
+  /**
+   * Parses the rules.
+   *
+   * @throws IllegalArgumentException if a rule is invalid
+   */
+  public static AdaptiveTuning parse(String rules) {
+    NavigableMap<Long, Map<String, String>> parsed = new TreeMap<>();
+    for (String rule : rules.split("[;\\n]")) {
+      if (rule.trim().isEmpty()) {
+        continue;
+      }
+      int colon = rule.indexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException(String.format("Tuning rule '%s' has no input size threshold.",
+                                                         rule.trim()));
+      }
+      Map<String, String> settings = parsed.computeIfAbsent(parseSize(rule.substring(0, colon)),
+                                                            threshold -> new LinkedHashMap<>());
+      for (String setting : rule.substring(colon + 1).split(",")) {
+        int equals = setting.indexOf('=');
+        if (equals <= 0 || setting.substring(0, equals).trim().isEmpty()) {
+          throw new IllegalArgumentException(String.format("Invalid setting '%s' in tuning rule '%s', use " +
+                                                             "key=value.", setting.trim(), rule.trim()));
+        }
+        settings.put(setting.substring(0, equals).trim(), setting.substring(equals + 1).trim());
+      }
+    }
+    if (parsed.isEmpty()) {
+      throw new IllegalArgumentException("No tuning rules are defined.");
+    }
+    return new AdaptiveTuning(parsed);
+  }
+
+  /**
+   * Parses a size in bytes with an optional unit, one of KB, MB, GB or TB, which are powers of 1024.
+   */
+  public static long parseSize(String size) {
+    Matcher matcher = SIZE.matcher(size.trim());
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException(String.format("Invalid input size '%s', use a number of bytes with an " +
+                                                         "optional unit such as 512MB or 10GB.", size.trim()));
+    }
+    String unit = matcher.group(2).toUpperCase(Locale.ROOT);
+    int shift = unit.isEmpty() ? 0 : "BKMGT".indexOf(unit.charAt(0)) * 10;
+    return Long.parseLong(matcher.group(1)) << shift;
+  }
+
+  /**
+   * Returns the SET commands of the rules which apply to the input size, later rules overriding earlier ones.
+   */
+  public List<String> getSettings(long inputBytes) {
+    Map<String, String> settings = new LinkedHashMap<>();
+    for (Map<String, String> rule : rules.headMap(inputBytes, true).values()) {
+      settings.putAll(rule);
+    }
+    List<String> commands = new ArrayList<>();
+    settings.forEach((key, value) -> commands.add("SET " + key + "=" + value));
+    return commands;
+  }
+
+  /**
+   * Estimates the size of the tables from the size of the files below their location, or from the totalSize
+   * statistic of the metastore if the location can not be read. Partition pruning is not taken into account, so
+   * the estimate is the size of the complete tables. Returns -1 if the size of a table, such as a view, is not known.
+   */
+  public static long estimateTables(HiveCommandExecutor executor, Collection<String> tables,
+                                    Configuration configuration) throws Exception {
+    long bytes = 0;
+    for (String table : tables) {
+      List<List<String>> details = HiveMetadata.describeFormatted(executor, table);
+      String location = HiveMetadata.parseDetail(details, "Location:");
+      if (VIRTUAL_VIEW.equals(HiveMetadata.parseDetail(details, "Table Type:")) || location == null) {
+        LOG.info("Size of '{}' is not known, it is a view.", table);
+        return -1;
+      }
+      try {
+        Path path = new Path(location);
+        bytes += path.getFileSystem(configuration).getContentSummary(path).getLength();
+      } catch (IOException e) {
+        String totalSize = HiveMetadata.parseTableParameter(details, TOTAL_SIZE);
+        if (totalSize == null) {
+          LOG.info("Size of '{}' is not known, its location {} can not be read and it has no statistics.", table,
+                   location, e);
+          return -1;
+        }
+        bytes += Long.parseLong(totalSize);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the settings for the input size, -1 if it is not known, and logs the chosen settings.
+   */
+  public List<String> getSettings(long inputBytes, String input) {
+    if (inputBytes < 0) {
+      LOG.info("Input size of {} is not known, no tuning settings are applied.", input);
+      return new ArrayList<>();
+    }
+    List<String> settings = getSettings(inputBytes);
+    LOG.info("Estimated input size of {} is {} bytes, applying tuning settings {}", input, inputBytes, settings);
+    return settings;
+  }
+}
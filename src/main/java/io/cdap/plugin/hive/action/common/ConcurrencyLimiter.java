@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import java.io.IOException;
+
+/**
+ * Caps the number of statements running concurrently against the same HiveServer2, so that many runs starting at
+ * the same time queue up instead of flooding HiveServer2 and the YARN queue. Waiting statements are admitted in the
+ * order they asked for a permit.
+ */
+public interface ConcurrencyLimiter {
+
+  /**
+   * Limiter which never blocks.
+   */
+  ConcurrencyLimiter NONE = (key, maxConcurrent) -> () -> { };
+
+  /**
+   * Blocks until fewer than maxConcurrent statements hold a permit for the key and all statements which asked for a
+   * permit earlier were admitted.
+   *
+   * @param key identifies the HiveServer2 the statement runs against, such as the connection string
+   * @param maxConcurrent maximum number of statements holding a permit for the key at the same time
+   * @return the permit, which must be closed once the statement completed
+   */
+  Permit acquire(String key, int maxConcurrent) throws IOException, InterruptedException;
+
+  /**
+   * Permit to run a statement, released on close.
+   */
+  interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
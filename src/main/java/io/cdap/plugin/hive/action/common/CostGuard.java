@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Checks the estimated cost of a statement before it runs. The plan returned by EXPLAIN is parsed for the estimated
+ * rows and bytes read by its table scans, the number of stages and the join strategies, which are compared with the
+ * configured limits. Statements exceeding a limit are logged or, if the guard fails, not executed at all.
+ *
+ * The estimates come from the statistics of the metastore, tables without statistics are estimated from the size of
+ * their files and may be far off.
+ */
+public final class CostGuard {
+  public static final String JOIN_MAP = "map";
+  public static final String JOIN_SMB = "smb";
+  public static final String JOIN_SHUFFLE = "shuffle";
+  public static final String JOIN_CROSS = "cross";
+  public static final List<String> JOIN_STRATEGIES = Arrays.asList(JOIN_MAP, JOIN_SMB, JOIN_SHUFFLE, JOIN_CROSS);
+
+  private static final Logger LOG = LoggerFactory.getLogger(CostGuard.class);
+  // statements which read data, other statements such as LOAD DATA or DDL are not explained
+  private static final Pattern QUERY = Pattern.compile(
+    "^\\s*(INSERT|FROM|WITH|SELECT|CREATE\\s+(TEMPORARY\\s+)?(EXTERNAL\\s+)?TABLE\\b.*\\bAS\\s+(SELECT|WITH))\\b",
+    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final Pattern STATISTICS = Pattern.compile("Statistics: Num rows: (\\d+) Data size: (\\d+)");
+  private static final Pattern STAGE = Pattern.compile("^\\s*Stage: Stage-\\d+");
+  private static final String TABLE_SCAN = "TableScan";
+  private static final String CROSS_PRODUCT = "is a cross product";
+
+  private final boolean fail;
+  private final long maxBytes;
+  private final long maxRows;
+  private final int maxStages;
+  private final Set<String> disallowedJoins;
+
+  /**
+   * @param fail whether statements exceeding a limit fail instead of being logged
+   * @param maxBytes maximum estimated bytes read by the statement, 0 for no limit
+   * @param maxRows maximum estimated rows read by the statement, 0 for no limit
+   * @param maxStages maximum number of stages of the plan, 0 for no limit
+   * @param disallowedJoins join strategies the plan must not use, out of {@link #JOIN_STRATEGIES}
+   */
+  public CostGuard(boolean fail, long maxBytes, long maxRows, int maxStages, Set<String> disallowedJoins) {
+    this.fail = fail;
+    this.maxBytes = maxBytes;
+    this.maxRows = maxRows;
+    this.maxStages = maxStages;
+    this.disallowedJoins = disallowedJoins;
+  }
+
+  /**
+   * Parses a comma separated list of join strategies.
+   *
+   * @throws IllegalArgumentException if a join strategy is unknown
+   */
+  public static Set<String> parseJoins(@Nullable String joins) {
+    Set<String> parsed = new LinkedHashSet<>();
+    if (joins == null) {
+      return parsed;
+    }
+    for (String join : joins.split(",")) {
+      String name = join.trim().toLowerCase(Locale.ROOT);
+      if (name.isEmpty()) {
+        continue;
+      }
+      if (!JOIN_STRATEGIES.contains(name)) {
+        throw new IllegalArgumentException(String.format("Unknown join strategy '%s'.", join.trim()));
+      }
+      parsed.add(name);
+    }
+    return parsed;
+  }
+
+  /**
+   * Returns whether the command reads data and is explained before it runs.
+   */
+  public static boolean isExplained(String command) {
+    return QUERY.matcher(command).find();
+  }
+
+  /**
+   * Explains the command through the executor, so that the settings of its session apply, and compares the estimate
+   * with the limits. Returns the estimate, or null if the command is not explained or EXPLAIN failed, in which case
+   * the command is not checked.
+   *
+   * @throws IllegalStateException if the guard fails and the estimate exceeds a limit
+   */
+  @Nullable
+  public Estimate check(HiveCommandExecutor executor, String command) throws Exception {
+    if (!isExplained(command)) {
+      return null;
+    }
+    Estimate estimate;
+    try {
+      estimate = Estimate.parse(executor.executeQuery("EXPLAIN " + command).stream()
+                                  .map(row -> row.isEmpty() || row.get(0) == null ? "" : row.get(0))
+                                  .collect(Collectors.toList()));
+    } catch (SQLException e) {
+      LOG.warn("Unable to explain statement, its cost is not checked: {}", e.getMessage());
+      return null;
+    }
+    LOG.info("Estimated cost of statement: {}", estimate);
+    List<String> problems = getProblems(estimate);
+    if (!problems.isEmpty()) {
+      String message = String.format("%s Statement: %s", String.join(" ", problems), command);
+      if (fail) {
+        throw new IllegalStateException(message);
+      }
+      LOG.warn(message);
+    }
+    return estimate;
+  }
+
+  /**
+   * Returns a description of every limit the estimate exceeds.
+   */
+  public List<String> getProblems(Estimate estimate) {
+    List<String> problems = new ArrayList<>();
+    if (maxBytes > 0 && estimate.getInputBytes() > maxBytes) {
+      problems.add(String.format("Estimated input of %d bytes exceeds the limit of %d bytes.",
+                                 estimate.getInputBytes(), maxBytes));
+    }
+    if (maxRows > 0 && estimate.getInputRows() > maxRows) {
+      problems.add(String.format("Estimated input of %d rows exceeds the limit of %d rows.",
+                                 estimate.getInputRows(), maxRows));
+    }
+    if (maxStages > 0 && estimate.getStages() > maxStages) {
+      problems.add(String.format("Plan has %d stages, more than the limit of %d.", estimate.getStages(), maxStages));
+    }
+    for (String join : estimate.getJoins()) {
+      if (disallowedJoins.contains(join)) {
+        problems.add(String.format("Plan uses a %s join, which is not allowed.", join));
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * Cost of a statement estimated from the plan returned by EXPLAIN.
+   */
+  public static final class Estimate {
+    private final long inputBytes;
+    private final long inputRows;
+    private final int stages;
+    private final Set<String> joins;
+
+    Estimate(long inputBytes, long inputRows, int stages, Set<String> joins) {
+      this.inputBytes = inputBytes;
+      this.inputRows = inputRows;
+      this.stages = stages;
+      this.joins = Collections.unmodifiableSet(joins);
+    }
+
+    /**
+     * Parses the lines of the plan. The input is the sum of the statistics of every table scan, stages are counted
+     * from the stage plans and join strategies are derived from the join operators.
+     */
+    public static Estimate parse(List<String> plan) {
+      long bytes = -1;
+      long rows = -1;
+      int stages = 0;
+      Set<String> joins = new LinkedHashSet<>();
+      boolean tableScan = false;
+      for (String line : plan) {
+        String trimmed = line.trim();
+        if (STAGE.matcher(line).find()) {
+          stages++;
+        } else if (trimmed.equals(TABLE_SCAN)) {
+          tableScan = true;
+        } else if (trimmed.contains(CROSS_PRODUCT)) {
+          joins.add(JOIN_CROSS);
+        } else if (trimmed.equals("Sorted Merge Bucket Map Join Operator")) {
+          joins.add(JOIN_SMB);
+        } else if (trimmed.equals("Map Join Operator")) {
+          joins.add(JOIN_MAP);
+        } else if (trimmed.equals("Merge Join Operator") || trimmed.equals("Join Operator")) {
+          joins.add(JOIN_SHUFFLE);
+        } else if (tableScan) {
+          Matcher matcher = STATISTICS.matcher(trimmed);
+          if (matcher.find()) {
+            // the first statistics following a table scan are those of the scanned table
+            rows = Math.max(rows, 0) + Long.parseLong(matcher.group(1));
+            bytes = Math.max(bytes, 0) + Long.parseLong(matcher.group(2));
+            tableScan = false;
+          }
+        }
+      }
+      return new Estimate(bytes, rows, stages, joins);
+    }
+
+    /**
+     * Returns the estimated bytes read, -1 if the plan has no table scan.
+     */
+    public long getInputBytes() {
+      return inputBytes;
+    }
+
+    /**
+     * Returns the estimated rows read, -1 if the plan has no table scan.
+     */
+    public long getInputRows() {
+      return inputRows;
+    }
+
+    public int getStages() {
+      return stages;
+    }
+
+    public Set<String> getJoins() {
+      return joins;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("inputBytes=%d, inputRows=%d, stages=%d, joins=%s", inputBytes, inputRows, stages, joins);
+    }
+  }
+}
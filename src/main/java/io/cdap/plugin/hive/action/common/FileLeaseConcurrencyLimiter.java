@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import com.google.common.hash.Hashing;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * {@link ConcurrencyLimiter} coordinating runs in different JVMs through lease files in a shared directory, such as
+ * a directory on HDFS. Every statement asking for a permit creates a ticket file named after the time it asked, in a
+ * subdirectory per key. A statement is admitted once its ticket is among the first maxConcurrent tickets ordered by
+ * name, so statements are admitted in the order they asked.
+ *
+ * Tickets are leases: their modification time is renewed while the statement waits or runs, and tickets which were
+ * not renewed within the lease timeout are deleted by other statements, so that crashed runs do not hold permits
+ * forever. Ordering relies on the clocks of the hosts being roughly in sync.
+ */
+public class FileLeaseConcurrencyLimiter implements ConcurrencyLimiter {
+  public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+  public static final long DEFAULT_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileLeaseConcurrencyLimiter.class);
+  private static final String TICKET_SUFFIX = ".ticket";
+  private static ScheduledExecutorService heartbeat;
+
+  private final FileSystem fs;
+  private final Path directory;
+  private final long leaseTimeoutMillis;
+  private final long pollIntervalMillis;
+
+  public FileLeaseConcurrencyLimiter(FileSystem fs, Path directory) {
+    this(fs, directory, DEFAULT_LEASE_TIMEOUT_MILLIS, DEFAULT_POLL_INTERVAL_MILLIS);
+  }
+
+  public FileLeaseConcurrencyLimiter(FileSystem fs, Path directory, long leaseTimeoutMillis,
+                                     long pollIntervalMillis) {
+    this.fs = fs;
+    this.directory = directory;
+    this.leaseTimeoutMillis = leaseTimeoutMillis;
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  @Override
+  public Permit acquire(String key, int maxConcurrent) throws IOException, InterruptedException {
+    Path queue = getQueue(key);
+    fs.mkdirs(queue);
+    Path ticket = createTicket(queue);
+    try {
+      long renewed = System.currentTimeMillis();
+      while (true) {
+        List<Path> tickets = listLiveTickets(queue, ticket);
+        int position = tickets.indexOf(ticket);
+        if (position < 0) {
+          // the lease expired while waiting, for example because the file system was not reachable
+          LOG.warn("Concurrency lease {} expired while waiting, queueing again.", ticket);
+          ticket = createTicket(queue);
+          renewed = System.currentTimeMillis();
+        } else if (position < maxConcurrent) {
+          return new LeasePermit(ticket);
+        } else if (System.currentTimeMillis() - renewed > leaseTimeoutMillis / 3) {
+          renew(ticket);
+          renewed = System.currentTimeMillis();
+        }
+        TimeUnit.MILLISECONDS.sleep(pollIntervalMillis);
+      }
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      deleteQuietly(ticket);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of statements holding or waiting for a permit for the key, including expired leases which
+   * were not deleted yet.
+   */
+  public int getQueueLength(String key) throws IOException {
+    Path queue = getQueue(key);
+    return fs.exists(queue) ? listTickets(queue).length : 0;
+  }
+
+  /**
+   * Returns the directory of the key. Keys are hashed, since connection strings may contain credentials.
+   */
+  private Path getQueue(String key) {
+    return new Path(directory, Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString().substring(0, 32));
+  }
+
+  private Path createTicket(Path queue) throws IOException {
+    // zero padded so that tickets sort by the time they were created
+    Path ticket = new Path(queue, String.format("%019d-%s%s", System.currentTimeMillis(), UUID.randomUUID(),
+                                                TICKET_SUFFIX));
+    fs.create(ticket, false).close();
+    return ticket;
+  }
+
+  /**
+   * Returns the tickets of the queue in order, after deleting the tickets of other statements whose lease expired.
+   */
+  private List<Path> listLiveTickets(Path queue, Path own) throws IOException {
+    long expiry = System.currentTimeMillis() - leaseTimeoutMillis;
+    return Arrays.stream(listTickets(queue))
+      .filter(status -> {
+        if (status.getModificationTime() >= expiry || status.getPath().getName().equals(own.getName())) {
+          return true;
+        }
+        LOG.info("Removing expired concurrency lease {}.", status.getPath());
+        deleteQuietly(status.getPath());
+        return false;
+      })
+      .map(status -> new Path(queue, status.getPath().getName()))
+      .sorted()
+      .collect(Collectors.toList());
+  }
+
+  private FileStatus[] listTickets(Path queue) throws IOException {
+    return fs.listStatus(queue, path -> path.getName().endsWith(TICKET_SUFFIX));
+  }
+
+  private void renew(Path ticket) throws IOException {
+    fs.setTimes(ticket, System.currentTimeMillis(), -1);
+  }
+
+  private void deleteQuietly(Path ticket) {
+    try {
+      fs.delete(ticket, false);
+    } catch (IOException e) {
+      LOG.debug("Failed to delete concurrency lease {}", ticket, e);
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getHeartbeat() {
+    if (heartbeat == null) {
+      heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hive-concurrency-lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return heartbeat;
+  }
+
+  /**
+   * Permit whose lease is renewed in the background until it is closed.
+   */
+  private final class LeasePermit implements Permit {
+    private final Path ticket;
+    private final ScheduledFuture<?> renewal;
+
+    private LeasePermit(Path ticket) {
+      this.ticket = ticket;
+      long period = Math.max(1L, leaseTimeoutMillis / 3);
+      this.renewal = getHeartbeat().scheduleWithFixedDelay(() -> {
+        try {
+          renew(ticket);
+        } catch (FileNotFoundException e) {
+          // deleted by another run after it could not be renewed in time, stop renewing
+          LOG.warn("Concurrency lease {} expired while the statement was running.", ticket);
+          throw new IllegalStateException(e);
+        } catch (IOException e) {
+          LOG.warn("Failed to renew concurrency lease {}: {}", ticket, e.getMessage());
+        }
+      }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+      renewal.cancel(false);
+      deleteQuietly(ticket);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import io.cdap.cdap.api.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the time spent in each phase of a hive action run and the amount of data it moved. Statement time is
+ * split into compile, queue and execution time, so that statements waiting for HiveServer2 can be told apart from
+ * statements which run slowly. Statements of parallel splits are added up, so phase times can exceed the run time.
+ * Time spent waiting for a {@link ConcurrencyLimiter} permit is recorded separately from statement time.
+ */
+public class HiveActionMetrics {
+  public static final String CONNECT_TIME = "hive.connect.ms";
+  public static final String CONCURRENCY_WAIT_TIME = "hive.concurrency.wait.ms";
+  public static final String VALIDATION_TIME = "hive.validation.ms";
+  public static final String COMPILE_TIME = "hive.compile.ms";
+  public static final String QUEUE_TIME = "hive.queue.ms";
+  public static final String EXECUTION_TIME = "hive.execution.ms";
+  public static final String RUN_TIME = "hive.run.ms";
+  public static final String STATEMENTS = "hive.statements";
+  public static final String ROWS = "hive.rows";
+  public static final String BYTES = "hive.bytes";
+
+  private final long startNanos = System.nanoTime();
+  private final AtomicLong connectMillis = new AtomicLong();
+  private final AtomicLong concurrencyWaitMillis = new AtomicLong();
+  private final AtomicLong validationMillis = new AtomicLong();
+  private final AtomicLong compileMillis = new AtomicLong();
+  private final AtomicLong queueMillis = new AtomicLong();
+  private final AtomicLong executionMillis = new AtomicLong();
+  private final AtomicLong statements = new AtomicLong();
+  // -1 until a statement reported rows, hive does not report rows for every kind of statement
+  private final AtomicLong rows = new AtomicLong(-1);
+  private final AtomicLong bytes = new AtomicLong(-1);
+
+  public void addConnectTime(long millis) {
+    connectMillis.addAndGet(millis);
+  }
+
+  public void addConcurrencyWaitTime(long millis) {
+    concurrencyWaitMillis.addAndGet(millis);
+  }
+
+  public void addValidationTime(long millis) {
+    validationMillis.addAndGet(millis);
+  }
+
+  /**
+   * Adds a completed statement. Compile and execution times reported by hive are preferred, if hive did not report
+   * them the compile time is the time it took to submit the statement and the remaining time is execution time.
+   * Whatever time of the statement is neither compile nor execution time was spent waiting in HiveServer2.
+   *
+   * @param wallMillis time from submitting the statement until it completed
+   * @param submitMillis time it took to submit the statement, which includes compiling it
+   * @param reportedCompileMillis compile time reported by hive, -1 if not reported
+   * @param reportedExecutionMillis execution time reported by hive, -1 if not reported
+   * @param reportedRows rows written by the statement, -1 if not reported
+   */
+  public void addStatement(long wallMillis, long submitMillis, long reportedCompileMillis,
+                           long reportedExecutionMillis, long reportedRows) {
+    long compile = reportedCompileMillis >= 0 ? reportedCompileMillis : submitMillis;
+    long execution = reportedExecutionMillis >= 0 ? reportedExecutionMillis : Math.max(0, wallMillis - compile);
+    statements.incrementAndGet();
+    compileMillis.addAndGet(compile);
+    executionMillis.addAndGet(execution);
+    queueMillis.addAndGet(Math.max(0, wallMillis - compile - execution));
+    if (reportedRows >= 0) {
+      rows.accumulateAndGet(reportedRows, (current, added) -> Math.max(current, 0) + added);
+    }
+  }
+
+  public void addBytes(long count) {
+    bytes.accumulateAndGet(count, (current, added) -> Math.max(current, 0) + added);
+  }
+
+  public long getRows() {
+    return rows.get();
+  }
+
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  public long getStatements() {
+    return statements.get();
+  }
+
+  public long getQueueMillis() {
+    return queueMillis.get();
+  }
+
+  public long getConcurrencyWaitMillis() {
+    return concurrencyWaitMillis.get();
+  }
+
+  /**
+   * Emits phase times as gauges and the amount of data moved as counts. Rows and bytes are only emitted if they
+   * are known.
+   */
+  public void record(Metrics metrics) {
+    metrics.gauge(CONNECT_TIME, connectMillis.get());
+    metrics.gauge(CONCURRENCY_WAIT_TIME, concurrencyWaitMillis.get());
+    metrics.gauge(VALIDATION_TIME, validationMillis.get());
+    metrics.gauge(COMPILE_TIME, compileMillis.get());
+    metrics.gauge(QUEUE_TIME, queueMillis.get());
+    metrics.gauge(EXECUTION_TIME, executionMillis.get());
+    metrics.gauge(RUN_TIME, getRunMillis());
+    count(metrics, STATEMENTS, statements.get());
+    count(metrics, ROWS, rows.get());
+    count(metrics, BYTES, bytes.get());
+  }
+
+  /**
+   * Returns a single line summary of the run, with unknown amounts reported as -1.
+   */
+  public String summary() {
+    return String.format("runMs=%d, statements=%d, connectMs=%d, concurrencyWaitMs=%d, validationMs=%d, " +
+                           "compileMs=%d, queueMs=%d, executionMs=%d, rows=%d, bytes=%d", getRunMillis(),
+                         statements.get(), connectMillis.get(), concurrencyWaitMillis.get(), validationMillis.get(),
+                         compileMillis.get(), queueMillis.get(), executionMillis.get(), rows.get(), bytes.get());
+  }
+
+  private long getRunMillis() {
+    return millisSince(startNanos);
+  }
+
+  /**
+   * Returns the milliseconds elapsed since the given {@link System#nanoTime()}.
+   */
+  public static long millisSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private static void count(Metrics metrics, String name, long value) {
+    // counts are ints, larger amounts are emitted in several increments
+    while (value > 0) {
+      int increment = (int) Math.min(value, Integer.MAX_VALUE);
+      metrics.count(name, increment);
+      value -= increment;
+    }
+  }
+}
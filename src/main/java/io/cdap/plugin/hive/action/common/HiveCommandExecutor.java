@@ -16,32 +16,498 @@
 
 package io.cdap.plugin.hive.action.common;
 
-import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hive.jdbc.HiveStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
- * Executor which executes provided hive commands usin jdbc
+ * Executor which executes provided hive commands usin jdbc. Connections are borrowed from the
+ * {@link HiveConnectionPool} and returned to it on {@link #cleanup()}. If {@link HiveActionMetrics} are given,
+ * the time spent connecting and running statements is added to them.
+ *
+ * Idempotent statements which fail with a transient error are retried according to the {@link RetryPolicy}. Before a
+ * retry the broken connection is discarded and the session commands executed so far are replayed on a new one.
+ *
+ * Connections whose session was only changed by SET commands are returned to the pool on {@link #cleanup()}, after
+ * the changed settings were reset to their defaults. Sessions changed in other ways, for example by USE, ADD JAR or
+ * temporary objects, are discarded.
+ *
+ * Statements other than session commands hold a {@link ConcurrencyLimiter} permit, keyed by connection string, while
+ * they run, so that the number of statements running against the same HiveServer2 can be capped across runs.
+ *
+ * Running statements are watched by the {@link StatementWatchdog}, which cancels their server side operation once
+ * they exceed the statement timeout or the calling thread is interrupted. Cancelled statements are not retried and
+ * their connection is discarded on {@link #cleanup()}, which callers must invoke even if a statement failed.
+ *
+ * If a {@link CostGuard} is set, statements reading data are explained on the same session before they run, and the
+ * estimate is logged along with the actual runtime once they completed.
  */
 public class HiveCommandExecutor {
-  Object driver;
-  Connection connection;
+  private static final Logger LOG = LoggerFactory.getLogger(HiveCommandExecutor.class);
+  private static final long MONITOR_INTERVAL_MILLIS = 5000;
+  // waits for a concurrency permit longer than this are logged
+  private static final long LOGGED_WAIT_MILLIS = 1000;
+  // standard SQLStates of statements cancelled because of a timeout or on request
+  private static final String TIMEOUT_SQL_STATE = "HYT00";
+  private static final String CANCELLED_SQL_STATE = "HY008";
+  // commands which change the state of the hive session
+  private static final Pattern SESSION_COMMAND = Pattern.compile(
+    "^\\s*(SET\\s+\\S|RESET|USE\\s|ADD\\s|DELETE\\s+(JAR|FILE|ARCHIVE)|RELOAD|(CREATE|DROP)\\s+TEMPORARY\\s)",
+    Pattern.CASE_INSENSITIVE);
+  // commands which only change a configuration setting, which can be reset before the session is reused
+  private static final Pattern SETTING_COMMAND = Pattern.compile("^\\s*SET\\s+(hiveconf:)?([^\\s=:]+)\\s*=",
+                                                                 Pattern.CASE_INSENSITIVE);
+
+  private final HiveConnectionPool pool;
+  private final String connectionString;
+  private final String user;
+  private final String password;
+  private final HiveActionMetrics metrics;
+  private final RetryPolicy retryPolicy;
+  private final ConcurrencyLimiter concurrencyLimiter;
+  private final int maxConcurrentStatements;
+  private final long statementTimeoutMillis;
+  private final KerberosSessionCache.Login kerberosLogin;
+  private final StatementWatchdog watchdog = StatementWatchdog.getInstance();
+  private CostGuard costGuard;
+  // session commands executed so far, replayed when reconnecting
+  private final List<String> sessionCommands = new ArrayList<>();
+  private HiveConnectionPool.PooledConnection connection;
+  // set when the session was changed in a way which cannot be reset
+  private boolean sessionModified;
+  // set when a statement was cancelled, the connection may still be busy with the cancelled operation
+  private boolean broken;
 
   public HiveCommandExecutor(String connectionString, String user, String password) throws Exception {
-    driver = Class.forName("org.apache.hive.jdbc.HiveDriver").newInstance();
-    DriverManager.registerDriver((Driver) driver);
-    connection = DriverManager.getConnection(connectionString, user, password);
+    this(HiveConnectionPool.getInstance(), connectionString, user, password);
+  }
+
+  public HiveCommandExecutor(HiveConnectionConfig config) throws Exception {
+    this(config, null);
+  }
+
+  public HiveCommandExecutor(HiveConnectionConfig config, @Nullable HiveActionMetrics metrics) throws Exception {
+    this(HiveConnectionPool.getInstance(), config.getConnectionString(), config.getUser(), config.getPassword(),
+         metrics, config.getRetryPolicy(), config.getConcurrencyLimiter(), config.getMaxConcurrentStatements(),
+         config.getStatementTimeoutMillis(), config.getKerberosLogin());
+  }
+
+  public HiveCommandExecutor(HiveConnectionPool pool, String connectionString, String user,
+                             String password) throws Exception {
+    this(pool, connectionString, user, password, null, RetryPolicy.NONE);
+  }
+
+  public HiveCommandExecutor(HiveConnectionPool pool, String connectionString, String user, String password,
+                             @Nullable HiveActionMetrics metrics, RetryPolicy retryPolicy) throws Exception {
+    this(pool, connectionString, user, password, metrics, retryPolicy, ConcurrencyLimiter.NONE, 0, 0);
+  }
+
+  /**
+   * @param statementTimeoutMillis time a statement may run before it is cancelled, 0 for no timeout
+   */
+  public HiveCommandExecutor(HiveConnectionPool pool, String connectionString, String user, String password,
+                             @Nullable HiveActionMetrics metrics, RetryPolicy retryPolicy,
+                             ConcurrencyLimiter concurrencyLimiter, int maxConcurrentStatements,
+                             long statementTimeoutMillis) throws Exception {
+    this(pool, connectionString, user, password, metrics, retryPolicy, concurrencyLimiter, maxConcurrentStatements,
+         statementTimeoutMillis, null);
+  }
+
+  /**
+   * @param statementTimeoutMillis time a statement may run before it is cancelled, 0 for no timeout
+   * @param kerberosLogin login new connections authenticate with, null to use the credentials of the pipeline
+   */
+  public HiveCommandExecutor(HiveConnectionPool pool, String connectionString, String user, String password,
+                             @Nullable HiveActionMetrics metrics, RetryPolicy retryPolicy,
+                             ConcurrencyLimiter concurrencyLimiter, int maxConcurrentStatements,
+                             long statementTimeoutMillis,
+                             @Nullable KerberosSessionCache.Login kerberosLogin) throws Exception {
+    this.pool = pool;
+    this.connectionString = connectionString;
+    this.user = user;
+    this.password = password;
+    this.metrics = metrics;
+    this.retryPolicy = retryPolicy;
+    this.concurrencyLimiter = concurrencyLimiter;
+    this.maxConcurrentStatements = maxConcurrentStatements;
+    this.statementTimeoutMillis = statementTimeoutMillis;
+    this.kerberosLogin = kerberosLogin;
+    this.connection = borrow();
+  }
+
+  /**
+   * Sets the guard checking the estimated cost of statements before they are executed, null to not check them.
+   */
+  public void setCostGuard(@Nullable CostGuard costGuard) {
+    this.costGuard = costGuard;
   }
 
   public void execute(String command) throws Exception {
-      Statement statement = connection.createStatement();
-      statement.execute(command);
-      statement.close();
+    boolean sessionCommand = isSessionCommand(command);
+    if (sessionCommand && getSetting(command) == null) {
+      sessionModified = true;
+    }
+    CostGuard.Estimate estimate = costGuard == null || sessionCommand ? null : costGuard.check(this, command);
+    long start = System.nanoTime();
+    withRetry(command, () -> {
+      executeStatement(command);
+      return null;
+    });
+    if (sessionCommand) {
+      sessionCommands.add(command);
+    }
+    if (estimate != null) {
+      LOG.info("Statement completed in {} ms, estimated {}", HiveActionMetrics.millisSince(start), estimate);
+    }
+  }
+
+  private void executeStatement(String command) throws SQLException {
+    try (Statement statement = connection.getConnection().createStatement();
+         StatementWatchdog.Watch watch = watchdog.watch(statement, statementTimeoutMillis)) {
+      try {
+        if (statement instanceof HiveStatement) {
+          executeAsync((HiveStatement) statement, command);
+        } else {
+          statement.execute(command);
+        }
+      } catch (SQLException e) {
+        throw getFailure(watch, command, e);
+      }
+    }
+  }
+
+  /**
+   * Submits the command asynchronously and waits for it to complete, while the query log and progress of the
+   * running operation are streamed into the log. Failed statements are added to the metrics as well, but without
+   * their rows, so that the rows written by a failed attempt are not counted again when the statement is retried.
+   */
+  private void executeAsync(HiveStatement statement, String command) throws SQLException {
+    HiveQueryMonitor monitor = new HiveQueryMonitor(statement, MONITOR_INTERVAL_MILLIS);
+    long start = System.nanoTime();
+    long submitMillis = 0;
+    long updateCount = -1;
+    boolean completed = false;
+    try {
+      statement.setInPlaceUpdateStream(monitor);
+      statement.executeAsync(command);
+      submitMillis = HiveActionMetrics.millisSince(start);
+      monitor.start();
+      // polls the operation status until the operation completes and throws if it failed, servers which report the
+      // number of modified rows return it
+      updateCount = statement.getUpdateCount();
+      completed = true;
+    } finally {
+      // the remaining log lines include the compile and execution times
+      monitor.close();
+      long rows = !completed ? -1 : updateCount >= 0 ? updateCount : monitor.getRows();
+      if (completed && rows < 0 && monitor.getRowsUpperBound() >= 0) {
+        LOG.debug("Statement wrote at most {} rows according to table statistics", monitor.getRowsUpperBound());
+      }
+      if (metrics != null) {
+        metrics.addStatement(HiveActionMetrics.millisSince(start), submitMillis, monitor.getCompileMillis(),
+                             monitor.getExecutionMillis(), rows);
+      }
+    }
+  }
+
+  /**
+   * Executes a query and returns all rows, with every column converted to string.
+   */
+  public List<List<String>> executeQuery(String command) throws Exception {
+    return executeQuery(command, resultSet -> {
+      List<List<String>> rows = new ArrayList<>();
+      int columnCount = resultSet.getMetaData().getColumnCount();
+      while (resultSet.next()) {
+        List<String> row = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+          row.add(resultSet.getString(i));
+        }
+        rows.add(row);
+      }
+      return rows;
+    });
+  }
+
+  /**
+   * Executes a query and returns what the handler reads from its result set. The handler may be called again if
+   * the query is retried.
+   */
+  public <T> T executeQuery(String command, ResultSetHandler<T> handler) throws Exception {
+    return withRetry(command, () -> {
+      try (Statement statement = connection.getConnection().createStatement();
+           StatementWatchdog.Watch watch = watchdog.watch(statement, statementTimeoutMillis)) {
+        try (ResultSet resultSet = statement.executeQuery(command)) {
+          return handler.handle(resultSet);
+        } catch (SQLException e) {
+          throw getFailure(watch, command, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the failure to report for a failed statement, which describes the cancellation if the watchdog cancelled
+   * the statement.
+   */
+  private SQLException getFailure(StatementWatchdog.Watch watch, String command, SQLException failure) {
+    if (!watch.isCancelled()) {
+      return failure;
+    }
+    broken = true;
+    String message = String.format("Statement '%s' was cancelled because %s.", command, watch.getCancelReason());
+    return watch.isTimedOut() ? new SQLTimeoutException(message, TIMEOUT_SQL_STATE, failure)
+      : new SQLException(message, CANCELLED_SQL_STATE, failure);
+  }
+
+  /**
+   * Returns whether the failure is a statement cancelled by the watchdog, which must not be retried.
+   */
+  private static boolean isCancellation(SQLException failure) {
+    return TIMEOUT_SQL_STATE.equals(failure.getSQLState()) || CANCELLED_SQL_STATE.equals(failure.getSQLState());
+  }
+
+  /**
+   * Runs the call, retrying it on a new connection as long as the retry policy allows. A LOAD DATA statement whose
+   * input was moved completely by the failed attempt is not run again, since the failure was only reported after
+   * the statement completed.
+   */
+  private <T> T withRetry(String command, Callable<T> call) throws Exception {
+    int failures = 0;
+    while (true) {
+      try {
+        if (failures > 0) {
+          reconnect();
+          String loadPath = RetryPolicy.getLoadPath(command);
+          if (loadPath != null && isLoaded(loadPath)) {
+            LOG.info("All files of {} were loaded by the failed attempt, not running the statement again.", loadPath);
+            return null;
+          }
+        }
+        ConcurrencyLimiter.Permit permit = acquirePermit(command);
+        try {
+          return call.call();
+        } finally {
+          permit.close();
+        }
+      } catch (SQLException e) {
+        failures++;
+        if (isCancellation(e) || !retryPolicy.shouldRetry(command, e, failures)) {
+          throw e;
+        }
+        long delay = retryPolicy.getDelayMillis(failures);
+        LOG.warn("Statement failed with a transient error, retry {} of {} in {} ms: {}", failures,
+                 retryPolicy.getMaxRetries(), delay, e.getMessage());
+        TimeUnit.MILLISECONDS.sleep(delay);
+      }
+    }
+  }
+
+  /**
+   * Waits until the command may run. Session commands only change the state of the session and do not need a permit.
+   */
+  private ConcurrencyLimiter.Permit acquirePermit(String command) throws Exception {
+    if (maxConcurrentStatements <= 0 || isSessionCommand(command)) {
+      return ConcurrencyLimiter.NONE.acquire(connectionString, maxConcurrentStatements);
+    }
+    long start = System.nanoTime();
+    ConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(connectionString, maxConcurrentStatements);
+    long waitMillis = HiveActionMetrics.millisSince(start);
+    if (metrics != null) {
+      metrics.addConcurrencyWaitTime(waitMillis);
+    }
+    if (waitMillis >= LOGGED_WAIT_MILLIS) {
+      LOG.info("Waited {} ms for one of {} concurrent statement slots of HiveServer2.", waitMillis,
+               maxConcurrentStatements);
+    }
+    return permit;
+  }
+
+  /**
+   * Replaces the connection with a new one and replays the session commands on it.
+   */
+  private void reconnect() throws SQLException {
+    if (connection != null) {
+      pool.discard(connection);
+      connection = null;
+    }
+    broken = false;
+    connection = borrow();
+    for (String command : sessionCommands) {
+      executeStatement(command);
+    }
+  }
+
+  private HiveConnectionPool.PooledConnection borrow() throws SQLException {
+    long start = System.nanoTime();
+    HiveConnectionPool.PooledConnection borrowed = pool.borrow(connectionString, user, password, kerberosLogin);
+    if (metrics != null) {
+      metrics.addConnectTime(HiveActionMetrics.millisSince(start));
+    }
+    return borrowed;
+  }
+
+  /**
+   * Returns whether no files are left to load at the given path.
+   */
+  private static boolean isLoaded(String loadPath) {
+    try {
+      Path path = new Path(loadPath);
+      FileSystem fs = path.getFileSystem(new Configuration());
+      if (!fs.exists(path)) {
+        return true;
+      }
+      // hive does not load hidden files
+      return fs.isDirectory(path) && fs.listStatus(path, file -> !file.getName().startsWith("_")
+        && !file.getName().startsWith(".")).length == 0;
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.debug("Unable to check the files left at {}", loadPath, e);
+      return false;
+    }
+  }
+
+  /**
+   * Executes all statements in order in the same hive session, so that session level settings and temporary tables
+   * are visible to subsequent statements. Failed statements are logged individually. If stopOnError is false,
+   * remaining statements are still executed and a single exception describing all failures is thrown at the end.
+   */
+  public void executeScript(List<String> statements, boolean stopOnError) throws Exception {
+    List<String> failures = new ArrayList<>();
+    SQLException firstFailure = null;
+    for (int i = 0; i < statements.size(); i++) {
+      String command = statements.get(i);
+      LOG.debug("Executing statement {} of {}: {}", i + 1, statements.size(), command);
+      try {
+        execute(command);
+      } catch (SQLException e) {
+        LOG.error("Statement {} of {} failed: {}", i + 1, statements.size(), command, e);
+        failures.add(String.format("Statement %d '%s' failed: %s", i + 1, command, e.getMessage()));
+        firstFailure = firstFailure == null ? e : firstFailure;
+        if (stopOnError || Thread.currentThread().isInterrupted()) {
+          break;
+        }
+      }
+    }
+    if (firstFailure != null) {
+      throw new SQLException(String.format("%d of %d statements failed. %s", failures.size(), statements.size(),
+                                           String.join(" ", failures)), firstFailure);
+    }
   }
 
   public void cleanup() throws Exception {
-    connection.close();
-    DriverManager.deregisterDriver((Driver) driver);
+    if (connection == null) {
+      return;
+    }
+    if (sessionModified || broken || !resetSettings()) {
+      pool.discard(connection);
+    } else {
+      pool.release(connection);
+    }
+    connection = null;
+  }
+
+  /**
+   * Resets the settings changed by SET commands to their defaults, and returns whether the session can be reused.
+   */
+  private boolean resetSettings() {
+    String reset = getResetCommand(sessionCommands, connectionString);
+    if (reset == null) {
+      return false;
+    }
+    if (reset.isEmpty()) {
+      return true;
+    }
+    try (Statement statement = connection.getConnection().createStatement();
+         StatementWatchdog.Watch watch = watchdog.watch(statement, statementTimeoutMillis)) {
+      statement.execute(reset);
+      return !watch.isCancelled();
+    } catch (SQLException e) {
+      LOG.debug("Unable to reset the session settings, the connection is not reused.", e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the command resetting the settings changed by the given session commands, an empty string if no
+   * setting was changed or null if the session cannot be reset. Settings which are also given in the hive
+   * configuration list of the connection string cannot be reset, since RESET restores the server defaults.
+   */
+  @Nullable
+  public static String getResetCommand(List<String> commands, String connectionString) {
+    Set<String> connectionSettings = getConnectionSettings(connectionString);
+    Set<String> settings = new LinkedHashSet<>();
+    for (String command : commands) {
+      if (!isSessionCommand(command)) {
+        continue;
+      }
+      String setting = getSetting(command);
+      if (setting == null || connectionSettings.contains(setting)) {
+        return null;
+      }
+      settings.add(setting);
+    }
+    return settings.isEmpty() ? "" : "RESET " + String.join(" ", settings);
+  }
+
+  /**
+   * Returns the configuration setting changed by the command, or null if it is no SET command of a setting.
+   */
+  @Nullable
+  private static String getSetting(String command) {
+    Matcher matcher = SETTING_COMMAND.matcher(command);
+    return matcher.find() ? matcher.group(2) : null;
+  }
+
+  /**
+   * Returns the names of the settings in the hive configuration list of the connection string, which is given after
+   * '?' and before the hive variable list starting with '#'.
+   */
+  private static Set<String> getConnectionSettings(String connectionString) {
+    int start = connectionString.indexOf('?');
+    if (start < 0) {
+      return Collections.emptySet();
+    }
+    int end = connectionString.indexOf('#', start);
+    String list = connectionString.substring(start + 1, end < 0 ? connectionString.length() : end);
+    Set<String> settings = new HashSet<>();
+    for (String entry : list.split(";")) {
+      int separator = entry.indexOf('=');
+      settings.add((separator < 0 ? entry : entry.substring(0, separator)).trim());
+    }
+    return settings;
+  }
+
+  /**
+   * Reads the result of a query.
+   */
+  public interface ResultSetHandler<T> {
+    T handle(ResultSet resultSet) throws SQLException;
+  }
+
+  /**
+   * Returns whether the command changes session level state such as configuration, current database,
+   * resources or temporary objects.
+   */
+  public static boolean isSessionCommand(String command) {
+    return SESSION_COMMAND.matcher(command).find();
   }
 }
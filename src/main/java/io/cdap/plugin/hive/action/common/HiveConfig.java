@@ -20,7 +20,6 @@ import com.google.common.base.Strings;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Macro;
 import io.cdap.cdap.api.annotation.Name;
-import io.cdap.cdap.api.plugin.PluginConfig;
 import io.cdap.cdap.etl.api.FailureCollector;
 
 import java.util.Arrays;
@@ -31,50 +30,74 @@ import javax.annotation.Nullable;
 /**
  * Hive config
  */
-public class HiveConfig extends PluginConfig {
-  public static final String CONNECTION_STRING = "connectionString";
-  public static final String USER = "user";
-  public static final String PASSWORD = "password";
+public class HiveConfig extends HiveConnectionConfig {
   public static final String STATEMENT = "statement";
+  public static final String TUNING_RULES = "tuningRules";
+  public static final String COST_CHECK = "costCheck";
+  public static final String MAX_ESTIMATED_INPUT_SIZE = "maxEstimatedInputSize";
+  public static final String MAX_ESTIMATED_INPUT_ROWS = "maxEstimatedInputRows";
+  public static final String MAX_STAGES = "maxStages";
+  public static final String DISALLOWED_JOINS = "disallowedJoins";
+  public static final String CHECK_NONE = "none";
+  public static final String CHECK_WARN = "warn";
+  public static final String CHECK_FAIL = "fail";
 
-  private static final String CONNECTION_STRING_PREFIX = "jdbc:hive2://";
+  @Name(STATEMENT)
+  @Description("Hive command to execute")
+  @Nullable
+  @Macro
+  private String statement;
 
-  @Name(CONNECTION_STRING)
-  @Description("JDBC connection string including database name. Please use auth=delegationToken, " +
-    "CDAP platform will provide appropriate delegation token while running the pipeline")
+  @Name(TUNING_RULES)
+  @Description("Session settings applied depending on the estimated input size of the statement, as rules " +
+    "'threshold: key=value, key=value' separated by ';' or new lines, such as '0: hive.execution.engine=mr; " +
+    "10GB: hive.execution.engine=tez'. The settings of every rule whose threshold is not larger than the input size " +
+    "are applied, rules with larger thresholds override smaller ones. If not provided, no settings are applied.")
+  @Nullable
   @Macro
-  private String connectionString;
+  private String tuningRules;
 
-  @Name(USER)
-  @Description("User to use to connect to hive metastore database. " +
-    "Optional for databases that do not require authentication.")
+  @Name(COST_CHECK)
+  @Description("Whether to explain statements before they run and compare their estimated cost with the limits. One " +
+    "of 'none', 'warn' to log a warning or 'fail' to fail the run without executing the statement. Defaults to " +
+    "'none'.")
   @Nullable
   @Macro
-  private String user;
+  private String costCheck;
 
-  @Name(PASSWORD)
-  @Description("Password to use to connect to hive metastore database. " +
-    "Optional for databases that do not require authentication.")
+  @Name(MAX_ESTIMATED_INPUT_SIZE)
+  @Description("Maximum estimated size of the data read by a statement, in bytes with an optional unit such as " +
+    "500GB. If not provided, the size is not limited.")
   @Nullable
   @Macro
-  private String password;
+  private String maxEstimatedInputSize;
 
-  @Name(STATEMENT)
-  @Description("Hive command to execute")
+  @Name(MAX_ESTIMATED_INPUT_ROWS)
+  @Description("Maximum estimated number of rows read by a statement. If not provided, the rows are not limited.")
+  @Nullable
   @Macro
-  private String statement;
+  private Long maxEstimatedInputRows;
+
+  @Name(MAX_STAGES)
+  @Description("Maximum number of stages in the plan of a statement. If not provided, the stages are not limited.")
+  @Nullable
+  @Macro
+  private Integer maxStages;
+
+  @Name(DISALLOWED_JOINS)
+  @Description("Comma separated join strategies a statement must not use, out of 'map', 'smb' for sorted merge " +
+    "bucket map joins, 'shuffle' and 'cross' for cross products. If not provided, all joins are allowed.")
+  @Nullable
+  @Macro
+  private String disallowedJoins;
 
   public HiveConfig(String connectionString, String user, String password, String statement) {
-    this.connectionString = connectionString;
-    this.user = user;
-    this.password = password;
+    super(connectionString, user, password);
     this.statement = statement;
   }
 
   private HiveConfig(Builder<?> builder) {
-    connectionString = builder.connectionString;
-    user = builder.user;
-    password = builder.password;
+    super(builder.connectionString, builder.user, builder.password);
     statement = builder.statement;
   }
 
@@ -84,61 +107,105 @@ public class HiveConfig extends PluginConfig {
 
   public static Builder builder(HiveConfig copy) {
     return builder()
-      .setConnectionString(copy.connectionString)
-      .setUser(copy.user)
-      .setPassword(copy.password)
+      .setConnectionString(copy.getConnectionString())
+      .setUser(copy.getUser())
+      .setPassword(copy.getPassword())
       .setStatement(copy.statement);
   }
 
-  public String getConnectionString() {
-    return connectionString;
+  @Nullable
+  public String getStatement() {
+    return statement;
   }
 
+  /**
+   * Returns the adaptive tuning rules, or null if adaptive tuning is not configured.
+   *
+   * @throws IllegalArgumentException if the rules are invalid
+   */
   @Nullable
-  public String getUser() {
-    return user;
+  public AdaptiveTuning getAdaptiveTuning() {
+    return tuningRules == null || tuningRules.trim().isEmpty() ? null : AdaptiveTuning.parse(tuningRules);
   }
 
-  @Nullable
-  public String getPassword() {
-    return password;
+  public String getCostCheck() {
+    return Strings.isNullOrEmpty(costCheck) ? CHECK_NONE : costCheck.toLowerCase();
   }
 
-  public String getStatement() {
-    return statement;
+  /**
+   * Returns the guard checking the estimated cost of statements, or null if the cost check is 'none'.
+   *
+   * @throws IllegalArgumentException if a limit is invalid
+   */
+  @Nullable
+  public CostGuard getCostGuard() {
+    if (CHECK_NONE.equals(getCostCheck())) {
+      return null;
+    }
+    long maxBytes = Strings.isNullOrEmpty(maxEstimatedInputSize) ? 0 : AdaptiveTuning.parseSize(maxEstimatedInputSize);
+    return new CostGuard(CHECK_FAIL.equals(getCostCheck()), maxBytes,
+                         maxEstimatedInputRows == null ? 0 : maxEstimatedInputRows, maxStages == null ? 0 : maxStages,
+                         CostGuard.parseJoins(disallowedJoins));
   }
 
+  @Override
   public void validate(FailureCollector failureCollector) {
-    if (!containsMacro(CONNECTION_STRING) && !connectionString.startsWith(CONNECTION_STRING_PREFIX)) {
-      failureCollector.addFailure(
-        "Invalid connection string.",
-        "Connection String must comply with format - " +
-          "jdbc:hive2://<HiveHost>:<portNumber>/<databaseName>;auth=delegationToken")
-        .withConfigProperty(CONNECTION_STRING);
+    super.validate(failureCollector);
+
+    if (!containsMacro(TUNING_RULES)) {
+      try {
+        getAdaptiveTuning();
+      } catch (IllegalArgumentException e) {
+        failureCollector.addFailure(e.getMessage(), "Provide rules such as '0: hive.execution.engine=mr; " +
+          "10GB: hive.execution.engine=tez'.")
+          .withConfigProperty(TUNING_RULES);
+      }
     }
 
-    if (!containsMacro(USER) && !containsMacro(PASSWORD)) {
-      if (Strings.isNullOrEmpty(user) && !Strings.isNullOrEmpty(password)) {
-        failureCollector.addFailure(
-          "Username is not specified.",
-          "Ensure both username and password are provided.")
-          .withConfigProperty(USER);
+    validateCostCheck(failureCollector);
+  }
+
+  private void validateCostCheck(FailureCollector failureCollector) {
+    if (!containsMacro(COST_CHECK) && !Arrays.asList(CHECK_NONE, CHECK_WARN, CHECK_FAIL).contains(getCostCheck())) {
+      failureCollector.addFailure(String.format("Invalid cost check '%s'.", costCheck),
+                                  "Use one of 'none', 'warn' or 'fail'.")
+        .withConfigProperty(COST_CHECK);
+    }
+    if (!containsMacro(MAX_ESTIMATED_INPUT_SIZE) && !Strings.isNullOrEmpty(maxEstimatedInputSize)) {
+      try {
+        AdaptiveTuning.parseSize(maxEstimatedInputSize);
+      } catch (IllegalArgumentException e) {
+        failureCollector.addFailure(e.getMessage(), null)
+          .withConfigProperty(MAX_ESTIMATED_INPUT_SIZE);
       }
-      if (!Strings.isNullOrEmpty(user) && Strings.isNullOrEmpty(password)) {
-        failureCollector.addFailure(
-          "Password is not specified.",
-          "Ensure both username and password are provided.")
-          .withConfigProperty(PASSWORD);
+    }
+    if (!containsMacro(MAX_ESTIMATED_INPUT_ROWS) && maxEstimatedInputRows != null && maxEstimatedInputRows < 1) {
+      failureCollector.addFailure("Maximum estimated input rows must be at least 1.", null)
+        .withConfigProperty(MAX_ESTIMATED_INPUT_ROWS);
+    }
+    if (!containsMacro(MAX_STAGES) && maxStages != null && maxStages < 1) {
+      failureCollector.addFailure("Maximum stages must be at least 1.", null)
+        .withConfigProperty(MAX_STAGES);
+    }
+    if (!containsMacro(DISALLOWED_JOINS)) {
+      try {
+        CostGuard.parseJoins(disallowedJoins);
+      } catch (IllegalArgumentException e) {
+        failureCollector.addFailure(e.getMessage(), "Use 'map', 'smb', 'shuffle' or 'cross'.")
+          .withConfigProperty(DISALLOWED_JOINS);
       }
     }
   }
 
   public void validateImportStatement(FailureCollector failureCollector) {
     if (!containsMacro(STATEMENT)) {
+      if (statement == null || statement.trim().isEmpty()) {
+        failureCollector.addFailure("Statement must be specified.", null)
+          .withConfigProperty(STATEMENT);
+        return;
+      }
       // Load command should not allow local storage
-      List<String> statementCommandsList = Arrays.stream(statement.split(" ")).filter(value -> !value.isEmpty())
-        .collect(Collectors.toList());
-      if (statementCommandsList.get(2).equalsIgnoreCase("LOCAL")) {
+      if (isLocalLoad(statement)) {
         failureCollector.addFailure("Hive Import does not allow local file storage.",
                                     "Import data to HDFS location.")
           .withConfigProperty(STATEMENT);
@@ -146,6 +213,13 @@ public class HiveConfig extends PluginConfig {
     }
   }
 
+  protected static boolean isLocalLoad(String statement) {
+    List<String> statementCommandsList = Arrays.stream(statement.split("\\s+")).filter(value -> !value.isEmpty())
+      .collect(Collectors.toList());
+    return statementCommandsList.size() > 2 && statementCommandsList.get(0).equalsIgnoreCase("LOAD")
+      && statementCommandsList.get(2).equalsIgnoreCase("LOCAL");
+  }
+
   public static class Builder<T extends Builder<T>> {
     private String connectionString;
     private String user;
@@ -0,0 +1,295 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.plugin.PluginConfig;
+import io.cdap.cdap.etl.api.FailureCollector;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Settings to connect to HiveServer2, shared by all hive plugins.
+ */
+public class HiveConnectionConfig extends PluginConfig {
+  public static final String CONNECTION_STRING = "connectionString";
+  public static final String USER = "user";
+  public static final String PASSWORD = "password";
+  public static final String MAX_RETRIES = "maxRetries";
+  public static final String RETRY_DELAY = "retryDelay";
+  public static final String RETRYABLE_SQL_STATES = "retryableSqlStates";
+  public static final String RETRYABLE_EXCEPTIONS = "retryableExceptions";
+  public static final String STATEMENT_TIMEOUT = "statementTimeout";
+  public static final String MAX_CONCURRENT_STATEMENTS = "maxConcurrentStatements";
+  public static final String CONCURRENCY_LEASE_DIRECTORY = "concurrencyLeaseDirectory";
+  public static final String KERBEROS_PRINCIPAL = "kerberosPrincipal";
+  public static final String KERBEROS_KEYTAB = "kerberosKeytab";
+  public static final String CACHE_DELEGATION_TOKEN = "cacheDelegationToken";
+
+  private static final String CONNECTION_STRING_PREFIX = "jdbc:hive2://";
+
+  @Name(CONNECTION_STRING)
+  @Description("JDBC connection string including database name. Please use auth=delegationToken, " +
+    "CDAP platform will provide appropriate delegation token while running the pipeline")
+  @Macro
+  private String connectionString;
+
+  @Name(USER)
+  @Description("User to use to connect to hive metastore database. " +
+    "Optional for databases that do not require authentication.")
+  @Nullable
+  @Macro
+  private String user;
+
+  @Name(PASSWORD)
+  @Description("Password to use to connect to hive metastore database. " +
+    "Optional for databases that do not require authentication.")
+  @Nullable
+  @Macro
+  private String password;
+
+  @Name(MAX_RETRIES)
+  @Description("Number of times an idempotent statement is retried on a new connection after a transient failure, " +
+    "such as a HiveServer2 restart or a lost YARN container. 0 disables retries. Defaults to 3.")
+  @Nullable
+  @Macro
+  private Integer maxRetries;
+
+  @Name(RETRY_DELAY)
+  @Description("Seconds to wait before the first retry. The delay doubles with every retry, up to 5 minutes, and is " +
+    "randomized so that concurrent statements do not retry at the same time. Defaults to 5.")
+  @Nullable
+  @Macro
+  private Long retryDelay;
+
+  @Name(RETRYABLE_SQL_STATES)
+  @Description("Comma separated SQLStates, or SQLState prefixes, of transient failures. Defaults to the connection " +
+    "failures '08001,08003,08004,08006,08007'. Add '08S01' to also retry jobs which failed while running.")
+  @Nullable
+  @Macro
+  private String retryableSqlStates;
+
+  @Name(RETRYABLE_EXCEPTIONS)
+  @Description("Comma separated class names of exceptions which indicate transient failures, matched against the " +
+    "exception and its causes. Defaults to thrift transport and socket exceptions.")
+  @Nullable
+  @Macro
+  private String retryableExceptions;
+
+  @Name(STATEMENT_TIMEOUT)
+  @Description("Seconds a statement may run before it is cancelled on HiveServer2 and the run fails. Timed out " +
+    "statements are not retried. 0 disables the timeout. Defaults to 0.")
+  @Nullable
+  @Macro
+  private Long statementTimeout;
+
+  @Name(MAX_CONCURRENT_STATEMENTS)
+  @Description("Maximum number of statements running at the same time against the HiveServer2 of the connection " +
+    "string. Statements beyond the limit wait, and are admitted in the order they started waiting. 0 disables the " +
+    "limit. Defaults to 0.")
+  @Nullable
+  @Macro
+  private Integer maxConcurrentStatements;
+
+  @Name(CONCURRENCY_LEASE_DIRECTORY)
+  @Description("Directory shared by all runs, such as a directory on HDFS, in which lease files coordinate the " +
+    "concurrent statement limit across runs. If not provided, the limit only applies to statements of the same JVM.")
+  @Nullable
+  @Macro
+  private String concurrencyLeaseDirectory;
+
+  @Name(KERBEROS_PRINCIPAL)
+  @Description("Kerberos principal connections authenticate as, logging in with the keytab. The login is cached and " +
+    "renewed before its tickets expire. The connection string must contain the principal of HiveServer2. If not " +
+    "provided, connections use the credentials of the pipeline.")
+  @Nullable
+  @Macro
+  private String kerberosPrincipal;
+
+  @Name(KERBEROS_KEYTAB)
+  @Description("Path of the keytab of the Kerberos principal on the hosts running the pipeline.")
+  @Nullable
+  @Macro
+  private String kerberosKeytab;
+
+  @Name(CACHE_DELEGATION_TOKEN)
+  @Description("Whether to obtain a HiveServer2 delegation token for the Kerberos principal and authenticate later " +
+    "connections with the cached token, which is faster than authenticating with Kerberos. Tokens are renewed " +
+    "before they expire. Defaults to 'yes'.")
+  @Nullable
+  @Macro
+  private String cacheDelegationToken;
+
+  public HiveConnectionConfig(String connectionString, String user, String password) {
+    this.connectionString = connectionString;
+    this.user = user;
+    this.password = password;
+  }
+
+  public String getConnectionString() {
+    return connectionString;
+  }
+
+  @Nullable
+  public String getUser() {
+    return user;
+  }
+
+  @Nullable
+  public String getPassword() {
+    return password;
+  }
+
+  /**
+   * Returns the policy deciding which failed statements are retried.
+   */
+  public RetryPolicy getRetryPolicy() {
+    return new RetryPolicy(
+      maxRetries == null ? RetryPolicy.DEFAULT_MAX_RETRIES : maxRetries,
+      TimeUnit.SECONDS.toMillis(retryDelay == null ? RetryPolicy.DEFAULT_INITIAL_DELAY_SECONDS : retryDelay),
+      Strings.isNullOrEmpty(retryableSqlStates) ? RetryPolicy.DEFAULT_SQL_STATES :
+        RetryPolicy.parseList(retryableSqlStates),
+      Strings.isNullOrEmpty(retryableExceptions) ? RetryPolicy.DEFAULT_EXCEPTIONS :
+        RetryPolicy.parseList(retryableExceptions));
+  }
+
+  public long getStatementTimeoutMillis() {
+    return statementTimeout == null ? 0 : TimeUnit.SECONDS.toMillis(statementTimeout);
+  }
+
+  public int getMaxConcurrentStatements() {
+    return maxConcurrentStatements == null ? 0 : maxConcurrentStatements;
+  }
+
+  /**
+   * Returns the limiter coordinating the concurrent statement limit, lease files in the concurrency lease directory
+   * if one is configured, otherwise a limiter shared by the JVM.
+   */
+  public ConcurrencyLimiter getConcurrencyLimiter() throws IOException {
+    return getConcurrencyLimiter(getMaxConcurrentStatements(), getConcurrencyLeaseDirectory(), new Configuration());
+  }
+
+  /**
+   * Returns the limiter coordinating the given concurrent statement limit, for code which only has the settings of
+   * the config, such as the tasks reading source splits.
+   */
+  public static ConcurrencyLimiter getConcurrencyLimiter(int maxConcurrentStatements,
+                                                         @Nullable String concurrencyLeaseDirectory,
+                                                         Configuration conf) throws IOException {
+    if (maxConcurrentStatements <= 0) {
+      return ConcurrencyLimiter.NONE;
+    }
+    if (Strings.isNullOrEmpty(concurrencyLeaseDirectory)) {
+      return InMemoryConcurrencyLimiter.getInstance();
+    }
+    Path directory = new Path(concurrencyLeaseDirectory);
+    return new FileLeaseConcurrencyLimiter(directory.getFileSystem(conf), directory);
+  }
+
+  @Nullable
+  public String getConcurrencyLeaseDirectory() {
+    return Strings.isNullOrEmpty(concurrencyLeaseDirectory) ? null : concurrencyLeaseDirectory;
+  }
+
+  @Nullable
+  public String getKerberosPrincipal() {
+    return Strings.isNullOrEmpty(kerberosPrincipal) ? null : kerberosPrincipal;
+  }
+
+  @Nullable
+  public String getKerberosKeytab() {
+    return Strings.isNullOrEmpty(kerberosKeytab) ? null : kerberosKeytab;
+  }
+
+  public boolean isCacheDelegationToken() {
+    return !"no".equalsIgnoreCase(cacheDelegationToken);
+  }
+
+  /**
+   * Returns the Kerberos login connections authenticate with, or null if connections use the credentials of the
+   * pipeline.
+   */
+  @Nullable
+  public KerberosSessionCache.Login getKerberosLogin() {
+    if (getKerberosPrincipal() == null) {
+      return null;
+    }
+    return new KerberosSessionCache.Login(getKerberosPrincipal(), getKerberosKeytab(), isCacheDelegationToken());
+  }
+
+  public void validate(FailureCollector failureCollector) {
+    if (!containsMacro(CONNECTION_STRING) && !connectionString.startsWith(CONNECTION_STRING_PREFIX)) {
+      failureCollector.addFailure(
+        "Invalid connection string.",
+        "Connection String must comply with format - " +
+          "jdbc:hive2://<HiveHost>:<portNumber>/<databaseName>;auth=delegationToken")
+        .withConfigProperty(CONNECTION_STRING);
+    }
+
+    if (!containsMacro(USER) && !containsMacro(PASSWORD)) {
+      if (Strings.isNullOrEmpty(user) && !Strings.isNullOrEmpty(password)) {
+        failureCollector.addFailure(
+          "Username is not specified.",
+          "Ensure both username and password are provided.")
+          .withConfigProperty(USER);
+      }
+      if (!Strings.isNullOrEmpty(user) && Strings.isNullOrEmpty(password)) {
+        failureCollector.addFailure(
+          "Password is not specified.",
+          "Ensure both username and password are provided.")
+          .withConfigProperty(PASSWORD);
+      }
+    }
+
+    if (!containsMacro(MAX_RETRIES) && maxRetries != null && maxRetries < 0) {
+      failureCollector.addFailure("Maximum number of retries must not be negative.", "Use 0 to disable retries.")
+        .withConfigProperty(MAX_RETRIES);
+    }
+    if (!containsMacro(RETRY_DELAY) && retryDelay != null && retryDelay < 0) {
+      failureCollector.addFailure("Retry delay must not be negative.", null)
+        .withConfigProperty(RETRY_DELAY);
+    }
+    if (!containsMacro(STATEMENT_TIMEOUT) && statementTimeout != null && statementTimeout < 0) {
+      failureCollector.addFailure("Statement timeout must not be negative.", "Use 0 to disable the timeout.")
+        .withConfigProperty(STATEMENT_TIMEOUT);
+    }
+    if (!containsMacro(MAX_CONCURRENT_STATEMENTS) && maxConcurrentStatements != null && maxConcurrentStatements < 0) {
+      failureCollector.addFailure("Maximum number of concurrent statements must not be negative.",
+                                  "Use 0 to disable the limit.")
+        .withConfigProperty(MAX_CONCURRENT_STATEMENTS);
+    }
+    if (!containsMacro(KERBEROS_PRINCIPAL) && !containsMacro(KERBEROS_KEYTAB)
+      && (getKerberosPrincipal() == null) != (getKerberosKeytab() == null)) {
+      failureCollector.addFailure("Kerberos principal and keytab must be specified together.",
+                                  "Provide both the principal and the path of its keytab.")
+        .withConfigProperty(getKerberosPrincipal() == null ? KERBEROS_PRINCIPAL : KERBEROS_KEYTAB);
+    }
+    if (!containsMacro(CACHE_DELEGATION_TOKEN) && !Strings.isNullOrEmpty(cacheDelegationToken)
+      && !"yes".equalsIgnoreCase(cacheDelegationToken) && !"no".equalsIgnoreCase(cacheDelegationToken)) {
+      failureCollector.addFailure(String.format("Invalid value '%s' for caching delegation tokens.",
+                                                cacheDelegationToken), "Use 'yes' or 'no'.")
+        .withConfigProperty(CACHE_DELEGATION_TOKEN);
+    }
+  }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Per-JVM pool of HiveServer2 connections keyed by connection string and credentials. Connections are validated
+ * before they are handed out, idle connections are closed after {@link #DEFAULT_IDLE_TIMEOUT_MILLIS} and at most
+ * {@link #DEFAULT_MAX_IDLE_PER_KEY} idle connections are kept for each key.
+ *
+ * At most {@link #DEFAULT_MAX_OPEN_PER_KEY} connections, borrowed or idle, are open for each key. Borrowers beyond
+ * the limit wait until a connection is returned or closed, and fail after {@link #DEFAULT_BORROW_TIMEOUT_MILLIS}.
+ */
+public class HiveConnectionPool {
+  public static final int DEFAULT_MAX_IDLE_PER_KEY = 8;
+  public static final int DEFAULT_MAX_OPEN_PER_KEY = 32;
+  public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final Logger LOG = LoggerFactory.getLogger(HiveConnectionPool.class);
+  private static final String DRIVER_CLASS = "org.apache.hive.jdbc.HiveDriver";
+  private static final HiveConnectionPool INSTANCE = new HiveConnectionPool(
+    HiveConnectionPool::connect, DEFAULT_MAX_IDLE_PER_KEY, DEFAULT_IDLE_TIMEOUT_MILLIS,
+    DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+
+  private static Driver driver;
+
+  private final ConnectionFactory connectionFactory;
+  private final int maxIdlePerKey;
+  private final int maxOpenPerKey;
+  private final long borrowTimeoutMillis;
+  private final long idleTimeoutMillis;
+  private final int validationTimeoutSeconds;
+  private final KerberosSessionCache sessionCache;
+  private final Map<Key, Deque<PooledConnection>> idleConnections = new HashMap<>();
+  // number of open connections per key, borrowed or idle
+  private final Map<Key, Integer> openConnections = new HashMap<>();
+  private ScheduledExecutorService evictor;
+
+  public HiveConnectionPool(ConnectionFactory connectionFactory, int maxIdlePerKey, long idleTimeoutMillis,
+                            int validationTimeoutSeconds) {
+    this(connectionFactory, maxIdlePerKey, DEFAULT_MAX_OPEN_PER_KEY, DEFAULT_BORROW_TIMEOUT_MILLIS, idleTimeoutMillis,
+         validationTimeoutSeconds, KerberosSessionCache.getInstance());
+  }
+
+  /**
+   * @param maxOpenPerKey maximum number of borrowed and idle connections per key
+   * @param borrowTimeoutMillis time a borrower waits for a connection once the limit of open connections is reached
+   */
+  public HiveConnectionPool(ConnectionFactory connectionFactory, int maxIdlePerKey, int maxOpenPerKey,
+                            long borrowTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds,
+                            KerberosSessionCache sessionCache) {
+    this.connectionFactory = connectionFactory;
+    this.sessionCache = sessionCache;
+    this.maxIdlePerKey = maxIdlePerKey;
+    this.maxOpenPerKey = maxOpenPerKey;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.validationTimeoutSeconds = validationTimeoutSeconds;
+  }
+
+  public static HiveConnectionPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns a healthy connection for the given connection string and credentials, reusing an idle one if possible.
+   */
+  public PooledConnection borrow(String connectionString, @Nullable String user,
+                                 @Nullable String password) throws SQLException {
+    return borrow(connectionString, user, password, null);
+  }
+
+  /**
+   * Returns a healthy connection for the given connection string and credentials, reusing an idle one if possible.
+   * New connections authenticate with the cached Kerberos login or delegation token of the given login, if any.
+   * Waits if the limit of open connections for the key is reached.
+   */
+  public PooledConnection borrow(String connectionString, @Nullable String user, @Nullable String password,
+                                 @Nullable KerberosSessionCache.Login login) throws SQLException {
+    Key key = new Key(connectionString, user, password, login == null ? null : login.getPrincipal());
+    PooledConnection pooled;
+    while ((pooled = acquire(key)) != null) {
+      if (isHealthy(pooled)) {
+        LOG.debug("Reusing pooled Hive connection for {}", key);
+        return pooled;
+      }
+      closeQuietly(pooled);
+    }
+    LOG.debug("Opening new Hive connection for {}", key);
+    try {
+      Connection connection = login == null ? connectionFactory.create(connectionString, user, password) :
+        sessionCache.connect(login, connectionString, url -> connectionFactory.create(url, user, password));
+      return new PooledConnection(key, connection);
+    } catch (SQLException | RuntimeException e) {
+      closed(key);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the connection to the pool so that it can be reused by subsequent actions.
+   */
+  public void release(PooledConnection pooled) {
+    pooled.lastUsed = System.currentTimeMillis();
+    synchronized (this) {
+      Deque<PooledConnection> idle = idleConnections.computeIfAbsent(pooled.key, k -> new ArrayDeque<>());
+      if (idle.size() < maxIdlePerKey) {
+        idle.addFirst(pooled);
+        startEvictor();
+        notifyAll();
+        return;
+      }
+    }
+    closeQuietly(pooled);
+  }
+
+  /**
+   * Closes the connection instead of returning it to the pool, for connections whose session state can not be shared.
+   */
+  public void discard(PooledConnection pooled) {
+    closeQuietly(pooled);
+  }
+
+  /**
+   * Closes all idle connections which have not been used for longer than the idle timeout.
+   */
+  public void evictIdle() {
+    long threshold = System.currentTimeMillis() - idleTimeoutMillis;
+    List<PooledConnection> expired = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Deque<PooledConnection>> iterator = idleConnections.values().iterator();
+      while (iterator.hasNext()) {
+        Deque<PooledConnection> idle = iterator.next();
+        idle.stream().filter(pooled -> pooled.lastUsed < threshold).forEach(expired::add);
+        idle.removeAll(expired);
+        if (idle.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    }
+    expired.forEach(this::closeQuietly);
+  }
+
+  /**
+   * Closes all idle connections.
+   */
+  public void close() {
+    List<PooledConnection> idle = new ArrayList<>();
+    synchronized (this) {
+      idleConnections.values().forEach(idle::addAll);
+      idleConnections.clear();
+      if (evictor != null) {
+        evictor.shutdownNow();
+        evictor = null;
+      }
+    }
+    idle.forEach(this::closeQuietly);
+  }
+
+  public synchronized int getIdleCount() {
+    return idleConnections.values().stream().mapToInt(Deque::size).sum();
+  }
+
+  public synchronized int getOpenCount() {
+    return openConnections.values().stream().mapToInt(Integer::intValue).sum();
+  }
+
+  /**
+   * Returns an idle connection of the key, or reserves a slot for a new connection and returns null. Waits until
+   * either is possible, up to the borrow timeout.
+   */
+  @Nullable
+  private synchronized PooledConnection acquire(Key key) throws SQLException {
+    long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+    while (true) {
+      Deque<PooledConnection> idle = idleConnections.get(key);
+      if (idle != null && !idle.isEmpty()) {
+        return idle.pollFirst();
+      }
+      int open = openConnections.getOrDefault(key, 0);
+      if (open < maxOpenPerKey) {
+        openConnections.put(key, open + 1);
+        return null;
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new SQLException(String.format("Timed out after %d ms waiting for one of the %d Hive connections of %s.",
+                                             borrowTimeoutMillis, maxOpenPerKey, key));
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a Hive connection.", e);
+      }
+    }
+  }
+
+  /**
+   * Releases the slot of a connection of the key which was closed or could not be opened.
+   */
+  private synchronized void closed(Key key) {
+    openConnections.computeIfPresent(key, (k, open) -> open > 1 ? open - 1 : null);
+    notifyAll();
+  }
+
+  private boolean isHealthy(PooledConnection pooled) {
+    if (System.currentTimeMillis() - pooled.lastUsed > idleTimeoutMillis) {
+      return false;
+    }
+    try {
+      return !pooled.connection.isClosed() && pooled.connection.isValid(validationTimeoutSeconds);
+    } catch (SQLException e) {
+      LOG.debug("Pooled Hive connection for {} failed health check", pooled.key, e);
+      return false;
+    }
+  }
+
+  private synchronized void startEvictor() {
+    if (evictor != null) {
+      return;
+    }
+    evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "hive-connection-pool-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(1000L, idleTimeoutMillis / 2);
+    evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void closeQuietly(PooledConnection pooled) {
+    try {
+      pooled.connection.close();
+    } catch (SQLException e) {
+      LOG.debug("Failed to close Hive connection for {}", pooled.key, e);
+    } finally {
+      closed(pooled.key);
+    }
+  }
+
+  private static Connection connect(String connectionString, @Nullable String user,
+                                    @Nullable String password) throws SQLException {
+    Properties properties = new Properties();
+    if (user != null) {
+      properties.setProperty("user", user);
+    }
+    if (password != null) {
+      properties.setProperty("password", password);
+    }
+    Connection connection = getDriver().connect(connectionString, properties);
+    if (connection == null) {
+      throw new SQLException(String.format("Hive driver does not accept connection string '%s'", connectionString));
+    }
+    return connection;
+  }
+
+  /**
+   * Loads the Hive JDBC driver once per JVM. Connections are opened through the driver instance directly, so the
+   * driver does not have to be registered with and deregistered from the {@link java.sql.DriverManager} on every run.
+   */
+  private static synchronized Driver getDriver() throws SQLException {
+    if (driver == null) {
+      try {
+        driver = (Driver) Class.forName(DRIVER_CLASS).newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new SQLException("Unable to load Hive JDBC driver " + DRIVER_CLASS, e);
+      }
+    }
+    return driver;
+  }
+
+  /**
+   * Opens new physical connections for the pool.
+   */
+  public interface ConnectionFactory {
+    Connection create(String connectionString, @Nullable String user, @Nullable String password) throws SQLException;
+  }
+
+  /**
+   * A connection handed out by the pool.
+   */
+  public static final class PooledConnection {
+    private final Key key;
+    private final Connection connection;
+    private volatile long lastUsed;
+
+    private PooledConnection(Key key, Connection connection) {
+      this.key = key;
+      this.connection = connection;
+      this.lastUsed = System.currentTimeMillis();
+    }
+
+    public Connection getConnection() {
+      return connection;
+    }
+  }
+
+  /**
+   * Pool key consisting of connection string, user, password and Kerberos principal. Sessions are only shared by
+   * borrowers presenting the same credentials, so that a wrong password never gets a session authenticated by
+   * another run. The password is kept as hash.
+   */
+  private static final class Key {
+    private final String connectionString;
+    private final String user;
+    private final String passwordHash;
+    private final String principal;
+
+    private Key(String connectionString, @Nullable String user, @Nullable String password,
+                @Nullable String principal) {
+      this.connectionString = connectionString;
+      this.user = user;
+      this.passwordHash = password == null ? null :
+        Hashing.sha256().hashString(password, StandardCharsets.UTF_8).toString();
+      this.principal = principal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key that = (Key) o;
+      return connectionString.equals(that.connectionString) && Objects.equals(user, that.user)
+        && Objects.equals(passwordHash, that.passwordHash) && Objects.equals(principal, that.principal);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(connectionString, user, passwordHash, principal);
+    }
+
+    @Override
+    public String toString() {
+      // connection string is not logged as it may contain credentials
+      return principal == null ? "user " + user : "user " + user + ", principal " + principal;
+    }
+  }
+}
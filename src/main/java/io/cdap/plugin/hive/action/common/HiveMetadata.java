@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Reads table metadata from the hive metastore through HiveServer2.
+ */
+public final class HiveMetadata {
+  private static final String PARTITION_INFORMATION = "# Partition Information";
+
+  private HiveMetadata() {
+  }
+
+  /**
+   * Returns the rows returned by DESCRIBE for the table, which list the columns followed by the partition columns.
+   */
+  public static List<List<String>> describe(HiveCommandExecutor executor, String table) throws Exception {
+    return executor.executeQuery("DESCRIBE " + table);
+  }
+
+  /**
+   * Returns the rows returned by DESCRIBE FORMATTED for the table or partition, such as "t PARTITION (dt='x')",
+   * which list the columns followed by details such as the location and storage format.
+   */
+  public static List<List<String>> describeFormatted(HiveCommandExecutor executor, String tableOrPartition)
+    throws Exception {
+    return executor.executeQuery("DESCRIBE FORMATTED " + tableOrPartition);
+  }
+
+  /**
+   * Returns the value of a detail listed by DESCRIBE FORMATTED, such as "Location:" or "InputFormat:", or null if
+   * the detail is not listed.
+   */
+  @Nullable
+  public static String parseDetail(List<List<String>> describeRows, String name) {
+    for (List<String> row : describeRows) {
+      if (row.size() > 1 && row.get(0) != null && row.get(0).trim().equals(name)) {
+        return row.get(1) == null ? null : row.get(1).trim();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the value of a table parameter listed by DESCRIBE FORMATTED, such as "transient_lastDdlTime", or null if
+   * the parameter is not listed.
+   */
+  @Nullable
+  public static String parseTableParameter(List<List<String>> describeRows, String name) {
+    for (List<String> row : describeRows) {
+      if (row.size() > 2 && row.get(1) != null && row.get(1).trim().equals(name)) {
+        return row.get(2) == null ? null : row.get(2).trim();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the partition columns of the table, an empty list if the table is not partitioned.
+   */
+  public static List<String> getPartitionColumns(HiveCommandExecutor executor, String table) throws Exception {
+    return parsePartitionColumns(describe(executor, table));
+  }
+
+  /**
+   * Returns the names of all partitions of the table, such as dt=2020-01-01/region=us.
+   */
+  public static List<String> getPartitions(HiveCommandExecutor executor, String table) throws Exception {
+    return executor.executeQuery("SHOW PARTITIONS " + table).stream()
+      .map(row -> row.get(0))
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the partition clause of a partition name as returned by SHOW PARTITIONS, for example
+   * " PARTITION (dt='2020-01-01', region='us')" for dt=2020-01-01/region=us.
+   */
+  public static String getPartitionClause(String partitionName) {
+    List<String> values = new ArrayList<>();
+    for (String keyValue : partitionName.split("/")) {
+      int index = keyValue.indexOf('=');
+      if (index < 0) {
+        throw new IllegalArgumentException(String.format("Invalid partition name '%s'.", partitionName));
+      }
+      values.add(keyValue.substring(0, index) + "="
+                   + StatementSplit.quote(StatementSplit.unescapePathName(keyValue.substring(index + 1))));
+    }
+    return " PARTITION (" + String.join(", ", values) + ")";
+  }
+
+  /**
+   * Parses the columns stored in the data files from the rows returned by DESCRIBE, which are listed before the
+   * partition information. Partition columns are not included.
+   */
+  public static List<String> parseColumns(List<List<String>> describeRows) {
+    List<String> columns = new ArrayList<>();
+    for (List<String> row : describeRows) {
+      String name = row.isEmpty() || row.get(0) == null ? "" : row.get(0).trim();
+      if (name.isEmpty() || name.startsWith("#")) {
+        break;
+      }
+      columns.add(name);
+    }
+    // DESCRIBE lists partition columns along with the data columns, and again in the partition information
+    columns.removeAll(parsePartitionColumns(describeRows));
+    return columns;
+  }
+
+  /**
+   * Parses the names and types of all columns from the rows returned by DESCRIBE, the data columns followed by the
+   * partition columns, in the order of the rows of a SELECT * from the table.
+   */
+  public static Map<String, String> parseColumnTypes(List<List<String>> describeRows) {
+    Map<String, String> columns = new LinkedHashMap<>();
+    for (List<String> row : describeRows) {
+      String name = row.isEmpty() || row.get(0) == null ? "" : row.get(0).trim();
+      if (name.isEmpty() || name.startsWith("#")) {
+        break;
+      }
+      columns.put(name, row.size() > 1 && row.get(1) != null ? row.get(1).trim() : "string");
+    }
+    return columns;
+  }
+
+  /**
+   * Parses the partition columns from the rows returned by DESCRIBE, where partition columns are listed again
+   * after a '# Partition Information' row.
+   */
+  public static List<String> parsePartitionColumns(List<List<String>> describeRows) {
+    List<String> columns = new ArrayList<>();
+    boolean partitionSection = false;
+    for (List<String> row : describeRows) {
+      String name = row.isEmpty() || row.get(0) == null ? "" : row.get(0).trim();
+      if (name.startsWith(PARTITION_INFORMATION)) {
+        partitionSection = true;
+      } else if (partitionSection && name.startsWith("#")) {
+        if (!columns.isEmpty()) {
+          // start of the next section
+          break;
+        }
+      } else if (partitionSection && !name.isEmpty()) {
+        columns.add(name);
+      } else if (partitionSection && !columns.isEmpty()) {
+        break;
+      }
+    }
+    return columns;
+  }
+}
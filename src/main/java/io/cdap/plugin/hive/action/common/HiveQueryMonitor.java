@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.hive.jdbc.HiveStatement;
+import org.apache.hive.jdbc.logs.InPlaceUpdateStream;
+import org.apache.hive.service.rpc.thrift.TJobExecutionStatus;
+import org.apache.hive.service.rpc.thrift.TProgressUpdateResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams the operation log and the progress of a running hive statement into the plugin log. Query log lines
+ * include the map/reduce progress of MapReduce jobs, progress updates report the state of each Tez vertex.
+ * The compile and execution times and the records written according to the query counters are kept for metrics.
+ */
+public class HiveQueryMonitor implements InPlaceUpdateStream, AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(HiveQueryMonitor.class);
+  private static final int LOG_FETCH_SIZE = 1000;
+  private static final Pattern COMPILE_TIME = Pattern.compile(
+    "Completed compiling command\\(queryId=[^)]*\\); Time taken: ([0-9.]+) seconds");
+  private static final Pattern EXECUTION_TIME = Pattern.compile(
+    "Completed executing command\\(queryId=[^)]*\\); Time taken: ([0-9.]+) seconds");
+  // table and partition statistics updated by the statement, such as 'Table db.t stats: [numFiles=1, numRows=10, ...]',
+  // which count all rows of the table or partition after the statement, not the rows the statement wrote
+  private static final Pattern NUM_ROWS = Pattern.compile("stats: \\[.*\\bnumRows=([0-9]+)");
+  // records written by each file sink according to the query counters, such as 'RECORDS_OUT_0: 10', which hive logs
+  // for Tez queries if hive.tez.exec.print.summary is enabled
+  private static final Pattern RECORDS_OUT = Pattern.compile("\\b(RECORDS_OUT_[0-9]+\\S*): ([0-9]+)\\s*$");
+
+  private final HiveStatement statement;
+  private final long intervalMillis;
+  private final EventNotifier eventNotifier = new EventNotifier();
+  private final Object logLock = new Object();
+  private final Map<String, Long> recordsOut = new ConcurrentHashMap<>();
+  private ScheduledExecutorService poller;
+  private String lastProgress;
+  private long lastProgressTime;
+  private volatile long compileMillis = -1;
+  private volatile long executionMillis = -1;
+  private volatile long statisticsRows = -1;
+
+  public HiveQueryMonitor(HiveStatement statement, long intervalMillis) {
+    this.statement = statement;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Starts polling the operation log of the statement. Must be called after the statement was submitted.
+   */
+  public void start() {
+    poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "hive-query-log");
+      thread.setDaemon(true);
+      return thread;
+    });
+    poller.scheduleWithFixedDelay(this::fetchLogs, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void update(TProgressUpdateResp response) {
+    String progress = formatProgress(response);
+    long now = System.currentTimeMillis();
+    boolean complete = response.getStatus() == TJobExecutionStatus.COMPLETE;
+    if (progress.equals(lastProgress) || (!complete && now - lastProgressTime < intervalMillis)) {
+      return;
+    }
+    LOG.info(progress);
+    lastProgress = progress;
+    lastProgressTime = now;
+  }
+
+  @Override
+  public EventNotifier getEventNotifier() {
+    return eventNotifier;
+  }
+
+  /**
+   * Stops polling and logs the remaining operation log lines.
+   */
+  @Override
+  public void close() {
+    if (poller != null) {
+      poller.shutdownNow();
+      try {
+        poller.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    fetchLogs();
+  }
+
+  private void fetchLogs() {
+    synchronized (logLock) {
+      try {
+        while (statement.hasMoreLogs()) {
+          List<String> lines = statement.getQueryLog(true, LOG_FETCH_SIZE);
+          if (lines.isEmpty()) {
+            break;
+          }
+          for (String line : lines) {
+            LOG.info("[hive] {}", line);
+            parseLine(line);
+          }
+        }
+      } catch (SQLException e) {
+        // the statement is closed or the server does not keep operation logs
+        LOG.trace("Unable to fetch hive query log", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the compile time reported by hive, -1 if it was not reported.
+   */
+  public long getCompileMillis() {
+    return compileMillis;
+  }
+
+  /**
+   * Returns the execution time reported by hive, which excludes the time the operation waited for a handler
+   * thread of HiveServer2, -1 if it was not reported.
+   */
+  public long getExecutionMillis() {
+    return executionMillis;
+  }
+
+  /**
+   * Returns the number of records the statement wrote according to the file sink counters of the query, -1 if they
+   * were not reported.
+   */
+  public long getRows() {
+    return recordsOut.isEmpty() ? -1 : recordsOut.values().stream().mapToLong(Long::longValue).sum();
+  }
+
+  /**
+   * Returns the total number of rows of the tables and partitions the statement wrote to, according to the
+   * statistics hive updated, which is an upper bound of the rows the statement wrote. Returns -1 if no statistics
+   * were reported.
+   */
+  public long getRowsUpperBound() {
+    return statisticsRows;
+  }
+
+  /**
+   * Picks up compile and execution times, table statistics and file sink counters from a line of the operation log.
+   */
+  public void parseLine(String line) {
+    Matcher matcher = COMPILE_TIME.matcher(line);
+    if (matcher.find()) {
+      compileMillis = toMillis(matcher.group(1));
+      return;
+    }
+    matcher = EXECUTION_TIME.matcher(line);
+    if (matcher.find()) {
+      executionMillis = toMillis(matcher.group(1));
+      return;
+    }
+    matcher = NUM_ROWS.matcher(line);
+    if (matcher.find()) {
+      statisticsRows = Math.max(statisticsRows, 0) + Long.parseLong(matcher.group(1));
+      return;
+    }
+    matcher = RECORDS_OUT.matcher(line);
+    if (matcher.find()) {
+      // counters are totals, a counter logged again replaces the previous value
+      recordsOut.put(matcher.group(1), Long.parseLong(matcher.group(2)));
+    }
+  }
+
+  private static long toMillis(String seconds) {
+    return Math.round(Double.parseDouble(seconds) * 1000);
+  }
+
+  /**
+   * Formats a progress update, one entry per vertex, such as
+   * {@code Progress 45.00% Map 1 [STATUS: SUCCEEDED, TOTAL: 4, COMPLETED: 4, ...]}.
+   */
+  public static String formatProgress(TProgressUpdateResp response) {
+    StringBuilder builder = new StringBuilder(
+      String.format("Progress %.2f%%", response.getProgressedPercentage() * 100));
+    List<String> headers = response.isSetHeaderNames() ? response.getHeaderNames() : new ArrayList<>();
+    if (response.isSetRows()) {
+      for (List<String> row : response.getRows()) {
+        builder.append(' ').append(row.isEmpty() ? "" : row.get(0).trim()).append(" [");
+        for (int i = 1; i < row.size(); i++) {
+          builder.append(i > 1 ? ", " : "").append(i < headers.size() ? headers.get(i).trim() + ": " : "")
+            .append(row.get(i).trim());
+        }
+        builder.append(']');
+      }
+    }
+    if (response.isSetFooterSummary()) {
+      builder.append(' ').append(response.getFooterSummary().trim());
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a hive script into individual statements. Statements are separated by semicolons, semicolons inside
+ * quoted strings, quoted identifiers and comments are ignored.
+ */
+public final class HiveScriptParser {
+
+  private HiveScriptParser() {
+  }
+
+  public static List<String> parse(String script) {
+    List<String> statements = new ArrayList<>();
+    StringBuilder current = new StringBuilder();
+    char quote = 0;
+    int length = script.length();
+    for (int i = 0; i < length; i++) {
+      char c = script.charAt(i);
+      if (quote != 0) {
+        current.append(c);
+        if (c == '\\' && quote != '`' && i + 1 < length) {
+          // escaped character inside a string literal
+          current.append(script.charAt(++i));
+        } else if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+        current.append(c);
+      } else if (c == '-' && i + 1 < length && script.charAt(i + 1) == '-') {
+        // skip line comment
+        while (i + 1 < length && script.charAt(i + 1) != '\n') {
+          i++;
+        }
+      } else if (c == ';') {
+        addStatement(statements, current);
+      } else {
+        current.append(c);
+      }
+    }
+    if (quote != 0) {
+      throw new IllegalArgumentException(String.format("Unterminated quote %s in hive script.", quote));
+    }
+    addStatement(statements, current);
+    return statements;
+  }
+
+  private static void addStatement(List<String> statements, StringBuilder current) {
+    String statement = current.toString().trim();
+    if (!statement.isEmpty()) {
+      statements.add(statement);
+    }
+    current.setLength(0);
+  }
+}
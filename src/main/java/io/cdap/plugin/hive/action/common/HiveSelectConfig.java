@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.etl.api.FailureCollector;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Config of plugins running a select statement, which can be split into one statement per partition of the
+ * source table or per range of a numeric split column.
+ */
+public abstract class HiveSelectConfig extends HiveConfig {
+  public static final String SPLIT_BY = "splitBy";
+  public static final String SPLIT_LOWER_BOUND = "splitLowerBound";
+  public static final String SPLIT_UPPER_BOUND = "splitUpperBound";
+  public static final String NUM_SPLITS = "numSplits";
+  public static final String PARTITION_FILTER_CHECK = "partitionFilterCheck";
+
+  private static final Logger LOG = LoggerFactory.getLogger(HiveSelectConfig.class);
+
+  @Name(SPLIT_BY)
+  @Description("Numeric column of the source table used to split the statement into ranges. If not provided, the " +
+    "statement is split by the partitions of the source table.")
+  @Nullable
+  @Macro
+  private String splitBy;
+
+  @Name(SPLIT_LOWER_BOUND)
+  @Description("Lowest value of the split column, inclusive.")
+  @Nullable
+  @Macro
+  private Long splitLowerBound;
+
+  @Name(SPLIT_UPPER_BOUND)
+  @Description("Highest value of the split column, inclusive.")
+  @Nullable
+  @Macro
+  private Long splitUpperBound;
+
+  @Name(NUM_SPLITS)
+  @Description("Number of ranges the split column is divided into.")
+  @Nullable
+  @Macro
+  private Integer numSplits;
+
+  @Name(PARTITION_FILTER_CHECK)
+  @Description("Whether to check, before the statement runs, that it has a predicate pruning the partitions of every " +
+    "partitioned table it reads. One of 'none', 'warn' to log a warning or 'fail' to fail the run. Defaults to " +
+    "'warn'.")
+  @Nullable
+  @Macro
+  private String partitionFilterCheck;
+
+  protected HiveSelectConfig(String connectionString, String user, String password, String statement) {
+    super(connectionString, user, password, statement);
+  }
+
+  protected HiveSelectConfig(String connectionString, String user, String password, String statement,
+                             String splitBy, Long splitLowerBound, Long splitUpperBound, Integer numSplits,
+                             String partitionFilterCheck) {
+    super(connectionString, user, password, statement);
+    this.splitBy = splitBy;
+    this.splitLowerBound = splitLowerBound;
+    this.splitUpperBound = splitUpperBound;
+    this.numSplits = numSplits;
+    this.partitionFilterCheck = partitionFilterCheck;
+  }
+
+  @Nullable
+  public String getSplitBy() {
+    return Strings.isNullOrEmpty(splitBy) ? null : splitBy;
+  }
+
+  @Nullable
+  public Long getSplitLowerBound() {
+    return splitLowerBound;
+  }
+
+  @Nullable
+  public Long getSplitUpperBound() {
+    return splitUpperBound;
+  }
+
+  public int getNumSplits() {
+    return numSplits == null ? getDefaultNumSplits() : numSplits;
+  }
+
+  @Nullable
+  protected Integer getConfiguredNumSplits() {
+    return numSplits;
+  }
+
+  protected int getDefaultNumSplits() {
+    return 1;
+  }
+
+  @Nullable
+  protected String getConfiguredPartitionFilterCheck() {
+    return partitionFilterCheck;
+  }
+
+  public String getPartitionFilterCheck() {
+    return Strings.isNullOrEmpty(partitionFilterCheck) ? CHECK_WARN : partitionFilterCheck.toLowerCase();
+  }
+
+  /**
+   * Returns whether the statement must select from a table, because it will be split or filtered.
+   */
+  protected abstract boolean requiresSourceTable();
+
+  @Override
+  public void validate(FailureCollector failureCollector) {
+    super.validate(failureCollector);
+
+    if (!containsMacro(STATEMENT) && Strings.isNullOrEmpty(getStatement())) {
+      failureCollector.addFailure("Statement must be specified.", "Provide a hive select statement.")
+        .withConfigProperty(STATEMENT);
+    } else if (!containsMacro(STATEMENT)) {
+      // validate hive command, only select statements are accepted
+      SqlParser parser = SqlParser.create(getStatement());
+      try {
+        SqlNode sqlNode = parser.parseQuery();
+        if (!(sqlNode instanceof SqlSelect)) {
+          failureCollector.addFailure(String.format("%s only uses Select statements.", getPluginDisplayName()),
+                                      "Provide valid hive select statement.")
+            .withConfigProperty(STATEMENT);
+        }
+      } catch (SqlParseException e) {
+        failureCollector.addFailure("Error while parsing select statement.", null)
+          .withStacktrace(e.getStackTrace())
+          .withConfigProperty(STATEMENT);
+      }
+    }
+
+    validateSplits(failureCollector);
+
+    if (!containsMacro(PARTITION_FILTER_CHECK) && !Arrays.asList(CHECK_NONE, CHECK_WARN, CHECK_FAIL)
+      .contains(getPartitionFilterCheck())) {
+      failureCollector.addFailure(String.format("Invalid partition filter check '%s'.", partitionFilterCheck),
+                                  "Use one of 'none', 'warn' or 'fail'.")
+        .withConfigProperty(PARTITION_FILTER_CHECK);
+    }
+  }
+
+  /**
+   * Checks that the statement about to run prunes the partitions of every partitioned table it reads, looking up
+   * partition columns through the given executor. Depending on the partition filter check, tables which would be
+   * scanned completely are logged or reported as failures.
+   */
+  public void validatePartitionPruning(String statement, HiveCommandExecutor executor,
+                                       FailureCollector failureCollector) throws Exception {
+    String check = getPartitionFilterCheck();
+    if (CHECK_NONE.equals(check)) {
+      return;
+    }
+    List<String> problems = PartitionPruningAnalyzer.analyze(
+      statement, table -> HiveMetadata.getPartitionColumns(executor, table));
+    for (String problem : problems) {
+      if (CHECK_FAIL.equals(check)) {
+        failureCollector.addFailure(problem, "Compare the partition columns with constant values, or set the " +
+          "partition filter check to 'warn' or 'none' to allow full scans.")
+          .withConfigProperty(STATEMENT);
+      } else {
+        LOG.warn(problem);
+      }
+    }
+  }
+
+  protected abstract String getPluginDisplayName();
+
+  private void validateSplits(FailureCollector failureCollector) {
+    if (!containsMacro(NUM_SPLITS) && numSplits != null && numSplits < 1) {
+      failureCollector.addFailure("Number of splits must be at least 1.", null)
+        .withConfigProperty(NUM_SPLITS);
+    }
+
+    if (!containsMacro(SPLIT_BY) && getSplitBy() != null
+      && !containsMacro(SPLIT_LOWER_BOUND) && !containsMacro(SPLIT_UPPER_BOUND)) {
+      if (splitLowerBound == null || splitUpperBound == null) {
+        failureCollector.addFailure("Split bounds are not specified.",
+                                    "Provide lower and upper bound of the split column.")
+          .withConfigProperty(SPLIT_LOWER_BOUND)
+          .withConfigProperty(SPLIT_UPPER_BOUND);
+      } else if (splitLowerBound > splitUpperBound) {
+        failureCollector.addFailure("Split lower bound is greater than split upper bound.", null)
+          .withConfigProperty(SPLIT_LOWER_BOUND)
+          .withConfigProperty(SPLIT_UPPER_BOUND);
+      }
+    }
+
+    if (!containsMacro(STATEMENT) && !Strings.isNullOrEmpty(getStatement()) && !containsMacro(SPLIT_BY)
+      && requiresSourceTable()) {
+      try {
+        if (SelectStatementRewriter.parse(getStatement()).getSourceTable() == null) {
+          failureCollector.addFailure("Select statement must read from a table to be split or filtered.",
+                                      "Select from a table, the leftmost table of the FROM clause is used.")
+            .withConfigProperty(STATEMENT);
+        }
+      } catch (SqlParseException | IllegalArgumentException e) {
+        // reported by statement validation
+      }
+    }
+  }
+}
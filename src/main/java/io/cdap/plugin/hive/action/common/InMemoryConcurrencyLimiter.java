@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-JVM {@link ConcurrencyLimiter}, which limits statements of all runs sharing the JVM. Statements are queued in
+ * the order they asked for a permit, and a statement is admitted once its position in the queue of its key is lower
+ * than the limit, so a released permit always goes to the statement which waited longest.
+ */
+public class InMemoryConcurrencyLimiter implements ConcurrencyLimiter {
+  private static final InMemoryConcurrencyLimiter INSTANCE = new InMemoryConcurrencyLimiter();
+
+  // statements holding or waiting for a permit, in the order they asked for it
+  private final Map<String, List<Object>> queues = new HashMap<>();
+
+  public static InMemoryConcurrencyLimiter getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public Permit acquire(String key, int maxConcurrent) throws InterruptedException {
+    Object ticket = new Object();
+    synchronized (this) {
+      List<Object> queue = queues.computeIfAbsent(key, k -> new ArrayList<>());
+      queue.add(ticket);
+      try {
+        while (queue.indexOf(ticket) >= maxConcurrent) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        remove(key, ticket);
+        throw e;
+      }
+    }
+    return () -> remove(key, ticket);
+  }
+
+  /**
+   * Returns the number of statements holding or waiting for a permit for the key.
+   */
+  public synchronized int getQueueLength(String key) {
+    List<Object> queue = queues.get(key);
+    return queue == null ? 0 : queue.size();
+  }
+
+  private synchronized void remove(String key, Object ticket) {
+    List<Object> queue = queues.get(key);
+    if (queue == null || !queue.remove(ticket)) {
+      return;
+    }
+    if (queue.isEmpty()) {
+      queues.remove(key);
+    }
+    notifyAll();
+  }
+}
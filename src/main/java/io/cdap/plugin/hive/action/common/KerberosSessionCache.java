@@ -0,0 +1,467 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.hadoop.security.token.delegation.AbstractDelegationTokenIdentifier;
+import org.apache.hive.jdbc.HiveConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * Per-JVM cache of Kerberos logins and HiveServer2 delegation tokens, so that connections do not each log in to the
+ * KDC and negotiate Kerberos with HiveServer2.
+ *
+ * The subject logged in with the keytab of a principal is kept until {@link #REFRESH_FRACTION} of the lifetime of its
+ * ticket granting ticket passed, then the principal logs in again. If token caching is enabled, the first connection
+ * of a principal to a connection string authenticates with Kerberos and obtains a HiveServer2 delegation token, and
+ * later connections authenticate with the token, which only takes a DIGEST-MD5 exchange with HiveServer2. Tokens are
+ * renewed once {@link #REFRESH_FRACTION} of their validity passed, and replaced by a new token when they can not be
+ * renewed anymore. Connections authenticated with a token which HiveServer2 rejects fall back to Kerberos.
+ */
+public class KerberosSessionCache {
+  public static final double REFRESH_FRACTION = 0.8;
+  // default hive.cluster.delegation.token.renew-interval, which is not known to the client
+  public static final long TOKEN_RENEW_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private static final Logger LOG = LoggerFactory.getLogger(KerberosSessionCache.class);
+  private static final String LOGIN_MODULE = "com.sun.security.auth.module.Krb5LoginModule";
+  // token service the hive JDBC driver looks up in the credentials of the current user for auth=delegationToken
+  private static final Text HS2_CLIENT_TOKEN = new Text("hiveserver2ClientToken");
+  private static final Text HIVE_DELEGATION_TOKEN = new Text("HIVE_DELEGATION_TOKEN");
+  // logins whose ticket lifetime is not known are repeated after this time
+  private static final long DEFAULT_LOGIN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final KerberosSessionCache INSTANCE = new KerberosSessionCache(new JdbcTokenService(),
+                                                                               System::currentTimeMillis);
+
+  private final TokenService tokenService;
+  private final LongSupplier clock;
+  private final Map<Login, CachedLogin> logins = new ConcurrentHashMap<>();
+  private final Map<TokenKey, CachedToken> tokens = new ConcurrentHashMap<>();
+  // locks per login and per token, so that a slow KDC or HiveServer2 only delays connections of the same principal
+  private final Map<Login, Object> loginLocks = new ConcurrentHashMap<>();
+  private final Map<TokenKey, Object> tokenLocks = new ConcurrentHashMap<>();
+
+  public KerberosSessionCache(TokenService tokenService, LongSupplier clock) {
+    this.tokenService = tokenService;
+    this.clock = clock;
+  }
+
+  public static KerberosSessionCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the subject logged in with the keytab of the principal, logging in again if the cached login is close
+   * to its expiry.
+   */
+  public Subject getSubject(Login login) throws LoginException {
+    synchronized (loginLocks.computeIfAbsent(login, l -> new Object())) {
+      long now = clock.getAsLong();
+      CachedLogin cached = logins.get(login);
+      if (cached != null && now < cached.refreshAt) {
+        return cached.subject;
+      }
+      Subject subject = new Subject();
+      new LoginContext("hive-plugins", subject, null, new KeytabConfiguration(login)).login();
+      KerberosTicket tgt = getTicketGrantingTicket(subject);
+      long refreshAt = tgt == null ? now + DEFAULT_LOGIN_LIFETIME_MILLIS :
+        getRefreshTime(now, tgt.getStartTime().getTime(), tgt.getEndTime().getTime());
+      logins.put(login, new CachedLogin(subject, refreshAt));
+      LOG.debug("Logged in as {}, logging in again after {}", login, refreshAt);
+      return subject;
+    }
+  }
+
+  /**
+   * Opens a connection as the principal, with a cached delegation token if token caching is enabled and a token was
+   * obtained before, with Kerberos otherwise. The connector opens the physical connection for the connection string
+   * it is given, which is the given connection string with the authentication type set accordingly.
+   */
+  public Connection connect(Login login, String connectionString, Connector connector) throws SQLException {
+    if (!login.isCacheToken()) {
+      return connectWithKerberos(login, connectionString, connector);
+    }
+    TokenKey key = new TokenKey(login, connectionString);
+    CachedToken token = tokens.get(key);
+    if (token != null && clock.getAsLong() < token.refreshAt) {
+      try {
+        return connectWithToken(token, connectionString, connector);
+      } catch (SQLException e) {
+        // the token may have been cancelled or HiveServer2 restarted with a new secret
+        LOG.warn("Connecting with the cached delegation token of {} failed, connecting with Kerberos: {}", login,
+                 e.getMessage());
+        tokens.remove(key, token);
+      }
+    }
+    synchronized (tokenLocks.computeIfAbsent(key, k -> new Object())) {
+      CachedToken current = tokens.get(key);
+      if (current != null && current != token && clock.getAsLong() < current.refreshAt) {
+        // another thread refreshed the token in the meantime
+        return connectWithToken(current, connectionString, connector);
+      }
+      Connection connection = connectWithKerberos(login, connectionString, connector);
+      try {
+        tokens.put(key, refreshToken(login, current, connection));
+      } catch (SQLException | IOException e) {
+        tokens.remove(key);
+        LOG.warn("Unable to obtain a delegation token for {}, connections authenticate with Kerberos: {}", login,
+                 e.getMessage());
+      }
+      return connection;
+    }
+  }
+
+  /**
+   * Renews the cached token over the Kerberos connection if it can still be renewed, or obtains a new one.
+   */
+  private CachedToken refreshToken(Login login, @Nullable CachedToken token, Connection connection)
+    throws SQLException, IOException {
+    long now = clock.getAsLong();
+    if (token != null && now < token.expiry && token.expiry < token.maxDate) {
+      try {
+        tokenService.renew(connection, token.encoded);
+        long expiry = Math.min(now + TOKEN_RENEW_INTERVAL_MILLIS, token.maxDate);
+        LOG.debug("Renewed delegation token of {} until {}", login, expiry);
+        return new CachedToken(token.encoded, token.user, expiry, token.maxDate, getRefreshTime(now, now, expiry));
+      } catch (SQLException e) {
+        LOG.debug("Unable to renew delegation token of {}, obtaining a new one", login, e);
+      }
+    }
+
+    String encoded = tokenService.fetch(connection, login.getShortName(), login.getShortName());
+    Token<TokenIdentifier> decoded = new Token<>();
+    decoded.decodeFromUrlString(encoded);
+    decoded.setService(HS2_CLIENT_TOKEN);
+    HiveTokenIdentifier identifier = new HiveTokenIdentifier();
+    identifier.readFields(new DataInputStream(new ByteArrayInputStream(decoded.getIdentifier())));
+
+    UserGroupInformation user = UserGroupInformation.createRemoteUser(login.getShortName());
+    user.addToken(HS2_CLIENT_TOKEN, decoded);
+    long expiry = Math.min(identifier.getIssueDate() + TOKEN_RENEW_INTERVAL_MILLIS, identifier.getMaxDate());
+    LOG.debug("Obtained delegation token for {} valid until {}", login, expiry);
+    return new CachedToken(encoded, user, expiry, identifier.getMaxDate(), getRefreshTime(now, now, expiry));
+  }
+
+  private Connection connectWithKerberos(Login login, String connectionString,
+                                         Connector connector) throws SQLException {
+    Subject subject;
+    try {
+      subject = getSubject(login);
+    } catch (LoginException e) {
+      throw new SQLException(String.format("Unable to log in as %s: %s", login, e.getMessage()), e);
+    }
+    // makes the driver authenticate with the subject of the calling context instead of the login user
+    String url = withSessionVariable(connectionString, "kerberosAuthType", "fromSubject");
+    try {
+      return Subject.doAs(subject, (PrivilegedExceptionAction<Connection>) () -> connector.connect(url));
+    } catch (PrivilegedActionException e) {
+      throw e.getException() instanceof SQLException ? (SQLException) e.getException() :
+        new SQLException(e.getException());
+    }
+  }
+
+  /**
+   * Connects with the token of the cached user. The driver only authenticates with the token if the connection
+   * string has no principal, otherwise it attempts a Kerberos handshake the token user has no ticket for.
+   */
+  private static Connection connectWithToken(CachedToken token, String connectionString,
+                                             Connector connector) throws SQLException {
+    String withoutKerberos = withoutSessionVariable(withoutSessionVariable(connectionString, "principal"),
+                                                    "kerberosAuthType");
+    String url = withSessionVariable(withoutKerberos, "auth", "delegationToken");
+    try {
+      return token.user.doAs((PrivilegedExceptionAction<Connection>) () -> connector.connect(url));
+    } catch (UndeclaredThrowableException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw e;
+    } catch (IOException e) {
+      throw new SQLException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while connecting to HiveServer2", e);
+    }
+  }
+
+  /**
+   * Returns the connection string with the session variable set to the value, replacing an existing value. Session
+   * variables are the ';' separated settings between the database and the '?' or '#' sections.
+   */
+  public static String withSessionVariable(String connectionString, String name, String value) {
+    String result = withoutSessionVariable(connectionString, name);
+    int end = getSessionVariablesEnd(result);
+    return result.substring(0, end) + ';' + name + '=' + value + result.substring(end);
+  }
+
+  /**
+   * Returns the connection string without the session variable.
+   */
+  public static String withoutSessionVariable(String connectionString, String name) {
+    int end = getSessionVariablesEnd(connectionString);
+    StringBuilder result = new StringBuilder();
+    String[] parts = connectionString.substring(0, end).split(";");
+    for (int i = 0; i < parts.length; i++) {
+      if (i > 0 && parts[i].trim().toLowerCase().startsWith(name.toLowerCase() + "=")) {
+        continue;
+      }
+      result.append(i > 0 ? ";" : "").append(parts[i]);
+    }
+    return result.append(connectionString.substring(end)).toString();
+  }
+
+  private static int getSessionVariablesEnd(String connectionString) {
+    int end = connectionString.length();
+    for (char separator : new char[] {'?', '#'}) {
+      int index = connectionString.indexOf(separator);
+      end = index < 0 ? end : Math.min(end, index);
+    }
+    return end;
+  }
+
+  private static long getRefreshTime(long now, long start, long end) {
+    return Math.max(now, start + (long) ((end - start) * REFRESH_FRACTION));
+  }
+
+  @Nullable
+  private static KerberosTicket getTicketGrantingTicket(Subject subject) {
+    for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+      KerberosPrincipal server = ticket.getServer();
+      if (server.getName().equals("krbtgt/" + server.getRealm() + "@" + server.getRealm())) {
+        return ticket;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Principal logging in with a keytab.
+   */
+  public static final class Login {
+    private final String principal;
+    private final String keytab;
+    private final boolean cacheToken;
+
+    /**
+     * @param cacheToken whether connections authenticate with a cached delegation token instead of Kerberos
+     */
+    public Login(String principal, String keytab, boolean cacheToken) {
+      this.principal = principal;
+      this.keytab = keytab;
+      this.cacheToken = cacheToken;
+    }
+
+    public String getPrincipal() {
+      return principal;
+    }
+
+    public String getKeytab() {
+      return keytab;
+    }
+
+    public boolean isCacheToken() {
+      return cacheToken;
+    }
+
+    /**
+     * Returns the user name of the principal, without instance and realm.
+     */
+    public String getShortName() {
+      return principal.split("[/@]")[0];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Login that = (Login) o;
+      return principal.equals(that.principal) && keytab.equals(that.keytab) && cacheToken == that.cacheToken;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(principal, keytab, cacheToken);
+    }
+
+    @Override
+    public String toString() {
+      return principal;
+    }
+  }
+
+  /**
+   * Opens a physical connection for a connection string.
+   */
+  public interface Connector {
+    Connection connect(String connectionString) throws SQLException;
+  }
+
+  /**
+   * Obtains and renews HiveServer2 delegation tokens over a connection authenticated with Kerberos.
+   */
+  public interface TokenService {
+    /**
+     * Returns a new delegation token of the owner, encoded as URL string.
+     */
+    String fetch(Connection connection, String owner, String renewer) throws SQLException;
+
+    void renew(Connection connection, String token) throws SQLException;
+  }
+
+  /**
+   * Obtains delegation tokens through the hive JDBC driver.
+   */
+  private static final class JdbcTokenService implements TokenService {
+    @Override
+    public String fetch(Connection connection, String owner, String renewer) throws SQLException {
+      return getHiveConnection(connection).getDelegationToken(owner, renewer);
+    }
+
+    @Override
+    public void renew(Connection connection, String token) throws SQLException {
+      getHiveConnection(connection).renewDelegationToken(token);
+    }
+
+    private static HiveConnection getHiveConnection(Connection connection) throws SQLException {
+      if (!(connection instanceof HiveConnection)) {
+        throw new SQLException("Delegation tokens can only be obtained from hive JDBC connections.");
+      }
+      return (HiveConnection) connection;
+    }
+  }
+
+  /**
+   * Identifier of HiveServer2 delegation tokens, which has the fields of every delegation token identifier.
+   */
+  private static final class HiveTokenIdentifier extends AbstractDelegationTokenIdentifier {
+    @Override
+    public Text getKind() {
+      return HIVE_DELEGATION_TOKEN;
+    }
+  }
+
+  /**
+   * JAAS configuration logging in the principal with its keytab, without using or storing a ticket cache.
+   */
+  private static final class KeytabConfiguration extends javax.security.auth.login.Configuration {
+    private final Login login;
+
+    private KeytabConfiguration(Login login) {
+      this.login = login;
+    }
+
+    @Override
+    public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+      Map<String, String> options = new HashMap<>();
+      options.put("principal", login.getPrincipal());
+      options.put("keyTab", login.getKeytab());
+      options.put("useKeyTab", "true");
+      options.put("storeKey", "true");
+      options.put("doNotPrompt", "true");
+      options.put("useTicketCache", "false");
+      options.put("refreshKrb5Config", "true");
+      options.put("isInitiator", "true");
+      return new AppConfigurationEntry[] {
+        new AppConfigurationEntry(LOGIN_MODULE, AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options)
+      };
+    }
+  }
+
+  private static final class CachedLogin {
+    private final Subject subject;
+    private final long refreshAt;
+
+    private CachedLogin(Subject subject, long refreshAt) {
+      this.subject = subject;
+      this.refreshAt = refreshAt;
+    }
+  }
+
+  private static final class CachedToken {
+    private final String encoded;
+    // user whose credentials contain the token, connections are opened as this user
+    private final UserGroupInformation user;
+    private final long expiry;
+    private final long maxDate;
+    private final long refreshAt;
+
+    private CachedToken(String encoded, UserGroupInformation user, long expiry, long maxDate, long refreshAt) {
+      this.encoded = encoded;
+      this.user = user;
+      this.expiry = expiry;
+      this.maxDate = maxDate;
+      this.refreshAt = refreshAt;
+    }
+  }
+
+  private static final class TokenKey {
+    private final Login login;
+    private final String connectionString;
+
+    private TokenKey(Login login, String connectionString) {
+      this.login = login;
+      this.connectionString = connectionString;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      TokenKey that = (TokenKey) o;
+      return login.equals(that.login) && connectionString.equals(that.connectionString);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(login, connectionString);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task for each item on a bounded pool of worker threads and reports a combined result.
+ */
+public final class ParallelTaskRunner {
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelTaskRunner.class);
+
+  private ParallelTaskRunner() {
+  }
+
+  /**
+   * Runs the task for all items with at most parallelism tasks running at the same time. All items are processed
+   * even if some of them fail; a single exception listing every failed item is thrown at the end.
+   *
+   * @param description description of the items used in log and error messages, such as 'partitions'
+   */
+  public static <T> void run(String description, List<T> items, int parallelism, Task<T> task) throws Exception {
+    if (items.isEmpty()) {
+      LOG.info("No {} to process.", description);
+      return;
+    }
+    int threads = Math.max(1, Math.min(parallelism, items.size()));
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "hive-worker-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (T item : items) {
+        futures.add(executorService.submit(() -> {
+          task.run(item);
+          return null;
+        }));
+      }
+
+      List<String> failures = new ArrayList<>();
+      Exception firstFailure = null;
+      for (int i = 0; i < items.size(); i++) {
+        T item = items.get(i);
+        try {
+          futures.get(i).get();
+          LOG.info("Processed {}", item);
+        } catch (ExecutionException e) {
+          Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          LOG.error("Failed to process {}", item, cause);
+          failures.add(String.format("'%s': %s", item, cause.getMessage()));
+          firstFailure = firstFailure == null ? cause : firstFailure;
+        }
+      }
+      LOG.info("Processed {} {} with {} workers, {} succeeded, {} failed.", items.size(), description, threads,
+               items.size() - failures.size(), failures.size());
+      if (firstFailure != null) {
+        throw new Exception(String.format("Failed to process %d of %d %s. %s", failures.size(), items.size(),
+                                          description, String.join(" ", failures)), firstFailure);
+      }
+    } finally {
+      // interrupts running tasks if waiting was interrupted
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Task executed for a single item.
+   */
+  public interface Task<T> {
+    void run(T item) throws Exception;
+  }
+}
@@ -0,0 +1,640 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.calcite.sql.JoinType;
+import org.apache.calcite.sql.SqlBasicCall;
+import org.apache.calcite.sql.SqlCall;
+import org.apache.calcite.sql.SqlCharStringLiteral;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.SqlJoin;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlLiteral;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlNodeList;
+import org.apache.calcite.sql.SqlNumericLiteral;
+import org.apache.calcite.sql.SqlOrderBy;
+import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.fun.SqlBetweenOperator;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.util.SqlBasicVisitor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Finds partitioned tables which a select statement reads without a predicate that lets hive prune partitions.
+ * A predicate prunes partitions if it compares a partition column, not wrapped in a function, to constant values.
+ * Predicates of the WHERE clause, of JOIN conditions and of enclosing queries are considered, since hive pushes
+ * them down to the table scan.
+ *
+ * The partitions a statement reads can be selected from the partitions of a table with
+ * {@link #selectPartitions(String, String, List)}, which evaluates the same kind of predicates on the client.
+ */
+public final class PartitionPruningAnalyzer {
+  private static final Set<SqlKind> PRUNING_OPERATORS = EnumSet.of(
+    SqlKind.EQUALS, SqlKind.NOT_EQUALS, SqlKind.LESS_THAN, SqlKind.LESS_THAN_OR_EQUAL, SqlKind.GREATER_THAN,
+    SqlKind.GREATER_THAN_OR_EQUAL, SqlKind.BETWEEN, SqlKind.IN, SqlKind.LIKE, SqlKind.IS_NULL,
+    SqlKind.IS_NOT_NULL);
+
+  private final PartitionColumnResolver resolver;
+  private final Map<String, List<String>> partitionColumns = new HashMap<>();
+  private final List<String> problems = new ArrayList<>();
+
+  private PartitionPruningAnalyzer(PartitionColumnResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  /**
+   * Returns a description of each partitioned table read by the statement which can not be pruned, an empty list
+   * if all partitioned tables are pruned.
+   */
+  public static List<String> analyze(String statement, PartitionColumnResolver resolver) throws Exception {
+    PartitionPruningAnalyzer analyzer = new PartitionPruningAnalyzer(resolver);
+    analyzer.analyzeQuery(SqlParser.create(statement).parseQuery(), Collections.emptyList());
+    return analyzer.problems;
+  }
+
+  /**
+   * Returns the partitions of the table, named as returned by SHOW PARTITIONS, which the statement may read, in the
+   * given order. A partition is left out only if, in every select reading the table, a conjunct of the WHERE clause
+   * compares a partition column with constants the value of the partition does not match. Values are compared as
+   * numbers if both are numbers and as strings otherwise, and comparisons whose outcome depends on the type of the
+   * column keep the partition. Tables of selects with outer joins, whose WHERE clause may keep rows without a match
+   * in the table, keep all partitions, and so do tables the statement does not read.
+   */
+  public static List<String> selectPartitions(String statement, String table,
+                                              List<String> partitionNames) throws SqlParseException {
+    FilterCollector collector = new FilterCollector(table);
+    SqlParser.create(statement).parseQuery().accept(collector);
+    if (collector.unfiltered || collector.filters.isEmpty()) {
+      return partitionNames;
+    }
+    List<String> selected = new ArrayList<>();
+    for (String partitionName : partitionNames) {
+      Map<String, String> values = parsePartitionName(partitionName);
+      if (collector.filters.stream().anyMatch(filter -> filter.matches(values))) {
+        selected.add(partitionName);
+      }
+    }
+    return selected;
+  }
+
+  private static Map<String, String> parsePartitionName(String partitionName) {
+    Map<String, String> values = new HashMap<>();
+    for (String keyValue : partitionName.split("/")) {
+      int index = keyValue.indexOf('=');
+      if (index < 0) {
+        throw new IllegalArgumentException(String.format("Invalid partition name '%s'.", partitionName));
+      }
+      values.put(keyValue.substring(0, index).toLowerCase(Locale.ROOT),
+                 StatementSplit.unescapePathName(keyValue.substring(index + 1)));
+    }
+    return values;
+  }
+
+  private void analyzeQuery(SqlNode query, List<SqlNode> outerPredicates) throws Exception {
+    if (query instanceof SqlOrderBy) {
+      analyzeQuery(((SqlOrderBy) query).query, outerPredicates);
+    } else if (query instanceof SqlSelect) {
+      analyzeSelect((SqlSelect) query, outerPredicates);
+    } else if (query.getKind().belongsTo(SqlKind.SET_QUERY)) {
+      for (SqlNode operand : ((SqlCall) query).getOperandList()) {
+        analyzeQuery(operand, outerPredicates);
+      }
+    }
+  }
+
+  private void analyzeSelect(SqlSelect select, List<SqlNode> outerPredicates) throws Exception {
+    List<SqlNode> predicates = new ArrayList<>();
+    addConjuncts(select.getWhere(), predicates);
+    List<TableReference> tables = new ArrayList<>();
+    List<SqlNode> subQueries = new ArrayList<>();
+    collectFrom(select.getFrom(), tables, subQueries, predicates);
+
+    List<SqlNode> visiblePredicates = new ArrayList<>(outerPredicates);
+    visiblePredicates.addAll(predicates);
+    for (SqlNode subQuery : subQueries) {
+      analyzeQuery(subQuery, visiblePredicates);
+    }
+
+    for (TableReference table : tables) {
+      List<String> columns = getPartitionColumns(table.name);
+      if (columns.isEmpty()) {
+        continue;
+      }
+      Result result = Result.UNRELATED;
+      for (SqlNode predicate : predicates) {
+        result = result.or(classify(predicate, table, columns, true));
+      }
+      for (SqlNode predicate : outerPredicates) {
+        // references of enclosing queries are qualified with the alias of the sub query, so only names are matched
+        result = result.or(classify(predicate, table, columns, false));
+      }
+      if (result.prunable) {
+        continue;
+      }
+      if (result.reason == null) {
+        problems.add(String.format("Table '%s' is partitioned by %s, but the statement has no predicate on its " +
+                                     "partition columns, so all partitions are scanned.", table.name, columns));
+      } else {
+        problems.add(String.format("Predicate on partition columns %s of table '%s' can not prune partitions, " +
+                                     "because %s.", columns, table.name, result.reason));
+      }
+    }
+  }
+
+  private List<String> getPartitionColumns(String table) throws Exception {
+    List<String> columns = partitionColumns.get(table);
+    if (columns == null) {
+      columns = resolver.getPartitionColumns(table);
+      partitionColumns.put(table, columns);
+    }
+    return columns;
+  }
+
+  private static void collectFrom(@Nullable SqlNode from, List<TableReference> tables, List<SqlNode> subQueries,
+                                  List<SqlNode> predicates) {
+    if (from == null) {
+      return;
+    }
+    if (from instanceof SqlJoin) {
+      SqlJoin join = (SqlJoin) from;
+      collectFrom(join.getLeft(), tables, subQueries, predicates);
+      collectFrom(join.getRight(), tables, subQueries, predicates);
+      addConjuncts(join.getCondition(), predicates);
+    } else if (from instanceof SqlIdentifier) {
+      SqlIdentifier identifier = (SqlIdentifier) from;
+      tables.add(new TableReference(String.join(".", identifier.names),
+                                    identifier.names.get(identifier.names.size() - 1)));
+    } else if (from.getKind() == SqlKind.AS) {
+      SqlNode source = ((SqlBasicCall) from).operand(0);
+      SqlNode alias = ((SqlBasicCall) from).operand(1);
+      if (source instanceof SqlIdentifier) {
+        tables.add(new TableReference(String.join(".", ((SqlIdentifier) source).names), alias.toString()));
+      } else {
+        subQueries.add(source);
+      }
+    } else if (from instanceof SqlSelect || from instanceof SqlOrderBy || from.getKind().belongsTo(SqlKind.SET_QUERY)) {
+      subQueries.add(from);
+    }
+  }
+
+  private static void addConjuncts(@Nullable SqlNode condition, List<SqlNode> conjuncts) {
+    if (condition == null) {
+      return;
+    }
+    if (condition.getKind() == SqlKind.AND) {
+      for (SqlNode operand : ((SqlCall) condition).getOperandList()) {
+        addConjuncts(operand, conjuncts);
+      }
+    } else {
+      conjuncts.add(condition);
+    }
+  }
+
+  private static Result classify(SqlNode predicate, TableReference table, List<String> columns, boolean qualified) {
+    SqlKind kind = predicate.getKind();
+    if (kind == SqlKind.AND || kind == SqlKind.OR) {
+      List<Result> results = new ArrayList<>();
+      for (SqlNode operand : ((SqlCall) predicate).getOperandList()) {
+        results.add(classify(operand, table, columns, qualified));
+      }
+      return kind == SqlKind.AND ? Result.anyOf(results) : Result.allOf(results);
+    }
+    if (kind == SqlKind.NOT) {
+      return classify(((SqlCall) predicate).operand(0), table, columns, qualified);
+    }
+    if (!(predicate instanceof SqlCall)) {
+      return Result.UNRELATED;
+    }
+
+    SqlCall call = (SqlCall) predicate;
+    boolean direct = false;
+    String reason = null;
+    boolean constantOperands = true;
+    for (SqlNode operand : call.getOperandList()) {
+      if (operand == null) {
+        continue;
+      }
+      if (operand instanceof SqlIdentifier && references(operand, table, columns, qualified)) {
+        direct = true;
+      } else if (references(operand, table, columns, qualified)) {
+        reason = String.format("the partition column is wrapped in %s", describe(operand));
+      } else if (!isConstant(operand)) {
+        constantOperands = false;
+      }
+    }
+    if (reason != null) {
+      return Result.notPrunable(reason);
+    }
+    if (!direct) {
+      return Result.UNRELATED;
+    }
+    if (!PRUNING_OPERATORS.contains(kind)) {
+      return Result.notPrunable(String.format("the partition column is used in %s", describe(call)));
+    }
+    if (!constantOperands) {
+      return Result.notPrunable("the partition column is compared with a non constant expression");
+    }
+    return Result.PRUNABLE;
+  }
+
+  private static boolean references(@Nullable SqlNode node, TableReference table, List<String> columns,
+                                    boolean qualified) {
+    if (node instanceof SqlIdentifier) {
+      List<String> names = ((SqlIdentifier) node).names;
+      String column = names.get(names.size() - 1);
+      if (columns.stream().noneMatch(column::equalsIgnoreCase)) {
+        return false;
+      }
+      if (!qualified || names.size() == 1) {
+        return true;
+      }
+      // tables without an alias are referenced by their name without the database
+      return names.get(names.size() - 2).equalsIgnoreCase(table.alias);
+    }
+    if (node instanceof SqlSelect) {
+      return false;
+    }
+    if (node instanceof SqlCall) {
+      for (SqlNode operand : ((SqlCall) node).getOperandList()) {
+        if (references(operand, table, columns, qualified)) {
+          return true;
+        }
+      }
+    }
+    if (node instanceof SqlNodeList) {
+      for (SqlNode item : (SqlNodeList) node) {
+        if (references(item, table, columns, qualified)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether the expression can be evaluated when the statement is compiled, because it does not reference
+   * any column or sub query.
+   */
+  private static boolean isConstant(@Nullable SqlNode node) {
+    if (node == null) {
+      return true;
+    }
+    if (node instanceof SqlIdentifier || node instanceof SqlSelect || node instanceof SqlOrderBy) {
+      return false;
+    }
+    if (node instanceof SqlCall) {
+      return ((SqlCall) node).getOperandList().stream().allMatch(PartitionPruningAnalyzer::isConstant);
+    }
+    if (node instanceof SqlNodeList) {
+      for (SqlNode item : (SqlNodeList) node) {
+        if (!isConstant(item)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static String describe(SqlNode node) {
+    return node instanceof SqlCall ? ((SqlCall) node).getOperator().getName() : node.toString();
+  }
+
+  /**
+   * Collects the WHERE conjuncts of every select reading a table, and whether a select reads it through an outer
+   * join.
+   */
+  private static final class FilterCollector extends SqlBasicVisitor<Void> {
+    private final String table;
+    private final List<PartitionFilter> filters = new ArrayList<>();
+    private boolean unfiltered;
+
+    private FilterCollector(String table) {
+      this.table = table;
+    }
+
+    @Override
+    public Void visit(SqlCall call) {
+      if (call instanceof SqlSelect) {
+        SqlSelect select = (SqlSelect) call;
+        List<TableReference> tables = new ArrayList<>();
+        List<SqlNode> ignored = new ArrayList<>();
+        collectFrom(select.getFrom(), tables, ignored, ignored);
+        List<SqlNode> conjuncts = new ArrayList<>();
+        addConjuncts(select.getWhere(), conjuncts);
+        boolean outerJoin = hasOuterJoin(select.getFrom());
+        for (TableReference reference : tables) {
+          if (reference.name.equalsIgnoreCase(table)) {
+            unfiltered |= outerJoin;
+            filters.add(new PartitionFilter(reference, conjuncts));
+          }
+        }
+      }
+      return super.visit(call);
+    }
+
+    private static boolean hasOuterJoin(@Nullable SqlNode from) {
+      if (from instanceof SqlJoin) {
+        SqlJoin join = (SqlJoin) from;
+        JoinType type = join.getJoinType();
+        return type == JoinType.LEFT || type == JoinType.RIGHT || type == JoinType.FULL
+          || hasOuterJoin(join.getLeft()) || hasOuterJoin(join.getRight());
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Evaluates the WHERE conjuncts of a select on the values of a partition of a table it reads. Conjuncts which can
+   * not be evaluated, because they reference other columns or are not comparisons with constants, are unknown and
+   * do not exclude partitions.
+   */
+  private static final class PartitionFilter {
+    private static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+    private static final Pattern DATE_LIKE = Pattern.compile("\\d{1,4}-\\d{1,2}-\\d{1,2}.*");
+    private static final Map<SqlKind, SqlKind> REVERSED = ImmutableMap.<SqlKind, SqlKind>builder()
+      .put(SqlKind.EQUALS, SqlKind.EQUALS)
+      .put(SqlKind.NOT_EQUALS, SqlKind.NOT_EQUALS)
+      .put(SqlKind.LESS_THAN, SqlKind.GREATER_THAN)
+      .put(SqlKind.LESS_THAN_OR_EQUAL, SqlKind.GREATER_THAN_OR_EQUAL)
+      .put(SqlKind.GREATER_THAN, SqlKind.LESS_THAN)
+      .put(SqlKind.GREATER_THAN_OR_EQUAL, SqlKind.LESS_THAN_OR_EQUAL)
+      .build();
+
+    private final TableReference table;
+    private final List<SqlNode> conjuncts;
+
+    private PartitionFilter(TableReference table, List<SqlNode> conjuncts) {
+      this.table = table;
+      this.conjuncts = conjuncts;
+    }
+
+    private boolean matches(Map<String, String> values) {
+      return conjuncts.stream().noneMatch(conjunct -> Boolean.FALSE.equals(evaluate(conjunct, values)));
+    }
+
+    /**
+     * Returns whether the predicate holds for the partition, null if that is unknown.
+     */
+    @Nullable
+    private Boolean evaluate(SqlNode predicate, Map<String, String> values) {
+      SqlKind kind = predicate.getKind();
+      if (kind == SqlKind.AND || kind == SqlKind.OR) {
+        // AND is false as soon as one operand is false, OR is true as soon as one operand is true
+        boolean decisive = kind == SqlKind.OR;
+        boolean unknown = false;
+        for (SqlNode operand : ((SqlCall) predicate).getOperandList()) {
+          Boolean result = evaluate(operand, values);
+          if (result == null) {
+            unknown = true;
+          } else if (result == decisive) {
+            return decisive;
+          }
+        }
+        return unknown ? null : !decisive;
+      }
+      if (kind == SqlKind.NOT) {
+        return negate(evaluate(((SqlCall) predicate).operand(0), values));
+      }
+      if (!(predicate instanceof SqlCall) || ((SqlCall) predicate).getOperandList().isEmpty()) {
+        return null;
+      }
+      List<SqlNode> operands = ((SqlCall) predicate).getOperandList();
+      String value = getValue(operands.get(0), values);
+      switch (kind) {
+        case IS_NULL:
+        case IS_NOT_NULL:
+          return value == null ? null : DEFAULT_PARTITION.equals(value) == (kind == SqlKind.IS_NULL);
+        case IN:
+          return evaluateIn(value, operands.get(1));
+        case BETWEEN:
+          SqlBetweenOperator between = (SqlBetweenOperator) ((SqlCall) predicate).getOperator();
+          if (between.flag == SqlBetweenOperator.Flag.SYMMETRIC) {
+            return null;
+          }
+          Boolean inRange = and(compare(SqlKind.GREATER_THAN_OR_EQUAL, value, getLiteral(operands.get(1))),
+                                compare(SqlKind.LESS_THAN_OR_EQUAL, value, getLiteral(operands.get(2))));
+          return between.isNegated() ? negate(inRange) : inRange;
+        default:
+          if (!REVERSED.containsKey(kind) || operands.size() != 2) {
+            return null;
+          }
+          if (value != null) {
+            return compare(kind, value, getLiteral(operands.get(1)));
+          }
+          return compare(REVERSED.get(kind), getValue(operands.get(1), values), getLiteral(operands.get(0)));
+      }
+    }
+
+    @Nullable
+    private Boolean evaluateIn(@Nullable String value, SqlNode list) {
+      if (!(list instanceof SqlNodeList)) {
+        return null;
+      }
+      boolean unknown = false;
+      for (SqlNode item : (SqlNodeList) list) {
+        Boolean equal = compare(SqlKind.EQUALS, value, getLiteral(item));
+        if (equal == null) {
+          unknown = true;
+        } else if (equal) {
+          return true;
+        }
+      }
+      return unknown ? null : false;
+    }
+
+    /**
+     * Returns the value of the partition column the node references, null if it references no partition column.
+     */
+    @Nullable
+    private String getValue(@Nullable SqlNode node, Map<String, String> values) {
+      if (!(node instanceof SqlIdentifier)) {
+        return null;
+      }
+      List<String> names = ((SqlIdentifier) node).names;
+      if (names.size() > 1 && !names.get(names.size() - 2).equalsIgnoreCase(table.alias)) {
+        return null;
+      }
+      return values.get(names.get(names.size() - 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the value of a string or numeric literal, null for other expressions.
+     */
+    @Nullable
+    private static String getLiteral(@Nullable SqlNode node) {
+      if (node == null) {
+        return null;
+      }
+      if (node.getKind() == SqlKind.MINUS_PREFIX && ((SqlCall) node).operand(0) instanceof SqlNumericLiteral) {
+        return "-" + ((SqlLiteral) ((SqlCall) node).operand(0)).toValue();
+      }
+      return node instanceof SqlCharStringLiteral || node instanceof SqlNumericLiteral ?
+        ((SqlLiteral) node).toValue() : null;
+    }
+
+    @Nullable
+    private static Boolean compare(SqlKind kind, @Nullable String value, @Nullable String literal) {
+      if (value == null || literal == null || DEFAULT_PARTITION.equals(value)) {
+        return null;
+      }
+      int order = value.compareTo(literal);
+      BigDecimal number = toNumber(value);
+      BigDecimal literalNumber = toNumber(literal);
+      if (number != null && literalNumber != null) {
+        int numericOrder = number.compareTo(literalNumber);
+        if (Integer.signum(numericOrder) != Integer.signum(order)) {
+          // hive compares numeric columns as numbers and string columns as strings
+          return null;
+        }
+        order = numericOrder;
+      } else if (number != null || literalNumber != null) {
+        return null;
+      } else if (value.length() != literal.length()
+        && (DATE_LIKE.matcher(value).matches() || DATE_LIKE.matcher(literal).matches())) {
+        // dates are compared as dates, which only matches the string order for the same format
+        return null;
+      }
+      switch (kind) {
+        case EQUALS:
+          return order == 0;
+        case NOT_EQUALS:
+          return order != 0;
+        case LESS_THAN:
+          return order < 0;
+        case LESS_THAN_OR_EQUAL:
+          return order <= 0;
+        case GREATER_THAN:
+          return order > 0;
+        case GREATER_THAN_OR_EQUAL:
+          return order >= 0;
+        default:
+          return null;
+      }
+    }
+
+    @Nullable
+    private static BigDecimal toNumber(String value) {
+      try {
+        return new BigDecimal(value.trim());
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    @Nullable
+    private static Boolean negate(@Nullable Boolean value) {
+      return value == null ? null : !value;
+    }
+
+    @Nullable
+    private static Boolean and(@Nullable Boolean left, @Nullable Boolean right) {
+      if (Boolean.FALSE.equals(left) || Boolean.FALSE.equals(right)) {
+        return false;
+      }
+      return left == null || right == null ? null : true;
+    }
+  }
+
+  /**
+   * Looks up the partition columns of a table, an empty list if the table is not partitioned.
+   */
+  public interface PartitionColumnResolver {
+    List<String> getPartitionColumns(String table) throws Exception;
+  }
+
+  private static final class TableReference {
+    private final String name;
+    private final String alias;
+
+    private TableReference(String name, String alias) {
+      this.name = name;
+      this.alias = alias;
+    }
+  }
+
+  /**
+   * Whether a predicate prunes partitions of a table, and if it references partition columns without pruning,
+   * the reason why.
+   */
+  private static final class Result {
+    private static final Result PRUNABLE = new Result(true, null);
+    private static final Result UNRELATED = new Result(false, null);
+
+    private final boolean prunable;
+    @Nullable
+    private final String reason;
+
+    private Result(boolean prunable, @Nullable String reason) {
+      this.prunable = prunable;
+      this.reason = reason;
+    }
+
+    private static Result notPrunable(String reason) {
+      return new Result(false, reason);
+    }
+
+    /**
+     * Combines results of conjuncts, which prune partitions if any of them does.
+     */
+    private static Result anyOf(List<Result> results) {
+      Result combined = UNRELATED;
+      for (Result result : results) {
+        combined = combined.or(result);
+      }
+      return combined;
+    }
+
+    /**
+     * Combines results of disjuncts, which only prune partitions if all of them do.
+     */
+    private static Result allOf(List<Result> results) {
+      if (results.stream().allMatch(result -> result.prunable)) {
+        return PRUNABLE;
+      }
+      for (Result result : results) {
+        if (result.reason != null) {
+          return result;
+        }
+      }
+      if (results.stream().anyMatch(result -> result.prunable)) {
+        return notPrunable("it is combined with OR with a predicate on other columns");
+      }
+      return UNRELATED;
+    }
+
+    private Result or(Result other) {
+      if (prunable || other.prunable) {
+        return PRUNABLE;
+      }
+      return reason != null ? this : other;
+    }
+  }
+}
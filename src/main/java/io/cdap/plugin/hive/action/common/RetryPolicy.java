@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which failed hive statements are retried and how long to wait before each retry. A failure is transient
+ * if the SQLState of an exception in its cause chain starts with one of the retryable SQLStates, or if an exception
+ * in the chain is an instance of one of the retryable exception types. Only idempotent statements are retried, since
+ * a statement which failed with a transient error may still have completed partially or even completely.
+ */
+public class RetryPolicy {
+  public static final int DEFAULT_MAX_RETRIES = 3;
+  public static final long DEFAULT_INITIAL_DELAY_SECONDS = 5;
+  public static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  // connection level failures. HiveServer2 reports every failed job as 08S01, which is only retried by default if a
+  // transport exception caused it, so that deterministic failures such as bad casts do not run again
+  public static final List<String> DEFAULT_SQL_STATES = Collections.unmodifiableList(Arrays.asList(
+    "08001", "08003", "08004", "08006", "08007"));
+  public static final List<String> DEFAULT_EXCEPTIONS = Collections.unmodifiableList(Arrays.asList(
+    "org.apache.thrift.transport.TTransportException", "java.net.SocketException",
+    "java.net.SocketTimeoutException"));
+  public static final RetryPolicy NONE = new RetryPolicy(0, 0, Collections.emptyList(), Collections.emptyList());
+
+  private static final Pattern IDEMPOTENT = Pattern.compile(
+    "^\\s*(INSERT\\s+OVERWRITE\\s|SELECT\\s|WITH\\s|DESCRIBE\\s|DESC\\s|SHOW\\s|EXPLAIN\\s|SET\\s|USE\\s|ADD\\s|" +
+      "CREATE\\s+(TEMPORARY\\s+|EXTERNAL\\s+)*(TABLE|DATABASE|SCHEMA|VIEW)\\s+IF\\s+NOT\\s+EXISTS\\s|" +
+      "DROP\\s+(TABLE|DATABASE|SCHEMA|VIEW|PARTITION)\\s+IF\\s+EXISTS\\s|" +
+      "ALTER\\s+TABLE\\s+\\S+\\s+ADD\\s+IF\\s+NOT\\s+EXISTS\\s|ALTER\\s+TABLE\\s+\\S+\\s+DROP\\s+IF\\s+EXISTS\\s)",
+    Pattern.CASE_INSENSITIVE);
+  // LOAD DATA moves each file, files moved by a failed attempt are not moved again by a retry
+  private static final Pattern APPENDING_LOAD = Pattern.compile(
+    "^\\s*LOAD\\s+DATA\\s+INPATH\\s+'([^']+)'\\s+INTO\\s", Pattern.CASE_INSENSITIVE);
+
+  private final int maxRetries;
+  private final long initialDelayMillis;
+  private final List<String> sqlStates;
+  private final List<String> exceptions;
+
+  public RetryPolicy(int maxRetries, long initialDelayMillis, Collection<String> sqlStates,
+                     Collection<String> exceptions) {
+    this.maxRetries = maxRetries;
+    this.initialDelayMillis = initialDelayMillis;
+    this.sqlStates = new ArrayList<>(sqlStates);
+    this.exceptions = new ArrayList<>(exceptions);
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Returns whether the statement should be retried after it failed the given number of times.
+   */
+  public boolean shouldRetry(String statement, Throwable failure, int failures) {
+    return failures <= maxRetries && isTransient(failure) && isIdempotent(statement);
+  }
+
+  /**
+   * Returns whether an exception in the cause chain has a retryable SQLState or is of a retryable type.
+   */
+  public boolean isTransient(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+      if (cause instanceof SQLException) {
+        String sqlState = ((SQLException) cause).getSQLState();
+        if (sqlState != null && sqlStates.stream().anyMatch(sqlState::startsWith)) {
+          return true;
+        }
+      }
+      for (Class<?> type = cause.getClass(); type != null; type = type.getSuperclass()) {
+        if (exceptions.contains(type.getName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the delay before the given retry, starting at 1. Delays double with every retry up to a maximum, and
+   * are drawn randomly from the upper half of that range, so that concurrent statements retry at different times.
+   */
+  public long getDelayMillis(int retry) {
+    if (initialDelayMillis <= 0) {
+      return 0;
+    }
+    int shift = Math.min(retry - 1, 30);
+    // capped before shifting, so that the shift can not overflow
+    long delay = initialDelayMillis > MAX_DELAY_MILLIS >> shift ? MAX_DELAY_MILLIS : initialDelayMillis << shift;
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  /**
+   * Returns whether running the statement again after a partial or complete run gives the same result as running it
+   * once. This covers statements which overwrite their output, read only statements, session commands and statements
+   * guarded by IF [NOT] EXISTS, as well as LOAD DATA INPATH into a table, which moves every file at most once.
+   * Appending INSERT INTO and LOAD DATA with OVERWRITE, which would replace the files moved by a failed attempt,
+   * are not idempotent.
+   */
+  public static boolean isIdempotent(String statement) {
+    return IDEMPOTENT.matcher(statement).find() || getLoadPath(statement) != null;
+  }
+
+  /**
+   * Returns the path loaded by an appending LOAD DATA INPATH statement, null for other statements.
+   */
+  public static String getLoadPath(String statement) {
+    Matcher matcher = APPENDING_LOAD.matcher(statement);
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  /**
+   * Splits a comma separated list, ignoring blank entries.
+   */
+  public static List<String> parseList(String list) {
+    return Arrays.stream(list.split(","))
+      .map(String::trim)
+      .filter(value -> !value.isEmpty())
+      .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.calcite.sql.SqlBasicCall;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.SqlJoin;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlOrderBy;
+import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.parser.SqlParserPos;
+
+import javax.annotation.Nullable;
+
+/**
+ * Rewrites a select statement so that its source table, the leftmost table in the FROM clause, is filtered by an
+ * additional predicate. The table reference is replaced by a filtered sub query, the rest of the statement is kept
+ * as written so that hive specific syntax is not changed by unparsing.
+ */
+public class SelectStatementRewriter {
+  private final String statement;
+  private final SqlSelect select;
+  private final SqlIdentifier sourceTable;
+  private final boolean aliased;
+
+  private SelectStatementRewriter(String statement, SqlSelect select, @Nullable SqlIdentifier sourceTable,
+                                  boolean aliased) {
+    this.statement = statement;
+    this.select = select;
+    this.sourceTable = sourceTable;
+    this.aliased = aliased;
+  }
+
+  /**
+   * Parses the given select statement.
+   *
+   * @throws SqlParseException if the statement can not be parsed
+   * @throws IllegalArgumentException if the statement is not a select statement
+   */
+  public static SelectStatementRewriter parse(String statement) throws SqlParseException {
+    SqlNode node = SqlParser.create(statement).parseQuery();
+    if (node instanceof SqlOrderBy) {
+      node = ((SqlOrderBy) node).query;
+    }
+    if (!(node instanceof SqlSelect)) {
+      throw new IllegalArgumentException("Statement is not a select statement.");
+    }
+    SqlSelect select = (SqlSelect) node;
+    SqlNode from = select.getFrom();
+    while (from instanceof SqlJoin) {
+      from = ((SqlJoin) from).getLeft();
+    }
+    if (from instanceof SqlIdentifier) {
+      return new SelectStatementRewriter(statement, select, (SqlIdentifier) from, false);
+    }
+    if (from != null && from.getKind() == SqlKind.AS
+      && ((SqlBasicCall) from).operand(0) instanceof SqlIdentifier) {
+      return new SelectStatementRewriter(statement, select, ((SqlBasicCall) from).operand(0), true);
+    }
+    return new SelectStatementRewriter(statement, select, null, false);
+  }
+
+  public SqlSelect getSelect() {
+    return select;
+  }
+
+  /**
+   * Returns the source table as written in the statement or null if the leftmost FROM item is not a table.
+   */
+  @Nullable
+  public String getSourceTable() {
+    return sourceTable == null ? null : substring(sourceTable.getParserPosition());
+  }
+
+  /**
+   * Returns the statement with the source table filtered by the given hive predicate.
+   */
+  public String withSourceFilter(String predicate) {
+    if (sourceTable == null) {
+      throw new IllegalStateException("Statement does not select from a table.");
+    }
+    SqlParserPos pos = sourceTable.getParserPosition();
+    int start = offset(pos.getLineNum(), pos.getColumnNum());
+    int end = offset(pos.getEndLineNum(), pos.getEndColumnNum()) + 1;
+    String table = statement.substring(start, end);
+    StringBuilder replacement = new StringBuilder("(SELECT * FROM ").append(table)
+      .append(" WHERE ").append(predicate).append(")");
+    if (!aliased) {
+      // keep references qualified with the table name working
+      replacement.append(' ').append(table.substring(table.lastIndexOf('.') + 1));
+    }
+    return statement.substring(0, start) + replacement + statement.substring(end);
+  }
+
+  private String substring(SqlParserPos pos) {
+    return statement.substring(offset(pos.getLineNum(), pos.getColumnNum()),
+                               offset(pos.getEndLineNum(), pos.getEndColumnNum()) + 1);
+  }
+
+  private int offset(int line, int column) {
+    int offset = 0;
+    for (int i = 1; i < line; i++) {
+      offset = statement.indexOf('\n', offset) + 1;
+    }
+    return offset + column - 1;
+  }
+}
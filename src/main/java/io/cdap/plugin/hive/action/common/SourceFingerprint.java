@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.calcite.sql.SqlBasicCall;
+import org.apache.calcite.sql.SqlCall;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.SqlJoin;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.SqlWithItem;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.util.SqlBasicVisitor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * Fingerprint of the input of an export: a hash of the export commands and, for every table the statement reads,
+ * its last DDL time and the number, size and modification time of the files it reads. For partitioned tables only
+ * the partitions selected by the partition predicates of the statement are fingerprinted, each below its own
+ * location, so that changes to other partitions do not change the fingerprint.
+ * The fingerprint of the last export is kept in a state file in the output directory, so that an export whose
+ * input did not change can be skipped.
+ */
+public final class SourceFingerprint {
+  public static final String STATE_FILE = "_FINGERPRINT";
+
+  private static final Logger LOG = LoggerFactory.getLogger(SourceFingerprint.class);
+  private static final String VIRTUAL_VIEW = "VIRTUAL_VIEW";
+  private static final String LAST_DDL_TIME = "transient_lastDdlTime";
+
+  private SourceFingerprint() {
+  }
+
+  /**
+   * Returns the fingerprint of the statement, or null if its input can not be fingerprinted because it does not
+   * read any table or reads a view, whose underlying tables are not known.
+   *
+   * @param settings description of everything besides the statement which determines the exported files, such as
+   *                 the export commands
+   */
+  @Nullable
+  public static String compute(HiveCommandExecutor executor, String statement, String settings,
+                               Configuration configuration) throws Exception {
+    Set<String> tables = getTables(statement);
+    if (tables.isEmpty()) {
+      LOG.info("No tables found in the statement, its input can not be fingerprinted.");
+      return null;
+    }
+    List<String> lines = new ArrayList<>();
+    lines.add("statement " + hash(statement + "\n" + settings));
+    for (String table : tables) {
+      List<List<String>> details = HiveMetadata.describeFormatted(executor, table);
+      String location = HiveMetadata.parseDetail(details, "Location:");
+      if (VIRTUAL_VIEW.equals(HiveMetadata.parseDetail(details, "Table Type:")) || location == null) {
+        LOG.info("'{}' is a view, the input of the statement can not be fingerprinted.", table);
+        return null;
+      }
+      String lastDdlTime = HiveMetadata.parseTableParameter(details, LAST_DDL_TIME);
+      if (HiveMetadata.parsePartitionColumns(details).isEmpty()) {
+        Path path = new Path(location);
+        lines.add(String.format("table %s lastDdlTime=%s partitions=none %s", table, lastDdlTime,
+                                summarize(path.getFileSystem(configuration), path)));
+      } else {
+        List<String> names = PartitionPruningAnalyzer.selectPartitions(statement, table,
+                                                                       HiveMetadata.getPartitions(executor, table));
+        lines.add(String.format("table %s lastDdlTime=%s partitions=%s", table, lastDdlTime,
+                                summarizePartitions(executor, table, names, configuration)));
+      }
+    }
+    return String.join("\n", lines);
+  }
+
+  /**
+   * Summarizes the files below the location of each of the partitions, which is looked up with one DESCRIBE
+   * FORMATTED per partition, since partitions of external tables may be located anywhere.
+   */
+  private static String summarizePartitions(HiveCommandExecutor executor, String table, List<String> partitionNames,
+                                            Configuration configuration) throws Exception {
+    List<String> summaries = new ArrayList<>();
+    for (String name : partitionNames) {
+      String location = HiveMetadata.parseDetail(
+        HiveMetadata.describeFormatted(executor, table + HiveMetadata.getPartitionClause(name)), "Location:");
+      if (location == null) {
+        throw new IllegalStateException(String.format("Unable to find the location of partition %s of %s.",
+                                                      name, table));
+      }
+      Path path = new Path(location);
+      summaries.add(name + " " + summarize(path.getFileSystem(configuration), path));
+    }
+    Collections.sort(summaries);
+    LOG.debug("Fingerprinted {} partitions of {} selected by the statement.", partitionNames.size(), table);
+    return summaries.size() + ":" + hash(String.join("\n", summaries));
+  }
+
+  /**
+   * Returns the names of the tables read by the statement, in lower case. Tables of sub queries, including those
+   * in WHERE clauses, are included, names of WITH queries are not.
+   */
+  public static Set<String> getTables(String statement) throws SqlParseException {
+    TableCollector collector = new TableCollector();
+    SqlParser.create(statement).parseQuery().accept(collector);
+    collector.tables.removeAll(collector.withNames);
+    return collector.tables;
+  }
+
+  /**
+   * Returns the number, total size and latest modification time of the files below the directory, ignoring hidden
+   * files and directories whose names start with '.' or '_'.
+   */
+  public static String summarize(FileSystem fs, Path directory) throws IOException {
+    long[] summary = new long[3];
+    if (fs.exists(directory)) {
+      summarize(fs, directory, summary);
+    }
+    return String.format("files=%d bytes=%d modified=%d", summary[0], summary[1], summary[2]);
+  }
+
+  private static void summarize(FileSystem fs, Path directory, long[] summary) throws IOException {
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      if (name.startsWith(".") || name.startsWith("_")) {
+        continue;
+      }
+      if (status.isDirectory()) {
+        summarize(fs, status.getPath(), summary);
+      } else {
+        summary[0]++;
+        summary[1] += status.getLen();
+        summary[2] = Math.max(summary[2], status.getModificationTime());
+      }
+    }
+  }
+
+  /**
+   * Returns the fingerprint stored in the directory, or null if there is none.
+   */
+  @Nullable
+  public static String read(FileSystem fs, Path directory) throws IOException {
+    return StateFile.read(fs, directory, STATE_FILE);
+  }
+
+  /**
+   * Stores the fingerprint of a successful export in the directory.
+   */
+  public static void write(FileSystem fs, Path directory, String fingerprint) throws IOException {
+    StateFile.write(fs, directory, STATE_FILE, fingerprint);
+  }
+
+  /**
+   * Removes the fingerprint from the directory, so that an export which fails half way is not skipped next time.
+   */
+  public static void delete(FileSystem fs, Path directory) throws IOException {
+    StateFile.delete(fs, directory, STATE_FILE);
+  }
+
+  private static String hash(String value) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8))) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Collects the tables of the FROM clauses of all selects of a statement, and the names of its WITH queries.
+   */
+  private static final class TableCollector extends SqlBasicVisitor<Void> {
+    private final Set<String> tables = new TreeSet<>();
+    private final Set<String> withNames = new TreeSet<>();
+
+    @Override
+    public Void visit(SqlCall call) {
+      if (call instanceof SqlSelect) {
+        addFrom(((SqlSelect) call).getFrom());
+      } else if (call instanceof SqlWithItem) {
+        withNames.add(((SqlWithItem) call).name.toString().toLowerCase(Locale.ROOT));
+      }
+      return super.visit(call);
+    }
+
+    private void addFrom(@Nullable SqlNode from) {
+      if (from instanceof SqlIdentifier) {
+        tables.add(String.join(".", ((SqlIdentifier) from).names).toLowerCase(Locale.ROOT));
+      } else if (from instanceof SqlJoin) {
+        addFrom(((SqlJoin) from).getLeft());
+        addFrom(((SqlJoin) from).getRight());
+      } else if (from != null && from.getKind() == SqlKind.AS) {
+        addFrom(((SqlBasicCall) from).operand(0));
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Output directory which is written in a hidden sibling directory and only moved into place once it is complete,
+ * so that readers never see partially written output. Committed directories contain a _SUCCESS marker.
+ */
+public class StagedDirectory {
+  public static final String SUCCESS_MARKER = "_SUCCESS";
+
+  private static final Logger LOG = LoggerFactory.getLogger(StagedDirectory.class);
+
+  private final FileSystem fs;
+  private final Path target;
+  private final Path staging;
+
+  public StagedDirectory(Path target, Configuration configuration) throws IOException {
+    this.fs = target.getFileSystem(configuration);
+    this.target = target;
+    this.staging = sibling(target, "staging");
+  }
+
+  /**
+   * Returns the directory the output is written to before it is committed.
+   */
+  public Path getStagingPath() {
+    return staging;
+  }
+
+  /**
+   * Creates the staging directory, so that it exists even if nothing is written to it.
+   */
+  public void create() throws IOException {
+    fs.mkdirs(staging);
+  }
+
+  /**
+   * Marks the staged output as complete and replaces the target directory with it. The previous content of the
+   * target is only removed once the staged output is in place.
+   */
+  public void commit() throws IOException {
+    fs.create(new Path(staging, SUCCESS_MARKER), true).close();
+
+    Path replaced = null;
+    if (fs.exists(target)) {
+      replaced = sibling(target, "replaced");
+      if (!fs.rename(target, replaced)) {
+        throw new IOException(String.format("Unable to move existing directory %s to %s.", target, replaced));
+      }
+    }
+    if (!fs.rename(staging, target)) {
+      if (replaced != null && !fs.rename(replaced, target)) {
+        LOG.error("Unable to restore previous content of {} from {}.", target, replaced);
+      }
+      throw new IOException(String.format("Unable to move staged output %s to %s.", staging, target));
+    }
+    if (replaced != null) {
+      fs.delete(replaced, true);
+    }
+    LOG.debug("Committed staged output {} to {}", staging, target);
+  }
+
+  /**
+   * Removes the staged output, leaving the target directory unchanged.
+   */
+  public void abort() {
+    try {
+      fs.delete(staging, true);
+    } catch (IOException e) {
+      LOG.warn("Unable to remove staged output {}.", staging, e);
+    }
+  }
+
+  private static Path sibling(Path path, String purpose) {
+    return new Path(path.getParent(), String.format(".%s-%s-%s", path.getName(), purpose, UUID.randomUUID()));
+  }
+}
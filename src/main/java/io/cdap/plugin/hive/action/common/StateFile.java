@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * Small text files in the output directory which keep the state of an export between runs, such as the
+ * high-water mark of incremental exports.
+ */
+public final class StateFile {
+
+  private StateFile() {
+  }
+
+  /**
+   * Returns the content of the state file in the directory, or null if there is none.
+   */
+  @Nullable
+  public static String read(FileSystem fs, Path directory, String name) throws IOException {
+    Path file = new Path(directory, name);
+    if (!fs.exists(file)) {
+      return null;
+    }
+    try (FSDataInputStream in = fs.open(file)) {
+      byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Writes the state file into the directory. The content is written to a hidden file first, which replaces the
+   * file of the previous run once it is complete, so that readers never see a partially written state.
+   */
+  public static void write(FileSystem fs, Path directory, String name, String content) throws IOException {
+    Path file = new Path(directory, name);
+    Path temp = new Path(directory, "." + name + ".tmp");
+    try (FSDataOutputStream out = fs.create(temp, true)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    if (fs.exists(file)) {
+      fs.delete(file, false);
+    }
+    if (!fs.rename(temp, file)) {
+      throw new IOException(String.format("Unable to write %s.", file));
+    }
+  }
+
+  public static void delete(FileSystem fs, Path directory, String name) throws IOException {
+    fs.delete(new Path(directory, name), false);
+  }
+}
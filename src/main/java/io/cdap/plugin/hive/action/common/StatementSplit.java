@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A part of a select statement, identified by a name which is also used as relative output directory and a
+ * hive predicate on the source table which selects the part.
+ */
+public final class StatementSplit {
+  private final String name;
+  private final String predicate;
+
+  public StatementSplit(String name, String predicate) {
+    this.name = name;
+    this.predicate = predicate;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getPredicate() {
+    return predicate;
+  }
+
+  /**
+   * Creates one split per partition, from partition names as returned by SHOW PARTITIONS,
+   * such as dt=2020-01-01/region=us.
+   */
+  public static List<StatementSplit> ofPartitions(List<String> partitionNames) {
+    List<StatementSplit> splits = new ArrayList<>();
+    for (String partitionName : partitionNames) {
+      List<String> conditions = new ArrayList<>();
+      for (String keyValue : partitionName.split("/")) {
+        int index = keyValue.indexOf('=');
+        if (index < 0) {
+          throw new IllegalArgumentException(String.format("Invalid partition name '%s'.", partitionName));
+        }
+        conditions.add(String.format("%s = %s", keyValue.substring(0, index),
+                                     quote(unescapePathName(keyValue.substring(index + 1)))));
+      }
+      splits.add(new StatementSplit(partitionName, String.join(" AND ", conditions)));
+    }
+    return splits;
+  }
+
+  /**
+   * Splits the range [lowerBound, upperBound] of a numeric column into numSplits ranges of similar size.
+   */
+  public static List<StatementSplit> ofRange(String column, long lowerBound, long upperBound, int numSplits) {
+    List<StatementSplit> splits = new ArrayList<>();
+    long size = upperBound - lowerBound + 1;
+    int count = (int) Math.max(1, Math.min(numSplits, size));
+    long start = lowerBound;
+    for (int i = 0; i < count; i++) {
+      long end = lowerBound + size * (i + 1) / count;
+      String predicate = i == count - 1 ?
+        String.format("%s >= %d AND %s <= %d", column, start, column, upperBound) :
+        String.format("%s >= %d AND %s < %d", column, start, column, end);
+      splits.add(new StatementSplit(String.format("split-%05d", i), predicate));
+      start = end;
+    }
+    return splits;
+  }
+
+  /**
+   * Returns the value as hive string literal.
+   */
+  public static String quote(String value) {
+    return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+  }
+
+  /**
+   * Escapes characters which are not allowed in path names as %XX, like hive does for partition values.
+   */
+  public static String escapePathName(String value) {
+    StringBuilder result = new StringBuilder();
+    for (char c : value.toCharArray()) {
+      if (c < ' ' || c == '\u007F' || "\"#%'*/:=?\\{[]^".indexOf(c) >= 0) {
+        result.append(String.format("%%%02X", (int) c));
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Reverses the %XX escaping hive applies to partition values in partition names.
+   */
+  static String unescapePathName(String value) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '%' && i + 2 < value.length()) {
+        try {
+          result.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+          i += 2;
+          continue;
+        } catch (NumberFormatException e) {
+          // not an escape sequence
+        }
+      }
+      result.append(c);
+    }
+    return result.toString();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
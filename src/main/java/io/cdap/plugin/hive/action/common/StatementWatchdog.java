@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.hive.action.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels the server side operation of running statements once they exceed their deadline, once the thread waiting
+ * for them is interrupted, or when the JVM shuts down, so that killed or stuck runs do not leave queries running on
+ * HiveServer2. Statements are checked by a single background thread every {@link #CHECK_INTERVAL_MILLIS}.
+ */
+public class StatementWatchdog {
+  public static final long CHECK_INTERVAL_MILLIS = 1000;
+
+  private static final Logger LOG = LoggerFactory.getLogger(StatementWatchdog.class);
+  private static final StatementWatchdog INSTANCE = new StatementWatchdog(CHECK_INTERVAL_MILLIS);
+
+  private final long checkIntervalMillis;
+  private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService checker;
+
+  public StatementWatchdog(long checkIntervalMillis) {
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  public static StatementWatchdog getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts watching a statement run by the current thread until the returned watch is closed.
+   *
+   * @param timeoutMillis time the statement may run before it is cancelled, 0 or less for no deadline
+   */
+  public Watch watch(Statement statement, long timeoutMillis) {
+    Watch watch = new Watch(statement, Thread.currentThread(), timeoutMillis);
+    watches.add(watch);
+    start();
+    return watch;
+  }
+
+  /**
+   * Cancels statements which exceeded their deadline or whose thread was interrupted.
+   */
+  public void check() {
+    long now = System.nanoTime();
+    for (Watch watch : watches) {
+      if (watch.thread.isInterrupted()) {
+        watch.cancel("the thread running it was interrupted", false);
+      } else if (watch.deadlineNanos != 0 && now - watch.deadlineNanos >= 0) {
+        watch.cancel(String.format("it exceeded the statement timeout of %d seconds",
+                                   TimeUnit.MILLISECONDS.toSeconds(watch.timeoutMillis)), true);
+      }
+    }
+  }
+
+  /**
+   * Cancels all watched statements.
+   */
+  public void cancelAll(String reason) {
+    watches.forEach(watch -> watch.cancel(reason, false));
+  }
+
+  private synchronized void start() {
+    if (checker != null) {
+      return;
+    }
+    checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "hive-statement-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    checker.scheduleWithFixedDelay(this::check, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> cancelAll("the JVM is shutting down"),
+                                                    "hive-statement-watchdog-shutdown"));
+  }
+
+  /**
+   * A watched statement, which is no longer watched once closed.
+   */
+  public final class Watch implements AutoCloseable {
+    private final Statement statement;
+    private final Thread thread;
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+    private volatile String cancelReason;
+    private volatile boolean timedOut;
+
+    private Watch(Statement statement, Thread thread, long timeoutMillis) {
+      this.statement = statement;
+      this.thread = thread;
+      this.timeoutMillis = timeoutMillis;
+      // 0 means no deadline, a computed deadline of exactly 0 is moved by a nanosecond
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      this.deadlineNanos = timeoutMillis <= 0 ? 0 : (deadline == 0 ? 1 : deadline);
+    }
+
+    public boolean isCancelled() {
+      return cancelReason != null;
+    }
+
+    /**
+     * Returns why the statement was cancelled, or null if it was not cancelled.
+     */
+    public String getCancelReason() {
+      return cancelReason;
+    }
+
+    /**
+     * Returns whether the statement was cancelled because it exceeded its deadline.
+     */
+    public boolean isTimedOut() {
+      return timedOut;
+    }
+
+    private synchronized void cancel(String reason, boolean deadlineExceeded) {
+      if (cancelReason != null) {
+        return;
+      }
+      timedOut = deadlineExceeded;
+      cancelReason = reason;
+      LOG.warn("Cancelling statement because {}.", reason);
+      try {
+        statement.cancel();
+      } catch (SQLException e) {
+        LOG.warn("Failed to cancel statement: {}", e.getMessage());
+      }
+    }
+
+    @Override
+    public void close() {
+      watches.remove(this);
+    }
+  }
+}
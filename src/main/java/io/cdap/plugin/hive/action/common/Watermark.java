@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.action.common;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import javax.annotation.Nullable;
+
+/**
+ * Range of a watermark column exported by one incremental run, from the high-water mark of the previous run,
+ * exclusive, to the high-water mark of this run, inclusive. The high-water mark is kept in a state file in the
+ * output directory between runs.
+ */
+public final class Watermark {
+  public static final String STATE_FILE = "_WATERMARK";
+
+  private final String column;
+  @Nullable
+  private final String lowerBound;
+  private final String upperBound;
+
+  public Watermark(String column, @Nullable String lowerBound, String upperBound) {
+    this.column = column;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+  @Nullable
+  public String getLowerBound() {
+    return lowerBound;
+  }
+
+  public String getUpperBound() {
+    return upperBound;
+  }
+
+  /**
+   * Returns the hive predicate selecting the rows of the range.
+   */
+  public String getPredicate() {
+    String upper = String.format("%s <= %s", column, StatementSplit.quote(upperBound));
+    return lowerBound == null ? upper : String.format("%s > %s AND %s", column, StatementSplit.quote(lowerBound),
+                                                      upper);
+  }
+
+  /**
+   * Returns the name of the subdirectory the range is exported to, such as dt=2020-01-01.
+   */
+  public String getDirectoryName() {
+    return column + "=" + StatementSplit.escapePathName(upperBound);
+  }
+
+  /**
+   * Returns whether the partition, given by its name as returned by SHOW PARTITIONS, is in the range. Partitions
+   * without a value for the watermark column are always in the range.
+   */
+  public boolean containsPartition(String partitionName) {
+    for (String keyValue : partitionName.split("/")) {
+      int index = keyValue.indexOf('=');
+      if (index > 0 && keyValue.substring(0, index).equalsIgnoreCase(column)) {
+        String value = StatementSplit.unescapePathName(keyValue.substring(index + 1));
+        return (lowerBound == null || compare(value, lowerBound) > 0) && compare(value, upperBound) <= 0;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares watermark values numerically if both are numbers, otherwise as strings, which orders dates and
+   * timestamps in the hive format correctly.
+   */
+  public static int compare(String value, String other) {
+    try {
+      return new BigDecimal(value).compareTo(new BigDecimal(other));
+    } catch (NumberFormatException e) {
+      return value.compareTo(other);
+    }
+  }
+
+  /**
+   * Returns the high-water mark stored in the directory, or null if no run has completed yet.
+   */
+  @Nullable
+  public static String read(FileSystem fs, Path directory) throws IOException {
+    String mark = StateFile.read(fs, directory, STATE_FILE);
+    return mark == null ? null : mark.trim();
+  }
+
+  /**
+   * Stores the high-water mark of a completed run in the directory.
+   */
+  public static void write(FileSystem fs, Path directory, String mark) throws IOException {
+    StateFile.write(fs, directory, STATE_FILE, mark);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s in (%s, %s]", column, lowerBound, upperBound);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.orc.CompressionKind;
+import org.apache.orc.OrcFile;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Output format writing one ORC file per task into the staging directory of {@link HiveSink}. Records are
+ * buffered in column vectors and written in batches.
+ */
+public class HiveOrcOutputFormat extends FileOutputFormat<NullWritable, StructuredRecord> {
+  static final String SCHEMA = "hive.sink.schema";
+  static final String COMPRESSION = "hive.sink.compression";
+
+  /**
+   * Returns the hadoop configuration used by the output format to write the given schema to the directory.
+   */
+  static Map<String, String> getConfiguration(Path directory, Schema schema, CompressionKind compression) {
+    Map<String, String> conf = new HashMap<>();
+    conf.put(FileOutputFormat.OUTDIR, directory.toString());
+    // the staging directory is moved into the table as a whole, so it must only contain data files
+    conf.put("mapreduce.fileoutputcommitter.marksuccessfuljobs", "false");
+    conf.put(SCHEMA, schema.toString());
+    conf.put(COMPRESSION, compression.name());
+    return conf;
+  }
+
+  @Override
+  public RecordWriter<NullWritable, StructuredRecord> getRecordWriter(TaskAttemptContext context)
+    throws IOException {
+    Configuration conf = context.getConfiguration();
+    Schema schema = Schema.parseJson(conf.get(SCHEMA));
+    TypeDescription orcSchema = OrcRecordConverter.toOrcSchema(schema);
+    Path file = getDefaultWorkFile(context, ".orc");
+    Writer writer = OrcFile.createWriter(file, OrcFile.writerOptions(conf)
+      .setSchema(orcSchema)
+      .compress(CompressionKind.valueOf(conf.get(COMPRESSION))));
+    return new OrcRecordWriter(writer, orcSchema.createRowBatch(), schema.getFields());
+  }
+
+  /**
+   * Writes records to an ORC file, one row batch at a time.
+   */
+  private static class OrcRecordWriter extends RecordWriter<NullWritable, StructuredRecord> {
+    private final Writer writer;
+    private final VectorizedRowBatch batch;
+    private final List<Schema.Field> fields;
+
+    OrcRecordWriter(Writer writer, VectorizedRowBatch batch, List<Schema.Field> fields) {
+      this.writer = writer;
+      this.batch = batch;
+      this.fields = fields;
+    }
+
+    @Override
+    public void write(NullWritable key, StructuredRecord record) throws IOException {
+      int row = batch.size++;
+      for (int i = 0; i < fields.size(); i++) {
+        OrcRecordConverter.setValue(batch.cols[i], row, record, fields.get(i));
+      }
+      if (batch.size == batch.getMaxSize()) {
+        writer.addRowBatch(batch);
+        batch.reset();
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      if (batch.size > 0) {
+        writer.addRowBatch(batch);
+        batch.reset();
+      }
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.sink;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Plugin;
+import io.cdap.cdap.api.data.batch.Output;
+import io.cdap.cdap.api.data.batch.OutputFormatProvider;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.dataset.lib.KeyValue;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.BatchSink;
+import io.cdap.cdap.etl.api.batch.BatchSinkContext;
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Hive Sink writes ORC files from each task into a staging directory and, once the run succeeds, moves them into
+ * the table or partition with a single LOAD DATA statement.
+ */
+@Plugin(type = BatchSink.PLUGIN_TYPE)
+@Name("HiveSink")
+@Description("Writes records to a hive table stored as ORC.")
+public class HiveSink extends BatchSink<StructuredRecord, NullWritable, StructuredRecord> {
+  private static final Logger LOG = LoggerFactory.getLogger(HiveSink.class);
+  private final HiveSinkConfig config;
+  private Path stagingPath;
+
+  public HiveSink(HiveSinkConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    FailureCollector failureCollector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
+    config.validate(failureCollector);
+    Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
+    if (inputSchema != null) {
+      config.validateSchema(inputSchema, failureCollector);
+    }
+  }
+
+  @Override
+  public void prepareRun(BatchSinkContext context) throws Exception {
+    FailureCollector failureCollector = context.getFailureCollector();
+    config.validate(failureCollector);
+    Schema inputSchema = context.getInputSchema();
+    if (inputSchema == null) {
+      failureCollector.addFailure("Input schema is not known.", "Provide a schema in the previous stage.");
+      failureCollector.getOrThrowException();
+    }
+    config.validateSchema(inputSchema, failureCollector);
+    failureCollector.getOrThrowException();
+
+    HiveCommandExecutor executor = new HiveCommandExecutor(config);
+    List<List<String>> describeRows;
+    List<List<String>> details;
+    try {
+      describeRows = HiveMetadata.describe(executor, config.getTable());
+      details = HiveMetadata.describeFormatted(executor, config.getTable());
+    } finally {
+      executor.cleanup();
+    }
+    config.validateTable(inputSchema, HiveMetadata.parseColumns(describeRows),
+                         HiveMetadata.parsePartitionColumns(describeRows), failureCollector);
+    config.validateStorageFormat(HiveMetadata.parseDetail(details, "InputFormat:"), failureCollector);
+    failureCollector.getOrThrowException();
+
+    stagingPath = new Path(config.getStagingDirectory(), UUID.randomUUID().toString());
+    LOG.debug("Writing ORC files for table {} to {}", config.getTable(), stagingPath);
+    Map<String, String> conf = HiveOrcOutputFormat.getConfiguration(stagingPath, inputSchema,
+                                                                    config.getCompression());
+    context.addOutput(Output.of(context.getStageName(), new OutputFormatProvider() {
+      @Override
+      public String getOutputFormatClassName() {
+        return HiveOrcOutputFormat.class.getName();
+      }
+
+      @Override
+      public Map<String, String> getOutputFormatConfiguration() {
+        return conf;
+      }
+    }));
+  }
+
+  @Override
+  public void transform(StructuredRecord input, Emitter<KeyValue<NullWritable, StructuredRecord>> emitter) {
+    emitter.emit(new KeyValue<>(NullWritable.get(), input));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSinkContext context) {
+    if (stagingPath == null) {
+      return;
+    }
+    try {
+      FileSystem fs = stagingPath.getFileSystem(new Configuration());
+      try {
+        if (succeeded) {
+          load(fs);
+        }
+      } finally {
+        fs.delete(stagingPath, true);
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException(
+        String.format("Failed to load the files written to %s into table '%s': %s", stagingPath, config.getTable(),
+                      e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Moves all files of the staging directory into the table or partition with one metastore operation.
+   */
+  private void load(FileSystem fs) throws Exception {
+    if (!hasDataFiles(fs)) {
+      LOG.info("No records were written, table '{}' is not modified.", config.getTable());
+      return;
+    }
+    String command = "LOAD DATA INPATH '" + stagingPath + "'" + (config.isOverwrite() ? " OVERWRITE" : "") +
+      " INTO TABLE " + config.getTable() + config.getPartitionClause();
+    LOG.debug("Hive command being executed: {}", command);
+    HiveCommandExecutor executor = new HiveCommandExecutor(config);
+    try {
+      executor.execute(command);
+    } finally {
+      executor.cleanup();
+    }
+  }
+
+  private boolean hasDataFiles(FileSystem fs) throws IOException {
+    if (!fs.exists(stagingPath)) {
+      return false;
+    }
+    for (FileStatus status : fs.listStatus(stagingPath)) {
+      String name = status.getPath().getName();
+      if (status.isFile() && !name.startsWith("_") && !name.startsWith(".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.sink;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.plugin.hive.action.HiveExportFormat;
+import io.cdap.plugin.hive.action.PartitionRegistrar;
+import io.cdap.plugin.hive.action.common.HiveConnectionConfig;
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.apache.orc.CompressionKind;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Hive Sink config
+ */
+public class HiveSinkConfig extends HiveConnectionConfig {
+  public static final String TABLE = "table";
+  public static final String PARTITION = "partition";
+  public static final String OVERWRITE = "overwrite";
+  public static final String STAGING_DIRECTORY = "stagingDirectory";
+  public static final String COMPRESSION = "compression";
+
+  private static final String DEFAULT_STAGING_DIRECTORY = "/tmp/hive-sink";
+  private static final String DEFAULT_COMPRESSION = "ZLIB";
+
+  @Name(TABLE)
+  @Description("Hive table the records are written to, optionally qualified by the database name. The table must be " +
+    "stored as ORC.")
+  @Macro
+  private String table;
+
+  @Name(PARTITION)
+  @Description("Partition the records are written to, such as dt=2020-01-01/region=us. Required if the table is " +
+    "partitioned.")
+  @Nullable
+  @Macro
+  private String partition;
+
+  @Name(OVERWRITE)
+  @Description("Whether to replace the existing data of the table or partition. Defaults to 'no'.")
+  @Nullable
+  @Macro
+  private String overwrite;
+
+  @Name(STAGING_DIRECTORY)
+  @Description("Directory the ORC files are written to before they are moved into the table. It must be on the " +
+    "same filesystem as the table. Defaults to /tmp/hive-sink.")
+  @Nullable
+  @Macro
+  private String stagingDirectory;
+
+  @Name(COMPRESSION)
+  @Description("Compression codec of the ORC files, one of NONE, ZLIB, SNAPPY, LZO or LZ4. Defaults to ZLIB.")
+  @Nullable
+  @Macro
+  private String compression;
+
+  public HiveSinkConfig(String connectionString, String user, String password, String table,
+                        String partition, String overwrite) {
+    super(connectionString, user, password);
+    this.table = table;
+    this.partition = partition;
+    this.overwrite = overwrite;
+  }
+
+  private HiveSinkConfig(Builder builder) {
+    super(builder.connectionString, builder.user, builder.password);
+    table = builder.table;
+    partition = builder.partition;
+    overwrite = builder.overwrite;
+    stagingDirectory = builder.stagingDirectory;
+    compression = builder.compression;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static Builder builder(HiveSinkConfig copy) {
+    return builder()
+      .setConnectionString(copy.getConnectionString())
+      .setUser(copy.getUser())
+      .setPassword(copy.getPassword())
+      .setTable(copy.table)
+      .setPartition(copy.partition)
+      .setOverwrite(copy.overwrite)
+      .setStagingDirectory(copy.stagingDirectory)
+      .setCompression(copy.compression);
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  @Nullable
+  public String getPartition() {
+    return Strings.isNullOrEmpty(partition) ? null : partition;
+  }
+
+  /**
+   * Returns the partition columns and values, in the order they were configured.
+   */
+  public Map<String, String> getPartitionValues() {
+    Map<String, String> values = new LinkedHashMap<>();
+    if (getPartition() == null) {
+      return values;
+    }
+    for (String keyValue : partition.split("/")) {
+      int index = keyValue.indexOf('=');
+      if (index < 1 || index == keyValue.length() - 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid partition '%s', expected column=value pairs separated by '/'.", partition));
+      }
+      values.put(keyValue.substring(0, index).trim(), keyValue.substring(index + 1).trim());
+    }
+    return values;
+  }
+
+  /**
+   * Returns the PARTITION clause of the load statement, or an empty string if no partition is configured.
+   */
+  public String getPartitionClause() {
+    Map<String, String> values = getPartitionValues();
+    if (values.isEmpty()) {
+      return "";
+    }
+    return values.entrySet().stream()
+      .map(entry -> entry.getKey() + "=" + StatementSplit.quote(entry.getValue()))
+      .collect(Collectors.joining(", ", " PARTITION (", ")"));
+  }
+
+  public boolean isOverwrite() {
+    return "yes".equalsIgnoreCase(overwrite);
+  }
+
+  public String getStagingDirectory() {
+    return Strings.isNullOrEmpty(stagingDirectory) ? DEFAULT_STAGING_DIRECTORY : stagingDirectory;
+  }
+
+  public CompressionKind getCompression() {
+    return CompressionKind.valueOf(
+      Strings.isNullOrEmpty(compression) ? DEFAULT_COMPRESSION : compression.toUpperCase(Locale.ROOT));
+  }
+
+  @Override
+  public void validate(FailureCollector failureCollector) {
+    super.validate(failureCollector);
+
+    if (!containsMacro(TABLE) && Strings.isNullOrEmpty(table)) {
+      failureCollector.addFailure("Table is not specified.", "Provide the name of the table to write to.")
+        .withConfigProperty(TABLE);
+    }
+
+    if (!containsMacro(PARTITION)) {
+      try {
+        getPartitionValues();
+      } catch (IllegalArgumentException e) {
+        failureCollector.addFailure(e.getMessage(), null)
+          .withConfigProperty(PARTITION);
+      }
+    }
+
+    if (!containsMacro(COMPRESSION)) {
+      try {
+        getCompression();
+      } catch (IllegalArgumentException e) {
+        failureCollector.addFailure(String.format("Compression '%s' is not supported.", compression),
+                                    String.format("Use one of %s.", Arrays.toString(CompressionKind.values())))
+          .withConfigProperty(COMPRESSION);
+      }
+    }
+  }
+
+  /**
+   * Validates that all fields of the input schema can be written to ORC files.
+   */
+  public void validateSchema(Schema schema, FailureCollector failureCollector) {
+    for (Schema.Field field : schema.getFields()) {
+      if (!OrcRecordConverter.isSupported(field.getSchema())) {
+        failureCollector.addFailure(String.format("Field '%s' is of unsupported type '%s'.", field.getName(),
+                                                  field.getSchema().getDisplayName()),
+                                    "Supported types are boolean, int, long, float, double, decimal, string, " +
+                                      "bytes, date and timestamp.")
+          .withInputSchemaField(field.getName());
+      }
+    }
+  }
+
+  /**
+   * Validates the input schema against the columns of the table, as returned by DESCRIBE. The fields are written
+   * by position, so they must be in the same order as the table columns.
+   */
+  public void validateTable(Schema schema, List<String> columns, List<String> partitionColumns,
+                            FailureCollector failureCollector) {
+    List<String> fieldNames = schema.getFields().stream()
+      .map(field -> field.getName().toLowerCase(Locale.ROOT))
+      .collect(Collectors.toList());
+    if (!fieldNames.equals(columns)) {
+      failureCollector.addFailure(String.format("Input fields %s do not match the columns %s of table '%s'.",
+                                                fieldNames, columns, table),
+                                  "Ensure the input schema has the same fields as the table, in the same order.");
+    }
+
+    List<String> configuredColumns = getPartitionValues().keySet().stream()
+      .map(column -> column.toLowerCase(Locale.ROOT))
+      .collect(Collectors.toList());
+    if (!configuredColumns.equals(partitionColumns)) {
+      failureCollector.addFailure(String.format("Partition columns %s do not match the partition columns %s of " +
+                                                  "table '%s'.", configuredColumns, partitionColumns, table),
+                                  "Provide a value for each partition column of the table.")
+        .withConfigProperty(PARTITION);
+    }
+  }
+
+  /**
+   * Validates that the table is stored as ORC, given the input format listed by DESCRIBE FORMATTED. LOAD DATA does
+   * not check the format of the files it moves, so ORC files loaded into a table of another format corrupt it.
+   */
+  public void validateStorageFormat(@Nullable String inputFormat, FailureCollector failureCollector) {
+    if (PartitionRegistrar.getFormat(inputFormat) != HiveExportFormat.ORC) {
+      failureCollector.addFailure(String.format("Table '%s' is stored with input format '%s', but the sink only " +
+                                                  "writes ORC files.", table, inputFormat),
+                                  "Write to a table stored as ORC.")
+        .withConfigProperty(TABLE);
+    }
+  }
+
+  public static class Builder {
+    private String connectionString;
+    private String user;
+    private String password;
+    private String table;
+    private String partition;
+    private String overwrite;
+    private String stagingDirectory;
+    private String compression;
+
+    private Builder() {
+    }
+
+    public Builder setConnectionString(String connectionString) {
+      this.connectionString = connectionString;
+      return this;
+    }
+
+    public Builder setUser(String user) {
+      this.user = user;
+      return this;
+    }
+
+    public Builder setPassword(String password) {
+      this.password = password;
+      return this;
+    }
+
+    public Builder setTable(String table) {
+      this.table = table;
+      return this;
+    }
+
+    public Builder setPartition(String partition) {
+      this.partition = partition;
+      return this;
+    }
+
+    public Builder setOverwrite(String overwrite) {
+      this.overwrite = overwrite;
+      return this;
+    }
+
+    public Builder setStagingDirectory(String stagingDirectory) {
+      this.stagingDirectory = stagingDirectory;
+      return this;
+    }
+
+    public Builder setCompression(String compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    public HiveSinkConfig build() {
+      return new HiveSinkConfig(this);
+    }
+  }
+}
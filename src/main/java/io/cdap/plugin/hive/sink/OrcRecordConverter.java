@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+import org.apache.orc.TypeDescription;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts CDAP schemas to ORC schemas and writes {@link StructuredRecord} fields to ORC column vectors.
+ */
+public final class OrcRecordConverter {
+
+  private OrcRecordConverter() {
+  }
+
+  /**
+   * Returns whether fields of the given schema can be written to ORC files.
+   */
+  public static boolean isSupported(Schema schema) {
+    Schema nonNullable = schema.isNullable() ? schema.getNonNullable() : schema;
+    Schema.LogicalType logicalType = nonNullable.getLogicalType();
+    if (logicalType != null) {
+      return logicalType == Schema.LogicalType.DATE || logicalType == Schema.LogicalType.DECIMAL
+        || logicalType == Schema.LogicalType.TIMESTAMP_MICROS || logicalType == Schema.LogicalType.TIMESTAMP_MILLIS;
+    }
+    switch (nonNullable.getType()) {
+      case BOOLEAN:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case STRING:
+      case BYTES:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  public static TypeDescription toOrcSchema(Schema schema) {
+    TypeDescription struct = TypeDescription.createStruct();
+    for (Schema.Field field : schema.getFields()) {
+      struct.addField(field.getName(), toOrcType(field.getSchema()));
+    }
+    return struct;
+  }
+
+  private static TypeDescription toOrcType(Schema schema) {
+    Schema nonNullable = schema.isNullable() ? schema.getNonNullable() : schema;
+    Schema.LogicalType logicalType = nonNullable.getLogicalType();
+    if (logicalType == Schema.LogicalType.DATE) {
+      return TypeDescription.createDate();
+    }
+    if (logicalType == Schema.LogicalType.TIMESTAMP_MICROS || logicalType == Schema.LogicalType.TIMESTAMP_MILLIS) {
+      return TypeDescription.createTimestamp();
+    }
+    if (logicalType == Schema.LogicalType.DECIMAL) {
+      return TypeDescription.createDecimal().withPrecision(nonNullable.getPrecision())
+        .withScale(nonNullable.getScale());
+    }
+    switch (nonNullable.getType()) {
+      case BOOLEAN:
+        return TypeDescription.createBoolean();
+      case INT:
+        return TypeDescription.createInt();
+      case LONG:
+        return TypeDescription.createLong();
+      case FLOAT:
+        return TypeDescription.createFloat();
+      case DOUBLE:
+        return TypeDescription.createDouble();
+      case STRING:
+        return TypeDescription.createString();
+      case BYTES:
+        return TypeDescription.createBinary();
+      default:
+        throw new IllegalArgumentException(
+          String.format("Type '%s' can not be written to ORC files.", nonNullable.getDisplayName()));
+    }
+  }
+
+  /**
+   * Writes the value of the field to the given row of the column vector.
+   */
+  public static void setValue(ColumnVector vector, int row, StructuredRecord record, Schema.Field field) {
+    Object value = record.get(field.getName());
+    if (value == null) {
+      vector.noNulls = false;
+      vector.isNull[row] = true;
+      return;
+    }
+    vector.isNull[row] = false;
+    Schema schema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+    Schema.LogicalType logicalType = schema.getLogicalType();
+    if (logicalType == Schema.LogicalType.DATE) {
+      ((LongColumnVector) vector).vector[row] = (Integer) value;
+    } else if (logicalType == Schema.LogicalType.TIMESTAMP_MICROS) {
+      long micros = (Long) value;
+      Timestamp timestamp = new Timestamp(Math.floorDiv(micros, 1000L));
+      timestamp.setNanos((int) TimeUnit.MICROSECONDS.toNanos(Math.floorMod(micros, 1000000L)));
+      ((TimestampColumnVector) vector).set(row, timestamp);
+    } else if (logicalType == Schema.LogicalType.TIMESTAMP_MILLIS) {
+      ((TimestampColumnVector) vector).set(row, new Timestamp((Long) value));
+    } else if (logicalType == Schema.LogicalType.DECIMAL) {
+      ((DecimalColumnVector) vector).set(row, HiveDecimal.create(record.getDecimal(field.getName())));
+    } else {
+      switch (schema.getType()) {
+        case BOOLEAN:
+          ((LongColumnVector) vector).vector[row] = (Boolean) value ? 1 : 0;
+          break;
+        case INT:
+        case LONG:
+          ((LongColumnVector) vector).vector[row] = ((Number) value).longValue();
+          break;
+        case FLOAT:
+        case DOUBLE:
+          ((DoubleColumnVector) vector).vector[row] = ((Number) value).doubleValue();
+          break;
+        case STRING:
+          byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+          ((BytesColumnVector) vector).setRef(row, bytes, 0, bytes.length);
+          break;
+        case BYTES:
+          byte[] data = value instanceof ByteBuffer ? toBytes((ByteBuffer) value) : (byte[]) value;
+          ((BytesColumnVector) vector).setRef(row, data, 0, data.length);
+          break;
+        default:
+          throw new IllegalArgumentException(
+            String.format("Field '%s' of type '%s' can not be written to ORC files.", field.getName(),
+                          schema.getDisplayName()));
+      }
+    }
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+}
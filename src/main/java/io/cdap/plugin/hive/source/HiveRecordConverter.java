@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.source;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Derives schemas from hive result sets and converts result set rows to {@link StructuredRecord}.
+ */
+public final class HiveRecordConverter {
+  private static final String RECORD_NAME = "output";
+
+  private HiveRecordConverter() {
+  }
+
+  /**
+   * Returns a schema with one nullable field per result set column. Complex hive types are returned as strings by
+   * the hive JDBC driver and are mapped to string fields.
+   */
+  public static Schema getSchema(ResultSetMetaData metaData) throws SQLException {
+    List<Schema.Field> fields = new ArrayList<>();
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      fields.add(Schema.Field.of(getFieldName(metaData.getColumnLabel(i)),
+                                 Schema.nullableOf(getSchema(metaData.getColumnType(i), metaData.getPrecision(i),
+                                                             metaData.getScale(i)))));
+    }
+    return Schema.recordOf(RECORD_NAME, fields);
+  }
+
+  public static Schema getSchema(int sqlType, int precision, int scale) {
+    switch (sqlType) {
+      case Types.BOOLEAN:
+        return Schema.of(Schema.Type.BOOLEAN);
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return Schema.of(Schema.Type.INT);
+      case Types.BIGINT:
+        return Schema.of(Schema.Type.LONG);
+      case Types.FLOAT:
+        return Schema.of(Schema.Type.FLOAT);
+      case Types.DOUBLE:
+        return Schema.of(Schema.Type.DOUBLE);
+      case Types.DECIMAL:
+        return Schema.decimalOf(precision, scale);
+      case Types.DATE:
+        return Schema.of(Schema.LogicalType.DATE);
+      case Types.TIMESTAMP:
+        return Schema.of(Schema.LogicalType.TIMESTAMP_MICROS);
+      case Types.BINARY:
+        return Schema.of(Schema.Type.BYTES);
+      default:
+        return Schema.of(Schema.Type.STRING);
+    }
+  }
+
+  /**
+   * Strips the table qualifier hive adds to column labels, such as 't.id'.
+   */
+  public static String getFieldName(String columnLabel) {
+    return columnLabel.substring(columnLabel.lastIndexOf('.') + 1);
+  }
+
+  /**
+   * Converts the current row of the result set. Result set columns are matched to schema fields by position.
+   */
+  public static StructuredRecord toRecord(ResultSet resultSet, Schema schema) throws SQLException {
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    List<Schema.Field> fields = schema.getFields();
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      Object value = resultSet.getObject(i + 1);
+      if (value == null) {
+        builder.set(field.getName(), null);
+        continue;
+      }
+      Schema fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+      Schema.LogicalType logicalType = fieldSchema.getLogicalType();
+      if (logicalType == Schema.LogicalType.DATE) {
+        builder.setDate(field.getName(), ((Date) value).toLocalDate());
+      } else if (logicalType == Schema.LogicalType.TIMESTAMP_MICROS
+        || logicalType == Schema.LogicalType.TIMESTAMP_MILLIS) {
+        builder.setTimestamp(field.getName(), ((Timestamp) value).toLocalDateTime().atZone(ZoneOffset.UTC));
+      } else if (logicalType == Schema.LogicalType.DECIMAL) {
+        builder.setDecimal(field.getName(),
+                           ((BigDecimal) value).setScale(fieldSchema.getScale(), RoundingMode.HALF_EVEN));
+      } else {
+        builder.set(field.getName(), convert(value, fieldSchema.getType()));
+      }
+    }
+    return builder.build();
+  }
+
+  private static Object convert(Object value, Schema.Type type) {
+    switch (type) {
+      case INT:
+        return ((Number) value).intValue();
+      case LONG:
+        return ((Number) value).longValue();
+      case FLOAT:
+        return ((Number) value).floatValue();
+      case DOUBLE:
+        return ((Number) value).doubleValue();
+      case BYTES:
+        return value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+      case STRING:
+        return value.toString();
+      default:
+        return value;
+    }
+  }
+}
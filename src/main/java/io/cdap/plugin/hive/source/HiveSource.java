@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.source;
+
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Plugin;
+import io.cdap.cdap.api.data.batch.Input;
+import io.cdap.cdap.api.data.batch.InputFormatProvider;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.dataset.lib.KeyValue;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.BatchSource;
+import io.cdap.cdap.etl.api.batch.BatchSourceContext;
+import io.cdap.plugin.hive.action.common.AdaptiveTuning;
+import io.cdap.plugin.hive.action.common.CostGuard;
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import io.cdap.plugin.hive.action.common.PartitionPruningAnalyzer;
+import io.cdap.plugin.hive.action.common.SelectStatementRewriter;
+import io.cdap.plugin.hive.action.common.SourceFingerprint;
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hive Source reads the result of a select statement, split into one statement per partition of the source table
+ * or per range of a split column so that splits are read in parallel.
+ */
+@Plugin(type = BatchSource.PLUGIN_TYPE)
+@Name("HiveSource")
+@Description("Reads the result of a hive select statement.")
+public class HiveSource extends BatchSource<NullWritable, StructuredRecord, StructuredRecord> {
+  private static final Logger LOG = LoggerFactory.getLogger(HiveSource.class);
+  private static final String INPUT_NAME = "hiveSource";
+  private final HiveSourceConfig config;
+
+  public HiveSource(HiveSourceConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    FailureCollector failureCollector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
+    config.validate(failureCollector);
+    failureCollector.getOrThrowException();
+
+    pipelineConfigurer.getStageConfigurer().setOutputSchema(config.getSchema());
+  }
+
+  @Override
+  public void prepareRun(BatchSourceContext context) throws Exception {
+    FailureCollector failureCollector = context.getFailureCollector();
+    config.validate(failureCollector);
+    failureCollector.getOrThrowException();
+
+    List<HiveSourceSplit> splits = getSplits();
+    // all split statements only differ by the values they compare with
+    HiveCommandExecutor executor = new HiveCommandExecutor(config);
+    try {
+      config.validatePartitionPruning(splits.get(0).getStatement(), executor, failureCollector);
+      CostGuard costGuard = config.getCostGuard();
+      if (costGuard != null) {
+        // splits are read in parallel, the cost of the whole statement is checked
+        costGuard.check(executor, config.getStatement());
+      }
+    } finally {
+      executor.cleanup();
+    }
+    failureCollector.getOrThrowException();
+
+    Schema schema = config.getSchema();
+    if (schema == null) {
+      schema = inferSchema();
+    }
+    LOG.info("Reading {} splits of the hive select statement.", splits.size());
+
+    Map<String, String> conf = HiveSourceInputFormat.getConfiguration(config, schema, splits, getTuningSettings());
+    context.setInput(Input.of(INPUT_NAME, new InputFormatProvider() {
+      @Override
+      public String getInputFormatClassName() {
+        return HiveSourceInputFormat.class.getName();
+      }
+
+      @Override
+      public Map<String, String> getInputFormatConfiguration() {
+        return conf;
+      }
+    }));
+  }
+
+  @Override
+  public void transform(KeyValue<NullWritable, StructuredRecord> input, Emitter<StructuredRecord> emitter) {
+    emitter.emit(input.getValue());
+  }
+
+  /**
+   * Splits the statement by ranges of the split column if one is configured, otherwise by the partitions of the
+   * source table its WHERE clause selects. Statements reading from a table which is not partitioned are not split.
+   */
+  private List<HiveSourceSplit> getSplits() throws Exception {
+    List<StatementSplit> statementSplits = Collections.emptyList();
+    SelectStatementRewriter rewriter = SelectStatementRewriter.parse(config.getStatement());
+    if (config.getSplitBy() != null) {
+      statementSplits = StatementSplit.ofRange(config.getSplitBy(), config.getSplitLowerBound(),
+                                               config.getSplitUpperBound(), config.getNumSplits());
+    } else if (rewriter.getSourceTable() != null) {
+      HiveCommandExecutor executor = new HiveCommandExecutor(config);
+      try {
+        String table = rewriter.getSourceTable();
+        if (!HiveMetadata.getPartitionColumns(executor, table).isEmpty()) {
+          // partitions the predicates of the statement exclude would only produce empty splits
+          statementSplits = StatementSplit.ofPartitions(PartitionPruningAnalyzer.selectPartitions(
+            config.getStatement(), table, HiveMetadata.getPartitions(executor, table)));
+        }
+      } finally {
+        executor.cleanup();
+      }
+    }
+
+    List<HiveSourceSplit> splits = new ArrayList<>();
+    for (StatementSplit split : statementSplits) {
+      splits.add(new HiveSourceSplit(split.getName(), rewriter.withSourceFilter(split.getPredicate())));
+    }
+    if (splits.isEmpty()) {
+      splits.add(new HiveSourceSplit("all", config.getStatement()));
+    }
+    return splits;
+  }
+
+  /**
+   * Returns the SET commands chosen by the adaptive tuning rules for the size of the tables read by the statement,
+   * an empty list if no rules are configured.
+   */
+  private List<String> getTuningSettings() throws Exception {
+    AdaptiveTuning tuning = config.getAdaptiveTuning();
+    if (tuning == null) {
+      return Collections.emptyList();
+    }
+    Set<String> tables = SourceFingerprint.getTables(config.getStatement());
+    HiveCommandExecutor executor = new HiveCommandExecutor(config);
+    try {
+      return tuning.getSettings(tables.isEmpty() ? -1 : AdaptiveTuning.estimateTables(executor, tables,
+                                                                                       new Configuration()),
+                                "tables " + tables);
+    } finally {
+      executor.cleanup();
+    }
+  }
+
+  /**
+   * Derives the schema from the result set metadata of the statement, without fetching any rows.
+   */
+  private Schema inferSchema() throws Exception {
+    HiveCommandExecutor executor = new HiveCommandExecutor(config);
+    try {
+      return executor.executeQuery("SELECT * FROM (" + config.getStatement() + ") t LIMIT 0",
+                                   resultSet -> HiveRecordConverter.getSchema(resultSet.getMetaData()));
+    } finally {
+      executor.cleanup();
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.source;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.plugin.hive.action.common.HiveConfig;
+import io.cdap.plugin.hive.action.common.HiveSelectConfig;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * Hive Source config
+ */
+public class HiveSourceConfig extends HiveSelectConfig {
+  public static final String FETCH_SIZE = "fetchSize";
+  public static final String SCHEMA = "schema";
+
+  private static final int DEFAULT_FETCH_SIZE = 1000;
+
+  @Name(FETCH_SIZE)
+  @Description("Number of rows fetched from HiveServer2 in each round trip while reading a split. Defaults to 1000.")
+  @Nullable
+  @Macro
+  private Integer fetchSize;
+
+  @Name(SCHEMA)
+  @Description("Schema of the records read from hive. If not provided, the schema is derived from the result set of " +
+    "the select statement when the pipeline runs.")
+  @Nullable
+  private String schema;
+
+  public HiveSourceConfig(String connectionString, String user, String password, String statement,
+                          Integer fetchSize, String schema) {
+    super(connectionString, user, password, statement);
+    this.fetchSize = fetchSize;
+    this.schema = schema;
+  }
+
+  private HiveSourceConfig(Builder builder) {
+    super(builder.connectionString, builder.user, builder.password, builder.statement, builder.splitBy,
+          builder.splitLowerBound, builder.splitUpperBound, builder.numSplits, builder.partitionFilterCheck);
+    fetchSize = builder.fetchSize;
+    schema = builder.schema;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static Builder builder(HiveSourceConfig copy) {
+    return builder()
+      .setConnectionString(copy.getConnectionString())
+      .setUser(copy.getUser())
+      .setPassword(copy.getPassword())
+      .setStatement(copy.getStatement())
+      .setSplitBy(copy.getSplitBy())
+      .setSplitLowerBound(copy.getSplitLowerBound())
+      .setSplitUpperBound(copy.getSplitUpperBound())
+      .setNumSplits(copy.getConfiguredNumSplits())
+      .setPartitionFilterCheck(copy.getConfiguredPartitionFilterCheck())
+      .setFetchSize(copy.fetchSize)
+      .setSchema(copy.schema);
+  }
+
+  public int getFetchSize() {
+    return fetchSize == null ? DEFAULT_FETCH_SIZE : fetchSize;
+  }
+
+  /**
+   * Returns the configured schema or null if the schema should be derived from the select statement.
+   */
+  @Nullable
+  public Schema getSchema() {
+    if (Strings.isNullOrEmpty(schema)) {
+      return null;
+    }
+    try {
+      return Schema.parseJson(schema);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to parse output schema: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  protected boolean requiresSourceTable() {
+    return getSplitBy() != null;
+  }
+
+  @Override
+  protected String getPluginDisplayName() {
+    return "Hive Source";
+  }
+
+  @Override
+  public void validate(FailureCollector failureCollector) {
+    super.validate(failureCollector);
+
+    if (!containsMacro(FETCH_SIZE) && fetchSize != null && fetchSize < 1) {
+      failureCollector.addFailure("Fetch size must be at least 1.", null)
+        .withConfigProperty(FETCH_SIZE);
+    }
+    try {
+      getSchema();
+    } catch (IllegalArgumentException e) {
+      failureCollector.addFailure(e.getMessage(), "Provide a valid schema.")
+        .withConfigProperty(SCHEMA);
+    }
+  }
+
+  public static class Builder extends HiveConfig.Builder<Builder> {
+    private Integer fetchSize;
+    private String schema;
+    private String splitBy;
+    private Long splitLowerBound;
+    private Long splitUpperBound;
+    private Integer numSplits;
+    private String partitionFilterCheck;
+    private String connectionString;
+    private String user;
+    private String password;
+    private String statement;
+
+    private Builder() {
+    }
+
+    public Builder setFetchSize(Integer fetchSize) {
+      this.fetchSize = fetchSize;
+      return this;
+    }
+
+    public Builder setSchema(String schema) {
+      this.schema = schema;
+      return this;
+    }
+
+    public Builder setSplitBy(String splitBy) {
+      this.splitBy = splitBy;
+      return this;
+    }
+
+    public Builder setSplitLowerBound(Long splitLowerBound) {
+      this.splitLowerBound = splitLowerBound;
+      return this;
+    }
+
+    public Builder setSplitUpperBound(Long splitUpperBound) {
+      this.splitUpperBound = splitUpperBound;
+      return this;
+    }
+
+    public Builder setNumSplits(Integer numSplits) {
+      this.numSplits = numSplits;
+      return this;
+    }
+
+    public Builder setPartitionFilterCheck(String partitionFilterCheck) {
+      this.partitionFilterCheck = partitionFilterCheck;
+      return this;
+    }
+
+    public Builder setConnectionString(String connectionString) {
+      this.connectionString = connectionString;
+      return this;
+    }
+
+    public Builder setUser(String user) {
+      this.user = user;
+      return this;
+    }
+
+    public Builder setPassword(String password) {
+      this.password = password;
+      return this;
+    }
+
+    public Builder setStatement(String statement) {
+      this.statement = statement;
+      return this;
+    }
+
+    public HiveSourceConfig build() {
+      return new HiveSourceConfig(this);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.source;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.hive.action.common.ConcurrencyLimiter;
+import io.cdap.plugin.hive.action.common.HiveConnectionConfig;
+import io.cdap.plugin.hive.action.common.KerberosSessionCache;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Input format creating one split per select statement planned by {@link HiveSource}. Splits are read by
+ * separate tasks, so they are read in parallel.
+ */
+public class HiveSourceInputFormat extends InputFormat<NullWritable, StructuredRecord> {
+  static final String CONNECTION_STRING = "hive.source.connection.string";
+  static final String USER = "hive.source.user";
+  static final String PASSWORD = "hive.source.password";
+  static final String KERBEROS_PRINCIPAL = "hive.source.kerberos.principal";
+  static final String KERBEROS_KEYTAB = "hive.source.kerberos.keytab";
+  static final String CACHE_DELEGATION_TOKEN = "hive.source.cache.delegation.token";
+  static final String FETCH_SIZE = "hive.source.fetch.size";
+  static final String STATEMENT_TIMEOUT = "hive.source.statement.timeout.millis";
+  static final String MAX_CONCURRENT_STATEMENTS = "hive.source.max.concurrent.statements";
+  static final String CONCURRENCY_LEASE_DIRECTORY = "hive.source.concurrency.lease.directory";
+  static final String SCHEMA = "hive.source.schema";
+  static final String SPLIT_COUNT = "hive.source.split.count";
+  static final String SPLIT_NAME = "hive.source.split.%d.name";
+  static final String SPLIT_STATEMENT = "hive.source.split.%d.statement";
+  static final String SETTINGS = "hive.source.settings";
+
+  /**
+   * Returns the Kerberos login the readers of the splits connect with, or null if they use the credentials of the
+   * pipeline.
+   */
+  @Nullable
+  static KerberosSessionCache.Login getKerberosLogin(Configuration conf) {
+    String principal = conf.get(KERBEROS_PRINCIPAL);
+    return principal == null ? null : new KerberosSessionCache.Login(principal, conf.get(KERBEROS_KEYTAB),
+                                                                     conf.getBoolean(CACHE_DELEGATION_TOKEN, true));
+  }
+
+  /**
+   * Returns the limiter the readers of the splits take a permit from before running their statement.
+   */
+  static ConcurrencyLimiter getConcurrencyLimiter(Configuration conf) throws IOException {
+    return HiveConnectionConfig.getConcurrencyLimiter(conf.getInt(MAX_CONCURRENT_STATEMENTS, 0),
+                                                      conf.get(CONCURRENCY_LEASE_DIRECTORY), conf);
+  }
+
+  /**
+   * Returns the hadoop configuration used by the input format to read the given statements, after running the
+   * given SET commands in the session of each split.
+   */
+  static Map<String, String> getConfiguration(HiveSourceConfig config, Schema schema, List<HiveSourceSplit> splits,
+                                              List<String> settings) {
+    Map<String, String> conf = new HashMap<>();
+    conf.put(CONNECTION_STRING, config.getConnectionString());
+    if (config.getUser() != null) {
+      conf.put(USER, config.getUser());
+    }
+    if (config.getPassword() != null) {
+      conf.put(PASSWORD, config.getPassword());
+    }
+    KerberosSessionCache.Login login = config.getKerberosLogin();
+    if (login != null) {
+      conf.put(KERBEROS_PRINCIPAL, login.getPrincipal());
+      conf.put(KERBEROS_KEYTAB, login.getKeytab());
+      conf.put(CACHE_DELEGATION_TOKEN, String.valueOf(login.isCacheToken()));
+    }
+    conf.put(FETCH_SIZE, String.valueOf(config.getFetchSize()));
+    conf.put(STATEMENT_TIMEOUT, String.valueOf(config.getStatementTimeoutMillis()));
+    conf.put(MAX_CONCURRENT_STATEMENTS, String.valueOf(config.getMaxConcurrentStatements()));
+    if (config.getConcurrencyLeaseDirectory() != null) {
+      conf.put(CONCURRENCY_LEASE_DIRECTORY, config.getConcurrencyLeaseDirectory());
+    }
+    conf.put(SCHEMA, schema.toString());
+    conf.put(SPLIT_COUNT, String.valueOf(splits.size()));
+    if (!settings.isEmpty()) {
+      conf.put(SETTINGS, String.join("\n", settings));
+    }
+    for (int i = 0; i < splits.size(); i++) {
+      conf.put(String.format(SPLIT_NAME, i), splits.get(i).getName());
+      conf.put(String.format(SPLIT_STATEMENT, i), splits.get(i).getStatement());
+    }
+    return conf;
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) {
+    Configuration conf = context.getConfiguration();
+    int count = conf.getInt(SPLIT_COUNT, 0);
+    List<InputSplit> splits = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      splits.add(new HiveSourceSplit(conf.get(String.format(SPLIT_NAME, i)),
+                                     conf.get(String.format(SPLIT_STATEMENT, i))));
+    }
+    return splits;
+  }
+
+  @Override
+  public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split,
+                                                                         TaskAttemptContext context) {
+    return new HiveSourceRecordReader();
+  }
+}
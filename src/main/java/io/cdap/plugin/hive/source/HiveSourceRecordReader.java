@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.source;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.hive.action.common.ConcurrencyLimiter;
+import io.cdap.plugin.hive.action.common.HiveActionMetrics;
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveConnectionPool;
+import io.cdap.plugin.hive.action.common.StatementWatchdog;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Streams the rows returned by the select statement of a {@link HiveSourceSplit}. Rows are fetched from
+ * HiveServer2 in batches of the configured fetch size.
+ */
+public class HiveSourceRecordReader extends RecordReader<NullWritable, StructuredRecord> {
+  private static final Logger LOG = LoggerFactory.getLogger(HiveSourceRecordReader.class);
+  private static final long LOGGED_WAIT_MILLIS = 1000;
+
+  private HiveConnectionPool pool;
+  private HiveConnectionPool.PooledConnection connection;
+  // counts the split statement against the concurrent statement limit until all of its rows were read
+  private ConcurrencyLimiter.Permit permit;
+  private Statement statement;
+  // cancels the query on HiveServer2 if the task is interrupted or its JVM shuts down while reading
+  private StatementWatchdog.Watch watch;
+  private ResultSet resultSet;
+  private Schema schema;
+  private StructuredRecord value;
+  private long records;
+  private boolean failed;
+  // resets the settings of the split before the connection is reused, null if the session cannot be reset
+  private String resetCommand = "";
+
+  @Override
+  public void initialize(InputSplit inputSplit, TaskAttemptContext context) throws IOException {
+    HiveSourceSplit split = (HiveSourceSplit) inputSplit;
+    Configuration conf = context.getConfiguration();
+    schema = Schema.parseJson(conf.get(HiveSourceInputFormat.SCHEMA));
+    pool = HiveConnectionPool.getInstance();
+    LOG.debug("Reading split {} with statement {}", split.getName(), split.getStatement());
+    try {
+      connection = pool.borrow(conf.get(HiveSourceInputFormat.CONNECTION_STRING),
+                               conf.get(HiveSourceInputFormat.USER), conf.get(HiveSourceInputFormat.PASSWORD),
+                               HiveSourceInputFormat.getKerberosLogin(conf));
+      statement = connection.getConnection().createStatement();
+      // the timeout covers the whole read of the split, since the statement runs while its rows are fetched
+      watch = StatementWatchdog.getInstance().watch(statement,
+                                                    conf.getLong(HiveSourceInputFormat.STATEMENT_TIMEOUT, 0));
+      statement.setFetchSize(conf.getInt(HiveSourceInputFormat.FETCH_SIZE, 1000));
+      String settings = conf.get(HiveSourceInputFormat.SETTINGS);
+      if (settings != null) {
+        resetCommand = HiveCommandExecutor.getResetCommand(Arrays.asList(settings.split("\n")),
+                                                           conf.get(HiveSourceInputFormat.CONNECTION_STRING));
+        for (String setting : settings.split("\n")) {
+          statement.execute(setting);
+        }
+      }
+      permit = acquirePermit(conf);
+      resultSet = statement.executeQuery(split.getStatement());
+    } catch (Exception e) {
+      failed = true;
+      close();
+      throw new IOException(String.format("Error while reading split %s: %s", split.getName(), e.getMessage()), e);
+    }
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    try {
+      if (!resultSet.next()) {
+        return false;
+      }
+      value = HiveRecordConverter.toRecord(resultSet, schema);
+      records++;
+      return true;
+    } catch (SQLException e) {
+      failed = true;
+      throw new IOException("Error while reading records from hive: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public NullWritable getCurrentKey() {
+    return NullWritable.get();
+  }
+
+  @Override
+  public StructuredRecord getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() {
+    // the number of rows returned by the statement is not known up front
+    return 0.0f;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (watch != null) {
+      watch.close();
+      failed |= watch.isCancelled();
+      watch = null;
+    }
+    try {
+      if (resultSet != null) {
+        resultSet.close();
+      }
+      if (statement != null) {
+        statement.close();
+      }
+    } catch (SQLException e) {
+      failed = true;
+      LOG.warn("Error while closing hive statement.", e);
+    } finally {
+      resultSet = null;
+      statement = null;
+      if (permit != null) {
+        permit.close();
+        permit = null;
+      }
+      if (connection != null) {
+        // a connection which failed might be broken, so it is not returned to the pool
+        if (failed || !resetSettings()) {
+          pool.discard(connection);
+        } else {
+          pool.release(connection);
+        }
+        connection = null;
+        LOG.debug("Read {} records.", records);
+      }
+    }
+  }
+
+  /**
+   * Waits until the split statement may run against HiveServer2 without exceeding the concurrent statement limit.
+   */
+  private ConcurrencyLimiter.Permit acquirePermit(Configuration conf) throws IOException, InterruptedException {
+    int maxConcurrentStatements = conf.getInt(HiveSourceInputFormat.MAX_CONCURRENT_STATEMENTS, 0);
+    long start = System.nanoTime();
+    ConcurrencyLimiter.Permit permit = HiveSourceInputFormat.getConcurrencyLimiter(conf)
+      .acquire(conf.get(HiveSourceInputFormat.CONNECTION_STRING), maxConcurrentStatements);
+    long waitMillis = HiveActionMetrics.millisSince(start);
+    if (waitMillis >= LOGGED_WAIT_MILLIS) {
+      LOG.info("Waited {} ms for one of {} concurrent statement slots of HiveServer2.", waitMillis,
+               maxConcurrentStatements);
+    }
+    return permit;
+  }
+
+  /**
+   * Resets the settings changed for the split, and returns whether the connection can be reused.
+   */
+  private boolean resetSettings() {
+    if (resetCommand == null) {
+      return false;
+    }
+    if (resetCommand.isEmpty()) {
+      return true;
+    }
+    try (Statement reset = connection.getConnection().createStatement()) {
+      reset.execute(resetCommand);
+      return true;
+    } catch (SQLException e) {
+      LOG.debug("Unable to reset the session settings, the connection is not reused.", e);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.hive.source;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Input split holding the select statement that reads one partition or one range of the source.
+ */
+public class HiveSourceSplit extends InputSplit implements Writable {
+  private String name;
+  private String statement;
+
+  // required for deserialization
+  @SuppressWarnings("unused")
+  public HiveSourceSplit() {
+  }
+
+  public HiveSourceSplit(String name, String statement) {
+    this.name = name;
+    this.statement = statement;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getStatement() {
+    return statement;
+  }
+
+  @Override
+  public long getLength() {
+    // the size of a split is not known before the statement runs
+    return 0;
+  }
+
+  @Override
+  public String[] getLocations() {
+    return new String[0];
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Text.writeString(out, name);
+    Text.writeString(out, statement);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    name = Text.readString(in);
+    statement = Text.readString(in);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
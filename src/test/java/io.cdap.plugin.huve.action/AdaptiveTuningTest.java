@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.AdaptiveTuning;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AdaptiveTuningTest {
+
+  @Test
+  public void testParseSize() {
+    Assert.assertEquals(0, AdaptiveTuning.parseSize("0"));
+    Assert.assertEquals(512, AdaptiveTuning.parseSize("512B"));
+    Assert.assertEquals(512L * 1024 * 1024, AdaptiveTuning.parseSize("512MB"));
+    Assert.assertEquals(10L * 1024 * 1024 * 1024, AdaptiveTuning.parseSize(" 10gb "));
+    Assert.assertEquals(1L << 40, AdaptiveTuning.parseSize("1T"));
+  }
+
+  @Test
+  public void testSettings() {
+    AdaptiveTuning tuning = AdaptiveTuning.parse(
+      "10GB: hive.execution.engine=tez, mapreduce.job.reduces=200\n" +
+        "0: hive.execution.engine=mr, hive.vectorized.execution.enabled=true;" +
+        "1TB: mapreduce.job.reduces=1000");
+
+    Assert.assertEquals(Collections.emptyList(), AdaptiveTuning.parse("1KB: a=b").getSettings(1023));
+    Assert.assertEquals(Arrays.asList("SET hive.execution.engine=mr", "SET hive.vectorized.execution.enabled=true"),
+                        tuning.getSettings(1024));
+    // rules for larger inputs override the settings of smaller ones
+    Assert.assertEquals(Arrays.asList("SET hive.execution.engine=tez", "SET hive.vectorized.execution.enabled=true",
+                                      "SET mapreduce.job.reduces=200"),
+                        tuning.getSettings(AdaptiveTuning.parseSize("10GB")));
+    Assert.assertEquals(Arrays.asList("SET hive.execution.engine=tez", "SET hive.vectorized.execution.enabled=true",
+                                      "SET mapreduce.job.reduces=1000"),
+                        tuning.getSettings(AdaptiveTuning.parseSize("2TB")));
+    Assert.assertEquals(Collections.emptyList(), tuning.getSettings(-1, "unknown input"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRuleWithoutThreshold() {
+    AdaptiveTuning.parse("hive.execution.engine=tez");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidThreshold() {
+    AdaptiveTuning.parse("large: hive.execution.engine=tez");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSetting() {
+    AdaptiveTuning.parse("0: hive.execution.engine");
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.ConcurrencyLimiter;
+import io.cdap.plugin.hive.action.common.FileLeaseConcurrencyLimiter;
+import io.cdap.plugin.hive.action.common.HiveConnectionConfig;
+import io.cdap.plugin.hive.action.common.InMemoryConcurrencyLimiter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimiterTest {
+  private static final String KEY = "jdbc:hive2://localhost:10000/default";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FileSystem fs;
+  private Path directory;
+  private final List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    fs = directory.getFileSystem(new Configuration());
+  }
+
+  @Test
+  public void testInMemoryAdmitsInOrder() throws Exception {
+    InMemoryConcurrencyLimiter limiter = new InMemoryConcurrencyLimiter();
+    ConcurrencyLimiter.Permit first = limiter.acquire(KEY, 1);
+    Thread second = startWaiter(limiter, "second", 1, () -> limiter.getQueueLength(KEY) == 2);
+    Thread third = startWaiter(limiter, "third", 1, () -> limiter.getQueueLength(KEY) == 3);
+    // other keys are not limited
+    limiter.acquire("jdbc:hive2://other:10000/default", 1).close();
+    Assert.assertTrue(admitted.isEmpty());
+
+    first.close();
+    release.countDown();
+    second.join(10000);
+    third.join(10000);
+    Assert.assertEquals(Arrays.asList("second", "third"), admitted);
+    Assert.assertEquals(0, limiter.getQueueLength(KEY));
+  }
+
+  @Test
+  public void testInMemoryInterruptedWaiterLeavesQueue() throws Exception {
+    InMemoryConcurrencyLimiter limiter = new InMemoryConcurrencyLimiter();
+    ConcurrencyLimiter.Permit first = limiter.acquire(KEY, 1);
+    Thread waiter = startWaiter(limiter, "waiter", 1, () -> limiter.getQueueLength(KEY) == 2);
+    waiter.interrupt();
+    waiter.join(10000);
+    Assert.assertEquals(1, limiter.getQueueLength(KEY));
+    first.close();
+    Assert.assertTrue(admitted.isEmpty());
+    Assert.assertEquals(0, limiter.getQueueLength(KEY));
+  }
+
+  @Test
+  public void testFileLeaseLimitsAcrossLimiters() throws Exception {
+    // two limiters sharing a directory, as two runs in different JVMs would
+    FileLeaseConcurrencyLimiter run1 = new FileLeaseConcurrencyLimiter(fs, directory, 60000, 10);
+    FileLeaseConcurrencyLimiter run2 = new FileLeaseConcurrencyLimiter(fs, directory, 60000, 10);
+    ConcurrencyLimiter.Permit first = run1.acquire(KEY, 2);
+    ConcurrencyLimiter.Permit second = run1.acquire(KEY, 2);
+    Thread third = startWaiter(run2, "third", 2, () -> run2.getQueueLength(KEY) == 3);
+    Thread fourth = startWaiter(run1, "fourth", 2, () -> run1.getQueueLength(KEY) == 4);
+    TimeUnit.MILLISECONDS.sleep(100);
+    Assert.assertTrue(admitted.isEmpty());
+
+    second.close();
+    waitFor(() -> admitted.size() == 1);
+    Assert.assertEquals(Collections.singletonList("third"), admitted);
+    first.close();
+    waitFor(() -> admitted.size() == 2);
+    Assert.assertEquals(Arrays.asList("third", "fourth"), admitted);
+
+    release.countDown();
+    third.join(10000);
+    fourth.join(10000);
+    Assert.assertEquals(0, run1.getQueueLength(KEY));
+  }
+
+  @Test
+  public void testFileLeaseRemovesExpiredLeases() throws Exception {
+    FileLeaseConcurrencyLimiter limiter = new FileLeaseConcurrencyLimiter(fs, directory, 1000, 10);
+    limiter.acquire(KEY, 1).close();
+    // lease of a run which crashed while holding the only permit
+    Path queue = fs.listStatus(directory)[0].getPath();
+    Path stale = new Path(queue, String.format("%019d-crashed.ticket", System.currentTimeMillis() - 60000));
+    fs.create(stale).close();
+    fs.setTimes(stale, System.currentTimeMillis() - 60000, -1);
+
+    ConcurrencyLimiter.Permit permit = limiter.acquire(KEY, 1);
+    Assert.assertFalse(fs.exists(stale));
+    Assert.assertEquals(1, limiter.getQueueLength(KEY));
+    permit.close();
+    Assert.assertEquals(0, limiter.getQueueLength(KEY));
+  }
+
+  @Test
+  public void testLimiterFromSettings() throws Exception {
+    Configuration conf = new Configuration();
+    Assert.assertSame(ConcurrencyLimiter.NONE,
+                      HiveConnectionConfig.getConcurrencyLimiter(0, directory.toString(), conf));
+    Assert.assertSame(InMemoryConcurrencyLimiter.getInstance(),
+                      HiveConnectionConfig.getConcurrencyLimiter(2, null, conf));
+    Assert.assertTrue(HiveConnectionConfig.getConcurrencyLimiter(2, directory.toString(), conf)
+                        instanceof FileLeaseConcurrencyLimiter);
+  }
+
+  private Thread startWaiter(ConcurrencyLimiter limiter, String name, int maxConcurrent,
+                             Callable<Boolean> queued) throws Exception {
+    Thread thread = new Thread(() -> {
+      try {
+        ConcurrencyLimiter.Permit permit = limiter.acquire(KEY, maxConcurrent);
+        try {
+          admitted.add(name);
+          release.await();
+        } finally {
+          permit.close();
+        }
+      } catch (Exception e) {
+        // interrupted while waiting
+      }
+    });
+    thread.start();
+    waitFor(queued);
+    return thread;
+  }
+
+  private static void waitFor(Callable<Boolean> condition) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.call()) {
+      Assert.assertTrue("Timed out waiting for the limiter", System.currentTimeMillis() < deadline);
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import com.google.common.collect.ImmutableSet;
+import io.cdap.plugin.hive.action.common.CostGuard;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CostGuardTest {
+  private static final List<String> PLAN = Arrays.asList(
+    "Warning: Map Join MAPJOIN[11][bigTable=?] in task 'Map 2' is a cross product",
+    "STAGE DEPENDENCIES:",
+    "  Stage-1 is a root stage",
+    "  Stage-0 depends on stages: Stage-1",
+    "",
+    "STAGE PLANS:",
+    "  Stage: Stage-1",
+    "    Tez",
+    "      Vertices:",
+    "        Map 1 ",
+    "            Map Operator Tree:",
+    "                TableScan",
+    "                  alias: orders",
+    "                  Statistics: Num rows: 1000 Data size: 50000 Basic stats: COMPLETE Column stats: NONE",
+    "                  Filter Operator",
+    "                    Statistics: Num rows: 500 Data size: 25000 Basic stats: COMPLETE Column stats: NONE",
+    "                    Map Join Operator",
+    "        Map 2 ",
+    "            Map Operator Tree:",
+    "                TableScan",
+    "                  alias: customers",
+    "                  Statistics: Num rows: 20 Data size: 400 Basic stats: COMPLETE Column stats: NONE",
+    "        Reducer 3 ",
+    "            Reduce Operator Tree:",
+    "              Merge Join Operator",
+    "",
+    "  Stage: Stage-0",
+    "    Fetch Operator");
+
+  @Test
+  public void testParsePlan() {
+    CostGuard.Estimate estimate = CostGuard.Estimate.parse(PLAN);
+    // statistics of operators after the table scans are not counted
+    Assert.assertEquals(50400, estimate.getInputBytes());
+    Assert.assertEquals(1020, estimate.getInputRows());
+    Assert.assertEquals(2, estimate.getStages());
+    Assert.assertEquals(ImmutableSet.of(CostGuard.JOIN_CROSS, CostGuard.JOIN_MAP, CostGuard.JOIN_SHUFFLE),
+                        estimate.getJoins());
+  }
+
+  @Test
+  public void testParsePlanWithoutTableScan() {
+    CostGuard.Estimate estimate = CostGuard.Estimate.parse(Arrays.asList("STAGE PLANS:", "  Stage: Stage-0",
+                                                                         "    Move Operator"));
+    Assert.assertEquals(-1, estimate.getInputBytes());
+    Assert.assertEquals(-1, estimate.getInputRows());
+    Assert.assertEquals(1, estimate.getStages());
+    Assert.assertTrue(estimate.getJoins().isEmpty());
+  }
+
+  @Test
+  public void testProblems() {
+    CostGuard.Estimate estimate = CostGuard.Estimate.parse(PLAN);
+    Assert.assertEquals(Collections.emptyList(),
+                        new CostGuard(true, 50400, 1020, 2, Collections.emptySet()).getProblems(estimate));
+    Assert.assertEquals(0, new CostGuard(true, 0, 0, 0, ImmutableSet.of(CostGuard.JOIN_SMB))
+      .getProblems(estimate).size());
+    Assert.assertEquals(5, new CostGuard(true, 50399, 1019, 1, CostGuard.parseJoins("cross, shuffle"))
+      .getProblems(estimate).size());
+  }
+
+  @Test
+  public void testParseJoins() {
+    Assert.assertEquals(ImmutableSet.of(CostGuard.JOIN_SHUFFLE, CostGuard.JOIN_CROSS),
+                        CostGuard.parseJoins(" Shuffle,,cross "));
+    Assert.assertTrue(CostGuard.parseJoins(null).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownJoin() {
+    CostGuard.parseJoins("hash");
+  }
+
+  @Test
+  public void testExplainedStatements() {
+    Assert.assertTrue(CostGuard.isExplained("INSERT OVERWRITE TABLE t SELECT * FROM s"));
+    Assert.assertTrue(CostGuard.isExplained(" with x as (select 1) insert into t select * from x"));
+    Assert.assertTrue(CostGuard.isExplained("FROM s INSERT INTO t1 SELECT a INSERT INTO t2 SELECT b"));
+    Assert.assertTrue(CostGuard.isExplained("CREATE TABLE t STORED AS ORC\nAS SELECT * FROM s"));
+    Assert.assertFalse(CostGuard.isExplained("CREATE TABLE t (id INT)"));
+    Assert.assertFalse(CostGuard.isExplained("LOAD DATA INPATH '/tmp/x' INTO TABLE t"));
+    Assert.assertFalse(CostGuard.isExplained("SET hive.execution.engine=tez"));
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.ExportCompactor;
+import io.cdap.plugin.hive.action.HiveExportFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ExportCompactorTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testPlan() {
+    List<FileStatus> files = Arrays.asList(file("000000_0", 40), file("000001_0", 40), file("000002_0", 30),
+                                           file("000003_0", 80), file("000004_0", 10));
+    List<List<String>> groups = ExportCompactor.plan(files, 100).stream()
+      .map(group -> group.stream().map(f -> f.getPath().getName()).collect(Collectors.toList()))
+      .collect(Collectors.toList());
+    // the large file is left alone, the last small file has nothing left to merge with
+    Assert.assertEquals(Arrays.asList(Arrays.asList("000000_0", "000001_0"), Arrays.asList("000002_0", "000004_0")),
+                        groups);
+  }
+
+  @Test
+  public void testCompactText() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    Path split = new Path(directory, "split-00000");
+    write(fs, new Path(split, "000000_0"), "1,a\n");
+    write(fs, new Path(split, "000001_0"), "2,b\n");
+    write(fs, new Path(split, "000002_0.snappy"), "not concatenated");
+    write(fs, new Path(directory, "_SUCCESS"), "");
+
+    Assert.assertEquals(2, new ExportCompactor(fs, HiveExportFormat.TEXT, 1024).compact(directory));
+
+    List<Path> files = listVisible(fs, split);
+    Assert.assertEquals(2, files.size());
+    Path merged = files.stream().filter(p -> p.getName().startsWith("compacted-")).findFirst().get();
+    Assert.assertEquals("1,a\n2,b\n", read(fs, merged));
+    Assert.assertTrue(fs.exists(new Path(directory, "_SUCCESS")));
+  }
+
+  @Test
+  public void testCompactOrc() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    TypeDescription schema = TypeDescription.fromString("struct<id:bigint>");
+    for (int i = 0; i < 3; i++) {
+      Writer writer = OrcFile.createWriter(new Path(directory, String.format("00000%d_0", i)),
+                                           OrcFile.writerOptions(conf).setSchema(schema));
+      VectorizedRowBatch batch = schema.createRowBatch();
+      for (int row = 0; row < 10; row++) {
+        ((LongColumnVector) batch.cols[0]).vector[batch.size++] = i * 10 + row;
+      }
+      writer.addRowBatch(batch);
+      writer.close();
+    }
+
+    Assert.assertEquals(3, new ExportCompactor(fs, HiveExportFormat.ORC, 1024 * 1024).compact(directory));
+
+    List<Path> files = listVisible(fs, directory);
+    Assert.assertEquals(1, files.size());
+    Reader reader = OrcFile.createReader(files.get(0), OrcFile.readerOptions(conf));
+    Assert.assertEquals(30, reader.getNumberOfRows());
+  }
+
+  private static FileStatus file(String name, long length) {
+    return new FileStatus(length, false, 1, 128, 0, new Path("/export", name));
+  }
+
+  private static void write(FileSystem fs, Path path, String content) throws Exception {
+    try (FSDataOutputStream out = fs.create(path)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static String read(FileSystem fs, Path path) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = fs.open(path)) {
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static List<Path> listVisible(FileSystem fs, Path directory) throws Exception {
+    List<Path> files = new ArrayList<>();
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      if (!name.startsWith(".") && !name.startsWith("_")) {
+        files.add(status.getPath());
+      }
+    }
+    return files;
+  }
+}
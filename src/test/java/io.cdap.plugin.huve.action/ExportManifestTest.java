@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.ExportManifest;
+import io.cdap.plugin.hive.action.common.StagedDirectory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ExportManifestTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FileSystem fs;
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    fs = directory.getFileSystem(new Configuration());
+  }
+
+  @Test
+  public void testListFiles() throws Exception {
+    write(new Path(directory, "000000_0"), 10);
+    // subdirectories of split exports
+    write(new Path(directory, "dt=2020-01-01/000000_0"), 5);
+    write(new Path(directory, "dt=2020-01-01/000001_0"), 7);
+    write(new Path(directory, StagedDirectory.SUCCESS_MARKER), 0);
+    write(new Path(directory, ".hive-staging/000000_0"), 3);
+
+    List<ExportManifest.ExportedFile> files = ExportManifest.listFiles(fs, directory);
+    Assert.assertEquals(Arrays.asList("000000_0", "dt=2020-01-01/000000_0", "dt=2020-01-01/000001_0"),
+                        files.stream().map(ExportManifest.ExportedFile::getPath).collect(Collectors.toList()));
+    Assert.assertEquals(Arrays.asList(10L, 5L, 7L),
+                        files.stream().map(ExportManifest.ExportedFile::getSize).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    Assert.assertNull(ExportManifest.read(fs, directory));
+    List<ExportManifest.ExportedFile> files = Arrays.asList(
+      new ExportManifest.ExportedFile("000000_0", 10, "MD5-of-0MD5-of-512CRC32C:0a1b"),
+      new ExportManifest.ExportedFile("000001_0", 5, null));
+    new ExportManifest("TEXT", "GZIP", "\u0001", "SELECT *\nFROM t", 42, files).write(fs, directory);
+
+    ExportManifest manifest = ExportManifest.read(fs, directory);
+    Assert.assertEquals("TEXT", manifest.getFormat());
+    Assert.assertEquals("GZIP", manifest.getCompression());
+    Assert.assertEquals("\u0001", manifest.getDelimiter());
+    Assert.assertEquals("SELECT *\nFROM t", manifest.getStatement());
+    Assert.assertEquals(42, manifest.getRows());
+    Assert.assertEquals(15, manifest.getBytes());
+    Assert.assertEquals("MD5-of-0MD5-of-512CRC32C:0a1b", manifest.getFiles().get(0).getChecksum());
+    Assert.assertNull(manifest.getFiles().get(1).getChecksum());
+    // the manifest does not list itself
+    Assert.assertTrue(ExportManifest.listFiles(fs, directory).isEmpty());
+
+    ExportManifest.delete(fs, directory);
+    Assert.assertNull(ExportManifest.read(fs, directory));
+  }
+
+  private void write(Path file, int size) throws Exception {
+    try (FSDataOutputStream out = fs.create(file)) {
+      out.write(new byte[size]);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.ExportSharding;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ExportShardingTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testStatement() {
+    ExportSharding sharding = new ExportSharding("customer_id", 16);
+    Assert.assertEquals("SELECT * FROM (SELECT * FROM orders) shard_source DISTRIBUTE BY " +
+                          "pmod(hash(`customer_id`), 16) SORT BY `customer_id`",
+                        sharding.getStatement("SELECT * FROM orders"));
+    Assert.assertTrue(sharding.getSettings().contains("SET mapreduce.job.reduces=16"));
+  }
+
+  @Test
+  public void testRename() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path directory = new Path(temporaryFolder.newFolder().toURI());
+    for (String name : Arrays.asList("000000_0.gz", "000002_0.gz", "000003_0.gz", "_SUCCESS")) {
+      fs.create(new Path(directory, name)).close();
+    }
+
+    List<Integer> empty = new ExportSharding("id", 4).rename(fs, directory);
+    Assert.assertEquals(Collections.singletonList(1), empty);
+    List<String> names = Arrays.stream(fs.listStatus(directory))
+      .map(FileStatus::getPath)
+      .map(Path::getName)
+      .filter(name -> !name.startsWith("."))
+      .sorted()
+      .collect(Collectors.toList());
+    Assert.assertEquals(Arrays.asList("_SUCCESS", "shard-00000-of-00004.gz", "shard-00002-of-00004.gz",
+                                      "shard-00003-of-00004.gz"), names);
+  }
+
+  @Test(expected = IOException.class)
+  public void testRenameUnexpectedFile() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path directory = new Path(temporaryFolder.newFolder().toURI());
+    fs.create(new Path(directory, "000004_0")).close();
+
+    new ExportSharding("id", 4).rename(fs, directory);
+  }
+}
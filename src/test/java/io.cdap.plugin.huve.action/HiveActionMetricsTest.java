@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.cdap.api.metrics.Metrics;
+import io.cdap.plugin.hive.action.common.HiveActionMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class HiveActionMetricsTest {
+
+  @Test
+  public void testReportedTimes() {
+    HiveActionMetrics metrics = new HiveActionMetrics();
+    // waited 3 seconds for a handler thread before compiling and executing
+    metrics.addStatement(10000, 200, 1000, 6000, 50);
+    Assert.assertEquals(3000, metrics.getQueueMillis());
+    Assert.assertEquals(50, metrics.getRows());
+    Assert.assertEquals(1, metrics.getStatements());
+  }
+
+  @Test
+  public void testUnreportedTimes() {
+    HiveActionMetrics metrics = new HiveActionMetrics();
+    metrics.addStatement(10000, 200, -1, -1, -1);
+    Assert.assertEquals(0, metrics.getQueueMillis());
+    Assert.assertEquals(-1, metrics.getRows());
+    Assert.assertTrue(metrics.summary().contains("compileMs=200, queueMs=0, executionMs=9800, rows=-1"));
+  }
+
+  @Test
+  public void testRecord() {
+    HiveActionMetrics metrics = new HiveActionMetrics();
+    metrics.addConnectTime(15);
+    metrics.addStatement(100, 10, 10, 90, -1);
+    metrics.addBytes(Integer.MAX_VALUE + 10L);
+
+    RecordingMetrics recorded = new RecordingMetrics();
+    metrics.record(recorded);
+    Assert.assertEquals(15L, (long) recorded.gauges.get(HiveActionMetrics.CONNECT_TIME));
+    Assert.assertEquals(90L, (long) recorded.gauges.get(HiveActionMetrics.EXECUTION_TIME));
+    Assert.assertEquals(Integer.MAX_VALUE + 10L, (long) recorded.counts.get(HiveActionMetrics.BYTES));
+    Assert.assertEquals(1L, (long) recorded.counts.get(HiveActionMetrics.STATEMENTS));
+    // unknown amounts are not emitted
+    Assert.assertFalse(recorded.counts.containsKey(HiveActionMetrics.ROWS));
+  }
+
+  private static class RecordingMetrics implements Metrics {
+    private final Map<String, Long> counts = new HashMap<>();
+    private final Map<String, Long> gauges = new HashMap<>();
+
+    @Override
+    public void count(String metricName, int delta) {
+      counts.merge(metricName, (long) delta, Long::sum);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      gauges.put(metricName, value);
+    }
+  }
+}
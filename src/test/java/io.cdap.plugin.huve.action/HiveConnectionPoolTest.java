@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.ExportSharding;
+import io.cdap.plugin.hive.action.HiveExportFormat;
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveConnectionPool;
+import io.cdap.plugin.hive.action.common.KerberosSessionCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HiveConnectionPoolTest {
+  private static final String CONNECTION_STRING = "jdbc:hive2://localhost:10000/mydb;auth=delegationToken";
+
+  @Test
+  public void testConnectionReused() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    HiveConnectionPool pool = new HiveConnectionPool((url, user, password) -> {
+      created.incrementAndGet();
+      return fakeConnection(new AtomicBoolean(true));
+    }, 2, 60000, 1);
+
+    HiveConnectionPool.PooledConnection first = pool.borrow(CONNECTION_STRING, "user", "password");
+    pool.release(first);
+    HiveConnectionPool.PooledConnection second = pool.borrow(CONNECTION_STRING, "user", "password");
+    Assert.assertSame(first, second);
+    Assert.assertEquals(1, created.get());
+
+    // different user gets a different connection
+    pool.borrow(CONNECTION_STRING, "other", "password");
+    Assert.assertEquals(2, created.get());
+    pool.close();
+  }
+
+  @Test
+  public void testConnectionNotSharedWithOtherPassword() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    HiveConnectionPool pool = new HiveConnectionPool((url, user, password) -> {
+      created.incrementAndGet();
+      return fakeConnection(new AtomicBoolean(true));
+    }, 2, 60000, 1);
+
+    HiveConnectionPool.PooledConnection first = pool.borrow(CONNECTION_STRING, "user", "password");
+    pool.release(first);
+    HiveConnectionPool.PooledConnection second = pool.borrow(CONNECTION_STRING, "user", "wrong");
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(2, created.get());
+    Assert.assertSame(first, pool.borrow(CONNECTION_STRING, "user", "password"));
+    pool.close();
+  }
+
+  @Test
+  public void testMaxOpenConnections() throws Exception {
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> fakeConnection(new AtomicBoolean(true)), 2, 2, 1000, 60000, 1,
+      KerberosSessionCache.getInstance());
+
+    HiveConnectionPool.PooledConnection first = pool.borrow(CONNECTION_STRING, "user", "password");
+    pool.borrow(CONNECTION_STRING, "user", "password");
+    Assert.assertEquals(2, pool.getOpenCount());
+    try {
+      pool.borrow(CONNECTION_STRING, "user", "password");
+      Assert.fail("Borrowing beyond the limit of open connections should time out");
+    } catch (SQLException e) {
+      // expected
+    }
+
+    // a discarded connection frees its slot for a waiting borrower
+    Thread discarder = new Thread(() -> pool.discard(first));
+    discarder.start();
+    Assert.assertNotSame(first, pool.borrow(CONNECTION_STRING, "user", "password"));
+    discarder.join();
+    Assert.assertEquals(2, pool.getOpenCount());
+    pool.close();
+  }
+
+  @Test
+  public void testUnhealthyConnectionReplaced() throws Exception {
+    AtomicBoolean valid = new AtomicBoolean(true);
+    AtomicInteger created = new AtomicInteger();
+    HiveConnectionPool pool = new HiveConnectionPool((url, user, password) -> {
+      created.incrementAndGet();
+      return fakeConnection(valid);
+    }, 2, 60000, 1);
+
+    HiveConnectionPool.PooledConnection first = pool.borrow(CONNECTION_STRING, "user", "password");
+    pool.release(first);
+    valid.set(false);
+    HiveConnectionPool.PooledConnection second = pool.borrow(CONNECTION_STRING, "user", "password");
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(2, created.get());
+    pool.close();
+  }
+
+  @Test
+  public void testMaxIdleAndEviction() throws Exception {
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> fakeConnection(new AtomicBoolean(true)), 2, 0, 1);
+
+    HiveConnectionPool.PooledConnection first = pool.borrow(CONNECTION_STRING, "user", "password");
+    HiveConnectionPool.PooledConnection second = pool.borrow(CONNECTION_STRING, "user", "password");
+    HiveConnectionPool.PooledConnection third = pool.borrow(CONNECTION_STRING, "user", "password");
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    Assert.assertEquals(2, pool.getIdleCount());
+
+    Thread.sleep(5);
+    pool.evictIdle();
+    Assert.assertEquals(0, pool.getIdleCount());
+    Assert.assertTrue(third.getConnection().isClosed());
+    pool.close();
+  }
+
+  @Test
+  public void testSessionCommands() {
+    Assert.assertTrue(HiveCommandExecutor.isSessionCommand("SET hive.exec.parallel=true"));
+    Assert.assertTrue(HiveCommandExecutor.isSessionCommand("  use mydb"));
+    Assert.assertTrue(HiveCommandExecutor.isSessionCommand("CREATE TEMPORARY TABLE t AS SELECT 1"));
+    Assert.assertTrue(HiveCommandExecutor.isSessionCommand("add jar /tmp/udf.jar"));
+    Assert.assertFalse(HiveCommandExecutor.isSessionCommand("LOAD DATA INPATH '/tmp/hive' INTO TABLE testTable"));
+    Assert.assertFalse(HiveCommandExecutor.isSessionCommand("DELETE FROM testTable WHERE id = 1"));
+    Assert.assertFalse(HiveCommandExecutor.isSessionCommand("SELECT * FROM settings"));
+  }
+
+  @Test
+  public void testExportSessionReturnedToPool() throws Exception {
+    List<String> executed = new ArrayList<>();
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> recordingConnection(executed), 2, 60000, 1);
+
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password");
+    List<String> commands = new ArrayList<>(HiveExportFormat.ORC.getCompressionSettings("SNAPPY"));
+    commands.addAll(new ExportSharding("id", 4).getSettings());
+    commands.add("SET hiveconf:hive.tez.exec.print.summary=true");
+    commands.add("INSERT OVERWRITE DIRECTORY '/tmp/export' STORED AS ORC SELECT * FROM t");
+    executor.executeScript(commands, true);
+    executor.cleanup();
+
+    Assert.assertEquals(1, pool.getIdleCount());
+    Assert.assertEquals("RESET orc.compress mapreduce.job.reduces hive.tez.auto.reducer.parallelism "
+                          + "hive.merge.mapfiles hive.merge.mapredfiles hive.merge.tezfiles "
+                          + "hive.tez.exec.print.summary",
+                        executed.get(executed.size() - 1));
+    pool.close();
+  }
+
+  @Test
+  public void testModifiedSessionDiscarded() throws Exception {
+    List<String> executed = new ArrayList<>();
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> recordingConnection(executed), 2, 60000, 1);
+
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password");
+    executor.execute("SET hive.exec.parallel=true");
+    executor.execute("USE otherdb");
+    executor.cleanup();
+    Assert.assertEquals(0, pool.getIdleCount());
+    Assert.assertEquals(Arrays.asList("SET hive.exec.parallel=true", "USE otherdb"), executed);
+    pool.close();
+  }
+
+  @Test
+  public void testResetCommand() {
+    Assert.assertEquals("", HiveCommandExecutor.getResetCommand(
+      Collections.singletonList("SELECT 1"), CONNECTION_STRING));
+    Assert.assertEquals("RESET hive.exec.parallel mapreduce.job.reduces", HiveCommandExecutor.getResetCommand(
+      Arrays.asList("SET hive.exec.parallel=true", "set mapreduce.job.reduces = 4", "SET hive.exec.parallel=false"),
+      CONNECTION_STRING));
+    Assert.assertNull(HiveCommandExecutor.getResetCommand(
+      Collections.singletonList("SET hivevar:day=2020-01-01"), CONNECTION_STRING));
+    Assert.assertNull(HiveCommandExecutor.getResetCommand(
+      Collections.singletonList("ADD JAR /tmp/udf.jar"), CONNECTION_STRING));
+    // settings of the connection string would be reset to the server defaults
+    Assert.assertNull(HiveCommandExecutor.getResetCommand(
+      Collections.singletonList("SET hive.execution.engine=mr"),
+      CONNECTION_STRING + "?hive.execution.engine=tez;hive.exec.parallel=true#day=1"));
+  }
+
+  private static Connection fakeConnection(AtomicBoolean valid) {
+    AtomicBoolean closed = new AtomicBoolean();
+    return (Connection) Proxy.newProxyInstance(
+      HiveConnectionPoolTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "isValid":
+            return valid.get();
+          case "isClosed":
+            return closed.get();
+          case "close":
+            closed.set(true);
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  /**
+   * Returns a connection whose statements record the executed commands.
+   */
+  private static Connection recordingConnection(List<String> executed) {
+    AtomicBoolean closed = new AtomicBoolean();
+    Statement statement = (Statement) Proxy.newProxyInstance(
+      HiveConnectionPoolTest.class.getClassLoader(), new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "execute":
+            executed.add((String) args[0]);
+            return false;
+          case "close":
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    return (Connection) Proxy.newProxyInstance(
+      HiveConnectionPoolTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "createStatement":
+            return statement;
+          case "isValid":
+            return !closed.get();
+          case "isClosed":
+            return closed.get();
+          case "close":
+            closed.set(true);
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+}
@@ -18,10 +18,12 @@ package io.cdap.plugin.huve.action;
 
 import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
 import io.cdap.plugin.hive.action.HiveExportConfig;
+import io.cdap.plugin.hive.action.HiveExportFormat;
 import io.cdap.plugin.hive.action.common.HiveConfig;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -44,6 +46,31 @@ public class HiveExportConfigTest {
     Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
   }
 
+  @Test
+  public void testManifestEnabledByDefault() {
+    Assert.assertTrue(VALID_CONFIG.isManifest());
+    Assert.assertFalse(HiveExportConfig.builder(VALID_CONFIG).setManifest("no").build().isManifest());
+  }
+
+  @Test
+  public void testValidateSharding() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setShardBy("customer_id")
+      .setNumShards(0)
+      .setTargetFileSize(128)
+      .build();
+    List<List<String>> paramNames = Arrays.asList(
+      Collections.singletonList(HiveExportConfig.NUM_SHARDS),
+      Arrays.asList(HiveExportConfig.SHARD_BY, HiveExportConfig.TARGET_FILE_SIZE));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+    Assert.assertNull(VALID_CONFIG.getSharding());
+    Assert.assertEquals(16, HiveExportConfig.builder(VALID_CONFIG).setShardBy("customer_id").setNumShards(16).build()
+      .getSharding().getNumShards());
+  }
+
   @Test
   public void testValidateNotSelectStatement() {
     MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
@@ -70,4 +97,161 @@ public class HiveExportConfigTest {
     ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
   }
 
+  @Test
+  public void testValidateSplitBoundsMissing() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setParallelism(4)
+      .setSplitBy("id")
+      .setSplitLowerBound(0L)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HiveExportConfig.SPLIT_LOWER_BOUND, HiveExportConfig.SPLIT_UPPER_BOUND));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateSplitRequiresSourceTable() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setStatement("SELECT * FROM (SELECT id FROM employee) t")
+      .setParallelism(4)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveConfig.STATEMENT));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidSplitConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setParallelism(4)
+      .setSplitBy("id")
+      .setSplitLowerBound(0L)
+      .setSplitUpperBound(1000L)
+      .build();
+    config.validate(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertEquals(4, config.getNumSplits());
+  }
+
+  @Test
+  public void testValidateDelimiterWithColumnarFormat() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setFormat("orc")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HiveExportConfig.DELIMITER, HiveExportConfig.FORMAT));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateUnsupportedCompression() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setDelimiter(null)
+      .setFormat("PARQUET")
+      .setCompression("LZO")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveExportConfig.COMPRESSION));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testCompressionSettings() {
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setDelimiter(null)
+      .setFormat("ORC")
+      .setCompression("snappy")
+      .build();
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    config.validate(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertEquals(HiveExportFormat.ORC, config.getFormat());
+    Assert.assertEquals(Collections.singletonList("SET orc.compress=SNAPPY"),
+                        config.getFormat().getCompressionSettings(config.getCompression()));
+    Assert.assertEquals(Arrays.asList("SET hive.exec.compress.output=true",
+                                      "SET mapreduce.output.fileoutputformat.compress.codec=" +
+                                        "org.apache.hadoop.io.compress.GzipCodec"),
+                        HiveExportFormat.TEXT.getCompressionSettings("gzip"));
+    Assert.assertTrue(HiveExportFormat.TEXT.getCompressionSettings(null).isEmpty());
+  }
+
+  @Test
+  public void testValidateIncrementalRequiresSourceTable() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setStatement("SELECT * FROM (SELECT id, dt FROM employee) e")
+      .setWatermarkColumn("dt")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveConfig.STATEMENT));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testIncrementalConfigAllowsExistingPath() throws Exception {
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setPath(System.getProperty("java.io.tmpdir"))
+      .setOverwrite("no")
+      .setWatermarkColumn("dt")
+      .setInitialWatermark("2020-01-01")
+      .build();
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    config.validate(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertTrue(config.isIncremental());
+    Assert.assertFalse(config.isSplitExport());
+  }
+
+  @Test
+  public void testValidateTargetFileSize() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setTargetFileSize(0)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveExportConfig.TARGET_FILE_SIZE));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testFileSizeSettings() {
+    Assert.assertTrue(VALID_CONFIG.getFileSizeSettings().isEmpty());
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setTargetFileSize(128)
+      .build();
+    Assert.assertEquals(Long.valueOf(134217728L), config.getTargetFileSize());
+    Assert.assertTrue(config.getFileSizeSettings().contains("SET hive.merge.size.per.task=134217728"));
+    Assert.assertTrue(config.getFileSizeSettings().contains("SET hive.merge.smallfiles.avgsize=67108864"));
+  }
+
+  @Test
+  public void testValidateSkipUnchangedRequiresOverwrite() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveExportConfig config = HiveExportConfig.builder(VALID_CONFIG)
+      .setOverwrite("no")
+      .setSkipUnchanged("yes")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HiveExportConfig.SKIP_UNCHANGED, HiveExportConfig.OVERWRITE));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.hive.action.HiveImportConfig;
+import io.cdap.plugin.hive.action.common.HiveConfig;
+import io.cdap.plugin.hive.action.common.HiveScriptParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HiveImportConfigTest {
+  private static final String MOCK_STAGE = "mockStage";
+  private static final HiveImportConfig VALID_CONFIG = new HiveImportConfig(
+    "jdbc:hive2://localhost:10000/mydb;auth=delegationToken",
+    "user",
+    "password",
+    "SET hive.exec.dynamic.partition.mode=nonstrict;\n" +
+      "CREATE TEMPORARY TABLE staging (id INT, name STRING);\n" +
+      "LOAD DATA INPATH '/tmp/hive' INTO TABLE staging;\n" +
+      "INSERT INTO TABLE testTable SELECT * FROM staging;",
+    HiveImportConfig.MODE_SCRIPT,
+    "yes"
+  );
+
+  @Test
+  public void testValidConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    VALID_CONFIG.validate(failureCollector);
+    VALID_CONFIG.validateImportStatement(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertEquals(4, VALID_CONFIG.getStatements().size());
+  }
+
+  @Test
+  public void testValidateLocalLoadInScript() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setStatement("SET a=b; LOAD DATA LOCAL INPATH 'sample.txt' INTO TABLE test2")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveConfig.STATEMENT));
+
+    config.validateImportStatement(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateInvalidMode() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setMode("batch")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveImportConfig.MODE));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidDirectoryConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setStatement(null)
+      .setMode(HiveImportConfig.MODE_DIRECTORY)
+      .setSourceDirectory("/data/landing/events")
+      .setTable("events")
+      .setPathPattern("dt=${dt}/region=${region}")
+      .setParallelism(4)
+      .build();
+
+    config.validate(failureCollector);
+    config.validateImportStatement(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertEquals(Arrays.asList("dt", "region"), config.getPathPattern().getColumns());
+    Assert.assertFalse(config.isOverwrite());
+  }
+
+  @Test
+  public void testValidateDirectoryConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setStatement(null)
+      .setMode(HiveImportConfig.MODE_DIRECTORY)
+      .setPathPattern("dt=2020-01-01")
+      .setParallelism(0)
+      .build();
+    List<List<String>> paramNames = Arrays.asList(
+      Collections.singletonList(HiveImportConfig.SOURCE_DIRECTORY),
+      Collections.singletonList(HiveImportConfig.TABLE),
+      Collections.singletonList(HiveImportConfig.PATH_PATTERN),
+      Collections.singletonList(HiveImportConfig.PARALLELISM));
+
+    config.validate(failureCollector);
+    config.validateImportStatement(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateRegisterConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setStatement(null)
+      .setMode(HiveImportConfig.MODE_REGISTER)
+      .setSourceDirectory("/data/landing/events")
+      .setTable("events")
+      .setPathPattern("dt=${dt}")
+      .setPartitionsPerStatement(0)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveImportConfig.PARTITIONS_PER_STATEMENT));
+
+    config.validate(failureCollector);
+    config.validateImportStatement(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+    Assert.assertTrue(config.isPartitionDirectoryImport());
+  }
+
+  @Test
+  public void testValidateConvertConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setStatement(null)
+      .setMode(HiveImportConfig.MODE_CONVERT)
+      .setSourceDirectory("/data/landing/events")
+      .setDelimiter("'")
+      .build();
+    List<List<String>> paramNames = Arrays.asList(
+      Collections.singletonList(HiveImportConfig.TABLE),
+      Collections.singletonList(HiveImportConfig.DELIMITER));
+
+    config.validate(failureCollector);
+    config.validateImportStatement(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+    Assert.assertFalse(config.isPartitionDirectoryImport());
+    Assert.assertEquals(",", HiveImportConfig.builder(config).setDelimiter(null).build().getDelimiter());
+  }
+
+  @Test
+  public void testValidateMissingStatement() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setStatement(null)
+      .setMode(HiveImportConfig.MODE_STATEMENT)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveConfig.STATEMENT));
+
+    config.validateImportStatement(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testStatementModeIsNotSplit() {
+    HiveImportConfig config = HiveImportConfig.builder(VALID_CONFIG)
+      .setMode(null)
+      .build();
+    Assert.assertEquals(Collections.singletonList(VALID_CONFIG.getStatement()), config.getStatements());
+  }
+
+  @Test
+  public void testParseScript() {
+    Assert.assertEquals(
+      Arrays.asList("SET a=b", "SELECT ';' AS x, \"a;b\" FROM `t;1`", "SELECT 'it\\'s;'"),
+      HiveScriptParser.parse("SET a=b;\n-- comment; with semicolon\nSELECT ';' AS x, \"a;b\" FROM `t;1`;;\n" +
+                               "SELECT 'it\\'s;'"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseUnterminatedQuote() {
+    HiveScriptParser.parse("SELECT 'abc; SELECT 1");
+  }
+}
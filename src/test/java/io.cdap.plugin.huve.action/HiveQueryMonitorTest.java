@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.HiveQueryMonitor;
+import org.apache.hive.service.rpc.thrift.TJobExecutionStatus;
+import org.apache.hive.service.rpc.thrift.TProgressUpdateResp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class HiveQueryMonitorTest {
+
+  @Test
+  public void testFormatProgress() {
+    TProgressUpdateResp response = new TProgressUpdateResp(
+      Arrays.asList("VERTICES", "MODE", "STATUS", "TOTAL", "COMPLETED"),
+      Arrays.asList(Arrays.asList("Map 1 ", "container", "SUCCEEDED", "4", "4"),
+                    Arrays.asList("Reducer 2", "container", "RUNNING", "10", "3")),
+      0.5, TJobExecutionStatus.IN_PROGRESS, "VERTICES: 01/02 ELAPSED TIME: 12.30 s", 0L);
+
+    Assert.assertEquals("Progress 50.00% Map 1 [MODE: container, STATUS: SUCCEEDED, TOTAL: 4, COMPLETED: 4] " +
+                          "Reducer 2 [MODE: container, STATUS: RUNNING, TOTAL: 10, COMPLETED: 3] " +
+                          "VERTICES: 01/02 ELAPSED TIME: 12.30 s", HiveQueryMonitor.formatProgress(response));
+  }
+
+  @Test
+  public void testParseLog() {
+    HiveQueryMonitor monitor = new HiveQueryMonitor(null, 1000);
+    Assert.assertEquals(-1, monitor.getCompileMillis());
+    Assert.assertEquals(-1, monitor.getRows());
+
+    monitor.parseLine("INFO  : Completed compiling command(queryId=hive_20200101_1); Time taken: 0.52 seconds");
+    monitor.parseLine("INFO  : Loading data to table db.events partition (dt=null) from hdfs://nn/tmp/-ext-10000");
+    monitor.parseLine("INFO  : Partition db.events{dt=2020-01-01} stats: [numFiles=2, numRows=100, totalSize=5]");
+    monitor.parseLine("INFO  : Partition db.events{dt=2020-01-02} stats: [numFiles=1, numRows=20, totalSize=3]");
+    monitor.parseLine("INFO  : Completed executing command(queryId=hive_20200101_1); Time taken: 12.345 seconds");
+
+    Assert.assertEquals(520, monitor.getCompileMillis());
+    Assert.assertEquals(12345, monitor.getExecutionMillis());
+    // statistics count all rows of the partitions, not the rows the statement wrote
+    Assert.assertEquals(-1, monitor.getRows());
+    Assert.assertEquals(120, monitor.getRowsUpperBound());
+  }
+
+  @Test
+  public void testParseCounters() {
+    HiveQueryMonitor monitor = new HiveQueryMonitor(null, 1000);
+    monitor.parseLine("INFO  : HIVE:");
+    monitor.parseLine("INFO  :    CREATED_FILES: 2");
+    monitor.parseLine("INFO  :    RECORDS_IN_Map_1: 500");
+    monitor.parseLine("INFO  :    RECORDS_OUT_0: 42");
+    monitor.parseLine("INFO  :    RECORDS_OUT_INTERMEDIATE_Map_1: 42");
+    // counters logged again are not added twice
+    monitor.parseLine("INFO  :    RECORDS_OUT_0: 42");
+    Assert.assertEquals(42, monitor.getRows());
+
+    // table statistics do not replace the counters
+    monitor.parseLine("INFO  : Table db.t stats: [numFiles=1, numRows=4000, totalSize=5]");
+    Assert.assertEquals(42, monitor.getRows());
+    Assert.assertEquals(4000, monitor.getRowsUpperBound());
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.hive.sink.HiveSinkConfig;
+import io.cdap.plugin.hive.sink.OrcRecordConverter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HiveSinkConfigTest {
+  private static final String MOCK_STAGE = "mockStage";
+  private static final HiveSinkConfig VALID_CONFIG = new HiveSinkConfig(
+    "jdbc:hive2://localhost:10000/mydb;auth=delegationToken",
+    "user",
+    "password",
+    "employee",
+    "dt=2020-01-01/region=us",
+    "no"
+  );
+  private static final Schema SCHEMA = Schema.recordOf(
+    "employee",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("salary", Schema.nullableOf(Schema.decimalOf(10, 2))),
+    Schema.Field.of("joined", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))));
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testValidConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    VALID_CONFIG.validate(failureCollector);
+    VALID_CONFIG.validateSchema(SCHEMA, failureCollector);
+    VALID_CONFIG.validateTable(SCHEMA, Arrays.asList("id", "name", "salary", "joined"),
+                               Arrays.asList("dt", "region"), failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertEquals(" PARTITION (dt='2020-01-01', region='us')", VALID_CONFIG.getPartitionClause());
+    Assert.assertFalse(VALID_CONFIG.isOverwrite());
+  }
+
+  @Test
+  public void testValidateInvalidPartition() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSinkConfig config = HiveSinkConfig.builder(VALID_CONFIG)
+      .setPartition("dt")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveSinkConfig.PARTITION));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateInvalidCompression() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSinkConfig config = HiveSinkConfig.builder(VALID_CONFIG)
+      .setCompression("BROTLI")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveSinkConfig.COMPRESSION));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidatePartitionColumnsMismatch() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveSinkConfig.PARTITION));
+
+    VALID_CONFIG.validateTable(SCHEMA, Arrays.asList("id", "name", "salary", "joined"),
+                               Collections.singletonList("dt"), failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateColumnsMismatch() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    VALID_CONFIG.validateTable(SCHEMA, Arrays.asList("id", "salary", "name", "joined"),
+                               Arrays.asList("dt", "region"), failureCollector);
+    Assert.assertEquals(1, failureCollector.getValidationFailures().size());
+  }
+
+  @Test
+  public void testValidateStorageFormat() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    VALID_CONFIG.validateStorageFormat("org.apache.hadoop.hive.ql.io.orc.OrcInputFormat", failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+
+    List<List<String>> paramNames = Collections.singletonList(Collections.singletonList(HiveSinkConfig.TABLE));
+    VALID_CONFIG.validateStorageFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat",
+                                       failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateTextTable() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    VALID_CONFIG.validateStorageFormat("org.apache.hadoop.mapred.TextInputFormat", failureCollector);
+    Assert.assertEquals(1, failureCollector.getValidationFailures().size());
+  }
+
+  @Test
+  public void testValidateUnsupportedField() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    Schema schema = Schema.recordOf("employee",
+                                    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+    VALID_CONFIG.validateSchema(schema, failureCollector);
+    Assert.assertEquals(1, failureCollector.getValidationFailures().size());
+  }
+
+  @Test
+  public void testWriteOrc() throws Exception {
+    Configuration conf = new Configuration();
+    Path file = new Path(temporaryFolder.newFolder().getAbsolutePath(), "part-00000.orc");
+    TypeDescription orcSchema = OrcRecordConverter.toOrcSchema(SCHEMA);
+    Assert.assertEquals("struct<id:bigint,name:string,salary:decimal(10,2),joined:date>", orcSchema.toString());
+
+    List<StructuredRecord> records = Arrays.asList(
+      StructuredRecord.builder(SCHEMA).set("id", 1L).set("name", "alice")
+        .setDecimal("salary", new BigDecimal("1000.50")).setDate("joined", LocalDate.of(2020, 1, 1)).build(),
+      StructuredRecord.builder(SCHEMA).set("id", 2L).build());
+    Writer writer = OrcFile.createWriter(file, OrcFile.writerOptions(conf).setSchema(orcSchema));
+    VectorizedRowBatch batch = orcSchema.createRowBatch();
+    for (StructuredRecord record : records) {
+      int row = batch.size++;
+      for (int i = 0; i < SCHEMA.getFields().size(); i++) {
+        OrcRecordConverter.setValue(batch.cols[i], row, record, SCHEMA.getFields().get(i));
+      }
+    }
+    writer.addRowBatch(batch);
+    writer.close();
+
+    Reader reader = OrcFile.createReader(file, OrcFile.readerOptions(conf));
+    RecordReader rows = reader.rows();
+    VectorizedRowBatch read = reader.getSchema().createRowBatch();
+    Assert.assertTrue(rows.nextBatch(read));
+    Assert.assertEquals(2, read.size);
+    Assert.assertEquals(2L, ((LongColumnVector) read.cols[0]).vector[1]);
+    Assert.assertEquals("alice", ((BytesColumnVector) read.cols[1]).toString(0));
+    Assert.assertTrue(read.cols[1].isNull[1]);
+    Assert.assertEquals(new BigDecimal("1000.50"),
+                        ((DecimalColumnVector) read.cols[2]).vector[0].getHiveDecimal().bigDecimalValue()
+                          .setScale(2));
+    Assert.assertEquals(LocalDate.of(2020, 1, 1).toEpochDay(), ((LongColumnVector) read.cols[3]).vector[0]);
+    Assert.assertTrue(read.cols[3].isNull[1]);
+    rows.close();
+  }
+}
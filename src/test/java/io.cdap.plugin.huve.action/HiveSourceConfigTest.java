@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.hive.action.common.HiveConfig;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import io.cdap.plugin.hive.action.common.HiveSelectConfig;
+import io.cdap.plugin.hive.source.HiveRecordConverter;
+import io.cdap.plugin.hive.source.HiveSourceConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HiveSourceConfigTest {
+  private static final String MOCK_STAGE = "mockStage";
+  private static final HiveSourceConfig VALID_CONFIG = new HiveSourceConfig(
+    "jdbc:hive2://localhost:10000/mydb;auth=delegationToken",
+    "user",
+    "password",
+    "SELECT * FROM employee WHERE salary > 1000",
+    null,
+    null
+  );
+
+  @Test
+  public void testValidConfig() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    VALID_CONFIG.validate(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertEquals(1000, VALID_CONFIG.getFetchSize());
+    Assert.assertNull(VALID_CONFIG.getSchema());
+  }
+
+  @Test
+  public void testValidateNotSelectStatement() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSourceConfig config = HiveSourceConfig.builder(VALID_CONFIG)
+      .setStatement("UPDATE tablename SET \"column\" = 'value'")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveConfig.STATEMENT));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateFetchSize() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSourceConfig config = HiveSourceConfig.builder(VALID_CONFIG)
+      .setFetchSize(0)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveSourceConfig.FETCH_SIZE));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateInvalidSchema() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSourceConfig config = HiveSourceConfig.builder(VALID_CONFIG)
+      .setSchema("{\"type\": \"record\"")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveSourceConfig.SCHEMA));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateSplitBoundsMissing() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSourceConfig config = HiveSourceConfig.builder(VALID_CONFIG)
+      .setSplitBy("id")
+      .setNumSplits(4)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HiveSelectConfig.SPLIT_LOWER_BOUND, HiveSelectConfig.SPLIT_UPPER_BOUND));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateSplitRequiresTable() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HiveSourceConfig config = HiveSourceConfig.builder(VALID_CONFIG)
+      .setStatement("SELECT * FROM (SELECT id FROM employee) e")
+      .setSplitBy("id")
+      .setSplitLowerBound(0L)
+      .setSplitUpperBound(100L)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveConfig.STATEMENT));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testParsePartitionColumns() {
+    List<List<String>> rows = Arrays.asList(
+      Arrays.asList("id", "int", ""),
+      Arrays.asList("name", "string", ""),
+      Arrays.asList("dt", "string", ""),
+      Arrays.asList("", null, null),
+      Arrays.asList("# Partition Information", null, null),
+      Arrays.asList("# col_name            ", "data_type", "comment"),
+      Arrays.asList("", null, null),
+      Arrays.asList("dt", "string", ""));
+
+    Assert.assertEquals(Collections.singletonList("dt"), HiveMetadata.parsePartitionColumns(rows));
+    Assert.assertEquals(Collections.emptyList(), HiveMetadata.parsePartitionColumns(rows.subList(0, 3)));
+  }
+
+  @Test
+  public void testSchemaMapping() {
+    Assert.assertEquals(Schema.of(Schema.Type.INT), HiveRecordConverter.getSchema(Types.SMALLINT, 5, 0));
+    Assert.assertEquals(Schema.of(Schema.Type.LONG), HiveRecordConverter.getSchema(Types.BIGINT, 19, 0));
+    Assert.assertEquals(Schema.decimalOf(10, 2), HiveRecordConverter.getSchema(Types.DECIMAL, 10, 2));
+    Assert.assertEquals(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS),
+                        HiveRecordConverter.getSchema(Types.TIMESTAMP, 29, 9));
+    Assert.assertEquals(Schema.of(Schema.Type.STRING), HiveRecordConverter.getSchema(Types.ARRAY, 0, 0));
+    Assert.assertEquals("id", HiveRecordConverter.getFieldName("t.id"));
+  }
+}
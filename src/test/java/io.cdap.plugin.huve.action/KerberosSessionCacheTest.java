@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.KerberosSessionCache;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.minikdc.MiniKdc;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.hadoop.security.token.delegation.AbstractDelegationTokenIdentifier;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.security.AccessController;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+
+public class KerberosSessionCacheTest {
+  private static final String CONNECTION_STRING =
+    "jdbc:hive2://localhost:10000/mydb;principal=hive/localhost@EXAMPLE.COM?hive.exec.parallel=true";
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static MiniKdc kdc;
+  private static File keytab;
+
+  private final AtomicLong clockOffset = new AtomicLong();
+  private final FakeTokenService tokenService = new FakeTokenService();
+  private final List<String> urls = new ArrayList<>();
+
+  @BeforeClass
+  public static void startKdc() throws Exception {
+    Properties conf = MiniKdc.createConf();
+    kdc = new MiniKdc(conf, TEMP_FOLDER.newFolder());
+    kdc.start();
+    keytab = new File(TEMP_FOLDER.getRoot(), "cdap.keytab");
+    kdc.createPrincipal(keytab, "cdap", "other");
+  }
+
+  @AfterClass
+  public static void stopKdc() {
+    if (kdc != null) {
+      kdc.stop();
+    }
+  }
+
+  @Test
+  public void testSubjectCachedUntilRefresh() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", false);
+
+    Subject subject = cache.getSubject(login);
+    Assert.assertEquals(new KerberosPrincipal(login.getPrincipal()),
+                        subject.getPrincipals(KerberosPrincipal.class).iterator().next());
+    Assert.assertSame(subject, cache.getSubject(login));
+
+    // logs in again once most of the ticket lifetime passed
+    clockOffset.set(TimeUnit.DAYS.toMillis(1));
+    Subject renewed = cache.getSubject(login);
+    Assert.assertNotSame(subject, renewed);
+    Assert.assertSame(renewed, cache.getSubject(login));
+
+    // other principals log in separately
+    Assert.assertNotSame(renewed, cache.getSubject(login("other", false)));
+  }
+
+  @Test
+  public void testConnectWithKerberos() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", false);
+
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    Assert.assertEquals(2, urls.size());
+    Assert.assertEquals("jdbc:hive2://localhost:10000/mydb;principal=hive/localhost@EXAMPLE.COM;" +
+                          "kerberosAuthType=fromSubject?hive.exec.parallel=true", urls.get(0));
+    Assert.assertEquals(0, tokenService.fetched.get());
+  }
+
+  @Test
+  public void testTokenObtainedOnceAndReused() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", true);
+    tokenService.validity = TimeUnit.DAYS.toMillis(7);
+
+    // the first connection authenticates with Kerberos and obtains the token
+    Connection first = cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    Assert.assertEquals(1, tokenService.fetched.get());
+    Assert.assertEquals("cdap", tokenService.owner);
+    Assert.assertTrue(urls.get(0).contains(";kerberosAuthType=fromSubject"));
+
+    cache.connect(login, CONNECTION_STRING, this::connectToken);
+    cache.connect(login, CONNECTION_STRING, this::connectToken);
+    Assert.assertEquals(1, tokenService.fetched.get());
+    Assert.assertEquals(3, urls.size());
+    // the driver only authenticates with the token if the connection string has no principal
+    Assert.assertEquals("jdbc:hive2://localhost:10000/mydb;auth=delegationToken?hive.exec.parallel=true",
+                        urls.get(1));
+    Assert.assertNotNull(first);
+
+    // tokens are cached per connection string
+    cache.connect(login, "jdbc:hive2://otherhost:10000/mydb", this::connectKerberos);
+    Assert.assertEquals(2, tokenService.fetched.get());
+  }
+
+  @Test
+  public void testTokenRenewedBeforeExpiry() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", true);
+    tokenService.validity = TimeUnit.DAYS.toMillis(7);
+
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    clockOffset.set(TimeUnit.HOURS.toMillis(20));
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    Assert.assertEquals(1, tokenService.renewed.get());
+    Assert.assertEquals(1, tokenService.fetched.get());
+
+    // the renewed token is used until it has to be renewed again
+    cache.connect(login, CONNECTION_STRING, this::connectToken);
+    Assert.assertEquals(1, tokenService.renewed.get());
+  }
+
+  @Test
+  public void testTokenReplacedAfterMaxLifetime() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", true);
+    // token which can not be renewed
+    tokenService.validity = TimeUnit.HOURS.toMillis(10);
+
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    cache.connect(login, CONNECTION_STRING, this::connectToken);
+    clockOffset.set(TimeUnit.HOURS.toMillis(9));
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    Assert.assertEquals(0, tokenService.renewed.get());
+    Assert.assertEquals(2, tokenService.fetched.get());
+  }
+
+  @Test
+  public void testRejectedTokenFallsBackToKerberos() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", true);
+    tokenService.validity = TimeUnit.DAYS.toMillis(7);
+
+    cache.connect(login, CONNECTION_STRING, this::connectKerberos);
+    cache.connect(login, CONNECTION_STRING, url -> {
+      if (url.contains("auth=delegationToken")) {
+        throw new SQLException("DIGEST-MD5: digest response format violation");
+      }
+      return connectKerberos(url);
+    });
+    Assert.assertEquals(2, tokenService.fetched.get());
+  }
+
+  @Test(timeout = 60000)
+  public void testSlowConnectionDoesNotBlockOtherTokens() throws Exception {
+    KerberosSessionCache cache = newCache();
+    KerberosSessionCache.Login login = login("cdap", true);
+    tokenService.validity = TimeUnit.DAYS.toMillis(7);
+
+    // a connection to a slow HiveServer2 obtaining its token must not delay connections to other servers
+    CountDownLatch connecting = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread slow = new Thread(() -> {
+      try {
+        cache.connect(login, "jdbc:hive2://slowhost:10000/mydb", url -> {
+          connecting.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return fakeConnection();
+        });
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    slow.setDaemon(true);
+    slow.start();
+    try {
+      connecting.await();
+      Assert.assertNotNull(cache.connect(login, CONNECTION_STRING, this::connectKerberos));
+      Assert.assertEquals(1, tokenService.fetched.get());
+    } finally {
+      release.countDown();
+      slow.join();
+    }
+    Assert.assertEquals(2, tokenService.fetched.get());
+  }
+
+  @Test
+  public void testWithSessionVariable() {
+    Assert.assertEquals("jdbc:hive2://host:10000/db;auth=delegationToken",
+                        KerberosSessionCache.withSessionVariable("jdbc:hive2://host:10000/db", "auth",
+                                                                 "delegationToken"));
+    Assert.assertEquals("jdbc:hive2://host:10000/db;principal=hive/_HOST@R;auth=delegationToken#a=b",
+                        KerberosSessionCache.withSessionVariable("jdbc:hive2://host:10000/db;auth=kerberos;" +
+                                                                   "principal=hive/_HOST@R#a=b", "auth",
+                                                                 "delegationToken"));
+    Assert.assertEquals("jdbc:hive2://host:10000/db;auth=kerberos#a=b",
+                        KerberosSessionCache.withoutSessionVariable("jdbc:hive2://host:10000/db;auth=kerberos;" +
+                                                                      "principal=hive/_HOST@R#a=b", "principal"));
+  }
+
+  private KerberosSessionCache newCache() {
+    return new KerberosSessionCache(tokenService, () -> System.currentTimeMillis() + clockOffset.get());
+  }
+
+  private static KerberosSessionCache.Login login(String user, boolean cacheToken) {
+    return new KerberosSessionCache.Login(user + "@" + kdc.getRealm(), keytab.getAbsolutePath(), cacheToken);
+  }
+
+  private Connection connectKerberos(String url) {
+    urls.add(url);
+    Subject subject = Subject.getSubject(AccessController.getContext());
+    Assert.assertNotNull("Kerberos connections are opened as the logged in subject", subject);
+    Assert.assertFalse(subject.getPrincipals(KerberosPrincipal.class).isEmpty());
+    Assert.assertFalse(url.contains("auth=delegationToken"));
+    return fakeConnection();
+  }
+
+  private Connection connectToken(String url) throws SQLException {
+    urls.add(url);
+    Assert.assertTrue(url.contains(";auth=delegationToken"));
+    Assert.assertFalse(url.contains("principal="));
+    Assert.assertFalse(url.contains("kerberosAuthType="));
+    try {
+      // the hive driver looks up the token of the current user by this service
+      Token<? extends TokenIdentifier> token = UserGroupInformation.getCurrentUser().getTokens().stream()
+        .filter(t -> t.getService().toString().equals("hiveserver2ClientToken"))
+        .findFirst().orElseThrow(() -> new AssertionError("Token not found"));
+      Assert.assertEquals("HIVE_DELEGATION_TOKEN", token.getKind().toString());
+    } catch (java.io.IOException e) {
+      throw new SQLException(e);
+    }
+    return fakeConnection();
+  }
+
+  private static Connection fakeConnection() {
+    return (Connection) Proxy.newProxyInstance(
+      KerberosSessionCacheTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        throw new UnsupportedOperationException(method.getName());
+      });
+  }
+
+  /**
+   * Token service issuing tokens the way HiveServer2 does, valid for one day and renewable until the validity.
+   */
+  private final class FakeTokenService implements KerberosSessionCache.TokenService {
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicInteger renewed = new AtomicInteger();
+    private long validity;
+    private String owner;
+
+    @Override
+    public String fetch(Connection connection, String owner, String renewer) throws SQLException {
+      this.owner = owner;
+      fetched.incrementAndGet();
+      AbstractDelegationTokenIdentifier identifier =
+        new AbstractDelegationTokenIdentifier(new Text(owner), new Text(renewer), new Text(owner)) {
+          @Override
+          public Text getKind() {
+            return new Text("HIVE_DELEGATION_TOKEN");
+          }
+        };
+      long now = System.currentTimeMillis() + clockOffset.get();
+      identifier.setIssueDate(now);
+      identifier.setMaxDate(now + validity);
+      try {
+        return new Token<>(identifier.getBytes(), new byte[] {1, 2, 3}, identifier.getKind(), new Text())
+          .encodeToUrlString();
+      } catch (java.io.IOException e) {
+        throw new SQLException(e);
+      }
+    }
+
+    @Override
+    public void renew(Connection connection, String token) {
+      renewed.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.plugin.hive.action.PartitionPathPattern;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PartitionPathPatternTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testMatch() {
+    PartitionPathPattern pattern = PartitionPathPattern.parse("dt=${dt}/region=${region}");
+    Assert.assertEquals(Arrays.asList("dt", "region"), pattern.getColumns());
+    Assert.assertEquals(ImmutableMap.of("dt", "2020-01-01", "region", "us"),
+                        pattern.match("dt=2020-01-01/region=us"));
+    Assert.assertNull(pattern.match("dt=2020-01-01"));
+    Assert.assertNull(pattern.match("dt=2020-01-01/country=us"));
+    Assert.assertNull(pattern.match("dt=/region=us"));
+
+    PartitionPathPattern combined = PartitionPathPattern.parse("${year}-${month}");
+    Assert.assertEquals(ImmutableMap.of("year", "2020", "month", "01"), combined.match("2020-01"));
+    Assert.assertNull(combined.match("202001"));
+  }
+
+  @Test
+  public void testPartitionClause() throws Exception {
+    File root = temporaryFolder.newFolder();
+    createFile(root, "dt=2020-01-01/data.csv");
+    PartitionPathPattern.PartitionDirectory directory = PartitionPathPattern.parse("dt=${dt}")
+      .scan(FileSystem.getLocal(new Configuration()), new Path(root.toURI())).get(0);
+    Assert.assertEquals(" PARTITION (dt='2020-01-01')", directory.getPartitionClause());
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    File root = temporaryFolder.newFolder();
+    createFile(root, "dt=2020-01-02/region=us/data.csv");
+    createFile(root, "dt=2020-01-01/region=eu/data.csv");
+    createFile(root, "dt=2020-01-01/region=us/_SUCCESS");
+    createFile(root, "dt=2020-01-01/other=us/data.csv");
+    createFile(root, "_temporary/region=us/data.csv");
+    createFile(root, "dt=2020-01-03/data.csv");
+
+    List<String> names = PartitionPathPattern.parse("dt=${dt}/region=${region}")
+      .scan(FileSystem.getLocal(new Configuration()), new Path(root.toURI())).stream()
+      .map(PartitionPathPattern.PartitionDirectory::getName)
+      .collect(Collectors.toList());
+    // directories without files, hidden or not matching the pattern are skipped
+    Assert.assertEquals(Arrays.asList("dt=2020-01-01/region=eu", "dt=2020-01-02/region=us"), names);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPatternWithoutPlaceholder() {
+    PartitionPathPattern.parse("dt=2020-01-01");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPatternWithDuplicateColumn() {
+    PartitionPathPattern.parse("${dt}/${dt}");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPatternWithEmptySegment() {
+    PartitionPathPattern.parse("dt=${dt}//region=${region}");
+  }
+
+  private static void createFile(File root, String path) throws Exception {
+    File file = new File(root, path);
+    Assert.assertTrue(file.getParentFile().exists() || file.getParentFile().mkdirs());
+    Assert.assertTrue(file.createNewFile());
+  }
+}
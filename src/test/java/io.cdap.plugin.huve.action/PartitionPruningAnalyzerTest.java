@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.hive.action.HiveExportConfig;
+import io.cdap.plugin.hive.action.common.HiveSelectConfig;
+import io.cdap.plugin.hive.action.common.PartitionPruningAnalyzer;
+import io.cdap.plugin.hive.action.common.SelectStatementRewriter;
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PartitionPruningAnalyzerTest {
+  // employee is partitioned by dt, salary is not partitioned
+  private static final PartitionPruningAnalyzer.PartitionColumnResolver RESOLVER = table ->
+    table.equalsIgnoreCase("employee") || table.equalsIgnoreCase("mydb.employee") ?
+      Collections.singletonList("dt") : Collections.emptyList();
+  private static final String[] PARTITIONS = {
+    "dt=2020-01-01/region=eu", "dt=2020-01-01/region=us", "dt=2020-01-02/region=eu", "dt=2020-01-03/region=us"
+  };
+
+  @Test
+  public void testPrunedStatements() throws Exception {
+    assertPruned("SELECT * FROM employee WHERE dt = '2020-01-01'");
+    assertPruned("SELECT * FROM mydb.employee WHERE dt >= '2020-01-01' AND name LIKE 'a%'");
+    assertPruned("SELECT * FROM employee e WHERE e.dt IN ('2020-01-01', '2020-01-02')");
+    assertPruned("SELECT * FROM employee WHERE dt BETWEEN '2020-01-01' AND '2020-01-31' ORDER BY id");
+    assertPruned("SELECT * FROM employee WHERE dt = '2020-01-01' OR dt = '2020-01-02'");
+    assertPruned("SELECT * FROM employee e JOIN salary s ON (e.id = s.id AND e.dt = '2020-01-01')");
+    assertPruned("SELECT * FROM (SELECT * FROM employee) e WHERE e.dt = '2020-01-01'");
+    assertPruned("SELECT * FROM salary s WHERE s.amount > 1000");
+  }
+
+  @Test
+  public void testMissingPredicate() throws Exception {
+    List<String> problems = PartitionPruningAnalyzer.analyze(
+      "SELECT * FROM employee e JOIN salary s ON (e.id = s.id) WHERE s.amount > 1000", RESOLVER);
+    Assert.assertEquals(1, problems.size());
+    Assert.assertTrue(problems.get(0), problems.get(0).contains("no predicate"));
+
+    // a predicate on the partition column of another table does not prune
+    problems = PartitionPruningAnalyzer.analyze(
+      "SELECT * FROM employee e JOIN employee f ON (e.id = f.manager) WHERE f.dt = '2020-01-01'", RESOLVER);
+    Assert.assertEquals(1, problems.size());
+  }
+
+  @Test
+  public void testPredicateNotPruning() throws Exception {
+    assertNotPruned("SELECT * FROM employee WHERE SUBSTR(dt, 1, 7) = '2020-01'", "wrapped in SUBSTR");
+    assertNotPruned("SELECT * FROM employee WHERE CAST(dt AS DATE) > DATE '2020-01-01'", "wrapped in CAST");
+    assertNotPruned("SELECT * FROM employee WHERE dt = '2020-01-01' OR id = 5", "combined with OR");
+    assertNotPruned("SELECT * FROM employee e JOIN salary s ON (e.dt = s.dt)", "non constant");
+  }
+
+  @Test
+  public void testSplitStatementsArePruned() throws Exception {
+    SelectStatementRewriter rewriter = SelectStatementRewriter.parse("SELECT * FROM employee");
+    StatementSplit split = StatementSplit.ofPartitions(Collections.singletonList("dt=2020-01-01")).get(0);
+    Assert.assertEquals(Collections.emptyList(),
+                        PartitionPruningAnalyzer.analyze(rewriter.withSourceFilter(split.getPredicate()), RESOLVER));
+  }
+
+  @Test
+  public void testSelectPartitions() throws Exception {
+    assertSelected("SELECT * FROM employee WHERE dt >= '2020-01-02' AND name LIKE 'a%'",
+                   "dt=2020-01-02/region=eu", "dt=2020-01-03/region=us");
+    assertSelected("SELECT * FROM employee e WHERE e.dt BETWEEN '2020-01-01' AND '2020-01-02' AND e.region <> 'us'",
+                   "dt=2020-01-01/region=eu", "dt=2020-01-02/region=eu");
+    assertSelected("SELECT * FROM employee WHERE region IN ('us') OR dt = '2020-01-03'",
+                   "dt=2020-01-01/region=us", "dt=2020-01-03/region=us");
+    assertSelected("SELECT * FROM employee WHERE NOT (region = 'eu')", "dt=2020-01-01/region=us",
+                   "dt=2020-01-03/region=us");
+    assertSelected("SELECT * FROM employee WHERE dt = '2020-01-01' UNION ALL " +
+                     "SELECT * FROM employee WHERE dt = '2020-01-03'",
+                   "dt=2020-01-01/region=eu", "dt=2020-01-01/region=us", "dt=2020-01-03/region=us");
+  }
+
+  @Test
+  public void testSelectPartitionsKeepsUnknown() throws Exception {
+    // predicates which can not be evaluated, and outer joins, keep all partitions
+    assertSelected("SELECT * FROM employee WHERE SUBSTR(dt, 1, 7) = '2020-01'", PARTITIONS);
+    assertSelected("SELECT * FROM employee WHERE dt = '2020-01-01' OR id = 5", PARTITIONS);
+    assertSelected("SELECT * FROM employee e LEFT JOIN salary s ON (e.id = s.id) WHERE e.dt = '2020-01-01'",
+                   PARTITIONS);
+    assertSelected("SELECT * FROM (SELECT * FROM employee) e WHERE e.dt = '2020-01-01'", PARTITIONS);
+    // predicates on the partition columns of another table
+    assertSelected("SELECT * FROM employee e JOIN employee f ON (e.id = f.manager) WHERE f.dt = '2020-01-01'",
+                   PARTITIONS);
+    // dates in another format and numbers compared as strings depend on the type of the column
+    assertSelected("SELECT * FROM employee WHERE dt > '2020-1-2'", PARTITIONS);
+    Assert.assertEquals(Arrays.asList("hr=9", "hr=10"), PartitionPruningAnalyzer.selectPartitions(
+      "SELECT * FROM logs WHERE hr > 5", "logs", Arrays.asList("hr=1", "hr=9", "hr=10")));
+    // '10' is less than '5' as a string but not as a number
+    Assert.assertEquals(Arrays.asList("hr=1", "hr=10"), PartitionPruningAnalyzer.selectPartitions(
+      "SELECT * FROM logs WHERE hr < '5'", "logs", Arrays.asList("hr=1", "hr=9", "hr=10")));
+  }
+
+  @Test
+  public void testSelectSplitPartitions() throws Exception {
+    // partition exports split the source table as written in the statement
+    String statement = "SELECT e.id FROM mydb.employee e JOIN salary s ON (e.id = s.id) WHERE e.dt > '2020-01-01'";
+    String table = SelectStatementRewriter.parse(statement).getSourceTable();
+    Assert.assertEquals(Arrays.asList("dt=2020-01-02/region=eu", "dt=2020-01-03/region=us"),
+                        PartitionPruningAnalyzer.selectPartitions(statement, table, Arrays.asList(PARTITIONS)));
+  }
+
+  @Test
+  public void testValidateInvalidCheck() {
+    MockFailureCollector failureCollector = new MockFailureCollector("mockStage");
+    HiveExportConfig config = HiveExportConfig.builder()
+      .setConnectionString("jdbc:hive2://localhost:10000/mydb;auth=delegationToken")
+      .setStatement("SELECT * FROM employee")
+      .setPath("/path/to/export/directory")
+      .setOverwrite("yes")
+      .setPartitionFilterCheck("always")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HiveSelectConfig.PARTITION_FILTER_CHECK));
+
+    config.validate(failureCollector);
+    ValidationAssertions.assertValidationFailed(failureCollector, paramNames);
+  }
+
+  private static void assertSelected(String statement, String... expected) throws Exception {
+    Assert.assertEquals(statement, Arrays.asList(expected),
+                        PartitionPruningAnalyzer.selectPartitions(statement, "employee", Arrays.asList(PARTITIONS)));
+  }
+
+  private static void assertPruned(String statement) throws Exception {
+    Assert.assertEquals(statement, Collections.emptyList(), PartitionPruningAnalyzer.analyze(statement, RESOLVER));
+  }
+
+  private static void assertNotPruned(String statement, String reason) throws Exception {
+    List<String> problems = PartitionPruningAnalyzer.analyze(statement, RESOLVER);
+    Assert.assertEquals(statement, 1, problems.size());
+    Assert.assertTrue(problems.get(0), problems.get(0).contains(reason));
+  }
+}
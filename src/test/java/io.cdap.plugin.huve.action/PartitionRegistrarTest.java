@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.plugin.hive.action.HiveExportFormat;
+import io.cdap.plugin.hive.action.PartitionRegistrar;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PartitionRegistrarTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testGetFormat() {
+    Assert.assertEquals(HiveExportFormat.ORC,
+                        PartitionRegistrar.getFormat("org.apache.hadoop.hive.ql.io.orc.OrcInputFormat"));
+    Assert.assertEquals(HiveExportFormat.TEXT,
+                        PartitionRegistrar.getFormat("org.apache.hadoop.mapred.TextInputFormat"));
+    Assert.assertNull(PartitionRegistrar.getFormat("org.apache.hadoop.hive.ql.io.RCFileInputFormat"));
+  }
+
+  @Test
+  public void testPartitionName() {
+    // values are ordered by the partition columns of the table and escaped
+    Assert.assertEquals("dt=2020-01-01/hour=10%3A00",
+                        PartitionRegistrar.getPartitionName(Arrays.asList("dt", "hour"),
+                                                            ImmutableMap.of("HOUR", "10:00", "dt", "2020-01-01")));
+  }
+
+  @Test
+  public void testAddPartitionStatement() {
+    Map<String, Path> partitions = new LinkedHashMap<>();
+    partitions.put(" PARTITION (dt='2020-01-01')", new Path("/warehouse/t/dt=2020-01-01"));
+    partitions.put(" PARTITION (dt='2020-01-02')", new Path("/warehouse/t/dt=2020-01-02"));
+    Assert.assertEquals("ALTER TABLE t ADD IF NOT EXISTS PARTITION (dt='2020-01-01') LOCATION " +
+                          "'/warehouse/t/dt=2020-01-01' PARTITION (dt='2020-01-02') LOCATION " +
+                          "'/warehouse/t/dt=2020-01-02'",
+                        PartitionRegistrar.getAddPartitionStatement("t", partitions));
+  }
+
+  @Test
+  public void testCheckOrc() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path matching = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    writeOrc(conf, new Path(matching, "000000_0"), "struct<id:bigint,count:bigint>");
+    writeOrc(conf, new Path(matching, "000001_0"), "struct<_col0:bigint,_col1:bigint>");
+    Path different = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    writeOrc(conf, new Path(different, "000000_0"), "struct<id:bigint,total:bigint>");
+    write(fs, new Path(different, "data.csv"), "1,2\n");
+
+    PartitionRegistrar registrar = new PartitionRegistrar(fs, HiveExportFormat.ORC, Arrays.asList("id", "COUNT"));
+    Assert.assertEquals(Collections.emptyList(), registrar.check(fs, matching));
+    List<String> problems = registrar.check(fs, different);
+    Assert.assertEquals(2, problems.size());
+    Assert.assertTrue(problems.get(0), problems.get(0).endsWith("does not contain the table columns [count]."));
+    Assert.assertTrue(problems.get(1), problems.get(1).endsWith("is a TEXT file, the table is stored as ORC."));
+  }
+
+  @Test
+  public void testMove() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path source = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    write(fs, new Path(source, "data.csv"), "1,2\n");
+    write(fs, new Path(source, "_SUCCESS"), "");
+    Path location = new Path(temporaryFolder.newFolder().getAbsolutePath(), "dt=2020-01-01");
+    write(fs, new Path(location, "data.csv"), "3,4\n");
+
+    PartitionRegistrar registrar = new PartitionRegistrar(fs, HiveExportFormat.TEXT, Arrays.asList("a", "b"));
+    Assert.assertEquals(4, registrar.move(source, location, false));
+    Assert.assertTrue(fs.exists(new Path(location, "data.csv")));
+    Assert.assertTrue(fs.exists(new Path(location, "data_copy_1.csv")));
+    Assert.assertFalse(fs.exists(new Path(source, "data.csv")));
+    Assert.assertTrue(fs.exists(new Path(source, "_SUCCESS")));
+
+    write(fs, new Path(source, "data.csv"), "5,6\n");
+    registrar.move(source, location, true);
+    Assert.assertTrue(fs.exists(new Path(location, "data.csv")));
+    Assert.assertFalse(fs.exists(new Path(location, "data_copy_1.csv")));
+  }
+
+  private static void writeOrc(Configuration conf, Path path, String schemaString) throws Exception {
+    TypeDescription schema = TypeDescription.fromString(schemaString);
+    Writer writer = OrcFile.createWriter(path, OrcFile.writerOptions(conf).setSchema(schema));
+    VectorizedRowBatch batch = schema.createRowBatch();
+    ((LongColumnVector) batch.cols[0]).vector[batch.size++] = 1;
+    writer.addRowBatch(batch);
+    writer.close();
+  }
+
+  private static void write(FileSystem fs, Path path, String content) throws Exception {
+    try (FSDataOutputStream out = fs.create(path)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveConnectionPool;
+import io.cdap.plugin.hive.action.common.RetryPolicy;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.net.SocketException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetryPolicyTest {
+  private static final String CONNECTION_STRING = "jdbc:hive2://localhost:10000/mydb;auth=delegationToken";
+  private static final RetryPolicy POLICY = new RetryPolicy(2, 0, RetryPolicy.DEFAULT_SQL_STATES,
+                                                            RetryPolicy.DEFAULT_EXCEPTIONS);
+
+  @Test
+  public void testTransientFailures() {
+    Assert.assertTrue(POLICY.isTransient(new SQLException("Could not establish connection", "08006")));
+    Assert.assertTrue(POLICY.isTransient(lostConnection()));
+    // failed jobs are only retried if requested
+    SQLException failedJob = new SQLException("Error while processing statement: FAILED: Execution Error", "08S01");
+    Assert.assertFalse(POLICY.isTransient(failedJob));
+    Assert.assertTrue(new RetryPolicy(2, 0, Collections.singletonList("08S01"), RetryPolicy.DEFAULT_EXCEPTIONS)
+                        .isTransient(failedJob));
+    Assert.assertTrue(POLICY.isTransient(new SQLException("Could not open client transport",
+                                                          new SocketException("Connection reset"))));
+    Assert.assertFalse(POLICY.isTransient(new SQLException("Table not found", "42S02")));
+    Assert.assertFalse(POLICY.isTransient(new SQLException("Unknown")));
+  }
+
+  @Test
+  public void testIdempotentStatements() {
+    Assert.assertTrue(RetryPolicy.isIdempotent("INSERT OVERWRITE TABLE t SELECT * FROM s"));
+    Assert.assertTrue(RetryPolicy.isIdempotent("insert overwrite directory '/tmp/out' select * from s"));
+    Assert.assertTrue(RetryPolicy.isIdempotent("LOAD DATA INPATH '/staging/run-1' INTO TABLE t"));
+    Assert.assertTrue(RetryPolicy.isIdempotent("CREATE TABLE IF NOT EXISTS t (id INT)"));
+    Assert.assertTrue(RetryPolicy.isIdempotent("SET hive.exec.parallel=true"));
+    Assert.assertFalse(RetryPolicy.isIdempotent("INSERT INTO TABLE t SELECT * FROM s"));
+    Assert.assertFalse(RetryPolicy.isIdempotent("LOAD DATA INPATH '/staging/run-1' OVERWRITE INTO TABLE t"));
+    Assert.assertFalse(RetryPolicy.isIdempotent("CREATE TABLE t (id INT)"));
+    Assert.assertEquals("/staging/run-1",
+                        RetryPolicy.getLoadPath("load data inpath '/staging/run-1' into table t"));
+  }
+
+  @Test
+  public void testRetryLimit() {
+    SQLException failure = lostConnection();
+    String statement = "INSERT OVERWRITE TABLE t SELECT * FROM s";
+    Assert.assertTrue(POLICY.shouldRetry(statement, failure, 1));
+    Assert.assertTrue(POLICY.shouldRetry(statement, failure, 2));
+    Assert.assertFalse(POLICY.shouldRetry(statement, failure, 3));
+    Assert.assertFalse(RetryPolicy.NONE.shouldRetry(statement, failure, 1));
+  }
+
+  @Test
+  public void testDelay() {
+    RetryPolicy policy = new RetryPolicy(10, 1000, RetryPolicy.DEFAULT_SQL_STATES, RetryPolicy.DEFAULT_EXCEPTIONS);
+    for (int i = 0; i < 100; i++) {
+      long first = policy.getDelayMillis(1);
+      Assert.assertTrue(first >= 500 && first <= 1000);
+      long third = policy.getDelayMillis(3);
+      Assert.assertTrue(third >= 2000 && third <= 4000);
+      long last = policy.getDelayMillis(40);
+      Assert.assertTrue(last >= RetryPolicy.MAX_DELAY_MILLIS / 2 && last <= RetryPolicy.MAX_DELAY_MILLIS);
+      Assert.assertEquals(0, POLICY.getDelayMillis(1));
+    }
+  }
+
+  @Test
+  public void testRetryReconnectsAndReplaysSession() throws Exception {
+    List<String> executed = new ArrayList<>();
+    AtomicInteger connections = new AtomicInteger();
+    AtomicBoolean failNext = new AtomicBoolean();
+    HiveConnectionPool pool = new HiveConnectionPool((url, user, password) -> {
+      connections.incrementAndGet();
+      return fakeConnection(executed, failNext);
+    }, 2, 60000, 1);
+
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password", null, POLICY);
+    executor.execute("SET hive.exec.parallel=true");
+    failNext.set(true);
+    executor.execute("INSERT OVERWRITE TABLE t SELECT * FROM s");
+    executor.cleanup();
+
+    Assert.assertEquals(2, connections.get());
+    Assert.assertEquals(Arrays.asList("SET hive.exec.parallel=true", "INSERT OVERWRITE TABLE t SELECT * FROM s",
+                                      "SET hive.exec.parallel=true", "INSERT OVERWRITE TABLE t SELECT * FROM s",
+                                      "RESET hive.exec.parallel"),
+                        executed);
+    pool.close();
+  }
+
+  @Test
+  public void testNonIdempotentStatementNotRetried() throws Exception {
+    List<String> executed = new ArrayList<>();
+    AtomicBoolean failNext = new AtomicBoolean(true);
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> fakeConnection(executed, failNext), 2, 60000, 1);
+
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password", null, POLICY);
+    try {
+      executor.execute("INSERT INTO TABLE t SELECT * FROM s");
+      Assert.fail("Statement should have failed");
+    } catch (SQLException e) {
+      Assert.assertEquals("08S01", e.getSQLState());
+    }
+    Assert.assertEquals(1, executed.size());
+    executor.cleanup();
+    pool.close();
+  }
+
+  /**
+   * Returns the failure the hive driver reports when the connection to HiveServer2 was lost while a statement ran.
+   */
+  private static SQLException lostConnection() {
+    return new SQLException("Error while processing statement", "08S01",
+                            new TTransportException("java.net.SocketException: Connection reset"));
+  }
+
+  /**
+   * Returns a connection whose statements record the executed commands, and fail once if failNext is set.
+   */
+  private static Connection fakeConnection(List<String> executed, AtomicBoolean failNext) {
+    AtomicBoolean closed = new AtomicBoolean();
+    Statement statement = (Statement) Proxy.newProxyInstance(
+      RetryPolicyTest.class.getClassLoader(), new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "execute":
+            executed.add((String) args[0]);
+            if (failNext.getAndSet(false)) {
+              throw lostConnection();
+            }
+            return false;
+          case "close":
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    return (Connection) Proxy.newProxyInstance(
+      RetryPolicyTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "createStatement":
+            return statement;
+          case "isValid":
+            return !closed.get();
+          case "isClosed":
+            return closed.get();
+          case "close":
+            closed.set(true);
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.SelectStatementRewriter;
+import io.cdap.plugin.hive.action.common.StatementSplit;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SelectStatementRewriterTest {
+
+  @Test
+  public void testRewriteTable() throws Exception {
+    SelectStatementRewriter rewriter = SelectStatementRewriter.parse("SELECT id, name FROM mydb.employee WHERE id > 5");
+    Assert.assertEquals("mydb.employee", rewriter.getSourceTable());
+    Assert.assertEquals("SELECT id, name FROM (SELECT * FROM mydb.employee WHERE dt = '2020-01-01') employee " +
+                          "WHERE id > 5", rewriter.withSourceFilter("dt = '2020-01-01'"));
+  }
+
+  @Test
+  public void testRewriteAliasedJoin() throws Exception {
+    SelectStatementRewriter rewriter = SelectStatementRewriter.parse(
+      "SELECT * FROM employee e\nJOIN salary s ON (e.id = s.id)");
+    Assert.assertEquals("employee", rewriter.getSourceTable());
+    Assert.assertEquals("SELECT * FROM (SELECT * FROM employee WHERE id >= 0 AND id < 10) e\n" +
+                          "JOIN salary s ON (e.id = s.id)", rewriter.withSourceFilter("id >= 0 AND id < 10"));
+  }
+
+  @Test
+  public void testSubQueryHasNoSourceTable() throws Exception {
+    Assert.assertNull(SelectStatementRewriter.parse("SELECT * FROM (SELECT id FROM employee) t").getSourceTable());
+  }
+
+  @Test
+  public void testPartitionSplits() {
+    List<StatementSplit> splits = StatementSplit.ofPartitions(
+      Arrays.asList("dt=2020-01-01/region=us", "dt=2020-01-02/region=it%27s"));
+    Assert.assertEquals(2, splits.size());
+    Assert.assertEquals("dt=2020-01-01/region=us", splits.get(0).getName());
+    Assert.assertEquals("dt = '2020-01-01' AND region = 'us'", splits.get(0).getPredicate());
+    Assert.assertEquals("dt = '2020-01-02' AND region = 'it\\'s'", splits.get(1).getPredicate());
+  }
+
+  @Test
+  public void testRangeSplits() {
+    List<StatementSplit> splits = StatementSplit.ofRange("id", 0, 9, 3);
+    Assert.assertEquals(3, splits.size());
+    Assert.assertEquals("id >= 0 AND id < 3", splits.get(0).getPredicate());
+    Assert.assertEquals("id >= 3 AND id < 6", splits.get(1).getPredicate());
+    Assert.assertEquals("id >= 6 AND id <= 9", splits.get(2).getPredicate());
+    Assert.assertEquals("split-00002", splits.get(2).getName());
+
+    // never more splits than values
+    Assert.assertEquals(2, StatementSplit.ofRange("id", 5, 6, 10).size());
+  }
+}
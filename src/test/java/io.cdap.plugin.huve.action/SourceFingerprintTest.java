@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import com.google.common.collect.ImmutableSet;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import io.cdap.plugin.hive.action.common.SourceFingerprint;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+public class SourceFingerprintTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testGetTables() throws Exception {
+    Assert.assertEquals(ImmutableSet.of("db.employee", "salary"),
+                        SourceFingerprint.getTables("SELECT * FROM db.employee e JOIN salary s ON (e.id = s.id)"));
+    Assert.assertEquals(ImmutableSet.of("employee", "terminated", "contractor"),
+                        SourceFingerprint.getTables(
+                          "SELECT id FROM (SELECT id FROM employee) e WHERE id NOT IN (SELECT id FROM terminated) " +
+                            "UNION ALL SELECT id FROM contractor"));
+    Assert.assertEquals(ImmutableSet.of("employee"),
+                        SourceFingerprint.getTables("WITH recent AS (SELECT * FROM employee WHERE dt > '2020') " +
+                                                      "SELECT * FROM recent"));
+  }
+
+  @Test
+  public void testSummarize() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    Assert.assertEquals("files=0 bytes=0 modified=0", SourceFingerprint.summarize(fs, new Path(directory, "none")));
+
+    write(fs, new Path(directory, "dt=2020-01-01/000000_0"), "abc");
+    write(fs, new Path(directory, "dt=2020-01-02/000000_0"), "de");
+    write(fs, new Path(directory, ".hive-staging/000000_0"), "ignored");
+    long modified = fs.getFileStatus(new Path(directory, "dt=2020-01-02/000000_0")).getModificationTime();
+    Assert.assertTrue(SourceFingerprint.summarize(fs, directory).startsWith("files=2 bytes=5 modified="));
+
+    fs.setTimes(new Path(directory, "dt=2020-01-02/000000_0"), modified + 60000, -1);
+    Assert.assertEquals(String.format("files=2 bytes=5 modified=%d", modified + 60000),
+                        SourceFingerprint.summarize(fs, directory));
+  }
+
+  @Test
+  public void testPartitionClause() {
+    Assert.assertEquals(" PARTITION (dt='2020-01-01', region='us:east')",
+                        HiveMetadata.getPartitionClause("dt=2020-01-01/region=us%3Aeast"));
+  }
+
+  @Test
+  public void testReadWrite() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    Assert.assertNull(SourceFingerprint.read(fs, directory));
+
+    SourceFingerprint.write(fs, directory, "statement abc\ntable t lastDdlTime=1");
+    SourceFingerprint.write(fs, directory, "statement abc\ntable t lastDdlTime=2");
+    Assert.assertEquals("statement abc\ntable t lastDdlTime=2", SourceFingerprint.read(fs, directory));
+
+    SourceFingerprint.delete(fs, directory);
+    Assert.assertNull(SourceFingerprint.read(fs, directory));
+  }
+
+  private static void write(FileSystem fs, Path path, String content) throws Exception {
+    try (FSDataOutputStream out = fs.create(path)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.StagedDirectory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagedDirectoryTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FileSystem fs;
+  private Path parent;
+  private Path target;
+
+  @Before
+  public void setUp() throws Exception {
+    parent = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    target = new Path(parent, "export");
+    fs = target.getFileSystem(new Configuration());
+  }
+
+  @Test
+  public void testCommitReplacesTarget() throws Exception {
+    fs.create(new Path(target, "old-000000")).close();
+
+    StagedDirectory staged = new StagedDirectory(target, new Configuration());
+    staged.create();
+    Assert.assertEquals(parent, staged.getStagingPath().getParent());
+    Assert.assertTrue(staged.getStagingPath().getName().startsWith("."));
+    fs.create(new Path(staged.getStagingPath(), "000000_0")).close();
+    // readers still see the previous export until the commit
+    Assert.assertTrue(fs.exists(new Path(target, "old-000000")));
+
+    staged.commit();
+    Assert.assertTrue(fs.exists(new Path(target, "000000_0")));
+    Assert.assertTrue(fs.exists(new Path(target, StagedDirectory.SUCCESS_MARKER)));
+    Assert.assertFalse(fs.exists(new Path(target, "old-000000")));
+    Assert.assertFalse(fs.exists(staged.getStagingPath()));
+    // only the committed directory is left
+    Assert.assertEquals(1, fs.listStatus(parent).length);
+  }
+
+  @Test
+  public void testCommitWithoutTarget() throws Exception {
+    StagedDirectory staged = new StagedDirectory(target, new Configuration());
+    staged.create();
+    staged.commit();
+    Assert.assertTrue(fs.exists(new Path(target, StagedDirectory.SUCCESS_MARKER)));
+  }
+
+  @Test
+  public void testAbortKeepsTarget() throws Exception {
+    fs.create(new Path(target, "old-000000")).close();
+
+    StagedDirectory staged = new StagedDirectory(target, new Configuration());
+    staged.create();
+    fs.create(new Path(staged.getStagingPath(), "000000_0")).close();
+    staged.abort();
+
+    Assert.assertFalse(fs.exists(staged.getStagingPath()));
+    Assert.assertTrue(fs.exists(new Path(target, "old-000000")));
+    Assert.assertFalse(fs.exists(new Path(target, StagedDirectory.SUCCESS_MARKER)));
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.ConcurrencyLimiter;
+import io.cdap.plugin.hive.action.common.HiveCommandExecutor;
+import io.cdap.plugin.hive.action.common.HiveConnectionPool;
+import io.cdap.plugin.hive.action.common.RetryPolicy;
+import io.cdap.plugin.hive.action.common.StatementWatchdog;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+public class StatementWatchdogTest {
+  private static final String CONNECTION_STRING = "jdbc:hive2://localhost:10000/mydb;auth=delegationToken";
+  // cancelled statements fail with a transient SQLState, they must not be retried nonetheless
+  private static final RetryPolicy POLICY = new RetryPolicy(2, 0, RetryPolicy.DEFAULT_SQL_STATES,
+                                                            RetryPolicy.DEFAULT_EXCEPTIONS);
+
+  @Test
+  public void testCheck() {
+    StatementWatchdog watchdog = new StatementWatchdog(TimeUnit.MINUTES.toMillis(1));
+    AtomicInteger cancelled = new AtomicInteger();
+    StatementWatchdog.Watch unlimited = watchdog.watch(cancellableStatement(cancelled, null, null), 0);
+    StatementWatchdog.Watch expired = watchdog.watch(cancellableStatement(cancelled, null, null), 1);
+    StatementWatchdog.Watch closed = watchdog.watch(cancellableStatement(cancelled, null, null), 1);
+    closed.close();
+    sleep(10);
+
+    watchdog.check();
+    Assert.assertFalse(unlimited.isCancelled());
+    Assert.assertTrue(expired.isCancelled());
+    Assert.assertTrue(expired.isTimedOut());
+    Assert.assertFalse(closed.isCancelled());
+    // statements are cancelled only once
+    watchdog.check();
+    Assert.assertEquals(1, cancelled.get());
+
+    watchdog.cancelAll("the JVM is shutting down");
+    Assert.assertTrue(unlimited.isCancelled());
+    Assert.assertFalse(unlimited.isTimedOut());
+    Assert.assertEquals(2, cancelled.get());
+  }
+
+  @Test
+  public void testTimeoutCancelsStatement() throws Exception {
+    AtomicInteger cancelled = new AtomicInteger();
+    AtomicInteger executed = new AtomicInteger();
+    AtomicBoolean closed = new AtomicBoolean();
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> fakeConnection(cancellableStatement(cancelled, executed, null), closed), 2, 60000, 1);
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password", null, POLICY,
+                                                           ConcurrencyLimiter.NONE, 0, 100);
+    try {
+      executor.execute("INSERT OVERWRITE TABLE t SELECT * FROM s");
+      Assert.fail("Statement should have timed out");
+    } catch (SQLTimeoutException e) {
+      Assert.assertTrue(e.getMessage().contains("statement timeout"));
+    } finally {
+      executor.cleanup();
+    }
+    Assert.assertEquals(1, cancelled.get());
+    Assert.assertEquals(1, executed.get());
+    // the connection may still be busy with the cancelled operation
+    Assert.assertTrue(closed.get());
+    Assert.assertEquals(0, pool.getIdleCount());
+    pool.close();
+  }
+
+  @Test
+  public void testInterruptCancelsStatement() throws Exception {
+    AtomicInteger cancelled = new AtomicInteger();
+    CountDownLatch running = new CountDownLatch(1);
+    HiveConnectionPool pool = new HiveConnectionPool(
+      (url, user, password) -> fakeConnection(cancellableStatement(cancelled, null, running), new AtomicBoolean()),
+      2, 60000, 1);
+    HiveCommandExecutor executor = new HiveCommandExecutor(pool, CONNECTION_STRING, "user", "password", null, POLICY);
+    AtomicReference<SQLException> failure = new AtomicReference<>();
+    Thread thread = new Thread(() -> {
+      try {
+        executor.execute("INSERT OVERWRITE TABLE t SELECT * FROM s");
+      } catch (SQLException e) {
+        failure.set(e);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    thread.start();
+    Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+    thread.interrupt();
+    thread.join(10000);
+
+    Assert.assertEquals(1, cancelled.get());
+    Assert.assertEquals("HY008", failure.get().getSQLState());
+    executor.cleanup();
+    Assert.assertEquals(0, pool.getIdleCount());
+    pool.close();
+  }
+
+  /**
+   * Returns a statement whose execute blocks until the statement is cancelled, and then fails like HiveServer2 does
+   * for a cancelled operation whose connection was lost.
+   */
+  private static Statement cancellableStatement(AtomicInteger cancelled, AtomicInteger executed,
+                                                CountDownLatch running) {
+    CountDownLatch cancel = new CountDownLatch(1);
+    return (Statement) Proxy.newProxyInstance(
+      StatementWatchdogTest.class.getClassLoader(), new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "execute":
+            if (executed != null) {
+              executed.incrementAndGet();
+            }
+            if (running != null) {
+              running.countDown();
+            }
+            // like the hive driver, keeps polling the operation status when the thread is interrupted
+            while (cancel.getCount() > 0) {
+              LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            throw new SQLException("Error while processing statement", "08S01",
+                                   new TTransportException("java.net.SocketException: Connection reset"));
+          case "cancel":
+            cancelled.incrementAndGet();
+            cancel.countDown();
+            return null;
+          case "close":
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  private static Connection fakeConnection(Statement statement, AtomicBoolean closed) {
+    return (Connection) Proxy.newProxyInstance(
+      StatementWatchdogTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "createStatement":
+            return statement;
+          case "isValid":
+            return !closed.get();
+          case "isClosed":
+            return closed.get();
+          case "close":
+            closed.set(true);
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  private static void sleep(long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.plugin.hive.action.TextConversion;
+import io.cdap.plugin.hive.action.common.HiveMetadata;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TextConversionTest {
+
+  @Test
+  public void testPartitionedTable() {
+    List<List<String>> describeRows = Arrays.asList(
+      Arrays.asList("id", "bigint", ""),
+      Arrays.asList("name", "string", ""),
+      Arrays.asList("dt", "string", ""),
+      Arrays.asList("", null, null),
+      Arrays.asList("# Partition Information", null, null),
+      Arrays.asList("# col_name", "data_type", "comment"),
+      Arrays.asList("", null, null),
+      Arrays.asList("dt", "string", ""));
+    TextConversion conversion = new TextConversion("sales.events", "sales.staging",
+                                                   HiveMetadata.parseColumnTypes(describeRows),
+                                                   HiveMetadata.parsePartitionColumns(describeRows));
+
+    Assert.assertEquals("CREATE EXTERNAL TABLE sales.staging (`id` bigint, `name` string, `dt` string) ROW FORMAT " +
+                          "DELIMITED FIELDS TERMINATED BY '\\t' STORED AS TEXTFILE LOCATION " +
+                          "'hdfs://nn/landing/it\\'s'",
+                        conversion.getCreateStagingTableStatement("hdfs://nn/landing/it's", "\\t"));
+    Assert.assertEquals("INSERT OVERWRITE TABLE sales.events PARTITION (`dt`) SELECT `id`, `name`, `dt` " +
+                          "FROM sales.staging", conversion.getInsertStatement(true));
+    Assert.assertEquals("DROP TABLE IF EXISTS sales.staging", conversion.getDropStagingTableStatement());
+    Assert.assertTrue(conversion.getSettings().contains("SET hive.exec.dynamic.partition.mode=nonstrict"));
+  }
+
+  @Test
+  public void testUnpartitionedTable() {
+    TextConversion conversion = new TextConversion("events", "staging", ImmutableMap.of("id", "int"),
+                                                   Collections.emptyList());
+    Assert.assertEquals("INSERT INTO TABLE events SELECT `id` FROM staging", conversion.getInsertStatement(false));
+  }
+
+  @Test
+  public void testStagingTableName() {
+    String name = TextConversion.getStagingTableName("sales.events");
+    Assert.assertTrue(name, name.startsWith("sales.cdap_import_staging_"));
+    Assert.assertNotEquals(name, TextConversion.getStagingTableName("sales.events"));
+    Assert.assertFalse(TextConversion.getStagingTableName("events").contains("."));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2020 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.huve.action;
+
+import io.cdap.plugin.hive.action.common.Watermark;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatermarkTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testPredicate() {
+    Assert.assertEquals("dt <= '2020-01-02'", new Watermark("dt", null, "2020-01-02").getPredicate());
+    Assert.assertEquals("dt > '2020-01-01' AND dt <= '2020-01-02'",
+                        new Watermark("dt", "2020-01-01", "2020-01-02").getPredicate());
+  }
+
+  @Test
+  public void testDirectoryName() {
+    Assert.assertEquals("dt=2020-01-02", new Watermark("dt", null, "2020-01-02").getDirectoryName());
+    Assert.assertEquals("updated=2020-01-02 10%3A15%3A00",
+                        new Watermark("updated", null, "2020-01-02 10:15:00").getDirectoryName());
+  }
+
+  @Test
+  public void testContainsPartition() {
+    Watermark watermark = new Watermark("dt", "2020-01-01", "2020-01-03");
+    Assert.assertFalse(watermark.containsPartition("dt=2020-01-01/region=us"));
+    Assert.assertTrue(watermark.containsPartition("dt=2020-01-02/region=us"));
+    Assert.assertTrue(watermark.containsPartition("dt=2020-01-03/region=us"));
+    Assert.assertFalse(watermark.containsPartition("dt=2020-01-04/region=us"));
+    Assert.assertTrue(watermark.containsPartition("region=us"));
+
+    // numeric values are compared as numbers
+    Watermark numeric = new Watermark("id", "9", "100");
+    Assert.assertTrue(numeric.containsPartition("id=10"));
+    Assert.assertFalse(numeric.containsPartition("id=9"));
+  }
+
+  @Test
+  public void testReadWrite() throws Exception {
+    Path directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    FileSystem fs = directory.getFileSystem(new Configuration());
+    Assert.assertNull(Watermark.read(fs, directory));
+
+    Watermark.write(fs, directory, "2020-01-01");
+    Assert.assertEquals("2020-01-01", Watermark.read(fs, directory));
+    Watermark.write(fs, directory, "2020-01-02");
+    Assert.assertEquals("2020-01-02", Watermark.read(fs, directory));
+  }
+}